@@ -2,19 +2,22 @@ package animate;
 
 import org.jetbrains.annotations.NotNull;
 import simulate.BarnesHut;
-import simulate.objects.Particle;
+import simulate.Snapshot;
+import simulate.SnapshotBuffer;
 
 import javax.swing.*;
 import java.awt.*;
-import java.util.ArrayList;
+import java.awt.geom.Ellipse2D;
 
 /**
- * JPanel subclass that can be used to animate all the bodies in a Barnes Hut simulation.
+ * JPanel subclass that can be used to animate all the bodies in a Barnes Hut simulation. Each advanced frame is
+ * published to a triple-buffered SnapshotBuffer, and the panel paints the latest published snapshot, so painting
+ * never sees particles that are half-way through a step.
  */
 public class Animator extends BarnesHutAnimator {
 
     protected BarnesHut simulator;
-    private ArrayList<Particle> particles;
+    protected final SnapshotBuffer snapshots;
 
 
     /**
@@ -24,7 +27,8 @@ public class Animator extends BarnesHutAnimator {
      */
     public Animator(@NotNull BarnesHut simulator) {
         this.simulator = simulator;
-        this.particles = simulator.getParticles();
+        this.snapshots = new SnapshotBuffer(simulator, 3, false);
+        snapshots.publish();
         setBackground(Color.BLACK);
     }
 
@@ -48,19 +52,27 @@ public class Animator extends BarnesHutAnimator {
      * @param g2 The Graphics2D object.
      */
     private void paintParticles(Graphics2D g2) {
-        for (Particle object : particles) {
-            g2.setColor(object.getColor());
-            Shape shape = object.getShape();
-            g2.draw(shape);
-            g2.fill(shape);
+        Snapshot snapshot = snapshots.acquire();
+        try {
+            for (int id = 0; id < snapshot.getParticleCount(); id++) {
+                int size = simulator.getParticleSize(id);
+                g2.setColor(simulator.getParticleColor(id));
+                Shape shape = new Ellipse2D.Double(snapshot.getPosition(id, 0) - size / 2,
+                        snapshot.getPosition(id, 1) - size / 2, size, size);
+                g2.draw(shape);
+                g2.fill(shape);
+            }
+        } finally {
+            snapshots.release(snapshot);
         }
     }
 
     /**
      * Call the simulate's next() method so that that all particles obtain
-     * new positions and velocities for the next frame.
+     * new positions and velocities for the next frame, and publishes the new positions for painting.
      */
     public void advanceFrame() {
         simulator.next();
+        snapshots.publish();
     }
 }
@@ -2,6 +2,7 @@ package animate;
 
 import com.google.common.io.Files;
 import com.opencsv.CSVReader;
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -14,17 +15,25 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Animates an exported Barnes Hut simulation specified by given simulation directory. This directory must contain
- * valid ParticleProperties.json and Trajectories.csv files.
+ * valid ParticleProperties.json and Trajectories.csv files. When the directory also holds the Manifest.json of a
+ * LargeExporter export, the manifest gives the number of dimensions, the ids of the exported particles, so that
+ * exports of a subset of the particles are animated, and the CSV files of the export, which are played in order.
  */
 public class ExportAnimator extends BarnesHutAnimator {
 
     private String simDirectory;
     private CSVReader reader;
-    private Particle[] particles;
+    private Particle[] particles; // The exported particles, in the order of their columns.
     private String[] nextLine;
+    private int dimensions; // Number of columns per particle; three-dimensional exports are projected onto x and y.
+    private int[] ids; // Ids of the exported particles, null if every particle is exported.
+    private List<String> trajectoryFiles = new ArrayList<>();
+    private int nextFile;
 
     /**
      * Initializes the animator using the given simulation output directory.
@@ -34,20 +43,81 @@ public class ExportAnimator extends BarnesHutAnimator {
      */
     public ExportAnimator(String simDir) throws FileNotFoundException {
         this.simDirectory = simDir;
+        readManifest();
         createParticles();
-        String trajectoriesFile = Paths.get(simDir, "Trajectories.csv").toString();
+        if (trajectoryFiles.isEmpty()) {
+            throw new FileNotFoundException("No CSV trajectories in " + simDir);
+        }
+        String[] header = openNextFile();
+        if (dimensions == 0) {
+            dimensions = header.length / particles.length;
+        }
+        setBackground(Color.BLACK);
+    }
+
+    /**
+     * Reads the dimensions, the exported particle ids and the CSV files of the export from its Manifest.json, if
+     * there is one. Otherwise every particle was exported to Trajectories.csv.
+     */
+    private void readManifest() {
+        File manifestFile = Paths.get(simDirectory, "Manifest.json").toFile();
+        if (!manifestFile.exists()) {
+            trajectoryFiles.add("Trajectories.csv");
+            return;
+        }
         try {
-            reader = new CSVReader(new FileReader(trajectoriesFile));
-        } catch (FileNotFoundException fe) {
-            throw new FileNotFoundException();
+            JSONObject manifest = new JSONObject(Files.asCharSource(manifestFile, StandardCharsets.UTF_8).read());
+            dimensions = manifest.getInt("Dimensions");
+            JSONArray exported = manifest.getJSONArray("Particles");
+            ids = new int[exported.length()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = exported.getInt(i);
+            }
+            JSONArray files = manifest.getJSONArray("Files");
+            for (int i = 0; i < files.length(); i++) {
+                JSONObject file = files.getJSONObject(i);
+                if (file.getString("Format").equals("CSV") && file.getLong("Frames") > 0) {
+                    trajectoryFiles.add(file.getString("File"));
+                }
+            }
+        } catch (IOException | JSONException e) {
+            e.printStackTrace();
+            System.exit(-1);
         }
+    }
+
+    /**
+     * Opens the next CSV trajectories file and skips its header line.
+     * @return The header line
+     */
+    private String[] openNextFile() throws FileNotFoundException {
+        String trajectoriesFile = Paths.get(simDirectory, trajectoryFiles.get(nextFile++)).toString();
         try {
-            reader.readNext(); // skips the header line
+            if (reader != null) {
+                reader.close();
+            }
+            reader = new CSVReader(new FileReader(trajectoriesFile));
+            return reader.readNext();
+        } catch (FileNotFoundException fe) {
+            throw new FileNotFoundException(trajectoriesFile);
         } catch (IOException e) {
             e.printStackTrace();
             System.exit(-1);
+            return null;
         }
-        setBackground(Color.BLACK);
+    }
+
+    /**
+     * Reads the next frame, continuing with the next trajectories file at the end of each file.
+     * @return The frame, or null after the last frame
+     */
+    private String[] readFrame() throws IOException {
+        String[] frame = reader.readNext();
+        while (frame == null && nextFile < trajectoryFiles.size()) {
+            openNextFile();
+            frame = reader.readNext();
+        }
+        return frame;
     }
 
     /**
@@ -58,10 +128,9 @@ public class ExportAnimator extends BarnesHutAnimator {
         try {
             String propertiesText = Files.asCharSource(new File(propertiesFilePath), StandardCharsets.UTF_8).read();
             JSONObject properties = new JSONObject(propertiesText);
-            int length = properties.length();
-            particles = new Particle[properties.length()];
-            for (int i = 0; i < properties.length(); i++) {
-                String key = String.valueOf(i);
+            particles = new Particle[ids == null ? properties.length() : ids.length];
+            for (int i = 0; i < particles.length; i++) {
+                String key = String.valueOf(ids == null ? i : ids[i]);
                 int size = properties.getJSONObject(key).getInt("Size");
                 int color = properties.getJSONObject(key).getInt("Color");
                 particles[i] = new Particle(size, color);
@@ -81,9 +150,10 @@ public class ExportAnimator extends BarnesHutAnimator {
     @Override
     public void animate() {
         try {
-            while ((nextLine = reader.readNext()) != null) {
-                for (int i = 0; i < nextLine.length / 2; i++) {
-                    particles[i].setPosition(Double.valueOf(nextLine[i * 2]), Double.valueOf(nextLine[(2 * i) + 1]));
+            while ((nextLine = readFrame()) != null) {
+                for (int i = 0; i < nextLine.length / dimensions; i++) {
+                    particles[i].setPosition(Double.valueOf(nextLine[i * dimensions]),
+                            Double.valueOf(nextLine[(dimensions * i) + 1]));
                 }
                 repaint();
             }
@@ -94,9 +164,10 @@ public class ExportAnimator extends BarnesHutAnimator {
 
     public void advanceFrame() {
         try {
-            nextLine = reader.readNext();
-            for (int i = 0; i < nextLine.length / 2; i++) {
-                particles[i].setPosition(Double.valueOf(nextLine[i * 2]), Double.valueOf(nextLine[(2 * i) + 1]));
+            nextLine = readFrame();
+            for (int i = 0; i < nextLine.length / dimensions; i++) {
+                particles[i].setPosition(Double.valueOf(nextLine[i * dimensions]),
+                        Double.valueOf(nextLine[(dimensions * i) + 1]));
             }
         } catch (IOException e) {
             e.printStackTrace();
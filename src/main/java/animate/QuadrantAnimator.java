@@ -51,7 +51,7 @@ public class QuadrantAnimator extends Animator {
      */
     @Override
     public void advanceFrame() {
-        simulator.next();
+        super.advanceFrame();
         this.quadrants = simulator.getQuadrants();
     }
 
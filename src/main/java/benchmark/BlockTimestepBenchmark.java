@@ -0,0 +1,109 @@
+package benchmark;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import simulate.BarnesHut;
+import simulate.helpers.ConfigLoader;
+import simulate.objects.ParticleStore;
+
+import javax.management.InvalidAttributeValueException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Compares a global leapfrog time-step with hierarchical block timesteps on a disk galaxy. The global run uses the
+ * smallest step of the block run, TIME_STEP / 2^MAX_RUNG, for every particle. Prints the wall-clock time, the number
+ * of evaluated accelerations and the mean relative change of the particles' specific orbital energies over the same
+ * simulated time. The particle count and the number of time-steps can be passed as command line arguments.
+ */
+public class BlockTimestepBenchmark {
+
+    private static final double G = 50;
+    private static final double TIME_STEP = 0.04;
+    private static final int MAX_RUNG = 5;
+
+    public static void main(String[] args) throws IOException, JSONException, InvalidAttributeValueException {
+        int particles = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int steps = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        System.out.printf("%10s %12s %14s %14s%n", "Run", "Time (ms)", "Evaluations", "Energy error");
+        run("Global", config(particles, false, TIME_STEP / (1 << MAX_RUNG)), steps << MAX_RUNG);
+        run("Block", config(particles, true, TIME_STEP), steps);
+    }
+
+    private static void run(String name, File config, int steps) throws IOException, JSONException,
+            InvalidAttributeValueException {
+        BarnesHut simulator = new BarnesHut(new ConfigLoader(config.getPath()));
+        double[] initial = energies(simulator.getStore());
+        long evaluations = 0;
+        long begin = System.nanoTime();
+        for (int step = 0; step < steps; step++) {
+            simulator.next();
+            evaluations += simulator.getEvaluationCount();
+        }
+        double time = (System.nanoTime() - begin) / 1e6;
+        double[] last = energies(simulator.getStore());
+        double error = 0;
+        for (int id = 0; id < initial.length; id++) {
+            error += Math.abs(last[id] / initial[id] - 1) / initial.length;
+        }
+        System.out.printf("%10s %12.1f %14d %14.2e%n", name, time, evaluations, error);
+    }
+
+    /**
+     * Writes a config of a disk galaxy with the given time-step settings to a temporary file.
+     */
+    private static File config(int particles, boolean blockTimesteps, double timeStep) throws IOException,
+            JSONException {
+        JSONObject galaxies = new JSONObject();
+        galaxies.put("Galaxy1", galaxy(particles));
+        JSONObject config = new JSONObject();
+        config.put("Size", 2400);
+        config.put("Origin", new JSONArray(new int[]{-800, -800}));
+        config.put("G", G);
+        config.put("Theta", 0.5);
+        config.put("TimeStep", timeStep);
+        config.put("Integrator", "Leapfrog");
+        config.put("BlockTimesteps", blockTimesteps);
+        config.put("MaxRung", MAX_RUNG);
+        config.put("Galaxies", galaxies);
+        File file = File.createTempFile("BlockTimestepBenchmark", ".json");
+        file.deleteOnExit();
+        Files.write(file.toPath(), config.toString().getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static JSONObject galaxy(int particles) throws JSONException {
+        JSONObject galaxy = new JSONObject();
+        galaxy.put("Model", "Disk");
+        galaxy.put("Position", new JSONArray(new double[]{400, 400}));
+        galaxy.put("Velocity", new JSONArray(new double[]{0, 0}));
+        galaxy.put("Radius", 200);
+        galaxy.put("Mass", 10000);
+        galaxy.put("Particles", particles);
+        galaxy.put("Color", "Red");
+        return galaxy;
+    }
+
+    /**
+     * Returns the kinetic plus potential energy per unit mass of every particle, indexed by id, with the potential
+     * summed directly.
+     */
+    private static double[] energies(ParticleStore store) {
+        double[] energies = new double[store.size()];
+        for (int i = 0; i < store.size(); i++) {
+            double energy = (store.vx[i] * store.vx[i] + store.vy[i] * store.vy[i]) / 2;
+            for (int j = 0; j < store.size(); j++) {
+                double dx = store.x[i] - store.x[j];
+                double dy = store.y[i] - store.y[j];
+                if (j != i) {
+                    energy -= G * store.mass[j] / Math.sqrt(dx * dx + dy * dy);
+                }
+            }
+            energies[store.idAt(i)] = energy;
+        }
+        return energies;
+    }
+}
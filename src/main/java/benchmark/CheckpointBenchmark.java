@@ -0,0 +1,100 @@
+package benchmark;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import simulate.BarnesHut;
+import simulate.Checkpoint;
+import simulate.Simulator;
+import simulate.helpers.ConfigLoader;
+import simulate.objects.ParticleStore;
+
+import javax.management.InvalidAttributeValueException;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Compares saving and restoring the particle state of a disk galaxy through a binary Checkpoint with writing and
+ * parsing the same state as CSV text. Prints the wall-clock time of each and the file sizes. The particle count can be
+ * passed as a command line argument.
+ */
+public class CheckpointBenchmark {
+
+    public static void main(String[] args) throws IOException, JSONException, InvalidAttributeValueException {
+        int particles = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        BarnesHut simulator = new BarnesHut(config(particles));
+        Path checkpoint = Files.createTempFile("CheckpointBenchmark", ".bin");
+        Path csv = Files.createTempFile("CheckpointBenchmark", ".csv");
+        checkpoint.toFile().deleteOnExit();
+        csv.toFile().deleteOnExit();
+
+        long begin = System.nanoTime();
+        Checkpoint.write(checkpoint, simulator, 0);
+        double writeTime = (System.nanoTime() - begin) / 1e6;
+        begin = System.nanoTime();
+        Simulator restored = Checkpoint.read(checkpoint).restore();
+        double readTime = (System.nanoTime() - begin) / 1e6;
+
+        begin = System.nanoTime();
+        writeCsv(simulator.getStore(), csv);
+        double csvWriteTime = (System.nanoTime() - begin) / 1e6;
+        begin = System.nanoTime();
+        ParticleStore parsed = readCsv(csv, particles);
+        double csvReadTime = (System.nanoTime() - begin) / 1e6;
+
+        System.out.printf("%10s %12s %12s %12s%n", "Format", "Write (ms)", "Read (ms)", "Size (MB)");
+        System.out.printf("%10s %12.1f %12.1f %12.1f%n", "Binary", writeTime, readTime, Files.size(checkpoint) / 1e6);
+        System.out.printf("%10s %12.1f %12.1f %12.1f%n", "CSV", csvWriteTime, csvReadTime, Files.size(csv) / 1e6);
+        System.out.println(restored.getParticleCount() + " and " + parsed.size() + " particles restored");
+    }
+
+    private static void writeCsv(ParticleStore store, Path csv) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(csv, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < store.size(); i++) {
+                writer.write(store.x[i] + "," + store.y[i] + "," + store.vx[i] + "," + store.vy[i] + "," + store.ax[i]
+                        + "," + store.ay[i] + "," + store.mass[i]);
+                writer.newLine();
+            }
+        }
+    }
+
+    private static ParticleStore readCsv(Path csv, int particles) throws IOException {
+        ParticleStore store = new ParticleStore(particles);
+        try (BufferedReader reader = Files.newBufferedReader(csv, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] values = line.split(",");
+                int id = store.add(Double.parseDouble(values[0]), Double.parseDouble(values[1]),
+                        Double.parseDouble(values[2]), Double.parseDouble(values[3]), Double.parseDouble(values[6]));
+                store.ax[id] = Double.parseDouble(values[4]);
+                store.ay[id] = Double.parseDouble(values[5]);
+            }
+        }
+        return store;
+    }
+
+    private static ConfigLoader config(int particles) throws JSONException {
+        JSONObject galaxy = new JSONObject();
+        galaxy.put("Model", "Disk");
+        galaxy.put("Position", new JSONArray(new double[]{400, 400}));
+        galaxy.put("Velocity", new JSONArray(new double[]{0, 0}));
+        galaxy.put("Radius", 200);
+        galaxy.put("Mass", 10000);
+        galaxy.put("Particles", particles);
+        galaxy.put("Color", "Red");
+        JSONObject galaxies = new JSONObject();
+        galaxies.put("Galaxy1", galaxy);
+        JSONObject config = new JSONObject();
+        config.put("Size", 2400);
+        config.put("Origin", new JSONArray(new int[]{-800, -800}));
+        config.put("G", 50);
+        config.put("Theta", 0.5);
+        config.put("TimeStep", 0.005);
+        config.put("Galaxies", galaxies);
+        return new ConfigLoader(config);
+    }
+}
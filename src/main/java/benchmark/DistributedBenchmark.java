@@ -0,0 +1,99 @@
+package benchmark;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import simulate.DistributedBarnesHut;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the weak scaling of DistributedBarnesHut: for 1, 2, 4, ... ranks up to the given maximum, a disk galaxy
+ * with a fixed number of particles per rank is simulated by that many processes on this host, connected over
+ * loopback sockets, and the time per step reported by rank 0 is printed. With perfect weak scaling the time per step
+ * stays constant; the ranks compete for the cores of the host, so each rank should have a core of its own. The
+ * particles per rank, the number of steps and the largest rank count can be passed as command line arguments.
+ */
+public class DistributedBenchmark {
+
+    public static void main(String[] args) throws IOException, JSONException, InterruptedException {
+        int particlesPerRank = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int steps = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int maxRanks = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        for (int ranks = 1; ranks <= maxRanks; ranks *= 2) {
+            File config = config(particlesPerRank * ranks);
+            String addresses = freeAddresses(ranks);
+            List<Process> processes = new ArrayList<>();
+            for (int rank = 0; rank < ranks; rank++) {
+                ProcessBuilder builder = new ProcessBuilder(javaCommand(), "-cp", System.getProperty("java.class.path"),
+                        DistributedBarnesHut.class.getName(), config.getPath(), String.valueOf(rank), addresses,
+                        String.valueOf(steps));
+                processes.add(rank == 0 ? builder.redirectErrorStream(true).start() : builder.inheritIO().start());
+            }
+            try (BufferedReader output = new BufferedReader(new InputStreamReader(processes.get(0).getInputStream(),
+                    StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = output.readLine()) != null) {
+                    System.out.println(line);
+                }
+            }
+            for (Process process : processes) {
+                process.waitFor();
+            }
+        }
+    }
+
+    private static String javaCommand() {
+        return System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+    }
+
+    /**
+     * Returns loopback addresses with free ports for the given number of ranks.
+     */
+    private static String freeAddresses(int ranks) throws IOException {
+        StringBuilder addresses = new StringBuilder();
+        for (int rank = 0; rank < ranks; rank++) {
+            try (ServerSocket socket = new ServerSocket(0)) {
+                addresses.append(rank > 0 ? "," : "").append("localhost:").append(socket.getLocalPort());
+            }
+        }
+        return addresses.toString();
+    }
+
+    /**
+     * Writes a config of a single-threaded disk galaxy with the given number of particles to a temporary file.
+     */
+    private static File config(int particles) throws IOException, JSONException {
+        JSONObject galaxy = new JSONObject();
+        galaxy.put("Model", "Disk");
+        galaxy.put("Position", new JSONArray(new double[]{400, 400}));
+        galaxy.put("Velocity", new JSONArray(new double[]{0, 0}));
+        galaxy.put("Radius", 200);
+        galaxy.put("Mass", 10000);
+        galaxy.put("Particles", particles);
+        galaxy.put("Color", "Red");
+        JSONObject galaxies = new JSONObject();
+        galaxies.put("Galaxy1", galaxy);
+        JSONObject config = new JSONObject();
+        config.put("Size", 2400);
+        config.put("Origin", new JSONArray(new int[]{-800, -800}));
+        config.put("G", 50);
+        config.put("Theta", 0.5);
+        config.put("TimeStep", 0.005);
+        config.put("Integrator", "Leapfrog");
+        config.put("Threads", 1);
+        config.put("Galaxies", galaxies);
+        File file = File.createTempFile("DistributedBenchmark", ".json");
+        file.deleteOnExit();
+        Files.write(file.toPath(), config.toString().getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
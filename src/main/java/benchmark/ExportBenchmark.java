@@ -0,0 +1,84 @@
+package benchmark;
+
+import export.BinaryTrajectorySink;
+import export.CompressedTrajectoryReader;
+import export.CompressedTrajectorySink;
+import export.CsvTrajectorySink;
+import export.TrajectorySink;
+import org.json.JSONException;
+import simulate.BarnesHut;
+import simulate.helpers.ConfigLoader;
+
+import javax.management.InvalidAttributeValueException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Compares the trajectory formats of the LargeExporter by writing the same frames of the default config's simulation
+ * through a CsvTrajectorySink, double and float BinaryTrajectorySinks and a CompressedTrajectorySink with the default
+ * quantization. The frames are simulated first, so the times are those of the writer thread alone. For each format
+ * the time per frame, the throughput, the file size and the largest error of a coordinate read back from the file are
+ * printed. The number of frames and the quantization can be passed as command line arguments.
+ */
+public class ExportBenchmark {
+
+    public static void main(String[] args) throws IOException, JSONException, InvalidAttributeValueException {
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        ConfigLoader loader = new ConfigLoader(Paths.get("src", "main", "resources", "DefaultSimulatorConfig.json")
+                .toString());
+        double quantization = args.length > 1 ? Double.parseDouble(args[1]) : loader.getExportQuantization();
+        BarnesHut simulator = new BarnesHut(loader);
+        int particles = simulator.getParticleCount();
+        double[][] positions = new double[frames][2 * particles];
+        for (double[] frame : positions) {
+            simulator.next();
+            simulator.getPositions(frame);
+        }
+        double quantum = quantization * loader.getSize();
+        System.out.printf("%d particles, %d frames, quantum %.2e%n", particles, frames, quantum);
+        System.out.printf("%-11s %12s %10s %11s %12s%n", "Format", "Frame (ms)", "MB/s", "Size (MB)", "Max error");
+        Path csv = Files.createTempFile("ExportBenchmark", ".csv");
+        run("CSV", csv, new CsvTrajectorySink(csv, 2, particles, 0), positions);
+        Path doubles = Files.createTempFile("ExportBenchmark", ".bin");
+        run("Double", doubles, new BinaryTrajectorySink(doubles, 2, particles, false, 0), positions);
+        Path floats = Files.createTempFile("ExportBenchmark", ".bin");
+        run("Float", floats, new BinaryTrajectorySink(floats, 2, particles, true, 0), positions);
+        Path compressed = Files.createTempFile("ExportBenchmark", ".bhz");
+        run("Compressed", compressed, new CompressedTrajectorySink(compressed, 2, particles, quantum,
+                loader.getExportKeyframeInterval(), Runtime.getRuntime().availableProcessors(), 0), positions);
+    }
+
+    private static void run(String name, Path file, TrajectorySink sink, double[][] positions) throws IOException {
+        long begin = System.nanoTime();
+        try (TrajectorySink writer = sink) {
+            for (int frame = 0; frame < positions.length; frame++) {
+                writer.write(frame + 1, positions[frame]);
+            }
+        }
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        long bytes = Files.size(file);
+        String error = "";
+        if (name.equals("Compressed")) {
+            error = String.format("%.2e", maxError(file, positions));
+        }
+        System.out.printf("%-11s %12.3f %10.1f %11.1f %12s%n", name, 1e3 * seconds / positions.length,
+                bytes / 1e6 / seconds, bytes / 1e6, error);
+        Files.delete(file);
+    }
+
+    private static double maxError(Path file, double[][] positions) throws IOException {
+        double error = 0;
+        try (CompressedTrajectoryReader reader = new CompressedTrajectoryReader(file)) {
+            double[] decoded = new double[positions[0].length];
+            for (int frame = 0; frame < positions.length; frame++) {
+                reader.readFrame(frame + 1, decoded);
+                for (int i = 0; i < decoded.length; i++) {
+                    error = Math.max(error, Math.abs(decoded[i] - positions[frame][i]));
+                }
+            }
+        }
+        return error;
+    }
+}
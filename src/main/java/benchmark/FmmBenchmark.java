@@ -0,0 +1,47 @@
+package benchmark;
+
+import simulate.objects.ParticleStore;
+import simulate.tree.FmmEngine;
+import simulate.tree.GroupWalkEngine;
+import simulate.tree.LinearQuadtree;
+import simulate.tree.TreeWalkEngine;
+
+import java.util.Random;
+
+/**
+ * Finds the crossover between the tree walks and the Fast Multipole Method. For each particle count the tree walk,
+ * the grouped tree walk and the FMM at several expansion orders compute all accelerations of a disk of particles,
+ * and the time taken and the RMS relative error against direct summation are reported. Particle counts can be passed
+ * as command line arguments; theta is 0.5 for all engines.
+ */
+public class FmmBenchmark {
+
+    private static final double G = 1;
+    private static final double THETA = 0.5;
+    private static final int[] ORDERS = {2, 4, 6, 8};
+
+    public static void main(String[] args) {
+        int[] counts = args.length == 0 ? new int[]{10_000, 30_000, 100_000, 300_000} : new int[args.length];
+        for (int i = 0; i < args.length; i++) {
+            counts[i] = Integer.parseInt(args[i]);
+        }
+        System.out.printf("%12s %-10s %12s %14s%n", "Particles", "Engine", "Time (ms)", "RMS error");
+        for (int n : counts) {
+            ParticleStore store = TreeBuildBenchmark.makeDisk(n, new Random(n));
+            LinearQuadtree tree = new LinearQuadtree(0, 0, 2400);
+            tree.build(store);
+            double[][] exact = ForceEngineBenchmark.directSum(store);
+            double time = ForceEngineBenchmark.time(new TreeWalkEngine(G, THETA), tree, store);
+            System.out.printf("%12d %-10s %12.2f %14.3e%n", n, "Tree", time,
+                    ForceEngineBenchmark.rmsError(store, exact));
+            time = ForceEngineBenchmark.time(new GroupWalkEngine(G, THETA, 32), tree, store);
+            System.out.printf("%12d %-10s %12.2f %14.3e%n", n, "Group", time,
+                    ForceEngineBenchmark.rmsError(store, exact));
+            for (int order : ORDERS) {
+                time = ForceEngineBenchmark.time(new FmmEngine(G, THETA, 32, order), tree, store);
+                System.out.printf("%12d %-10s %12.2f %14.3e%n", n, "FMM p=" + order, time,
+                        ForceEngineBenchmark.rmsError(store, exact));
+            }
+        }
+    }
+}
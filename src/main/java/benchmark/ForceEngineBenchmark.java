@@ -0,0 +1,95 @@
+package benchmark;
+
+import simulate.objects.ParticleStore;
+import simulate.tree.FmmEngine;
+import simulate.tree.ForceEngine;
+import simulate.tree.GroupWalkEngine;
+import simulate.tree.LinearQuadtree;
+import simulate.tree.TreeWalkEngine;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Compares the force engines on a disk of particles. For each engine the time taken to compute all accelerations is
+ * reported together with the RMS relative error of the accelerations against direct summation, which is evaluated
+ * on a sample of the particles. The particle count and theta can be passed as command line arguments.
+ */
+public class ForceEngineBenchmark {
+
+    private static final double G = 1;
+    private static final int SAMPLES = 1000;
+    private static final int REPETITIONS = 5;
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        double theta = args.length > 1 ? Double.parseDouble(args[1]) : 0.5;
+        ParticleStore store = TreeBuildBenchmark.makeDisk(n, new Random(n));
+        LinearQuadtree tree = new LinearQuadtree(0, 0, 2400);
+        tree.build(store);
+        double[][] exact = directSum(store);
+
+        Map<String, ForceEngine> engines = new LinkedHashMap<>();
+        engines.put("Tree", new TreeWalkEngine(G, theta));
+        engines.put("Group", new GroupWalkEngine(G, theta, 32));
+        engines.put("FMM", new FmmEngine(G, theta, 32, 4));
+        System.out.printf("%d particles, theta %.2f%n", n, theta);
+        System.out.printf("%-10s %12s %14s%n", "Engine", "Time (ms)", "RMS error");
+        for (Map.Entry<String, ForceEngine> entry : engines.entrySet()) {
+            double time = time(entry.getValue(), tree, store);
+            System.out.printf("%-10s %12.2f %14.3e%n", entry.getKey(), time, rmsError(store, exact));
+        }
+    }
+
+    static double time(ForceEngine engine, LinearQuadtree tree, ParticleStore store) {
+        double best = Double.MAX_VALUE;
+        for (int repetition = 0; repetition < REPETITIONS; repetition++) {
+            long begin = System.nanoTime();
+            engine.prepare(tree, store);
+            engine.accelerate(0, store.size());
+            best = Math.min(best, (System.nanoTime() - begin) / 1e6);
+        }
+        return best;
+    }
+
+    /**
+     * Computes the exact accelerations of evenly spaced sample particles.
+     * @return sample indices, x-accelerations and y-accelerations
+     */
+    static double[][] directSum(ParticleStore store) {
+        int samples = Math.min(SAMPLES, store.size());
+        double[][] exact = new double[3][samples];
+        for (int sample = 0; sample < samples; sample++) {
+            int particle = (int) ((long) sample * store.size() / samples);
+            double ax = 0;
+            double ay = 0;
+            for (int i = 0; i < store.size(); i++) {
+                double dx = store.x[particle] - store.x[i];
+                double dy = store.y[particle] - store.y[i];
+                double distanceSquared = dx * dx + dy * dy;
+                if (distanceSquared > 0) {
+                    double product = G * store.mass[i] / (distanceSquared * Math.sqrt(distanceSquared));
+                    ax -= dx * product;
+                    ay -= dy * product;
+                }
+            }
+            exact[0][sample] = particle;
+            exact[1][sample] = ax;
+            exact[2][sample] = ay;
+        }
+        return exact;
+    }
+
+    static double rmsError(ParticleStore store, double[][] exact) {
+        double sum = 0;
+        for (int sample = 0; sample < exact[0].length; sample++) {
+            int particle = (int) exact[0][sample];
+            double dx = store.ax[particle] - exact[1][sample];
+            double dy = store.ay[particle] - exact[2][sample];
+            double norm = exact[1][sample] * exact[1][sample] + exact[2][sample] * exact[2][sample];
+            sum += (dx * dx + dy * dy) / norm;
+        }
+        return Math.sqrt(sum / exact[0].length);
+    }
+}
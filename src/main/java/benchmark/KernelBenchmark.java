@@ -0,0 +1,83 @@
+package benchmark;
+
+import simulate.objects.ParticleStore;
+import simulate.tree.GroupWalkEngine;
+import simulate.tree.InteractionKernel;
+import simulate.tree.LinearQuadtree;
+import simulate.tree.Precision;
+
+import java.util.Random;
+
+/**
+ * Compares the scalar interaction kernel with the Vector API kernel. The kernels first evaluate an interaction list
+ * of LIST_LENGTH sources for many particles, and then the accelerations of a disk of particles are computed by the
+ * "Group" engine with each kernel. Prints the vector length, the interaction rate of the kernels, the engine times
+ * and the speedup. The vector kernel is only found when running the multi-release jar on Java 17 or later with
+ * --add-modules jdk.incubator.vector, on AVX2 it has 4 lanes and on AVX-512 8. The particle count can be passed as a
+ * command line argument.
+ */
+public class KernelBenchmark {
+
+    private static final double G = 1;
+    private static final double THETA = 0.5;
+    private static final int LIST_LENGTH = 1024;
+    private static final int TARGETS = 20_000;
+    private static final int REPETITIONS = 5;
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        InteractionKernel scalar = InteractionKernel.create(false);
+        InteractionKernel vector = InteractionKernel.create(true);
+        if (vector.getLanes() == 1) {
+            System.out.println("Vector kernel unavailable, comparing the scalar kernel with itself");
+        }
+
+        Random random = new Random(LIST_LENGTH);
+        double[] x = new double[LIST_LENGTH];
+        double[] y = new double[LIST_LENGTH];
+        double[] mass = new double[LIST_LENGTH];
+        for (int i = 0; i < LIST_LENGTH; i++) {
+            x[i] = random.nextDouble();
+            y[i] = random.nextDouble();
+            mass[i] = random.nextDouble();
+        }
+        System.out.printf("%-8s %6s %18s%n", "Kernel", "Lanes", "Interactions/ns");
+        double scalarRate = rate(scalar, x, y, mass);
+        double vectorRate = rate(vector, x, y, mass);
+        System.out.printf("%-8s %6d %18.3f%n", "Scalar", scalar.getLanes(), scalarRate);
+        System.out.printf("%-8s %6d %18.3f%n", "Vector", vector.getLanes(), vectorRate);
+        System.out.printf("Kernel speedup %.2f%n%n", vectorRate / scalarRate);
+
+        ParticleStore store = TreeBuildBenchmark.makeDisk(n, new Random(n));
+        LinearQuadtree tree = new LinearQuadtree(0, 0, 2400);
+        tree.build(store);
+        double[][] exact = ForceEngineBenchmark.directSum(store);
+        System.out.printf("%d particles, theta %.2f, \"Group\" engine%n", n, THETA);
+        System.out.printf("%-8s %12s %14s%n", "Kernel", "Time (ms)", "RMS error");
+        double scalarTime = ForceEngineBenchmark.time(new GroupWalkEngine(G, THETA, 32, scalar, Precision.DOUBLE), tree, store);
+        System.out.printf("%-8s %12.2f %14.3e%n", "Scalar", scalarTime, ForceEngineBenchmark.rmsError(store, exact));
+        double vectorTime = ForceEngineBenchmark.time(new GroupWalkEngine(G, THETA, 32, vector, Precision.DOUBLE), tree, store);
+        System.out.printf("%-8s %12.2f %14.3e%n", "Vector", vectorTime, ForceEngineBenchmark.rmsError(store, exact));
+        System.out.printf("Engine speedup %.2f%n", scalarTime / vectorTime);
+    }
+
+    /**
+     * Returns the best rate in interactions per nanosecond of the kernel over the list.
+     */
+    private static double rate(InteractionKernel kernel, double[] x, double[] y, double[] mass) {
+        double[] acceleration = new double[2];
+        double best = Double.MAX_VALUE;
+        for (int repetition = 0; repetition < REPETITIONS; repetition++) {
+            long begin = System.nanoTime();
+            for (int target = 0; target < TARGETS; target++) {
+                kernel.accelerate(x[target % LIST_LENGTH], y[target % LIST_LENGTH], x, y, mass, 0, LIST_LENGTH,
+                        acceleration);
+            }
+            best = Math.min(best, System.nanoTime() - begin);
+        }
+        if (Double.isNaN(acceleration[0] + acceleration[1])) {
+            throw new IllegalStateException("Kernel produced NaN");
+        }
+        return (double) TARGETS * LIST_LENGTH / best;
+    }
+}
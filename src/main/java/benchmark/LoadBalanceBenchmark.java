@@ -0,0 +1,162 @@
+package benchmark;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import simulate.BarnesHut;
+import simulate.helpers.ConfigLoader;
+import simulate.objects.ParticleStore;
+import simulate.parallel.CostZones;
+
+import javax.management.InvalidAttributeValueException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Measures how evenly the force computation of two colliding disk galaxies is split across threads. After each
+ * step the interactions recorded for every particle give the true cost of that step, which is used to compute the
+ * load of the busiest of a number of threads relative to the mean load, for three ways of splitting the particles:
+ * an even split into one range per thread, chunks of ChunkSize particles handed out dynamically in Morton order,
+ * and cost zones computed from the costs of the previous step, ZONES_PER_THREAD per thread. A ratio of 1 means
+ * that no thread waits at the end of the step. The ratios do not depend on the machine, so they can be compared on
+ * a single core. The particle count and the number of steps can be passed as command line arguments.
+ */
+public class LoadBalanceBenchmark {
+
+    private static final int CHUNK_SIZE = 256;
+    private static final int[] THREADS = {2, 4, 8, 16, 32, 64};
+
+    public static void main(String[] args) throws IOException, JSONException, InvalidAttributeValueException {
+        int particles = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int steps = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        BarnesHut simulator = new BarnesHut(new ConfigLoader(config(particles).getPath()));
+        ParticleStore store = simulator.getStore();
+        int[] previous = new int[store.size()]; // Costs of the previous step, by particle id.
+        double[][] sums = new double[3][THREADS.length];
+        for (int step = 0; step <= steps; step++) {
+            simulator.next();
+            if (step > 0) {
+                int[] predicted = new int[store.size()];
+                for (int i = 0; i < store.size(); i++) {
+                    predicted[i] = previous[store.idAt(i)];
+                }
+                for (int t = 0; t < THREADS.length; t++) {
+                    sums[0][t] += evenSplit(store.cost, store.size(), THREADS[t]);
+                    sums[1][t] += dynamicChunks(store.cost, store.size(), THREADS[t]);
+                    sums[2][t] += costZones(store.cost, predicted, store.size(), THREADS[t]);
+                }
+            }
+            for (int i = 0; i < store.size(); i++) {
+                previous[store.idAt(i)] = store.cost[i];
+            }
+        }
+        System.out.printf("Busiest thread load / mean load, %d particles, mean over %d steps%n", particles, steps);
+        System.out.printf("%8s %12s %12s %12s%n", "Threads", "Even split", "Chunks", "Cost zones");
+        for (int t = 0; t < THREADS.length; t++) {
+            System.out.printf("%8d %12.3f %12.3f %12.3f%n", THREADS[t], sums[0][t] / steps, sums[1][t] / steps,
+                    sums[2][t] / steps);
+        }
+    }
+
+    private static double evenSplit(int[] cost, int n, int threads) {
+        double max = 0;
+        for (int thread = 0; thread < threads; thread++) {
+            int from = (int) ((long) n * thread / threads);
+            int to = (int) ((long) n * (thread + 1) / threads);
+            max = Math.max(max, sum(cost, from, to));
+        }
+        return max / mean(cost, n, threads);
+    }
+
+    /**
+     * Hands the chunks, in order, to the thread that becomes idle first.
+     */
+    private static double dynamicChunks(int[] cost, int n, int threads) {
+        double[] load = new double[threads];
+        for (int from = 0; from < n; from += CHUNK_SIZE) {
+            int idle = 0;
+            for (int thread = 1; thread < threads; thread++) {
+                idle = load[thread] < load[idle] ? thread : idle;
+            }
+            load[idle] += sum(cost, from, Math.min(n, from + CHUNK_SIZE));
+        }
+        double max = 0;
+        for (double threadLoad : load) {
+            max = Math.max(max, threadLoad);
+        }
+        return max / mean(cost, n, threads);
+    }
+
+    /**
+     * Hands the zones, in order, to the thread that becomes idle first, as the work-stealing pool would.
+     */
+    private static double costZones(int[] cost, int[] predicted, int n, int threads) {
+        CostZones zones = new CostZones(CostZones.DEFAULT_ZONES_PER_THREAD);
+        int count = zones.partition(predicted, 0, n, threads * CostZones.DEFAULT_ZONES_PER_THREAD);
+        int[] bounds = zones.getBounds();
+        double[] load = new double[threads];
+        for (int zone = 0; zone < count; zone++) {
+            int idle = 0;
+            for (int thread = 1; thread < threads; thread++) {
+                idle = load[thread] < load[idle] ? thread : idle;
+            }
+            load[idle] += sum(cost, bounds[zone], bounds[zone + 1]);
+        }
+        double max = 0;
+        for (double threadLoad : load) {
+            max = Math.max(max, threadLoad);
+        }
+        return max / mean(cost, n, threads);
+    }
+
+    /**
+     * Returns the cost of the particles from to to - 1, counting one for the fixed overhead of each particle.
+     */
+    private static double sum(int[] cost, int from, int to) {
+        double sum = 0;
+        for (int i = from; i < to; i++) {
+            sum += cost[i] + 1;
+        }
+        return sum;
+    }
+
+    private static double mean(int[] cost, int n, int threads) {
+        return sum(cost, 0, n) / threads;
+    }
+
+    /**
+     * Writes a config of two colliding disk galaxies to a temporary file.
+     */
+    private static File config(int particles) throws IOException, JSONException {
+        JSONObject galaxies = new JSONObject();
+        galaxies.put("Galaxy1", galaxy(particles / 2, new double[]{300, 300}, new double[]{2, 1}, "Red"));
+        galaxies.put("Galaxy2", galaxy(particles - particles / 2, new double[]{600, 450}, new double[]{-2, -1},
+                "Blue"));
+        JSONObject config = new JSONObject();
+        config.put("Size", 2400);
+        config.put("Origin", new JSONArray(new int[]{-800, -800}));
+        config.put("G", 50);
+        config.put("Theta", 0.5);
+        config.put("TimeStep", 0.04);
+        config.put("Galaxies", galaxies);
+        File file = File.createTempFile("LoadBalanceBenchmark", ".json");
+        file.deleteOnExit();
+        Files.write(file.toPath(), config.toString().getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static JSONObject galaxy(int particles, double[] position, double[] velocity, String color)
+            throws JSONException {
+        JSONObject galaxy = new JSONObject();
+        galaxy.put("Model", "Disk");
+        galaxy.put("Position", new JSONArray(position));
+        galaxy.put("Velocity", new JSONArray(velocity));
+        galaxy.put("Radius", 150);
+        galaxy.put("Mass", 10000);
+        galaxy.put("Particles", particles);
+        galaxy.put("Color", color);
+        return galaxy;
+    }
+}
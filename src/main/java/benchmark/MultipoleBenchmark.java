@@ -0,0 +1,45 @@
+package benchmark;
+
+import simulate.objects.ParticleStore;
+import simulate.tree.ForceEngine;
+import simulate.tree.LinearQuadtree;
+import simulate.tree.TreeWalkEngine;
+
+import java.util.Random;
+
+/**
+ * Compares monopole and quadrupole trees over a range of opening angles. For each theta the number of interactions
+ * per particle, the RMS relative error of the accelerations against direct summation and the time taken to compute
+ * all accelerations are reported, so that the two can be compared at equal error rather than at equal theta. The
+ * particle count can be passed as a command line argument.
+ */
+public class MultipoleBenchmark {
+
+    private static final double G = 1;
+    private static final double[] THETAS = {0.3, 0.4, 0.5, 0.6, 0.7, 0.8, 0.9};
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        ParticleStore store = TreeBuildBenchmark.makeDisk(n, new Random(n));
+        LinearQuadtree monopole = new LinearQuadtree(0, 0, 2400);
+        LinearQuadtree quadrupole = new LinearQuadtree(0, 0, 2400, true);
+        monopole.build(store);
+        quadrupole.build(store);
+        double[][] exact = ForceEngineBenchmark.directSum(store);
+
+        System.out.printf("%d particles%n", n);
+        System.out.printf("%-8s %-12s %16s %14s %12s%n", "Theta", "Moments", "Interactions", "RMS error", "Time (ms)");
+        for (double theta : THETAS) {
+            report(theta, "Monopole", monopole, store, exact);
+            report(theta, "Quadrupole", quadrupole, store, exact);
+        }
+    }
+
+    private static void report(double theta, String name, LinearQuadtree tree, ParticleStore store,
+                               double[][] exact) {
+        ForceEngine engine = new TreeWalkEngine(G, theta);
+        double time = ForceEngineBenchmark.time(engine, tree, store);
+        System.out.printf("%-8.2f %-12s %16.1f %14.3e %12.2f%n", theta, name,
+                (double) engine.getInteractionCount() / store.size(), ForceEngineBenchmark.rmsError(store, exact), time);
+    }
+}
@@ -0,0 +1,74 @@
+package benchmark;
+
+import simulate.objects.ParticleStore;
+import simulate.tree.GroupWalkEngine;
+import simulate.tree.InteractionKernel;
+import simulate.tree.LinearQuadtree;
+import simulate.tree.MortonKeys;
+import simulate.tree.Precision;
+
+import java.util.Random;
+
+/**
+ * Compares the precisions of the "Group" engine on a disk of particles, with the scalar kernel and, when it is
+ * available, the vector kernel. For each precision the time taken to compute all accelerations is reported together
+ * with the RMS relative error against direct summation, which is dominated by the multipole approximation, and the
+ * RMS relative difference from the double precision engine, which isolates the rounding error. The single precision
+ * engines run on a tree whose moments are stored in single precision, as in the simulation. The particle count and
+ * theta can be passed as command line arguments.
+ */
+public class PrecisionBenchmark {
+
+    private static final double G = 1;
+    private static final int GROUP_SIZE = 32;
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        double theta = args.length > 1 ? Double.parseDouble(args[1]) : 0.5;
+        ParticleStore store = TreeBuildBenchmark.makeDisk(n, new Random(n));
+        LinearQuadtree tree = new LinearQuadtree(0, 0, 2400);
+        tree.build(store);
+        LinearQuadtree singleTree = new LinearQuadtree(0, 0, 2400, false, 1, MortonKeys.BITS, true);
+        singleTree.build(store);
+        double[][] exact = ForceEngineBenchmark.directSum(store);
+        System.out.printf("%d particles, theta %.2f%n", n, theta);
+        System.out.printf("%-8s %-10s %12s %14s %18s%n", "Kernel", "Precision", "Time (ms)", "RMS error",
+                "RMS vs double");
+        InteractionKernel scalar = InteractionKernel.create(false);
+        InteractionKernel vector = InteractionKernel.create(true);
+        run("Scalar", scalar, tree, singleTree, store, theta, exact);
+        if (vector.getLanes() > 1) {
+            run("Vector", vector, tree, singleTree, store, theta, exact);
+        }
+    }
+
+    private static void run(String name, InteractionKernel kernel, LinearQuadtree tree, LinearQuadtree singleTree,
+                            ParticleStore store, double theta, double[][] exact) {
+        double[][] reference = null;
+        for (Precision precision : Precision.values()) {
+            GroupWalkEngine engine = new GroupWalkEngine(G, theta, GROUP_SIZE, kernel, precision);
+            double time = ForceEngineBenchmark.time(engine, precision == Precision.DOUBLE ? tree : singleTree, store);
+            double error = ForceEngineBenchmark.rmsError(store, exact);
+            double[][] sampled = sample(store, exact);
+            if (reference == null) {
+                reference = sampled;
+            }
+            System.out.printf("%-8s %-10s %12.2f %14.3e %18.3e%n", name, precision, time, error,
+                    ForceEngineBenchmark.rmsError(store, reference));
+        }
+    }
+
+    /**
+     * Returns the accelerations of the sample particles in the layout of ForceEngineBenchmark.directSum.
+     */
+    private static double[][] sample(ParticleStore store, double[][] exact) {
+        double[][] sampled = new double[3][exact[0].length];
+        for (int sample = 0; sample < exact[0].length; sample++) {
+            int particle = (int) exact[0][sample];
+            sampled[0][sample] = particle;
+            sampled[1][sample] = store.ax[particle];
+            sampled[2][sample] = store.ay[particle];
+        }
+        return sampled;
+    }
+}
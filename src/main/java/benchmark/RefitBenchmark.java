@@ -0,0 +1,72 @@
+package benchmark;
+
+import simulate.objects.ParticleStore;
+import simulate.tree.LinearQuadtree;
+
+import java.util.Random;
+
+/**
+ * Compares rebuilding the LinearQuadtree every step with refitting it, on a rotating disk of particles. Each step
+ * every particle moves along its orbit by the given fraction of the mean particle spacing, as in a quasi-stable run
+ * with a small time step. The mean time per step and the number of steps on which the refit fell back to a rebuild
+ * are reported. The particle count, the number of steps and the displacement can be passed as command line
+ * arguments.
+ */
+public class RefitBenchmark {
+
+    private static final double SIZE = 2400;
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int steps = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        double displacement = args.length > 2 ? Double.parseDouble(args[2]) : 0.05;
+        double spacing = SIZE / 2 / Math.sqrt(n);
+
+        ParticleStore store = TreeBuildBenchmark.makeDisk(n, new Random(n));
+        LinearQuadtree tree = new LinearQuadtree(0, 0, SIZE);
+        tree.build(store);
+        long elapsed = 0;
+        for (int step = 0; step < steps; step++) {
+            rotate(store, displacement * spacing);
+            long begin = System.nanoTime();
+            tree.build(store);
+            elapsed += System.nanoTime() - begin;
+        }
+        double buildTime = elapsed / 1e6 / steps;
+
+        store = TreeBuildBenchmark.makeDisk(n, new Random(n));
+        tree = new LinearQuadtree(0, 0, SIZE);
+        tree.build(store);
+        int rebuilds = 0;
+        elapsed = 0;
+        for (int step = 0; step < steps; step++) {
+            rotate(store, displacement * spacing);
+            long begin = System.nanoTime();
+            if (!tree.refit(store, 0.05, 8)) {
+                rebuilds++;
+            }
+            elapsed += System.nanoTime() - begin;
+        }
+        double refitTime = elapsed / 1e6 / steps;
+
+        System.out.printf("%d particles, %d steps, displacement %.3f of the particle spacing%n", n, steps,
+                displacement);
+        System.out.printf("Build: %.2f ms/step%n", buildTime);
+        System.out.printf("Refit: %.2f ms/step, %d rebuilds%n", refitTime, rebuilds);
+    }
+
+    /**
+     * Moves every particle along its circle around the center of the disk by the given distance.
+     */
+    private static void rotate(ParticleStore store, double distance) {
+        for (int i = 0; i < store.size(); i++) {
+            double dx = store.x[i] - SIZE / 2;
+            double dy = store.y[i] - SIZE / 2;
+            double angle = distance / Math.hypot(dx, dy);
+            double cos = Math.cos(angle);
+            double sin = Math.sin(angle);
+            store.x[i] = SIZE / 2 + dx * cos - dy * sin;
+            store.y[i] = SIZE / 2 + dx * sin + dy * cos;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package benchmark;
+
+import simulate.objects.Node;
+import simulate.objects.ParticleStore;
+import simulate.objects.Quadrant;
+import simulate.tree.LinearQuadtree;
+import utils.Vector2D;
+
+import java.util.Random;
+
+/**
+ * Compares the time taken to build the pointer-based Node tree by inserting particles one at a time with the time
+ * taken to build the Morton-ordered LinearQuadtree, with single particle leaves and with leaves holding up to
+ * BUCKET particles. Particle counts can be passed as command line arguments, for
+ * example "10000 100000 1000000 10000000". Large counts need a correspondingly large heap.
+ */
+public class TreeBuildBenchmark {
+
+    private static final double SIZE = 2400;
+    private static final int REPETITIONS = 5;
+    private static final int BUCKET = 8;
+
+    public static void main(String[] args) {
+        int[] counts = args.length == 0 ? new int[]{10_000, 100_000, 1_000_000} : new int[args.length];
+        for (int i = 0; i < args.length; i++) {
+            counts[i] = Integer.parseInt(args[i]);
+        }
+        System.out.printf("%12s %14s %14s %10s %14s%n", "Particles", "Node (ms)", "Linear (ms)", "Speedup",
+                "Bucketed (ms)");
+        for (int n : counts) {
+            ParticleStore store = makeDisk(n, new Random(n));
+            double nodeTime = timeNodeBuild(store);
+            double linearTime = timeLinearBuild(store, new LinearQuadtree(0, 0, SIZE));
+            double bucketedTime = timeLinearBuild(store, new LinearQuadtree(0, 0, SIZE, false, BUCKET, 20));
+            System.out.printf("%12d %14.2f %14.2f %10.2f %14.2f%n", n, nodeTime, linearTime, nodeTime / linearTime,
+                    bucketedTime);
+        }
+    }
+
+    /**
+     * Creates a disk of particles whose density falls off with radius, similar to the GalaxyBuilder disk model.
+     */
+    static ParticleStore makeDisk(int n, Random random) {
+        ParticleStore store = new ParticleStore(n);
+        for (int i = 0; i < n; i++) {
+            double r = random.nextDouble() * SIZE / 4 + SIZE / 40;
+            double phi = random.nextDouble() * 2 * Math.PI;
+            store.add(SIZE / 2 + r * Math.cos(phi), SIZE / 2 + r * Math.sin(phi), 0, 0, 0.0001);
+        }
+        return store;
+    }
+
+    private static double timeNodeBuild(ParticleStore store) {
+        double best = Double.MAX_VALUE;
+        for (int repetition = 0; repetition < REPETITIONS; repetition++) {
+            long begin = System.nanoTime();
+            Node root = new Node(new Quadrant(new Vector2D(0, 0), SIZE), 1);
+            for (int i = 0; i < store.size(); i++) {
+                root.insertParticle(store, i);
+            }
+            best = Math.min(best, (System.nanoTime() - begin) / 1e6);
+        }
+        return best;
+    }
+
+    private static double timeLinearBuild(ParticleStore store, LinearQuadtree tree) {
+        double best = Double.MAX_VALUE;
+        for (int repetition = 0; repetition < REPETITIONS; repetition++) {
+            long begin = System.nanoTime();
+            tree.build(store);
+            best = Math.min(best, (System.nanoTime() - begin) / 1e6);
+        }
+        return best;
+    }
+}
@@ -0,0 +1,139 @@
+package export;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads the frames of a trajectory file written by a BinaryTrajectorySink. Any frame is read directly from its offset,
+ * without reading the frames before it.
+ */
+public class BinaryTrajectoryReader implements Closeable {
+
+    private final FileChannel channel;
+    private final int dimensions;
+    private final int particles;
+    private final boolean singlePrecision;
+    private final long firstStep;
+    private final int stride;
+    private final long frameBytes;
+    private ByteBuffer buffer; // Allocated by the first readFrame().
+
+    /**
+     * @param path A file written by a BinaryTrajectorySink
+     * @throws IOException if the file cannot be read or is not a trajectory file of a supported version
+     */
+    public BinaryTrajectoryReader(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(BinaryTrajectorySink.HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(header, 0);
+            header.flip();
+            if (header.getInt() != BinaryTrajectorySink.MAGIC) {
+                throw new IOException(path + " is not a trajectory file");
+            }
+            int version = header.getInt();
+            if (version != BinaryTrajectorySink.VERSION) {
+                throw new IOException(path + " has unsupported trajectory version " + version);
+            }
+            this.dimensions = header.getInt();
+            this.particles = header.getInt();
+            int bytesPerValue = header.getInt();
+            if (bytesPerValue != Float.BYTES && bytesPerValue != Double.BYTES) {
+                throw new IOException(path + " has unsupported coordinate size " + bytesPerValue);
+            }
+            this.singlePrecision = bytesPerValue == Float.BYTES;
+            this.stride = Math.max(1, header.getInt()); // 0 while the file holds fewer than two frames.
+            this.firstStep = header.getLong();
+            this.frameBytes = BinaryTrajectorySink.frameBytes(dimensions, particles, singlePrecision);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public int getDimensions() {
+        return dimensions;
+    }
+
+    public int getParticleCount() {
+        return particles;
+    }
+
+    public boolean isSinglePrecision() {
+        return singlePrecision;
+    }
+
+    /**
+     * Returns the step of the first frame, 0 if no frame was written yet.
+     */
+    public long getFirstStep() {
+        return firstStep;
+    }
+
+    /**
+     * Returns the number of steps from one frame to the next.
+     */
+    public int getStride() {
+        return stride;
+    }
+
+    /**
+     * Returns the number of complete frames in the file; a frame that is still being written is not counted.
+     */
+    public long getFrameCount() throws IOException {
+        return frameBytes == 0 ? 0 : (channel.size() - BinaryTrajectorySink.HEADER_BYTES) / frameBytes;
+    }
+
+    /**
+     * Returns the step of the last complete frame, or the step before the first frame if there is none.
+     */
+    public long getLastStep() throws IOException {
+        return firstStep + (getFrameCount() - 1) * stride;
+    }
+
+    /**
+     * Reads the positions of all particles after a step.
+     * @param step Step of the frame, starting at 1
+     * @param positions Array of at least getDimensions() * getParticleCount() entries the positions are copied into
+     * @throws IOException if the file holds no frame for the step
+     */
+    public void readFrame(long step, double[] positions) throws IOException {
+        if (step < firstStep || step > getLastStep() || (step - firstStep) % stride != 0) {
+            throw new IOException("No frame for step " + step);
+        }
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect((int) frameBytes).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        buffer.clear();
+        readFully(buffer, BinaryTrajectorySink.HEADER_BYTES + (step - firstStep) / stride * frameBytes);
+        buffer.flip();
+        int values = dimensions * particles;
+        if (singlePrecision) {
+            for (int i = 0; i < values; i++) {
+                positions[i] = buffer.getFloat();
+            }
+        } else {
+            buffer.asDoubleBuffer().get(positions, 0, values);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void readFully(ByteBuffer destination, long position) throws IOException {
+        while (destination.hasRemaining()) {
+            int read = channel.read(destination, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of trajectory file");
+            }
+            position += read;
+        }
+    }
+}
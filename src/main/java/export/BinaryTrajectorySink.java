@@ -0,0 +1,144 @@
+package export;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes trajectory frames to a binary file. The file starts with a header of HEADER_BYTES bytes and is followed by one
+ * frame per step; all values are little-endian. The header holds, in order, the int MAGIC, the int VERSION, the
+ * number of dimensions and of particles as ints, the bytes per coordinate (4 for float and 8 for double), the number
+ * of steps from one frame to the next as an int and the step of the first frame as a long; the last two are filled in
+ * once the first two frames are written. A frame holds the coordinates of all particles in the layout of
+ * Simulator.getPositions() and has a fixed size, so the frame of any step is found by its offset, see
+ * BinaryTrajectoryReader.
+ * <p>
+ * Frames are encoded into a direct buffer and written through a FileChannel, without formatting any text.
+ */
+public class BinaryTrajectorySink implements TrajectorySink {
+
+    static final int MAGIC = 0x52544842; // "BHTR" in little-endian byte order.
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 32;
+    static final int STRIDE_OFFSET = 20;
+    static final int FIRST_STEP_OFFSET = 24;
+    private static final int BUFFER_BYTES = 1 << 20;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final boolean singlePrecision;
+    private final int values;
+    private final float[] floats; // Coordinates of a float frame before they are copied into the buffer.
+    private long frames; // Frames in the file.
+    private long firstStep;
+
+    /**
+     * @param path The trajectory file
+     * @param dimensions Number of coordinates per particle
+     * @param particles Number of particles
+     * @param singlePrecision Whether coordinates are stored as floats rather than doubles
+     * @param keptFrames Number of frames already in the file to keep; the frames after them are discarded and new
+     *                   frames are appended. 0 creates a new file.
+     */
+    public BinaryTrajectorySink(Path path, int dimensions, int particles, boolean singlePrecision, long keptFrames)
+            throws IOException {
+        this.singlePrecision = singlePrecision;
+        this.values = dimensions * particles;
+        long frameBytes = frameBytes(dimensions, particles, singlePrecision);
+        this.buffer = ByteBuffer.allocateDirect((int) Math.min(BUFFER_BYTES, Math.max(frameBytes, HEADER_BYTES)))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        this.floats = singlePrecision ? new float[buffer.capacity() / Float.BYTES] : null;
+        if (keptFrames > 0) {
+            try (BinaryTrajectoryReader reader = new BinaryTrajectoryReader(path)) {
+                if (reader.getDimensions() != dimensions || reader.getParticleCount() != particles
+                        || reader.isSinglePrecision() != singlePrecision) {
+                    throw new IOException(path + " holds a different trajectory than the checkpoint");
+                }
+                if (reader.getFrameCount() < keptFrames) {
+                    throw new IOException(path + " holds fewer frames than the checkpoint");
+                }
+                this.firstStep = reader.getFirstStep();
+            }
+            this.frames = keptFrames;
+            this.channel = FileChannel.open(path, StandardOpenOption.WRITE);
+            channel.truncate(HEADER_BYTES + keptFrames * frameBytes);
+            channel.position(channel.size());
+        } else {
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(dimensions).putInt(particles)
+                    .putInt(singlePrecision ? Float.BYTES : Double.BYTES).putInt(0).putLong(0);
+            drain();
+        }
+    }
+
+    /**
+     * Returns the size of a frame in bytes.
+     */
+    static long frameBytes(int dimensions, int particles, boolean singlePrecision) {
+        return (long) dimensions * particles * (singlePrecision ? Float.BYTES : Double.BYTES);
+    }
+
+    @Override
+    public void write(long step, double[] positions) throws IOException {
+        if (frames == 0) {
+            firstStep = step;
+            patchHeader(FIRST_STEP_OFFSET, ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN)
+                    .putLong(0, step));
+        } else if (frames == 1) {
+            patchHeader(STRIDE_OFFSET, ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN)
+                    .putInt(0, (int) (step - firstStep)));
+        }
+        frames++;
+        int i = 0;
+        while (i < values) {
+            if (singlePrecision) {
+                int count = Math.min(values - i, buffer.remaining() / Float.BYTES);
+                for (int j = 0; j < count; j++) {
+                    floats[j] = (float) positions[i + j];
+                }
+                buffer.asFloatBuffer().put(floats, 0, count);
+                buffer.position(buffer.position() + count * Float.BYTES);
+                i += count;
+            } else {
+                DoubleBuffer doubles = buffer.asDoubleBuffer();
+                int count = Math.min(values - i, doubles.remaining());
+                doubles.put(positions, i, count);
+                buffer.position(buffer.position() + count * Double.BYTES);
+                i += count;
+            }
+            drain();
+        }
+    }
+
+    @Override
+    public void flush() {
+        // Frames are handed to the channel as soon as they are written.
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void patchHeader(long offset, ByteBuffer value) throws IOException {
+        while (value.hasRemaining()) {
+            offset += channel.write(value, offset);
+        }
+    }
+
+    /**
+     * Writes the buffered bytes to the channel and clears the buffer.
+     */
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,246 @@
+package export;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads the frames of a trajectory file written by a CompressedTrajectorySink. Opening the file reads the record
+ * headers to find the offset of every frame. A frame is decoded from the keyframe before it, or from the frame read
+ * last when that one comes earlier, so reading the frames in order decodes each of them once.
+ */
+public class CompressedTrajectoryReader implements Closeable {
+
+    private final FileChannel channel;
+    private final int dimensions;
+    private final int particles;
+    private final int values;
+    private final double quantum;
+    private long[] steps = new long[64];
+    private long[] offsets = new long[64]; // Offset of the record of each frame.
+    private boolean[] keyframes = new boolean[64];
+    private int frames;
+    private long end; // End of the last complete record.
+
+    private final long[] quantized;
+    private final long[] difference;
+    private int decoded = -1; // Index of the frame held by quantized, -1 for none.
+    private final Inflater inflater = new Inflater(true);
+    private byte[] compressed = new byte[0];
+    private byte[] varints = new byte[0];
+
+    /**
+     * @param path A file written by a CompressedTrajectorySink
+     * @throws IOException if the file cannot be read or is not a compressed trajectory file of a supported version
+     */
+    public CompressedTrajectoryReader(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = read(0, CompressedTrajectorySink.HEADER_BYTES);
+            if (header.getInt() != CompressedTrajectorySink.MAGIC) {
+                throw new IOException(path + " is not a compressed trajectory file");
+            }
+            int version = header.getInt();
+            if (version != CompressedTrajectorySink.VERSION) {
+                throw new IOException(path + " has unsupported trajectory version " + version);
+            }
+            this.dimensions = header.getInt();
+            this.particles = header.getInt();
+            header.getInt(); // The keyframe interval; keyframes are marked in their records.
+            header.getInt();
+            this.quantum = header.getDouble();
+            this.values = dimensions * particles;
+            this.quantized = new long[values];
+            this.difference = new long[values];
+            scanRecords();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public int getDimensions() {
+        return dimensions;
+    }
+
+    public int getParticleCount() {
+        return particles;
+    }
+
+    /**
+     * Returns the distance coordinates were rounded to a multiple of; a decoded coordinate is at most half of it from
+     * the exported one.
+     */
+    public double getQuantum() {
+        return quantum;
+    }
+
+    /**
+     * Returns the number of complete frames in the file.
+     */
+    public int getFrameCount() {
+        return frames;
+    }
+
+    /**
+     * Returns the step of the last complete frame, or 0 if there is none.
+     */
+    public long getLastStep() {
+        return frames > 0 ? steps[frames - 1] : 0;
+    }
+
+    /**
+     * Reads the positions of all particles after a step.
+     * @param step Step of the frame, starting at 1
+     * @param positions Array of at least getDimensions() * getParticleCount() entries the positions are copied into
+     * @throws IOException if the file holds no frame for the step or the frame cannot be decoded
+     */
+    public void readFrame(long step, double[] positions) throws IOException {
+        int frame = frameOf(step);
+        int next = frame;
+        while (!keyframes[next]) {
+            next--;
+        }
+        if (decoded >= next && decoded <= frame) {
+            next = decoded + 1;
+        }
+        for (; next <= frame; next++) {
+            decode(next);
+        }
+        for (int i = 0; i < values; i++) {
+            positions[i] = quantized[i] * quantum;
+        }
+    }
+
+    /**
+     * Returns the offset just after the records of the given number of frames, where the next frame is written.
+     */
+    long endOfFrames(long count) throws IOException {
+        if (count > frames) {
+            throw new IOException("The trajectory holds fewer than " + count + " frames");
+        }
+        return count < frames ? offsets[(int) count] : end;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        channel.close();
+    }
+
+    private int frameOf(long step) throws IOException {
+        int frame = Arrays.binarySearch(steps, 0, frames, step);
+        if (frame < 0) {
+            throw new IOException("No frame for step " + step);
+        }
+        return frame;
+    }
+
+    /**
+     * Finds the records of the complete frames; an incomplete record at the end of the file is ignored.
+     */
+    private void scanRecords() throws IOException {
+        long offset = CompressedTrajectorySink.HEADER_BYTES;
+        long size = channel.size();
+        while (offset + CompressedTrajectorySink.RECORD_BYTES <= size) {
+            ByteBuffer record = read(offset, CompressedTrajectorySink.RECORD_BYTES);
+            int compressedLength = record.getInt();
+            record.getInt();
+            long step = record.getLong();
+            boolean keyframe = record.getInt() == 1;
+            long next = offset + CompressedTrajectorySink.RECORD_BYTES + compressedLength;
+            if (next > size) {
+                break;
+            }
+            if (frames > 0 && step <= steps[frames - 1]) {
+                throw new IOException("Frame of step " + step + " is out of order");
+            }
+            if (frames == offsets.length) {
+                steps = Arrays.copyOf(steps, 2 * frames);
+                offsets = Arrays.copyOf(offsets, 2 * frames);
+                keyframes = Arrays.copyOf(keyframes, 2 * frames);
+            }
+            steps[frames] = step;
+            offsets[frames] = offset;
+            keyframes[frames] = keyframe;
+            frames++;
+            offset = next;
+        }
+        if (frames > 0 && !keyframes[0]) {
+            throw new IOException("Trajectory does not start with a keyframe");
+        }
+        end = offset;
+    }
+
+    /**
+     * Decodes a frame into quantized, which must hold the frame before it unless the frame is a keyframe.
+     */
+    private void decode(int frame) throws IOException {
+        decoded = -1;
+        ByteBuffer record = read(offsets[frame], CompressedTrajectorySink.RECORD_BYTES);
+        int compressedLength = record.getInt();
+        int varintLength = record.getInt();
+        if (compressed.length < compressedLength) {
+            compressed = new byte[compressedLength];
+        }
+        if (varints.length < varintLength) {
+            varints = new byte[varintLength];
+        }
+        ByteBuffer data = ByteBuffer.wrap(compressed, 0, compressedLength);
+        readFully(data, offsets[frame] + CompressedTrajectorySink.RECORD_BYTES);
+        inflater.reset();
+        inflater.setInput(compressed, 0, compressedLength);
+        try {
+            if (inflater.inflate(varints, 0, varintLength) != varintLength) {
+                throw new IOException("Frame of step " + steps[frame] + " is truncated");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Frame of step " + steps[frame] + " is corrupt", e);
+        }
+        int position = 0;
+        for (int i = 0; i < values; i++) {
+            long zigZag = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = varints[position++];
+                zigZag |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            long residual = (zigZag >>> 1) ^ -(zigZag & 1);
+            if (keyframes[frame]) {
+                quantized[i] = residual;
+                difference[i] = 0;
+            } else {
+                long value = quantized[i] + difference[i] + residual;
+                difference[i] = value - quantized[i];
+                quantized[i] = value;
+            }
+        }
+        decoded = frame;
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(buffer, position);
+        buffer.flip();
+        return buffer;
+    }
+
+    private void readFully(ByteBuffer destination, long position) throws IOException {
+        while (destination.hasRemaining()) {
+            int read = channel.read(destination, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of trajectory file");
+            }
+            position += read;
+        }
+    }
+}
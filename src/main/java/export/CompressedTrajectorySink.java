@@ -0,0 +1,199 @@
+package export;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+
+/**
+ * Writes trajectory frames to a compressed binary file. Every coordinate is quantized to a multiple of a quantum, so
+ * a decoded coordinate differs from the exported one by at most half a quantum. The quantized frames are predicted
+ * from the two frames before them by linear extrapolation, which leaves residuals of a few quanta for particles
+ * moving on smooth orbits, and the residuals are stored as zig-zag varints compressed with Deflater. Every
+ * keyframeInterval-th frame is a keyframe that stores the quantized coordinates themselves, and the frame after it is
+ * predicted to equal the keyframe; a reader seeks to any step by decoding from the keyframe before it.
+ * <p>
+ * The file starts with a header of HEADER_BYTES bytes holding, in order, the int MAGIC, the int VERSION, the number of
+ * dimensions and of particles as ints, the keyframe interval as an int, a reserved int and the quantum as a double.
+ * Each frame follows as a record of RECORD_BYTES bytes holding the compressed length, the varint length, the step as
+ * a long, 1 for a keyframe or 0, and a reserved int, followed by the compressed varints. All values are little-endian.
+ * <p>
+ * The frames are predicted on the thread calling write(), and encoded and compressed by a pool of background threads;
+ * up to two frames per thread are compressed at once before write() waits for the oldest of them to be written.
+ */
+public class CompressedTrajectorySink implements TrajectorySink {
+
+    static final int MAGIC = 0x5A544842; // "BHTZ" in little-endian byte order.
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 32;
+    static final int RECORD_BYTES = 24;
+
+    private final FileChannel channel;
+    private final ExecutorService compressors;
+    private final ArrayDeque<Future<ByteBuffer>> pending = new ArrayDeque<>();
+    private final int maxPending;
+    private final int values;
+    private final double quantum;
+    private final int keyframeInterval;
+    private final long[] previous; // Quantized coordinates of the last frame.
+    private final long[] difference; // Quantized coordinates of the last frame less those of the frame before it.
+    private long framesSinceKeyframe; // Frames since the last keyframe, including it.
+
+    /**
+     * @param path The trajectory file
+     * @param dimensions Number of coordinates per particle
+     * @param particles Number of particles
+     * @param quantum Distance coordinates are rounded to a multiple of
+     * @param keyframeInterval Number of frames from one keyframe to the next
+     * @param threads Number of compression threads
+     * @param keptFrames Number of frames already in the file to keep; the frames after them are discarded and new
+     *                   frames are appended. 0 creates a new file.
+     */
+    public CompressedTrajectorySink(Path path, int dimensions, int particles, double quantum, int keyframeInterval,
+                                    int threads, long keptFrames) throws IOException {
+        if (!(quantum > 0) || keyframeInterval < 1 || threads < 1) {
+            throw new IllegalArgumentException("Quantum, keyframe interval and threads must be positive");
+        }
+        this.values = dimensions * particles;
+        this.quantum = quantum;
+        this.keyframeInterval = keyframeInterval;
+        this.previous = new long[values];
+        this.difference = new long[values];
+        this.maxPending = 2 * threads;
+        if (keptFrames > 0) {
+            long end;
+            try (CompressedTrajectoryReader reader = new CompressedTrajectoryReader(path)) {
+                if (reader.getDimensions() != dimensions || reader.getParticleCount() != particles
+                        || reader.getQuantum() != quantum) {
+                    throw new IOException(path + " holds a different trajectory than the checkpoint");
+                }
+                end = reader.endOfFrames(keptFrames);
+            }
+            this.channel = FileChannel.open(path, StandardOpenOption.WRITE);
+            channel.truncate(end);
+            channel.position(end);
+        } else {
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(dimensions).putInt(particles).putInt(keyframeInterval)
+                    .putInt(0).putDouble(quantum);
+            header.flip();
+            writeFully(header);
+        }
+        this.compressors = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "Trajectories-compressor");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void write(long step, double[] positions) throws IOException {
+        // The first frame of a file or of a resumed export is a keyframe, since no frames are kept before it.
+        boolean keyframe = framesSinceKeyframe == 0 || framesSinceKeyframe == keyframeInterval;
+        if (keyframe) {
+            framesSinceKeyframe = 0;
+        }
+        long[] residuals = new long[values];
+        for (int i = 0; i < values; i++) {
+            long quantized = Math.round(positions[i] / quantum);
+            if (keyframe) {
+                residuals[i] = quantized;
+                difference[i] = 0;
+            } else {
+                residuals[i] = quantized - previous[i] - difference[i];
+                difference[i] = quantized - previous[i];
+            }
+            previous[i] = quantized;
+        }
+        framesSinceKeyframe++;
+        pending.add(compressors.submit(() -> encode(step, keyframe, residuals)));
+        while (pending.size() > maxPending || (!pending.isEmpty() && pending.peek().isDone())) {
+            writeOldest();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        while (!pending.isEmpty()) {
+            writeOldest();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            compressors.shutdownNow();
+            channel.close();
+        }
+    }
+
+    /**
+     * Waits for the oldest pending frame to be compressed and writes it.
+     */
+    private void writeOldest() throws IOException {
+        try {
+            writeFully(pending.poll().get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compressing a frame", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Could not compress a frame", e.getCause());
+        }
+    }
+
+    /**
+     * Encodes the residuals of a frame as zig-zag varints and compresses them into a record.
+     */
+    private static ByteBuffer encode(long step, boolean keyframe, long[] residuals) {
+        byte[] varints = new byte[10 * residuals.length];
+        int length = 0;
+        for (long residual : residuals) {
+            long zigZag = (residual << 1) ^ (residual >> 63);
+            while ((zigZag & ~0x7FL) != 0) {
+                varints[length++] = (byte) ((zigZag & 0x7F) | 0x80);
+                zigZag >>>= 7;
+            }
+            varints[length++] = (byte) zigZag;
+        }
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        try {
+            deflater.setInput(varints, 0, length);
+            deflater.finish();
+            byte[] compressed = new byte[length + length / 1000 + 64];
+            int compressedLength = 0;
+            while (!deflater.finished()) {
+                if (compressedLength == compressed.length) {
+                    compressed = Arrays.copyOf(compressed, 2 * compressed.length);
+                }
+                compressedLength += deflater.deflate(compressed, compressedLength,
+                        compressed.length - compressedLength);
+            }
+            ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES + compressedLength).order(ByteOrder.LITTLE_ENDIAN);
+            record.putInt(compressedLength).putInt(length).putLong(step).putInt(keyframe ? 1 : 0).putInt(0);
+            record.put(compressed, 0, compressedLength);
+            record.flip();
+            return record;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private void writeFully(ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package export;
+
+import com.opencsv.CSVWriter;
+
+import java.io.BufferedInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.IntStream;
+
+/**
+ * Writes trajectory frames as the rows of a CSV file with a header row. Every two columns, in order, represent the
+ * x- and y-components respectively of a single particle; three-dimensional simulations add a third column with the
+ * z-component. The columns are named after the ids of the particles, which for an export of a subset of the
+ * particles are also listed in the export's Manifest.json.
+ */
+public class CsvTrajectorySink implements TrajectorySink {
+
+    private static final String[] AXES = {"_X", "_Y", "_Z"};
+
+    private final CSVWriter writer;
+    private final String[] row;
+
+    /**
+     * @param path The CSV file
+     * @param dimensions Number of coordinates per particle
+     * @param particles Number of particles
+     * @param keptFrames Number of rows already in the file to keep, besides the header; the rows after them are
+     *                   discarded and new rows are appended. 0 creates a new file.
+     */
+    public CsvTrajectorySink(Path path, int dimensions, int particles, long keptFrames) throws IOException {
+        this(path, dimensions, IntStream.range(0, particles).toArray(), keptFrames);
+    }
+
+    /**
+     * @param path The CSV file
+     * @param dimensions Number of coordinates per particle
+     * @param ids Ids of the particles in the order of their coordinates in a frame, which name the header columns
+     * @param keptFrames Number of rows already in the file to keep, besides the header; the rows after them are
+     *                   discarded and new rows are appended. 0 creates a new file.
+     */
+    public CsvTrajectorySink(Path path, int dimensions, int[] ids, long keptFrames) throws IOException {
+        if (keptFrames > 0) {
+            truncateRows(path, keptFrames);
+        }
+        this.writer = new CSVWriter(new FileWriter(path.toFile(), keptFrames > 0));
+        this.row = new String[dimensions * ids.length];
+        if (keptFrames == 0) {
+            writer.writeNext(makeHeader(dimensions, ids));
+        }
+    }
+
+    @Override
+    public void write(long step, double[] positions) {
+        for (int i = 0; i < row.length; i++) {
+            row[i] = String.valueOf(positions[i]);
+        }
+        writer.writeNext(row);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    /**
+     * Cuts the trajectory file after the header and the rows of the given number of steps.
+     */
+    static void truncateRows(Path path, long rows) throws IOException {
+        long length = 0;
+        long lines = 0;
+        try (InputStream input = new BufferedInputStream(Files.newInputStream(path))) {
+            int character;
+            while (lines < rows + 1 && (character = input.read()) != -1) {
+                length++;
+                if (character == '\n') {
+                    lines++;
+                }
+            }
+        }
+        if (lines < rows + 1) {
+            throw new IOException(path + " holds fewer rows than the checkpoint");
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(length);
+        }
+    }
+
+    /**
+     * Creates a header row for the CSV trajectories file, naming the columns of each particle after its id.
+     * @return String header array.
+     */
+    private static String[] makeHeader(int dimensions, int[] ids) {
+        String[] header = new String[dimensions * ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            for (int axis = 0; axis < dimensions; axis++) {
+                header[dimensions * i + axis] = "P" + String.valueOf(ids[i]) + AXES[axis];
+            }
+        }
+        return header;
+    }
+}
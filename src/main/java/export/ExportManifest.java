@@ -0,0 +1,174 @@
+package export;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lists the trajectory files of an export in a Manifest.json file, so that the frames of a time range can be found
+ * without opening the files. The manifest holds the step stride of the export, its time step, the number of
+ * dimensions and the exported particle ids, and for every file, in order of writing, its format, its name, the
+ * number of frames, the first and the last step, and the times of those steps when the time step is known.
+ * <p>
+ * The files are recorded by the writer threads of the export, so all methods are synchronized.
+ */
+public class ExportManifest {
+
+    private final Path path;
+    private final int stride;
+    private final double timeStep;
+    private final int dimensions;
+    private final int[] particles;
+    private final List<Entry> files = new ArrayList<>();
+
+    /**
+     * A trajectory file of the export.
+     */
+    static class Entry {
+        final String format;
+        final String file;
+        long frames;
+        long firstStep;
+        long lastStep;
+
+        Entry(String format, String file) {
+            this.format = format;
+            this.file = file;
+        }
+    }
+
+    /**
+     * @param path The manifest file
+     * @param stride Number of steps from one frame to the next
+     * @param timeStep Simulated time per step, or NaN if it is unknown
+     * @param dimensions Number of coordinates per particle
+     * @param particles Ids of the exported particles in the order of their coordinates in a frame
+     */
+    public ExportManifest(Path path, int stride, double timeStep, int dimensions, int[] particles) {
+        this.path = path;
+        this.stride = stride;
+        this.timeStep = timeStep;
+        this.dimensions = dimensions;
+        this.particles = particles;
+    }
+
+    /**
+     * Reads the manifest of an interrupted export, keeping the files and frames up to a step and deleting the files
+     * that only hold later frames. The resumed export appends to the last file kept for each format.
+     * @param path The manifest file
+     * @param lastStep Step the export is resumed from
+     * @param particles Ids of the particles exported by the resumed export
+     * @throws IOException if the manifest cannot be read or belongs to an export of other particles
+     */
+    static ExportManifest resume(Path path, long lastStep, int[] particles) throws IOException {
+        try {
+            JSONObject json = new JSONObject(new String(Files.readAllBytes(path), StandardCharsets.UTF_8));
+            JSONArray ids = json.getJSONArray("Particles");
+            boolean sameParticles = ids.length() == particles.length;
+            for (int i = 0; sameParticles && i < particles.length; i++) {
+                sameParticles = ids.getInt(i) == particles[i];
+            }
+            if (!sameParticles) {
+                throw new IOException(path + " belongs to an export of other particles");
+            }
+            ExportManifest manifest = new ExportManifest(path, json.getInt("Stride"),
+                    json.optDouble("TimeStep", Double.NaN), json.getInt("Dimensions"), particles);
+            JSONArray files = json.getJSONArray("Files");
+            for (int i = 0; i < files.length(); i++) {
+                JSONObject file = files.getJSONObject(i);
+                Entry entry = new Entry(file.getString("Format"), file.getString("File"));
+                entry.firstStep = file.getLong("FirstStep");
+                entry.lastStep = Math.min(file.getLong("LastStep"), lastStep);
+                if (file.getLong("Frames") == 0 || entry.firstStep > lastStep) {
+                    Files.deleteIfExists(path.resolveSibling(entry.file));
+                    continue;
+                }
+                entry.frames = (entry.lastStep - entry.firstStep) / manifest.stride + 1;
+                entry.lastStep = entry.firstStep + (entry.frames - 1) * manifest.stride;
+                manifest.files.add(entry);
+            }
+            return manifest;
+        } catch (JSONException e) {
+            throw new IOException(path + " is not an export manifest", e);
+        }
+    }
+
+    /**
+     * Returns the last file recorded for a format, or null if there is none.
+     */
+    synchronized Entry last(String format) {
+        for (int i = files.size() - 1; i >= 0; i--) {
+            if (files.get(i).format.equals(format)) {
+                return files.get(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Records a new file without frames.
+     */
+    synchronized Entry add(String format, String file) {
+        Entry entry = new Entry(format, file);
+        files.add(entry);
+        return entry;
+    }
+
+    /**
+     * Records a frame written to a file.
+     */
+    synchronized void addFrame(Entry entry, long step) {
+        if (entry.frames == 0) {
+            entry.firstStep = step;
+        }
+        entry.lastStep = step;
+        entry.frames++;
+    }
+
+    /**
+     * Writes the manifest to a temporary file and moves it into place, so a reader never sees a partial manifest.
+     */
+    public synchronized void write() throws IOException {
+        try {
+            JSONObject json = new JSONObject();
+            json.put("Stride", stride);
+            if (!Double.isNaN(timeStep)) {
+                json.put("TimeStep", timeStep);
+            }
+            json.put("Dimensions", dimensions);
+            JSONArray ids = new JSONArray();
+            for (int id : particles) {
+                ids.put(id);
+            }
+            json.put("Particles", ids);
+            JSONArray list = new JSONArray();
+            for (Entry entry : files) {
+                JSONObject file = new JSONObject();
+                file.put("Format", entry.format);
+                file.put("File", entry.file);
+                file.put("Frames", entry.frames);
+                file.put("FirstStep", entry.firstStep);
+                file.put("LastStep", entry.lastStep);
+                if (!Double.isNaN(timeStep) && entry.frames > 0) {
+                    file.put("FirstTime", entry.firstStep * timeStep);
+                    file.put("LastTime", entry.lastStep * timeStep);
+                }
+                list.put(file);
+            }
+            json.put("Files", list);
+            Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+            Files.write(temporary, json.toString(2).getBytes(StandardCharsets.UTF_8));
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (JSONException e) {
+            throw new IOException("Could not encode the export manifest", e);
+        }
+    }
+}
@@ -1,60 +1,252 @@
 package export;
 
-import com.opencsv.CSVWriter;
 import me.tongfei.progressbar.ProgressBar;
 import org.jetbrains.annotations.NotNull;
 import org.json.JSONException;
 import org.json.JSONObject;
 import simulate.BarnesHut;
+import simulate.BarnesHut3D;
+import simulate.Checkpoint;
+import simulate.Simulator;
+import simulate.Snapshot;
+import simulate.SnapshotBuffer;
 import simulate.helpers.ConfigLoader;
-import simulate.objects.Particle;
 
 import javax.management.InvalidAttributeValueException;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
- * Exports the particle properties and trajectories of a BarnesHut simulation into the specified output directory.
+ * Exports the particle properties and trajectories of a two- or three-dimensional simulation into the specified
+ * output directory.
  * Particle properties are exported into a ParticleProperties.json file, and trajectories are exported into a
- * Trajectories.csv file. Since the the whole Trajectories output file is written line-by-line rather than all at once,
- * this class can be used to export "large" simulations with many steps.
+ * Trajectories.csv file, with the "Binary" format into a Trajectories.bin file of fixed-size frames written by a
+ * BinaryTrajectorySink, or with the "Compressed" format into a Trajectories.bhz file of quantized and compressed
+ * frames written by a CompressedTrajectorySink. Since the the whole Trajectories output file is written step-by-step
+ * rather than all at once, this class can be used to export "large" simulations with many steps.
+ * <p>
+ * With a checkpoint interval set, a Checkpoint.bin file is written to the output directory every so many steps, and
+ * an interrupted export can be resumed from it with resumeSimulation().
  */
 public class LargeExporter {
 
-    private BarnesHut simulator;
-    private ArrayList<Particle> particles;
+    private static final double DEFAULT_QUANTIZATION = 1e-6;
+    // A quarter of the cores compress trajectory frames, the rest advance the simulation.
+    private static final int COMPRESSION_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() / 4);
 
-    public LargeExporter(@NotNull BarnesHut simulator) {
+    private Simulator simulator;
+    private int dimensions;
+    private int checkpointInterval;
+    private String[] formats = {"CSV"};
+    private int bufferFrames = 3;
+    private boolean singlePrecision;
+    private double quantum;
+    private int keyframeInterval = 100;
+    private int stride = 1;
+    private int[] particles; // Ids of the exported particles, null for all.
+    private long maxFileBytes;
+    private double timeStep = Double.NaN;
+
+    public LargeExporter(@NotNull Simulator simulator) {
         this.simulator = simulator;
-        this.particles = simulator.getParticles();
+        this.dimensions = simulator.getDimensions();
     }
 
     /**
      * Runs the simulation of the given simulator and exports the particle properties and trajectory files to the
      * specified directory path.
-     * @param simulator A BarnesHut simulator
+     * @param simulator A BarnesHut or BarnesHut3D simulator
      * @param outputDir The simulator export directory
      * @param steps Number of steps run in the simulation
+     * @throws IOException if an output file cannot be written, which ends the export
      */
-    public static void exportSimulation(BarnesHut simulator, String outputDir, int steps) {
+    public static void exportSimulation(Simulator simulator, String outputDir, int steps) throws IOException {
         LargeExporter exporter = new LargeExporter(simulator);
         exporter.exportSimulation(outputDir, steps);
     }
 
+    /**
+     * Resumes an export from the checkpoint it wrote. The trajectory rows written after the checkpoint are discarded
+     * and the export continues from the checkpoint's step, checkpointing at the interval of the checkpointed config.
+     * @param checkpointFile The checkpoint file
+     * @param outputDir The simulator export directory holding the interrupted export
+     * @param steps Number of steps run in the whole simulation, including those before the checkpoint
+     */
+    public static void resumeSimulation(String checkpointFile, String outputDir, int steps)
+            throws IOException, InvalidAttributeValueException {
+        Checkpoint checkpoint = Checkpoint.read(Paths.get(checkpointFile));
+        LargeExporter exporter = new LargeExporter(checkpoint.restore());
+        exporter.configure(checkpoint.getConfig());
+        exporter.exportParticleTrajectories(outputDir, steps, checkpoint.getStep());
+    }
+
     /**
      * Runs the simulation and exports the particle property and trajectory files to the specified directory path.
+     * @throws IOException if an output file cannot be written, which ends the export
      */
-    public void exportSimulation(String outputDir, int steps) {
+    public void exportSimulation(String outputDir, int steps) throws IOException {
         createOutDir(outputDir);
         exportParticleProperties(outputDir);
-        exportParticleTrajectories(outputDir, steps);
+        exportParticleTrajectories(outputDir, steps, 0);
+    }
+
+    /**
+     * Sets the number of steps between the checkpoints written during an export.
+     * @param checkpointInterval Steps between checkpoints, or 0 to write none
+     */
+    public void setCheckpointInterval(int checkpointInterval) {
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    /**
+     * Applies the export entries of a config: the checkpoint interval, the trajectory formats and their precision or
+     * quantization, the number of buffered frames, the stride, the exported particles and the file size cap. The
+     * quantum of a compressed export is the config's quantization times its Size, and the time step is recorded in
+     * the manifest.
+     */
+    public void configure(ConfigLoader loader) throws InvalidAttributeValueException {
+        setCheckpointInterval(loader.getCheckpointInterval());
+        setTrajectoryFormats(loader.getExportFormats(), loader.getExportPrecision());
+        setBufferFrames(loader.getExportBufferFrames());
+        setCompression(loader.getExportQuantization() * loader.getSize(), loader.getExportKeyframeInterval());
+        setStride(loader.getExportStride());
+        setParticles(selectParticles(loader.getExportParticles(), loader.getExportTracerFraction()));
+        setMaxFileSize((long) (loader.getExportMaxFileSize() * 1e6));
+        this.timeStep = loader.getTimeStep();
+    }
+
+    /**
+     * Sets the number of steps from one exported frame to the next; only the steps that are a multiple of the stride
+     * are written.
+     * @param stride Number of steps, at least 1
+     */
+    public void setStride(int stride) throws InvalidAttributeValueException {
+        if (stride < 1) {
+            throw new InvalidAttributeValueException("Export stride must be positive");
+        }
+        this.stride = stride;
+    }
+
+    /**
+     * Sets the particles whose positions are exported. A frame holds their coordinates in the given order.
+     * @param ids Particle ids, or null to export every particle
+     */
+    public void setParticles(int[] ids) throws InvalidAttributeValueException {
+        if (ids != null) {
+            for (int id : ids) {
+                if (id < 0 || id >= simulator.getParticleCount()) {
+                    throw new InvalidAttributeValueException("No particle with id " + id);
+                }
+            }
+        }
+        this.particles = ids == null ? null : ids.clone();
+    }
+
+    /**
+     * Sets the size at which a new trajectory file is started. The files are listed in the export's Manifest.json,
+     * see ExportManifest.
+     * @param bytes Size in bytes, or 0 to write a single file per format
+     */
+    public void setMaxFileSize(long bytes) throws InvalidAttributeValueException {
+        if (bytes < 0) {
+            throw new InvalidAttributeValueException("Maximum file size must not be negative");
+        }
+        this.maxFileBytes = bytes;
+    }
+
+    /**
+     * Selects every round(1 / fraction)-th particle of the given id ranges, so that tracers are spread evenly over
+     * the ranges.
+     * @param ranges First and last id of each range, or null for all particles
+     * @param fraction Fraction of the particles in the ranges to select
+     * @return Selected ids in increasing order, or null if every particle is selected
+     */
+    private int[] selectParticles(int[][] ranges, double fraction) throws InvalidAttributeValueException {
+        if (!(fraction > 0 && fraction <= 1)) {
+            throw new InvalidAttributeValueException("Tracer fraction must be above 0 and at most 1");
+        }
+        int count = simulator.getParticleCount();
+        boolean[] selected = new boolean[count];
+        if (ranges == null) {
+            Arrays.fill(selected, true);
+        } else {
+            for (int[] range : ranges) {
+                if (range[0] < 0 || range[1] >= count || range[0] > range[1]) {
+                    throw new InvalidAttributeValueException("Invalid particle range " + Arrays.toString(range));
+                }
+                Arrays.fill(selected, range[0], range[1] + 1, true);
+            }
+        }
+        long every = Math.max(1, Math.round(1 / fraction));
+        if (ranges == null && every == 1) {
+            return null;
+        }
+        List<Integer> ids = new ArrayList<>();
+        long seen = 0;
+        for (int id = 0; id < count; id++) {
+            if (selected[id] && seen++ % every == 0) {
+                ids.add(id);
+            }
+        }
+        return ids.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Sets the formats the trajectories are written in. Each format is written to its own file by its own thread.
+     * @param formats Any of "CSV" for a Trajectories.csv file, "Binary" for a Trajectories.bin file, "Compressed" for a
+     *                Trajectories.bhz file and "Statistics" for a Statistics.csv file, see StatisticsSink
+     * @param precision "Double" or "Float", the precision of the coordinates of a binary file
+     */
+    public void setTrajectoryFormats(String[] formats, String precision) throws InvalidAttributeValueException {
+        if (formats.length == 0) {
+            throw new InvalidAttributeValueException("At least one export format is needed");
+        }
+        for (String format : formats) {
+            if (!format.equals("CSV") && !format.equals("Binary") && !format.equals("Compressed")
+                    && !format.equals("Statistics")) {
+                throw new InvalidAttributeValueException("Unknown export format: " + format);
+            }
+        }
+        if (!precision.equals("Double") && !precision.equals("Float")) {
+            throw new InvalidAttributeValueException("Unknown export precision: " + precision);
+        }
+        this.formats = formats.clone();
+        this.singlePrecision = precision.equals("Float");
+    }
+
+    /**
+     * Sets the number of frames buffered between the simulation and the writers. The simulation runs at most
+     * frames - 1 steps ahead of the slowest writer and then waits for it.
+     * @param frames Number of frames, at least 2
+     */
+    public void setBufferFrames(int frames) throws InvalidAttributeValueException {
+        if (frames < 2) {
+            throw new InvalidAttributeValueException("At least two export buffer frames are needed");
+        }
+        this.bufferFrames = frames;
+    }
+
+    /**
+     * Sets the quantization of a compressed trajectory file.
+     * @param quantum Distance the coordinates are rounded to a multiple of, or 0 for the default of a millionth of the
+     *                extent of the particles when the export starts
+     * @param keyframeInterval Number of frames from one keyframe to the next
+     */
+    public void setCompression(double quantum, int keyframeInterval) throws InvalidAttributeValueException {
+        if (quantum < 0 || keyframeInterval < 1) {
+            throw new InvalidAttributeValueException("Quantum must not be negative and keyframe interval positive");
+        }
+        this.quantum = quantum;
+        this.keyframeInterval = keyframeInterval;
     }
 
     /**
@@ -72,27 +264,208 @@ public class LargeExporter {
     }
 
     /**
-     * Exports the particle trajectories as a CSV file. Every two columns, in order, represent the x- and y-components
-     * respectively of a single particle.
+     * Exports the particle trajectories in each of the configured formats, see the TrajectorySink implementations.
+     * The simulation publishes its snapshots to a lossless SnapshotBuffer, from which one thread per format encodes
+     * and writes the frames, so the simulation computes the next steps while the frames are being written and the
+     * export runs at the pace of the slower of the simulation and the slowest writer. The files of every format are
+     * listed in a Manifest.json file, which a resumed export continues.
      * @param outputDir The simulator export directory.
      * @param steps Number of steps used to create the output file.
+     * @param firstStep Step the simulator is at; a resumed export appends to the frames written up to this step.
+     * @throws IOException if a trajectory file, the manifest or a checkpoint cannot be written. A failing writer stops
+     *         the simulation and the other writers, so no checkpoint is written past the last frame of every file.
      */
-    private void exportParticleTrajectories(String outputDir, int steps) {
-        Path trajectoriesPath = Paths.get(outputDir, "Trajectories.csv");
-        File trajectories = new File(trajectoriesPath.toString());
+    private void exportParticleTrajectories(String outputDir, int steps, long firstStep) throws IOException {
+        List<TrajectorySink> sinks = new ArrayList<>();
+        SnapshotBuffer snapshots = new SnapshotBuffer(simulator, bufferFrames, formats.length);
+        AtomicReference<IOException> failure = new AtomicReference<>();
+        ExportManifest manifest = null;
         try (ProgressBar simulatorProgress = new ProgressBar("Exporting simulation", steps)) {
-            FileWriter outputFile = new FileWriter(trajectories);
-            CSVWriter writer = new CSVWriter(outputFile);
-            String[] header = makeHeader();
-            writer.writeNext(header);
-            for (int step = 0; step < steps - 1; step++) {
+            manifest = openManifest(outputDir, firstStep);
+            for (String format : formats) {
+                sinks.add(openSink(format, outputDir, manifest));
+            }
+            List<Thread> writers = new ArrayList<>();
+            for (int i = 0; i < sinks.size(); i++) {
+                TrajectorySink sink = sinks.get(i);
+                Thread writer = new Thread(() -> writeRows(snapshots, sink, firstStep, failure),
+                        "Trajectories-writer-" + formats[i]);
+                writer.start();
+                writers.add(writer);
+            }
+            simulatorProgress.stepTo(firstStep);
+            for (long step = firstStep; step < steps - 1 && failure.get() == null; step++) {
                 simulator.next();
-                writer.writeNext(positions());
+                snapshots.publish();
                 simulatorProgress.step();
+                if (checkpointInterval > 0 && (step + 1) % checkpointInterval == 0) {
+                    writeCheckpoint(outputDir, snapshots, sinks, manifest, step + 1, failure);
+                }
+            }
+            snapshots.close();
+            for (Thread writer : writers) {
+                writer.join();
+            }
+            if (failure.get() != null) {
+                throw failure.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            snapshots.close();
+            closeSinks(sinks);
+            writeManifest(manifest);
+        }
+    }
+
+    private static void writeManifest(ExportManifest manifest) {
+        if (manifest != null) {
+            try {
+                manifest.write();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Returns the ids of the exported particles.
+     */
+    private int[] exportedParticles() {
+        if (particles != null) {
+            return particles;
+        }
+        int[] ids = new int[simulator.getParticleCount()];
+        for (int id = 0; id < ids.length; id++) {
+            ids[id] = id;
+        }
+        return ids;
+    }
+
+    /**
+     * Creates the manifest of a new export, or reads that of a resumed export.
+     */
+    private ExportManifest openManifest(String outputDir, long firstStep) throws IOException {
+        Path path = Paths.get(outputDir, "Manifest.json");
+        if (firstStep > 0) {
+            if (!Files.exists(path)) {
+                throw new IOException(outputDir + " holds no export manifest to resume");
+            }
+            return ExportManifest.resume(path, firstStep, exportedParticles());
+        }
+        return new ExportManifest(path, stride, timeStep, dimensions, exportedParticles());
+    }
+
+    private static void closeSinks(List<TrajectorySink> sinks) {
+        for (TrajectorySink sink : sinks) {
+            try {
+                sink.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Opens the trajectory files of a format, continuing the last file the manifest records for it.
+     */
+    private TrajectorySink openSink(String format, String outputDir, ExportManifest manifest) throws IOException {
+        int[] ids = exportedParticles();
+        int count = ids.length;
+        Path directory = Paths.get(outputDir);
+        if (format.equals("Statistics")) {
+            return new RollingTrajectorySink(directory, "Statistics", ".csv", format, maxFileBytes, manifest,
+                    (path, kept) -> new StatisticsSink(path, dimensions, count, kept));
+        }
+        if (format.equals("Binary")) {
+            return new RollingTrajectorySink(directory, "Trajectories", ".bin", format, maxFileBytes, manifest,
+                    (path, kept) -> new BinaryTrajectorySink(path, dimensions, count, singlePrecision, kept));
+        }
+        if (format.equals("Compressed")) {
+            double fileQuantum = quantum > 0 ? quantum : DEFAULT_QUANTIZATION * extent();
+            return new RollingTrajectorySink(directory, "Trajectories", ".bhz", format, maxFileBytes, manifest,
+                    (path, kept) -> new CompressedTrajectorySink(path, dimensions, count, fileQuantum,
+                            keyframeInterval, COMPRESSION_THREADS, kept));
+        }
+        return new RollingTrajectorySink(directory, "Trajectories", ".csv", format, maxFileBytes, manifest,
+                (path, kept) -> new CsvTrajectorySink(path, dimensions, ids, kept));
+    }
+
+    /**
+     * Returns the largest extent of the particles along any axis, or 1 if they all share a position.
+     */
+    private double extent() {
+        double[] current = new double[dimensions * simulator.getParticleCount()];
+        simulator.getPositions(current);
+        double extent = 0;
+        for (int axis = 0; axis < dimensions; axis++) {
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (int i = axis; i < current.length; i += dimensions) {
+                min = Math.min(min, current[i]);
+                max = Math.max(max, current[i]);
+            }
+            extent = Math.max(extent, max - min);
+        }
+        return extent > 0 ? extent : 1;
+    }
+
+    /**
+     * Waits for the frames of all published steps to be written and then writes the manifest and a checkpoint of the
+     * simulation, so that the checkpoint and the trajectory files agree on the last step. Writes nothing if a writer
+     * has failed, since its files end before that step.
+     */
+    private void writeCheckpoint(String outputDir, SnapshotBuffer snapshots, List<TrajectorySink> sinks,
+                                 ExportManifest manifest, long step, AtomicReference<IOException> failure)
+            throws IOException, InterruptedException {
+        snapshots.awaitConsumed();
+        if (failure.get() != null) {
+            return;
+        }
+        for (TrajectorySink sink : sinks) {
+            sink.flush();
+        }
+        manifest.write();
+        Checkpoint.write(Paths.get(outputDir, "Checkpoint.bin"), simulator, step);
+    }
+
+    /**
+     * Writes a frame of the exported particles for every snapshot published to the buffer whose step is a multiple of
+     * the stride, until the buffer is closed or writing fails. A failure is recorded for the simulation loop, which
+     * stops at its next step, and closes the buffer, which stops the other writers.
+     * @param firstStep Step the simulator was at when the buffer was created
+     * @param failure Receives the first exception thrown by any writer
+     */
+    private void writeRows(SnapshotBuffer snapshots, TrajectorySink writer, long firstStep,
+                           AtomicReference<IOException> failure) {
+        double[] positions = new double[dimensions * simulator.getParticleCount()];
+        double[] frame = particles == null ? positions : new double[dimensions * particles.length];
+        long step = 0;
+        try {
+            Snapshot snapshot;
+            while ((snapshot = snapshots.acquireNext(step)) != null) {
+                try {
+                    step = snapshot.getStep();
+                    if ((firstStep + step) % stride != 0) {
+                        continue;
+                    }
+                    snapshot.copyPositions(positions);
+                    if (particles != null) {
+                        for (int i = 0; i < particles.length; i++) {
+                            System.arraycopy(positions, dimensions * particles[i], frame, dimensions * i, dimensions);
+                        }
+                    }
+                    writer.write(firstStep + step, frame);
+                } finally {
+                    snapshots.release(snapshot);
+                }
             }
-            writer.close();
         } catch (IOException e) {
-            e.printStackTrace();
+            failure.compareAndSet(null, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            snapshots.close(); // Lets the simulation finish if the writer stops early.
         }
     }
 
@@ -103,11 +476,11 @@ public class LargeExporter {
      */
     private JSONObject getParticleProperties() {
         JSONObject particleProperties = new JSONObject();
-        for (int i = 0; i < particles.size(); i++) {
+        for (int i = 0; i < simulator.getParticleCount(); i++) {
             JSONObject particleData = new JSONObject();
             try {
-                particleData.put("Size", particles.get(i).getSize());
-                particleData.put("Color", particles.get(i).getColor().getRGB());
+                particleData.put("Size", simulator.getParticleSize(i));
+                particleData.put("Color", simulator.getParticleColor(i).getRGB());
                 particleProperties.put(String.valueOf(i), particleData);
             } catch (JSONException e) {
                 System.out.println("Unable to export particle data");
@@ -125,33 +498,11 @@ public class LargeExporter {
         }
     }
 
-    /**
-     * Returns the positions of all particles in a the simulator's current state.
-     * @return Array of particle positions.
-     */
-    private String[] positions() {
-        String[] positions = new String[particles.size() * 2];
-        for (int i = 0; i < particles.size(); i++) {
-            positions[2 * i] = String.valueOf(particles.get(i).getPosition().getX());
-            positions[(2 * i) + 1] = String.valueOf(particles.get(i).getPosition().getY());
-        }
-        return positions;
-    }
-
-    /**
-     * Creates a header row for the CSV trajectories file.
-     * @return String header array.
-     */
-    private String[] makeHeader() {
-        String[] header = new String[particles.size() * 2];
-        for (int i = 0; i < particles.size(); i++) {
-            header[2 * i] = "P" + String.valueOf(i) + "_X";
-            header[(2 * i) + 1] = "P" + String.valueOf(i) + "_Y";
-        }
-        return header;
-    }
-
     public static void main(String[] args) throws InvalidAttributeValueException, JSONException, IOException {
+        if (args.length == 3 && args[0].equals("--resume")) {
+            LargeExporter.resumeSimulation(args[1], args[2], 10000);
+            return;
+        }
         String configFile, outputDir;
         if (args.length == 2) {
             configFile = args[0];
@@ -161,7 +512,9 @@ public class LargeExporter {
             outputDir = "output\\SimOutput1";
         }
         ConfigLoader loader = new ConfigLoader(configFile);
-        BarnesHut simulator = new BarnesHut(loader);
-        LargeExporter.exportSimulation(simulator, outputDir, 10000);
+        Simulator simulator = loader.getDimensions() == 3 ? new BarnesHut3D(loader) : new BarnesHut(loader);
+        LargeExporter exporter = new LargeExporter(simulator);
+        exporter.configure(loader);
+        exporter.exportSimulation(outputDir, 10000);
     }
 }
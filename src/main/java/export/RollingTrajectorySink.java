@@ -0,0 +1,107 @@
+package export;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes trajectory frames to a sequence of files of one format, starting a new file once the current one has reached
+ * a size cap, and records each file and its frames in an ExportManifest. The first file is named like name.extension
+ * and the following ones name-1.extension, name-2.extension and so on. The size is checked after each frame, without
+ * flushing the file, so a file exceeds the cap by the frames still buffered or being compressed.
+ */
+public class RollingTrajectorySink implements TrajectorySink {
+
+    /**
+     * Opens a sink of the rolled format.
+     */
+    public interface Opener {
+
+        /**
+         * @param path The file
+         * @param keptFrames Number of frames already in the file to keep, 0 for a new file
+         */
+        TrajectorySink open(Path path, long keptFrames) throws IOException;
+    }
+
+    private final Path directory;
+    private final String name;
+    private final String extension;
+    private final String format;
+    private final long maxBytes;
+    private final ExportManifest manifest;
+    private final Opener opener;
+    private int index;
+    private Path path;
+    private TrajectorySink sink; // Null after the current file was closed for reaching the cap.
+    private ExportManifest.Entry entry;
+
+    /**
+     * Opens the last file the manifest records for the format, appending to its frames, or the first file if the
+     * manifest records none.
+     * @param directory Directory of the files
+     * @param name File name without extension
+     * @param extension File extension including the dot
+     * @param format Format recorded in the manifest
+     * @param maxBytes Size at which a new file is started, or 0 for a single file
+     * @param manifest Manifest the files are recorded in
+     * @param opener Opens a file of the format
+     */
+    public RollingTrajectorySink(Path directory, String name, String extension, String format, long maxBytes,
+                                 ExportManifest manifest, Opener opener) throws IOException {
+        this.directory = directory;
+        this.name = name;
+        this.extension = extension;
+        this.format = format;
+        this.maxBytes = maxBytes;
+        this.manifest = manifest;
+        this.opener = opener;
+        this.entry = manifest.last(format);
+        if (entry == null) {
+            open();
+        } else {
+            String file = entry.file;
+            this.index = file.equals(name + extension) ? 0
+                    : Integer.parseInt(file.substring(name.length() + 1, file.length() - extension.length()));
+            this.path = directory.resolve(file);
+            this.sink = opener.open(path, entry.frames);
+        }
+    }
+
+    @Override
+    public void write(long step, double[] positions) throws IOException {
+        if (sink == null) {
+            index++;
+            open();
+        }
+        sink.write(step, positions);
+        manifest.addFrame(entry, step);
+        if (maxBytes > 0 && Files.size(path) >= maxBytes) {
+            sink.close();
+            sink = null;
+            manifest.write();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (sink != null) {
+            sink.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (sink != null) {
+            sink.close();
+            sink = null;
+        }
+    }
+
+    private void open() throws IOException {
+        String file = index == 0 ? name + extension : name + "-" + index + extension;
+        path = directory.resolve(file);
+        sink = opener.open(path, 0);
+        entry = manifest.add(format, file);
+    }
+}
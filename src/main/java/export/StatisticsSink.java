@@ -0,0 +1,88 @@
+package export;
+
+import com.opencsv.CSVWriter;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Writes summary statistics of every trajectory frame as the rows of a CSV file with a header row, instead of the
+ * positions themselves: the step, the mean position of the particles, and the RMS and largest distance of the
+ * particles from the mean position. The statistics are unweighted, since a frame holds no masses.
+ */
+public class StatisticsSink implements TrajectorySink {
+
+    private static final String[] MEANS = {"Mean_X", "Mean_Y", "Mean_Z"};
+
+    private final CSVWriter writer;
+    private final int dimensions;
+    private final int particles;
+    private final double[] mean;
+    private final String[] row;
+
+    /**
+     * @param path The CSV file
+     * @param dimensions Number of coordinates per particle
+     * @param particles Number of particles
+     * @param keptFrames Number of rows already in the file to keep, besides the header; the rows after them are
+     *                   discarded and new rows are appended. 0 creates a new file.
+     */
+    public StatisticsSink(Path path, int dimensions, int particles, long keptFrames) throws IOException {
+        if (keptFrames > 0) {
+            CsvTrajectorySink.truncateRows(path, keptFrames);
+        }
+        this.writer = new CSVWriter(new FileWriter(path.toFile(), keptFrames > 0));
+        this.dimensions = dimensions;
+        this.particles = particles;
+        this.mean = new double[dimensions];
+        this.row = new String[dimensions + 3];
+        if (keptFrames == 0) {
+            String[] header = new String[row.length];
+            header[0] = "Step";
+            System.arraycopy(MEANS, 0, header, 1, dimensions);
+            header[dimensions + 1] = "RMS_Radius";
+            header[dimensions + 2] = "Max_Radius";
+            writer.writeNext(header);
+        }
+    }
+
+    @Override
+    public void write(long step, double[] positions) {
+        for (int axis = 0; axis < dimensions; axis++) {
+            double sum = 0;
+            for (int i = axis; i < dimensions * particles; i += dimensions) {
+                sum += positions[i];
+            }
+            mean[axis] = particles > 0 ? sum / particles : 0;
+        }
+        double sumSquares = 0;
+        double maxSquare = 0;
+        for (int i = 0; i < particles; i++) {
+            double square = 0;
+            for (int axis = 0; axis < dimensions; axis++) {
+                double d = positions[dimensions * i + axis] - mean[axis];
+                square += d * d;
+            }
+            sumSquares += square;
+            maxSquare = Math.max(maxSquare, square);
+        }
+        row[0] = String.valueOf(step);
+        for (int axis = 0; axis < dimensions; axis++) {
+            row[axis + 1] = String.valueOf(mean[axis]);
+        }
+        row[dimensions + 1] = String.valueOf(particles > 0 ? Math.sqrt(sumSquares / particles) : 0);
+        row[dimensions + 2] = String.valueOf(Math.sqrt(maxSquare));
+        writer.writeNext(row);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,25 @@
+package export;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Destination of the trajectory frames of an export. A frame holds the positions of the exported particles after one
+ * step, in the order of the Particles ids of the manifest, which are all particles unless the export selects some.
+ * Frames are written in step order by a single thread.
+ */
+public interface TrajectorySink extends Closeable {
+
+    /**
+     * Writes the positions of the exported particles after a step.
+     * @param step Step the positions were taken at, starting at 1
+     * @param positions Positions in the order of the manifest's particle ids, with the coordinates of each particle
+     *                  next to each other
+     */
+    void write(long step, double[] positions) throws IOException;
+
+    /**
+     * Hands all written frames to the file system, so that a checkpoint taken now agrees with the file.
+     */
+    void flush() throws IOException;
+}
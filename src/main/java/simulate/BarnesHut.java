@@ -4,14 +4,33 @@ import org.jetbrains.annotations.NotNull;
 import simulate.helpers.ConfigLoader;
 import simulate.helpers.Galaxy;
 import simulate.helpers.GalaxyBuilder;
-import simulate.objects.Node;
+import simulate.integrate.BlockForceEvaluator;
+import simulate.integrate.BlockTimestepIntegrator;
+import simulate.integrate.EulerIntegrator;
+import simulate.integrate.ForceEvaluator;
+import simulate.integrate.Integrator;
 import simulate.objects.Particle;
+import simulate.objects.ParticleStore;
 import simulate.objects.Quadrant;
+import simulate.parallel.CostZones;
+import simulate.parallel.Ranges;
+import simulate.parallel.WorkerPool;
+import simulate.tree.AdaptiveBounds;
+import simulate.tree.FmmEngine;
+import simulate.tree.ForceEngine;
+import simulate.tree.GroupWalkEngine;
+import simulate.tree.InteractionKernel;
+import simulate.tree.LinearQuadtree;
+import simulate.tree.MortonKeys;
+import simulate.tree.Precision;
+import simulate.tree.TreeWalkEngine;
 import utils.Vector2D;
 
 import javax.management.InvalidAttributeValueException;
+import java.awt.*;
 import java.util.ArrayList;
 import java.util.Stack;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * The purpose of this class is to simulate the motion of the a collection of bodies due to the gravitational force in two dimensions.
@@ -19,14 +38,33 @@ import java.util.Stack;
  * read about <a href="https://en.wikipedia.org/wiki/Barnes%E2%80%93Hut_simulation">here</a>.
  * This class implements the Simulator interface; once initialized, the next() method can be continuously called in
  * order to update the simulation one time-step at a time. Doing so update the the positions and velocities of the simulate's particles.
+ * The particles are advanced by an Integrator, which evaluates the forces once per step, or optionally with
+ * hierarchical block timesteps, which only evaluate the forces on the particles that need them.
+ * The particle state is held in a ParticleStore and advanced directly on its primitive arrays; the Particle objects
+ * returned by getParticles() are views of that store.
  */
-public class BarnesHut {
+public class BarnesHut implements Simulator {
 
     private final double G;
     private final double theta;
     private final double timeStep;
     private final Quadrant quadrant;
-    private Node root;
+    private final LinearQuadtree tree;
+    private final ForceEngine engine;
+    private final Integrator integrator;
+    private final ForceEvaluator forces = this::computeAccelerations;
+    private final BlockTimestepIntegrator blockIntegrator; // Null unless block timesteps are enabled.
+    private final BlockForceEvaluator blockForces = new BlockForces();
+    private int bound; // Number of particles in the tree; the others are escapers.
+    private long evaluations;
+    private final AdaptiveBounds bounds; // Null when the tree keeps the configured quadrant.
+    private final boolean refit;
+    private final double refitImbalance;
+    private final int refitMaxLeafCount;
+    private final WorkerPool workers;
+    private final CostZones zones; // Null when the force computation is split into chunks of equal size.
+    private final ConfigLoader config; // Null unless the simulation was created from a config.
+    private ParticleStore store = new ParticleStore(16);
     private ArrayList<Particle> particles = new ArrayList<>();
 
     public BarnesHut(double G, double theta, double timeStep, Quadrant quadrant,
@@ -35,30 +73,173 @@ public class BarnesHut {
         this.G = G;
         this.theta = theta;
         this.timeStep = timeStep;
+        this.tree = new LinearQuadtree(quadrant.getX(), quadrant.getY(), quadrant.getWidth());
+        this.engine = new TreeWalkEngine(G, theta);
+        this.integrator = new EulerIntegrator();
+        this.blockIntegrator = null;
+        this.bounds = new AdaptiveBounds(G, 0);
+        this.refit = false;
+        this.refitImbalance = 0;
+        this.refitMaxLeafCount = 0;
+        this.workers = WorkerPool.common();
+        this.zones = new CostZones(CostZones.DEFAULT_ZONES_PER_THREAD);
+        this.config = null;
         this.setUpGalaxies(galaxies);
     }
 
     public BarnesHut(ConfigLoader loader) throws InvalidAttributeValueException {
+        this(loader, createWorkerPool(loader));
+    }
+
+    /**
+     * Creates a simulation that runs on the given worker pool instead of the one named in the config file.
+     *
+     * @param loader the simulation config
+     * @param workers the threads the simulation runs on
+     */
+    public BarnesHut(ConfigLoader loader, WorkerPool workers) throws InvalidAttributeValueException {
+        this(loader, workers, null);
+    }
+
+    /**
+     * Creates a simulation whose particles and integrator state are restored from a checkpoint, or built from the
+     * config's galaxies if there is no checkpoint.
+     *
+     * @param loader the simulation config
+     * @param workers the threads the simulation runs on
+     * @param checkpoint the checkpoint to resume from, or null
+     */
+    BarnesHut(ConfigLoader loader, WorkerPool workers, Checkpoint checkpoint) throws InvalidAttributeValueException {
         this.G = loader.getG();
         this.theta = loader.getTheta();
         this.timeStep = loader.getTimeStep();
         int[] origin = loader.getOrigin();
         this.quadrant = new Quadrant(new Vector2D(origin[0], origin[1]), loader.getSize());
         System.out.println(this.quadrant.lowerLeft());
-        this.setUpGalaxies(loader.getGalaxies());
+        if (loader.getLeafCapacity() < 1 || loader.getMaxDepth() < 1 || loader.getMaxDepth() > MortonKeys.BITS) {
+            throw new InvalidAttributeValueException("Leaf capacity must be positive and maximum depth between 1 and "
+                    + MortonKeys.BITS);
+        }
+        this.tree = new LinearQuadtree(quadrant.getX(), quadrant.getY(), quadrant.getWidth(), loader.getQuadrupole(),
+                loader.getLeafCapacity(), loader.getMaxDepth(), hasSingleMoments(loader));
+        this.engine = createForceEngine(loader);
+        this.integrator = Integrator.create(loader.getIntegrator());
+        if (loader.getMaxRung() < 0 || loader.getMaxRung() > 30) {
+            throw new InvalidAttributeValueException("Maximum rung must be between 0 and 30");
+        }
+        this.blockIntegrator = loader.getBlockTimesteps()
+                ? new BlockTimestepIntegrator(loader.getMaxRung(), loader.getTimestepAccuracy()) : null;
+        this.bounds = loader.getAdaptiveBounds() ? new AdaptiveBounds(G, loader.getEscapeRadius()) : null;
+        this.refit = loader.getRefit();
+        this.refitImbalance = loader.getRefitImbalance();
+        this.refitMaxLeafCount = loader.getRefitMaxLeafCount();
+        this.workers = workers;
+        if (loader.getZonesPerThread() < 1) {
+            throw new InvalidAttributeValueException("Zones per thread must be positive");
+        }
+        this.zones = loader.getCostZones() ? new CostZones(loader.getZonesPerThread()) : null;
+        this.config = loader;
+        if (checkpoint == null) {
+            this.setUpGalaxies(loader.getGalaxies());
+            return;
+        }
+        store = new ParticleStore(checkpoint.getParticleCount());
+        checkpoint.restore(store, particles);
+        double[] region = checkpoint.getRegion();
+        tree.setBounds(region[0], region[1], region[2]);
+        integrator.setCurrentAccelerations(checkpoint.hasCurrentAccelerations());
+        byte[] rungs = checkpoint.getRungs();
+        if (blockIntegrator != null && rungs != null) {
+            blockIntegrator.setRungs(rungs);
+            // The substeps refit the tree built at the end of the saved step, which is rebuilt from the same state.
+            workers.run(() -> blockForces.refresh(true));
+        }
     }
 
     /**
      * Advances the simulation forward by one time-step. Updates the positions and velocities of the
-     * simulate's particles. These quantities are computed in parallel.
+     * simulate's particles with the configured integrator. These quantities are computed in parallel.
      */
+    @Override
     public void next() {
-        buildTree();
-        particles.parallelStream().forEach(particle -> particle.eulerStep(timeStep, root, theta));
+        workers.run(() -> {
+            evaluations = 0;
+            if (blockIntegrator != null) {
+                blockIntegrator.step(store, blockForces, timeStep);
+                evaluations = blockIntegrator.getEvaluationCount();
+            } else {
+                integrator.step(store, forces, timeStep);
+            }
+        });
+    }
+
+    /**
+     * Computes the accelerations of all particles from their current positions. All accelerations are computed
+     * before any particle is moved, since the tree walk reads the positions of the particles in its leaves.
+     * Escapers, which are kept out of the tree, are accelerated from the far-field list.
+     */
+    private void computeAccelerations() {
+        int n = store.size();
+        bound = bounds == null ? n : bounds.update(tree, store);
+        buildTree(bound);
+        engine.prepare(tree, store);
+        if (zones != null) {
+            zones.forEach(store.cost, 0, bound, engine::accelerate);
+        } else {
+            workers.forEach(0, bound, engine::accelerate);
+        }
+        if (bounds != null) {
+            bounds.accelerateEscapers(tree, store);
+        }
+        evaluations += n;
     }
 
     /**
-     * Getter method for the simulate's particles.
+     * Refreshes the tree and evaluates the accelerations of the active particles for the block timestep integrator.
+     */
+    private class BlockForces implements BlockForceEvaluator {
+
+        @Override
+        public void refresh(boolean full) {
+            int n = store.size();
+            bound = bounds == null ? n : bounds.update(tree, store);
+            if (full) {
+                buildTree(bound);
+            } else {
+                tree.refit(store, bound, refitImbalance, refitMaxLeafCount);
+            }
+            engine.prepare(tree, store);
+        }
+
+        /**
+         * Hands runs of consecutive active particles in the tree to the force engine, one equal-cost zone of the
+         * active list per task with cost zones, or one chunk of the worker pool per task otherwise.
+         */
+        @Override
+        public void evaluate(int[] particles, int count) {
+            Ranges.RangeAction accelerate = (from, end) -> {
+                for (int k = from; k < end && particles[k] < bound; ) {
+                    int run = k + 1;
+                    while (run < end && particles[run] == particles[run - 1] + 1 && particles[run] < bound) {
+                        run++;
+                    }
+                    engine.accelerate(particles[k], particles[run - 1] + 1);
+                    k = run;
+                }
+            };
+            if (zones != null) {
+                zones.forEach(store.cost, particles, count, accelerate);
+            } else {
+                Ranges.forEach(0, count, workers.getChunkSize(), accelerate);
+            }
+            if (bounds != null) {
+                bounds.accelerateEscapers(tree, store, particles, count);
+            }
+        }
+    }
+
+    /**
+     * Getter method for the simulate's particles. The particles are views of the simulation's particle store.
      *
      * @return the simulated particles
      */
@@ -66,6 +247,44 @@ public class BarnesHut {
         return particles;
     }
 
+    @Override
+    public int getDimensions() {
+        return 2;
+    }
+
+    @Override
+    public int getParticleCount() {
+        return particles.size();
+    }
+
+    @Override
+    public int getParticleSize(int id) {
+        return particles.get(id).getSize();
+    }
+
+    @Override
+    public Color getParticleColor(int id) {
+        return particles.get(id).getColor();
+    }
+
+    @Override
+    public void getPositions(double[] positions) {
+        for (int id = 0; id < store.size(); id++) {
+            int index = store.indexOf(id);
+            positions[2 * id] = store.x[index];
+            positions[2 * id + 1] = store.y[index];
+        }
+    }
+
+    /**
+     * Getter method for the store holding the state of the simulated particles.
+     *
+     * @return the particle store
+     */
+    public ParticleStore getStore() {
+        return store;
+    }
+
     /**
      * Returns a stack of all the quadrants that make up the Barnes Hut tree.
      *
@@ -73,18 +292,159 @@ public class BarnesHut {
      */
     public Stack<Quadrant> getQuadrants() {
         Stack<Quadrant> quadrants = new Stack<>();
-        root.addQuadrantsToStack(quadrants);
+        tree.addQuadrantsToStack(quadrants);
         return quadrants;
     }
 
     /**
-     * Rebuilds the quad tree. Initializes the root node using the simulate's quadrant and recursively inserts
-     * all of the particles into the tree.
+     * Returns the largest number of tree nodes used by any step so far. Multiplying it by getTreeBytesPerNode() gives
+     * the memory needed for the tree.
+     *
+     * @return High-water mark of the tree's node count.
      */
-    private void buildTree() {
-        root = new Node(quadrant, G);
-        for (Particle particle : particles) {
-            root.insertParticle(particle);
+    public int getTreeHighWaterMark() {
+        return tree.getHighWaterMark();
+    }
+
+    /**
+     * Returns the number of bytes of node storage per tree node, which depends on whether the tree holds quadrupole
+     * moments and whether its moments are stored in single precision.
+     *
+     * @return Bytes per tree node.
+     */
+    public int getTreeBytesPerNode() {
+        return tree.getBytesPerNode();
+    }
+
+    /**
+     * Returns the number of particle accelerations evaluated in the last step. With block timesteps, only the
+     * particles whose step ends at a substep are evaluated there.
+     *
+     * @return Evaluated accelerations of the last step.
+     */
+    public long getEvaluationCount() {
+        return evaluations;
+    }
+
+    /**
+     * Returns the number of node and particle interactions evaluated by the force engine in the last step.
+     *
+     * @return Interaction count of the last step.
+     */
+    public long getInteractionCount() {
+        return engine.getInteractionCount();
+    }
+
+    /**
+     * Getter method for the threads the simulation runs on.
+     *
+     * @return the worker pool
+     */
+    public WorkerPool getWorkerPool() {
+        return workers;
+    }
+
+    ConfigLoader getConfig() {
+        return config;
+    }
+
+    LinearQuadtree getTree() {
+        return tree;
+    }
+
+    Integrator getIntegrator() {
+        return integrator;
+    }
+
+    BlockTimestepIntegrator getBlockIntegrator() {
+        return blockIntegrator;
+    }
+
+    /**
+     * Rebuilds the quad tree over the first particles of the store. The tree covers the particles' bounding square,
+     * or the simulate's quadrant if adaptive bounds are disabled. The particles are sorted along a Morton curve, which also
+     * reorders the particle store so that particles close in space are close in memory. The tree reuses its node
+     * storage from the previous step. In refit mode the tree keeps its nodes and only moves the particles that left
+     * their leaf, unless the leaves have become too unbalanced.
+     *
+     * @param n the number of particles in the tree
+     */
+    private void buildTree(int n) {
+        if (refit) {
+            tree.refit(store, n, refitImbalance, refitMaxLeafCount);
+        } else {
+            tree.build(store, n);
+        }
+    }
+
+    /**
+     * Creates the force engine named in the config file. "Tree" walks the tree once per particle, "Group" walks
+     * it once per group of nearby particles and "FMM" uses the Fast Multipole Method.
+     *
+     * @param loader the simulation config
+     * @return the force engine
+     */
+    static ForceEngine createForceEngine(ConfigLoader loader) throws InvalidAttributeValueException {
+        double G = loader.getG();
+        double theta = loader.getTheta();
+        switch (loader.getForceEngine()) {
+            case "Tree":
+                return new TreeWalkEngine(G, theta);
+            case "Group":
+                return new GroupWalkEngine(G, theta, loader.getGroupSize(), InteractionKernel.create(loader.getSimd()),
+                        createPrecision(loader));
+            case "FMM":
+                return new FmmEngine(G, theta, loader.getGroupSize(), loader.getExpansionOrder());
+            default:
+                throw new InvalidAttributeValueException("Specified force engine is not supported by BarnesHut");
+        }
+    }
+
+    /**
+     * Returns whether the tree can store its moments in single precision, which the "Group" engine reads in single
+     * precision anyway when its precision is "Float" or "Mixed".
+     *
+     * @param loader the simulation config
+     * @return whether to store the moments in single precision
+     */
+    static boolean hasSingleMoments(ConfigLoader loader) {
+        return loader.getForceEngine().equals("Group") && !loader.getPrecision().equals("Double");
+    }
+
+    /**
+     * Creates the worker pool described in the config file: a dedicated pool with Threads threads, or the common
+     * pool if Threads is 0.
+     *
+     * @param loader the simulation config
+     * @return the worker pool
+     */
+    static WorkerPool createWorkerPool(ConfigLoader loader) throws InvalidAttributeValueException {
+        if (loader.getThreads() < 0 || loader.getChunkSize() < 1) {
+            throw new InvalidAttributeValueException("Thread count must not be negative and chunk size must be "
+                    + "positive");
+        }
+        if (loader.getThreads() == 0) {
+            return new WorkerPool(ForkJoinPool.commonPool(), loader.getChunkSize());
+        }
+        return new WorkerPool(loader.getThreads(), loader.getChunkSize());
+    }
+
+    /**
+     * Returns the precision of the "Group" engine's interaction lists named in the config file.
+     *
+     * @param loader the simulation config
+     * @return the precision
+     */
+    private static Precision createPrecision(ConfigLoader loader) throws InvalidAttributeValueException {
+        switch (loader.getPrecision()) {
+            case "Double":
+                return Precision.DOUBLE;
+            case "Float":
+                return Precision.FLOAT;
+            case "Mixed":
+                return Precision.MIXED;
+            default:
+                throw new InvalidAttributeValueException("Specified precision is not supported by BarnesHut");
         }
     }
 
@@ -98,5 +458,8 @@ public class BarnesHut {
         for (Galaxy galaxy : galaxies) {
             particles.addAll(builder.buildGalaxy(galaxy));
         }
+        for (Particle particle : particles) {
+            store.add(particle);
+        }
     }
 }
@@ -0,0 +1,232 @@
+package simulate;
+
+import org.jetbrains.annotations.NotNull;
+import simulate.helpers.ConfigLoader;
+import simulate.helpers.Galaxy;
+import simulate.helpers.GalaxyBuilder;
+import simulate.integrate.EulerIntegrator;
+import simulate.integrate.ForceEvaluator;
+import simulate.integrate.Integrator;
+import simulate.objects.Particle3D;
+import simulate.objects.ParticleStore3D;
+import simulate.parallel.CostZones;
+import simulate.parallel.Ranges;
+import simulate.parallel.WorkerPool;
+import simulate.tree.LinearOctree;
+import simulate.tree.MortonKeys;
+import simulate.tree.OctreeWalker;
+
+import javax.management.InvalidAttributeValueException;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Simulates the motion of a collection of bodies due to the gravitational force in three dimensions, using the
+ * Barnes-Hut algorithm on an octree. It follows the same optimized path as BarnesHut: the particle state is held in a
+ * ParticleStore3D, the tree is a Morton-ordered LinearOctree that is rebuilt in parallel every step and fitted to the
+ * particles, and the accelerations are computed by iterative OctreeWalkers, one per thread. The particles are
+ * advanced by an Integrator.
+ */
+public class BarnesHut3D implements Simulator {
+
+    private final double G;
+    private final double timeStep;
+    private final LinearOctree tree;
+    private final ThreadLocal<OctreeWalker> walkers;
+    private final LongAdder interactions = new LongAdder();
+    private final Integrator integrator;
+    private final ForceEvaluator forces = this::computeAccelerations;
+    private final WorkerPool workers;
+    private final CostZones zones; // Null when the force computation is split into chunks of equal size.
+    private final ConfigLoader config; // Null unless the simulation was created from a config.
+    private ParticleStore3D store = new ParticleStore3D(16);
+    private ArrayList<Particle3D> particles = new ArrayList<>();
+
+    public BarnesHut3D(double G, double theta, double timeStep, Iterable<Galaxy> galaxies)
+            throws InvalidAttributeValueException {
+        this.G = G;
+        this.timeStep = timeStep;
+        this.tree = new LinearOctree(8, 20);
+        this.integrator = new EulerIntegrator();
+        this.walkers = ThreadLocal.withInitial(() -> new OctreeWalker(G, theta));
+        this.workers = WorkerPool.common();
+        this.zones = new CostZones(CostZones.DEFAULT_ZONES_PER_THREAD);
+        this.config = null;
+        this.setUpGalaxies(galaxies);
+    }
+
+    public BarnesHut3D(ConfigLoader loader) throws InvalidAttributeValueException {
+        this(loader, BarnesHut.createWorkerPool(loader));
+    }
+
+    /**
+     * Creates a simulation that runs on the given worker pool instead of the one named in the config file.
+     *
+     * @param loader the simulation config
+     * @param workers the threads the simulation runs on
+     */
+    public BarnesHut3D(ConfigLoader loader, WorkerPool workers) throws InvalidAttributeValueException {
+        this(loader, workers, null);
+    }
+
+    /**
+     * Creates a simulation whose particles and integrator state are restored from a checkpoint, or built from the
+     * config's galaxies if there is no checkpoint.
+     *
+     * @param loader the simulation config
+     * @param workers the threads the simulation runs on
+     * @param checkpoint the checkpoint to resume from, or null
+     */
+    BarnesHut3D(ConfigLoader loader, WorkerPool workers, Checkpoint checkpoint)
+            throws InvalidAttributeValueException {
+        this.G = loader.getG();
+        this.timeStep = loader.getTimeStep();
+        if (loader.getLeafCapacity() < 1 || loader.getMaxDepth() < 1 || loader.getMaxDepth() > MortonKeys.BITS_3D) {
+            throw new InvalidAttributeValueException("Leaf capacity must be positive and maximum depth between 1 and "
+                    + MortonKeys.BITS_3D + " in three dimensions");
+        }
+        if (loader.getBlockTimesteps() || !loader.getForceEngine().equals("Tree") || loader.getQuadrupole()
+                || loader.getRefit() || !loader.getAdaptiveBounds() || loader.getEscapeRadius() != 0) {
+            throw new InvalidAttributeValueException("BlockTimesteps, ForceEngine, Quadrupole, Refit, AdaptiveBounds "
+                    + "and EscapeRadius only apply to two dimensions");
+        }
+        this.tree = new LinearOctree(loader.getLeafCapacity(), loader.getMaxDepth());
+        this.integrator = Integrator.create(loader.getIntegrator());
+        double theta = loader.getTheta();
+        this.walkers = ThreadLocal.withInitial(() -> new OctreeWalker(G, theta));
+        this.workers = workers;
+        if (loader.getZonesPerThread() < 1) {
+            throw new InvalidAttributeValueException("Zones per thread must be positive");
+        }
+        this.zones = loader.getCostZones() ? new CostZones(loader.getZonesPerThread()) : null;
+        this.config = loader;
+        if (checkpoint == null) {
+            this.setUpGalaxies(loader.getGalaxies());
+            return;
+        }
+        store = new ParticleStore3D(checkpoint.getParticleCount());
+        checkpoint.restore(store, particles);
+        integrator.setCurrentAccelerations(checkpoint.hasCurrentAccelerations());
+    }
+
+    /**
+     * Advances the simulation forward by one time-step with the configured integrator.
+     */
+    @Override
+    public void next() {
+        workers.run(() -> integrator.step(store, forces, timeStep));
+    }
+
+    /**
+     * Rebuilds the octree and computes the accelerations of all particles in parallel.
+     */
+    private void computeAccelerations() {
+        tree.build(store);
+        interactions.reset();
+        Ranges.RangeAction walk = (from, to) -> {
+            OctreeWalker walker = walkers.get();
+            long count = 0;
+            for (int particle = from; particle < to; particle++) {
+                int cost = walker.accelerate(tree, store, particle);
+                store.cost[particle] = cost;
+                count += cost;
+            }
+            interactions.add(count);
+        };
+        if (zones != null) {
+            zones.forEach(store.cost, 0, store.size(), walk);
+        } else {
+            workers.forEach(0, store.size(), walk);
+        }
+    }
+
+    @Override
+    public int getDimensions() {
+        return 3;
+    }
+
+    @Override
+    public int getParticleCount() {
+        return particles.size();
+    }
+
+    @Override
+    public int getParticleSize(int id) {
+        return particles.get(id).getSize();
+    }
+
+    @Override
+    public Color getParticleColor(int id) {
+        return particles.get(id).getColor();
+    }
+
+    @Override
+    public void getPositions(double[] positions) {
+        for (int id = 0; id < store.size(); id++) {
+            int index = store.indexOf(id);
+            positions[3 * id] = store.x[index];
+            positions[3 * id + 1] = store.y[index];
+            positions[3 * id + 2] = store.z[index];
+        }
+    }
+
+    /**
+     * Getter method for the simulated particles. The particles are views of the simulation's particle store.
+     *
+     * @return the simulated particles
+     */
+    public ArrayList<Particle3D> getParticles() {
+        return particles;
+    }
+
+    /**
+     * Getter method for the store holding the state of the simulated particles.
+     *
+     * @return the particle store
+     */
+    public ParticleStore3D getStore() {
+        return store;
+    }
+
+    /**
+     * Returns the number of node and particle interactions evaluated in the last step.
+     *
+     * @return Interaction count of the last step.
+     */
+    public long getInteractionCount() {
+        return interactions.sum();
+    }
+
+    /**
+     * Getter method for the threads the simulation runs on.
+     *
+     * @return the worker pool
+     */
+    public WorkerPool getWorkerPool() {
+        return workers;
+    }
+
+    ConfigLoader getConfig() {
+        return config;
+    }
+
+    Integrator getIntegrator() {
+        return integrator;
+    }
+
+    /**
+     * Sets up the galaxies in the simulation by creating point-particle representations of all the bodies.
+     *
+     * @param galaxies galaxy objects as defined in the ConfigLoader
+     */
+    private void setUpGalaxies(@NotNull Iterable<Galaxy> galaxies) throws InvalidAttributeValueException {
+        GalaxyBuilder builder = new GalaxyBuilder(G);
+        for (Galaxy galaxy : galaxies) {
+            particles.addAll(builder.buildGalaxy3D(galaxy));
+        }
+        for (Particle3D particle : particles) {
+            store.add(particle);
+        }
+    }
+}
@@ -0,0 +1,359 @@
+package simulate;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import simulate.helpers.ConfigLoader;
+import simulate.integrate.BlockTimestepIntegrator;
+import simulate.objects.Particle;
+import simulate.objects.Particle3D;
+import simulate.objects.ParticleStore;
+import simulate.objects.ParticleStore3D;
+import simulate.tree.LinearQuadtree;
+
+import javax.management.InvalidAttributeValueException;
+import java.awt.*;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Binary checkpoint of a BarnesHut or BarnesHut3D simulation, from which the run can be resumed. A checkpoint holds
+ * the simulation's config, the step it was taken at, the state of the integrator, the region of the quadtree and the
+ * position, velocity, acceleration, mass, size, color, store index and cost of every particle, so that the resumed
+ * run continues exactly where the saved one left off, without building new galaxies. Since the particles are restored
+ * in the order of the store and the tree keeps its region, the resumed run computes the same trees as the saved one
+ * would have, and its positions match those of an uninterrupted run bit for bit. The exception is a run with Refit,
+ * whose tree carries its leaves over from earlier steps; that tree is rebuilt on resuming, which changes the
+ * positions by the rounding error of the tree approximation.
+ * <p>
+ * The file is a little-endian header followed by one array per particle property in particle id order:
+ * <pre>
+ * int    magic "BHCK", version, dimensions, particle count
+ * long   step
+ * int    flags: 1 if the accelerations are current, 2 if block timestep rungs follow
+ * int    length of the config
+ * double origin x, origin y and size of the quadtree's region, 0 in three dimensions
+ * byte   config as UTF-8 JSON, padded to a multiple of 8 bytes
+ * double x, y, (z), vx, vy, (vz), ax, ay, (az), mass
+ * int    size, color (RGB), index in the store, cost
+ * byte   rung, if flagged
+ * </pre>
+ * The file is written and read through memory mappings of its FileChannel, so the particle arrays are moved without
+ * parsing or intermediate copies and a checkpoint of millions of particles loads in about the time it takes to read
+ * the file. A checkpoint is first written to a temporary file that then replaces the previous checkpoint, so a crash
+ * while writing leaves the previous checkpoint intact.
+ */
+public class Checkpoint {
+
+    public static final int VERSION = 2;
+    private static final int MAGIC = 0x4B434842; // "BHCK" in little-endian byte order.
+    private static final int HEADER_BYTES = 56;
+    private static final int INTS = 4; // Number of int arrays.
+    private static final int CURRENT_ACCELERATIONS = 1;
+    private static final int RUNGS = 2;
+    private static final long WINDOW = 1L << 30; // Largest part of the file mapped at once, a multiple of 8 bytes.
+
+    private final int dimensions;
+    private final int particleCount;
+    private final long step;
+    private final int flags;
+    private final ConfigLoader config;
+    private final double[] region;
+    private final long arrayOffset; // Offset of the first particle array.
+    private final MappedByteBuffer[] windows;
+
+    private Checkpoint(int dimensions, int particleCount, long step, int flags, ConfigLoader config, double[] region,
+                       long arrayOffset, MappedByteBuffer[] windows) {
+        this.dimensions = dimensions;
+        this.particleCount = particleCount;
+        this.step = step;
+        this.flags = flags;
+        this.config = config;
+        this.region = region;
+        this.arrayOffset = arrayOffset;
+        this.windows = windows;
+    }
+
+    /**
+     * Writes a checkpoint of a simulation that was created from a config.
+     * @param path checkpoint file, which is replaced
+     * @param simulator a BarnesHut or BarnesHut3D simulator
+     * @param step number of steps the simulation has run
+     */
+    public static void write(Path path, Simulator simulator, long step) throws IOException {
+        ConfigLoader config;
+        boolean currentAccelerations;
+        byte[] rungs = null;
+        double[][] arrays;
+        int[] indices;
+        int[] cost;
+        double[] region = new double[3];
+        int n = simulator.getParticleCount();
+        if (simulator instanceof BarnesHut) {
+            BarnesHut barnesHut = (BarnesHut) simulator;
+            ParticleStore store = barnesHut.getStore();
+            config = barnesHut.getConfig();
+            currentAccelerations = barnesHut.getIntegrator().hasCurrentAccelerations();
+            BlockTimestepIntegrator blockIntegrator = barnesHut.getBlockIntegrator();
+            if (blockIntegrator != null) {
+                rungs = blockIntegrator.getRungs();
+                currentAccelerations = rungs != null;
+            }
+            arrays = new double[][]{store.x, store.y, store.vx, store.vy, store.ax, store.ay, store.mass};
+            cost = store.cost;
+            LinearQuadtree tree = barnesHut.getTree();
+            region = new double[]{tree.getOriginX(), tree.getOriginY(), tree.getSize()};
+            indices = new int[n];
+            for (int id = 0; id < n; id++) {
+                indices[id] = store.indexOf(id);
+            }
+        } else if (simulator instanceof BarnesHut3D) {
+            BarnesHut3D barnesHut = (BarnesHut3D) simulator;
+            ParticleStore3D store = barnesHut.getStore();
+            config = barnesHut.getConfig();
+            currentAccelerations = barnesHut.getIntegrator().hasCurrentAccelerations();
+            arrays = new double[][]{store.x, store.y, store.z, store.vx, store.vy, store.vz, store.ax, store.ay,
+                    store.az, store.mass};
+            cost = store.cost;
+            indices = new int[n];
+            for (int id = 0; id < n; id++) {
+                indices[id] = store.indexOf(id);
+            }
+        } else {
+            throw new IllegalArgumentException("Only BarnesHut and BarnesHut3D simulations can be checkpointed");
+        }
+        if (config == null) {
+            throw new IllegalArgumentException("Only simulations created from a config can be checkpointed");
+        }
+
+        byte[] json = config.toJson().getBytes(StandardCharsets.UTF_8);
+        long arrayOffset = align(HEADER_BYTES + json.length);
+        long length = arrayOffset + (long) n * (arrays.length * Double.BYTES + INTS * Integer.BYTES)
+                + (rungs != null ? n : 0);
+        int flags = (currentAccelerations ? CURRENT_ACCELERATIONS : 0) | (rungs != null ? RUNGS : 0);
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer[] windows = map(channel, FileChannel.MapMode.READ_WRITE, length);
+            MappedByteBuffer header = windows[0];
+            header.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, simulator.getDimensions()).putInt(12, n)
+                    .putLong(16, step).putInt(24, flags).putInt(28, json.length).putDouble(32, region[0])
+                    .putDouble(40, region[1]).putDouble(48, region[2]);
+            for (int i = 0; i < json.length; i++) {
+                header.put(HEADER_BYTES + i, json[i]);
+            }
+            long offset = arrayOffset;
+            for (double[] array : arrays) {
+                for (int id = 0; id < n; id++, offset += Double.BYTES) {
+                    windows[(int) (offset / WINDOW)].putDouble((int) (offset % WINDOW), array[indices[id]]);
+                }
+            }
+            for (int id = 0; id < n; id++, offset += Integer.BYTES) {
+                windows[(int) (offset / WINDOW)].putInt((int) (offset % WINDOW), simulator.getParticleSize(id));
+            }
+            for (int id = 0; id < n; id++, offset += Integer.BYTES) {
+                windows[(int) (offset / WINDOW)].putInt((int) (offset % WINDOW),
+                        simulator.getParticleColor(id).getRGB());
+            }
+            for (int id = 0; id < n; id++, offset += Integer.BYTES) {
+                windows[(int) (offset / WINDOW)].putInt((int) (offset % WINDOW), indices[id]);
+            }
+            for (int id = 0; id < n; id++, offset += Integer.BYTES) {
+                windows[(int) (offset / WINDOW)].putInt((int) (offset % WINDOW), cost[indices[id]]);
+            }
+            if (rungs != null) {
+                for (int id = 0; id < n; id++, offset++) {
+                    windows[(int) (offset / WINDOW)].put((int) (offset % WINDOW), rungs[id]);
+                }
+            }
+            for (MappedByteBuffer window : windows) {
+                window.force();
+            }
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Opens a checkpoint file. The particle arrays stay mapped until restore() reads them.
+     * @param path checkpoint file
+     * @return the checkpoint
+     * @throws IOException if the file cannot be read or is not a checkpoint of this version
+     */
+    public static Checkpoint read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IOException(path + " is not a checkpoint");
+            }
+            MappedByteBuffer[] windows = map(channel, FileChannel.MapMode.READ_ONLY, channel.size());
+            MappedByteBuffer header = windows[0];
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException(path + " is not a checkpoint");
+            }
+            if (header.getInt(4) != VERSION) {
+                throw new IOException("Checkpoint version " + header.getInt(4) + " is not supported");
+            }
+            int dimensions = header.getInt(8);
+            int n = header.getInt(12);
+            int flags = header.getInt(24);
+            byte[] json = new byte[header.getInt(28)];
+            for (int i = 0; i < json.length; i++) {
+                json[i] = header.get(HEADER_BYTES + i);
+            }
+            long arrayOffset = align(HEADER_BYTES + json.length);
+            long length = arrayOffset + (long) n * ((3 * dimensions + 1) * Double.BYTES + INTS * Integer.BYTES)
+                    + ((flags & RUNGS) != 0 ? n : 0);
+            if (channel.size() != length) {
+                throw new IOException(path + " is truncated");
+            }
+            ConfigLoader config;
+            try {
+                config = new ConfigLoader(new JSONObject(new String(json, StandardCharsets.UTF_8)));
+            } catch (JSONException e) {
+                throw new IOException("Checkpoint holds an invalid config", e);
+            }
+            double[] region = {header.getDouble(32), header.getDouble(40), header.getDouble(48)};
+            return new Checkpoint(dimensions, n, header.getLong(16), flags, config, region, arrayOffset, windows);
+        }
+    }
+
+    /**
+     * Creates the checkpointed simulation, a BarnesHut or a BarnesHut3D simulator depending on the dimensions.
+     * @return the simulator, positioned at getStep()
+     */
+    public Simulator restore() throws InvalidAttributeValueException {
+        if (dimensions == 3) {
+            return new BarnesHut3D(config, BarnesHut.createWorkerPool(config), this);
+        }
+        return new BarnesHut(config, BarnesHut.createWorkerPool(config), this);
+    }
+
+    /**
+     * Returns the number of steps the simulation had run when the checkpoint was taken.
+     * @return Step of the checkpoint
+     */
+    public long getStep() {
+        return step;
+    }
+
+    public int getDimensions() {
+        return dimensions;
+    }
+
+    public int getParticleCount() {
+        return particleCount;
+    }
+
+    public ConfigLoader getConfig() {
+        return config;
+    }
+
+    /**
+     * Returns the origin x, origin y and size of the quadtree's region of a two-dimensional simulation.
+     */
+    double[] getRegion() {
+        return region.clone();
+    }
+
+    boolean hasCurrentAccelerations() {
+        return (flags & CURRENT_ACCELERATIONS) != 0;
+    }
+
+    /**
+     * Returns the block timestep rungs of the particles, indexed by particle id, or null if none were saved.
+     */
+    byte[] getRungs() {
+        if ((flags & RUNGS) == 0) {
+            return null;
+        }
+        byte[] rungs = new byte[particleCount];
+        long offset = arrayOffset + (long) particleCount * ((3 * dimensions + 1) * Double.BYTES + INTS * Integer.BYTES);
+        for (int id = 0; id < particleCount; id++, offset++) {
+            rungs[id] = windows[(int) (offset / WINDOW)].get((int) (offset % WINDOW));
+        }
+        return rungs;
+    }
+
+    /**
+     * Adds the checkpointed particles of a two-dimensional simulation to an empty store, together with their
+     * accelerations and costs, in the order they had in the saved store, and appends a view of each to the particle
+     * list.
+     */
+    void restore(ParticleStore store, List<Particle> particles) {
+        int n = particleCount;
+        int[] order = new int[n];
+        for (int id = 0; id < n; id++) {
+            // Until the store is reordered, a new particle's index is its id.
+            store.add(getDouble(0, id), getDouble(1, id), getDouble(2, id), getDouble(3, id), getDouble(6, id));
+            store.ax[id] = getDouble(4, id);
+            store.ay[id] = getDouble(5, id);
+            store.cost[id] = getInt(10, id);
+            order[getInt(9, id)] = id;
+            particles.add(new Particle(store, id, new Color(getInt(8, id), true), getInt(7, id)));
+        }
+        store.reorder(order);
+    }
+
+    /**
+     * Adds the checkpointed particles of a three-dimensional simulation to an empty store, together with their
+     * accelerations and costs, in the order they had in the saved store, and appends a view of each to the particle
+     * list.
+     */
+    void restore(ParticleStore3D store, List<Particle3D> particles) {
+        int n = particleCount;
+        int[] order = new int[n];
+        for (int id = 0; id < n; id++) {
+            store.add(getDouble(0, id), getDouble(1, id), getDouble(2, id), getDouble(3, id), getDouble(4, id),
+                    getDouble(5, id), getDouble(9, id));
+            store.ax[id] = getDouble(6, id);
+            store.ay[id] = getDouble(7, id);
+            store.az[id] = getDouble(8, id);
+            store.cost[id] = getInt(13, id);
+            order[getInt(12, id)] = id;
+            particles.add(new Particle3D(store, id, new Color(getInt(11, id), true), getInt(10, id)));
+        }
+        store.reorder(order);
+    }
+
+    /**
+     * Reads a particle's entry of one of the double arrays, numbered in file order.
+     */
+    private double getDouble(int array, int id) {
+        long offset = arrayOffset + ((long) array * particleCount + id) * Double.BYTES;
+        return windows[(int) (offset / WINDOW)].getDouble((int) (offset % WINDOW));
+    }
+
+    /**
+     * Reads a particle's entry of one of the int arrays, numbered in file order after the double arrays.
+     */
+    private int getInt(int array, int id) {
+        int doubles = 3 * dimensions + 1;
+        long offset = arrayOffset + (long) doubles * particleCount * Double.BYTES
+                + ((long) (array - doubles) * particleCount + id) * Integer.BYTES;
+        return windows[(int) (offset / WINDOW)].getInt((int) (offset % WINDOW));
+    }
+
+    /**
+     * Maps a file of the given length in consecutive windows of at most WINDOW bytes, in little-endian order.
+     */
+    private static MappedByteBuffer[] map(FileChannel channel, FileChannel.MapMode mode, long length)
+            throws IOException {
+        MappedByteBuffer[] windows = new MappedByteBuffer[(int) Math.max(1, (length + WINDOW - 1) / WINDOW)];
+        for (int window = 0; window < windows.length; window++) {
+            long position = window * WINDOW;
+            windows[window] = channel.map(mode, position, Math.min(WINDOW, length - position));
+            windows[window].order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return windows;
+    }
+
+    private static long align(long offset) {
+        return (offset + Double.BYTES - 1) / Double.BYTES * Double.BYTES;
+    }
+}
@@ -0,0 +1,631 @@
+package simulate;
+
+import org.json.JSONException;
+import simulate.distributed.OrthogonalBisection;
+import simulate.distributed.SocketTransport;
+import simulate.distributed.Transport;
+import simulate.helpers.ConfigLoader;
+import simulate.helpers.Galaxy;
+import simulate.helpers.GalaxyBuilder;
+import simulate.integrate.ForceEvaluator;
+import simulate.integrate.Integrator;
+import simulate.objects.Particle;
+import simulate.objects.ParticleStore;
+import simulate.parallel.WorkerPool;
+import simulate.tree.AdaptiveBounds;
+import simulate.tree.ForceEngine;
+import simulate.tree.LinearQuadtree;
+import simulate.tree.LocallyEssentialTree;
+import simulate.tree.MortonKeys;
+import utils.Vector2D;
+
+import javax.management.InvalidAttributeValueException;
+import java.awt.*;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Two-dimensional Barnes-Hut simulation distributed over several processes, or ranks, that exchange messages through
+ * a Transport. Every rank holds the particles of its own domain, so the particle count is limited by the combined
+ * memory of the ranks rather than by the memory of one machine.
+ * <p>
+ * At the start of every step the domains are recomputed by orthogonal recursive bisection of a sample of the
+ * particles, weighted by the cost of their last force computation, and the particles are sent to the rank owning
+ * their position. To compute the accelerations, every rank builds a tree of its own particles and sends every other
+ * rank the locally essential tree of that rank's bounding box: the cells that the other rank's particles would
+ * accept as a whole, as single bodies, and the particles of the leaves they would open. Each rank then builds a
+ * second tree over its own particles and the bodies it received, and the configured force engine computes the
+ * accelerations of its own particles from it. Each rank thereby only communicates with the others once per force
+ * computation, and the amount of data it receives grows with the boundary of its domain, not with the total
+ * particle count, so the time of a step stays about the same when the particle count grows with the number of ranks.
+ * <p>
+ * When the simulation is created from a config, every rank builds its own slice of the galaxies' particles, so no
+ * rank ever holds all of them. Only rank 0, which produces the output of the run, keeps the size and color of every
+ * particle, and getPositions() gathers the positions of all ranks to rank 0, so like next() it must be called by all
+ * ranks at once. Block timesteps are not supported, since the ranks would evaluate the forces at different substeps.
+ */
+public class DistributedBarnesHut implements Simulator {
+
+    private static final int SAMPLES = 4096; // Largest number of particles each rank adds to the bisection sample.
+    private static final int PARTICLE_BYTES = 2 * Integer.BYTES + 7 * Double.BYTES;
+    private static final int BODY_BYTES = 3 * Double.BYTES;
+    private static final int POSITION_BYTES = Integer.BYTES + 2 * Double.BYTES;
+    private static final byte[] EMPTY = new byte[0];
+
+    private final double timeStep;
+    private final Transport transport;
+    private final int rank;
+    private final int ranks;
+    private final LinearQuadtree localTree; // Tree of the rank's own particles, from which bodies are exported.
+    private final LinearQuadtree tree; // Tree of the rank's own particles and the imported bodies.
+    private final AdaptiveBounds localBounds;
+    private final AdaptiveBounds bounds;
+    private final LocallyEssentialTree essentialTree;
+    private final ForceEngine engine;
+    private final Integrator integrator;
+    private final ForceEvaluator forces = this::computeAccelerations;
+    private final WorkerPool workers;
+    private final OrthogonalBisection bisection;
+    private final ParticleStore store = new ParticleStore(16); // The rank's own particles.
+    private final ParticleStore combined = new ParticleStore(16); // Own particles followed by imported bodies.
+    private final ParticleStore exported = new ParticleStore(16);
+    private int[] globalIds = new int[16]; // Global id of the own particle with each local id.
+    private int[] localIndices = new int[16]; // Indices of the own particles in the combined tree.
+    private int particleCount;
+    private int[] sizes; // Size of every particle on rank 0, null on the other ranks.
+    private int[] colors;
+    private int importedCount;
+
+    /**
+     * Creates the rank's part of the simulation described in the config file. The particles are numbered in the order
+     * of the galaxies, as by BarnesHut, and every rank builds an equal share of consecutive particles.
+     *
+     * @param loader the simulation config, which must be the same on all ranks
+     * @param transport connection to the other ranks
+     */
+    public DistributedBarnesHut(ConfigLoader loader, Transport transport) throws InvalidAttributeValueException,
+            IOException {
+        this(loader, null, transport, true);
+    }
+
+    /**
+     * Creates the rank's part of a simulation of the given particles, with the settings of the config file. The
+     * particles are dealt out to the ranks by rank 0, which therefore holds all of them at first.
+     *
+     * @param loader the simulation config, which must be the same on all ranks
+     * @param particles the particles of the simulation on rank 0, ignored on other ranks
+     * @param transport connection to the other ranks
+     */
+    public DistributedBarnesHut(ConfigLoader loader, List<Particle> particles, Transport transport)
+            throws InvalidAttributeValueException, IOException {
+        this(loader, particles, transport, false);
+    }
+
+    private DistributedBarnesHut(ConfigLoader loader, List<Particle> particles, Transport transport,
+                                 boolean buildGalaxies) throws InvalidAttributeValueException, IOException {
+        if (loader.getDimensions() != 2 || loader.getBlockTimesteps()) {
+            throw new InvalidAttributeValueException("DistributedBarnesHut only supports two dimensions without "
+                    + "block timesteps");
+        }
+        if (loader.getLeafCapacity() < 1 || loader.getMaxDepth() < 1 || loader.getMaxDepth() > MortonKeys.BITS) {
+            throw new InvalidAttributeValueException("Leaf capacity must be positive and maximum depth between 1 and "
+                    + MortonKeys.BITS);
+        }
+        this.timeStep = loader.getTimeStep();
+        this.transport = transport;
+        this.rank = transport.getRank();
+        this.ranks = transport.getSize();
+        int[] origin = loader.getOrigin();
+        this.localTree = new LinearQuadtree(origin[0], origin[1], loader.getSize(), false, loader.getLeafCapacity(),
+                loader.getMaxDepth());
+        this.tree = new LinearQuadtree(origin[0], origin[1], loader.getSize(), loader.getQuadrupole(),
+                loader.getLeafCapacity(), loader.getMaxDepth(), BarnesHut.hasSingleMoments(loader));
+        this.localBounds = new AdaptiveBounds(loader.getG(), 0);
+        this.bounds = new AdaptiveBounds(loader.getG(), 0);
+        this.essentialTree = new LocallyEssentialTree(loader.getTheta());
+        this.engine = BarnesHut.createForceEngine(loader);
+        this.integrator = Integrator.create(loader.getIntegrator());
+        this.workers = BarnesHut.createWorkerPool(loader);
+        this.bisection = new OrthogonalBisection(ranks);
+        if (buildGalaxies) {
+            buildGalaxies(loader);
+        } else {
+            distributeParticles(particles);
+        }
+    }
+
+    /**
+     * Advances the simulation forward by one time-step. Must be called by all ranks at once.
+     */
+    @Override
+    public void next() {
+        workers.run(() -> {
+            rebalance();
+            integrator.step(store, forces, timeStep);
+        });
+    }
+
+    /**
+     * Bisects the plane for a cost-weighted sample of the particles of all ranks and sends every particle to the
+     * rank owning its position. A particle's acceleration and cost travel with it. Only the particles that change
+     * rank are copied into messages; those that stay are compacted in place.
+     */
+    private void rebalance() {
+        int n = store.size();
+        int stride = Math.max(1, (n + SAMPLES - 1) / SAMPLES);
+        ByteBuffer sample = ByteBuffer.allocate((n + stride - 1) / stride * BODY_BYTES);
+        for (int from = 0; from < n; from += stride) {
+            double weight = 0;
+            for (int i = from; i < Math.min(n, from + stride); i++) {
+                weight += store.cost[i] + 1;
+            }
+            sample.putDouble(store.x[from]).putDouble(store.y[from]).putDouble(weight);
+        }
+        ByteBuffer[] samples = wrap(allGather(sample.array()));
+        int count = 0;
+        for (ByteBuffer buffer : samples) {
+            count += buffer.remaining() / BODY_BYTES;
+        }
+        double[] x = new double[count];
+        double[] y = new double[count];
+        double[] weight = new double[count];
+        for (int i = 0, from = 0; from < ranks; from++) {
+            for (; samples[from].hasRemaining(); i++) {
+                x[i] = samples[from].getDouble();
+                y[i] = samples[from].getDouble();
+                weight[i] = samples[from].getDouble();
+            }
+        }
+        bisection.partition(x, y, weight, count);
+
+        int[] destination = new int[n];
+        int[] counts = new int[ranks];
+        boolean[] stays = new boolean[n];
+        int[] stayingIds = new int[n];
+        int staying = 0;
+        for (int i = 0; i < n; i++) {
+            destination[i] = bisection.rankOf(store.x[i], store.y[i]);
+            counts[destination[i]]++;
+            stays[i] = destination[i] == rank;
+            if (stays[i]) {
+                stayingIds[staying++] = globalIds[store.idAt(i)];
+            }
+        }
+        counts[rank] = 0;
+        ByteBuffer[] outgoing = new ByteBuffer[ranks];
+        for (int to = 0; to < ranks; to++) {
+            outgoing[to] = ByteBuffer.allocate(counts[to] * PARTICLE_BYTES);
+        }
+        for (int i = 0; i < n; i++) {
+            if (stays[i]) {
+                continue;
+            }
+            outgoing[destination[i]].putInt(globalIds[store.idAt(i)]).putDouble(store.x[i]).putDouble(store.y[i])
+                    .putDouble(store.vx[i]).putDouble(store.vy[i]).putDouble(store.ax[i]).putDouble(store.ay[i])
+                    .putDouble(store.mass[i]).putInt(store.cost[i]);
+        }
+        // The particles that stay are renumbered in index order, followed by the ones received.
+        store.compact(stays);
+        System.arraycopy(stayingIds, 0, globalIds, 0, staying);
+        for (ByteBuffer incoming : wrap(exchange(arrays(outgoing)))) {
+            addParticles(incoming);
+        }
+    }
+
+    /**
+     * Computes the accelerations of the rank's own particles from its own tree and the locally essential trees
+     * received from the other ranks.
+     */
+    private void computeAccelerations() {
+        int n = store.size();
+        if (n > 0) {
+            localBounds.update(localTree, store);
+            localTree.build(store);
+        }
+        ByteBuffer[] boxes = wrap(allGather(n == 0 ? EMPTY : boundingBox()));
+
+        byte[][] outgoing = new byte[ranks][];
+        for (int to = 0; to < ranks; to++) {
+            outgoing[to] = EMPTY;
+            if (to != rank && n > 0 && boxes[to].hasRemaining()) {
+                double[] region = {boxes[to].getDouble(), boxes[to].getDouble(), boxes[to].getDouble(),
+                        boxes[to].getDouble()};
+                exported.clear();
+                int bodies = essentialTree.collect(localTree, store, region, exported);
+                ByteBuffer message = ByteBuffer.allocate(bodies * BODY_BYTES);
+                for (int i = 0; i < bodies; i++) {
+                    message.putDouble(exported.x[i]).putDouble(exported.y[i]).putDouble(exported.mass[i]);
+                }
+                outgoing[to] = message.array();
+            }
+        }
+        byte[][] incoming = exchange(outgoing);
+
+        combined.clear();
+        for (int i = 0; i < n; i++) {
+            combined.add(store.x[i], store.y[i], 0, 0, store.mass[i]);
+        }
+        for (int from = 0; from < ranks; from++) {
+            ByteBuffer bodies = ByteBuffer.wrap(incoming[from]);
+            while (bodies.hasRemaining()) {
+                combined.add(bodies.getDouble(), bodies.getDouble(), 0, 0, bodies.getDouble());
+            }
+        }
+        importedCount = combined.size() - n;
+        if (n == 0) {
+            return;
+        }
+        bounds.update(tree, combined);
+        tree.build(combined);
+        engine.prepare(tree, combined);
+        if (localIndices.length < n) {
+            localIndices = new int[store.x.length];
+        }
+        for (int i = 0, k = 0; i < combined.size(); i++) {
+            if (combined.idAt(i) < n) {
+                localIndices[k++] = i;
+            }
+        }
+        // The own particles' ids in the combined store are their indices in the rank's store.
+        workers.forEach(0, n, (from, end) -> {
+            for (int k = from; k < end; ) {
+                int run = k + 1;
+                while (run < end && localIndices[run] == localIndices[run - 1] + 1) {
+                    run++;
+                }
+                engine.accelerate(localIndices[k], localIndices[run - 1] + 1);
+                for (int j = k; j < run; j++) {
+                    int i = localIndices[j];
+                    int own = combined.idAt(i);
+                    store.ax[own] = combined.ax[i];
+                    store.ay[own] = combined.ay[i];
+                    store.cost[own] = combined.cost[i];
+                }
+                k = run;
+            }
+        });
+    }
+
+    /**
+     * Returns the bounding box of the rank's own particles, as minX, minY, maxX and maxY.
+     */
+    private byte[] boundingBox() {
+        double[] box = {Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE};
+        for (int i = 0; i < store.size(); i++) {
+            box[0] = Math.min(box[0], store.x[i]);
+            box[1] = Math.min(box[1], store.y[i]);
+            box[2] = Math.max(box[2], store.x[i]);
+            box[3] = Math.max(box[3], store.y[i]);
+        }
+        ByteBuffer message = ByteBuffer.allocate(4 * Double.BYTES);
+        for (double bound : box) {
+            message.putDouble(bound);
+        }
+        return message.array();
+    }
+
+    @Override
+    public int getDimensions() {
+        return 2;
+    }
+
+    @Override
+    public int getParticleCount() {
+        return particleCount;
+    }
+
+    /**
+     * Returns the size of a particle. Only rank 0 keeps the sizes of the particles.
+     *
+     * @throws IllegalStateException if called on another rank
+     */
+    @Override
+    public int getParticleSize(int id) {
+        checkRoot();
+        return sizes[id];
+    }
+
+    /**
+     * Returns the color of a particle. Only rank 0 keeps the colors of the particles.
+     *
+     * @throws IllegalStateException if called on another rank
+     */
+    @Override
+    public Color getParticleColor(int id) {
+        checkRoot();
+        return new Color(colors[id], true);
+    }
+
+    private void checkRoot() {
+        if (rank != 0) {
+            throw new IllegalStateException("Particle properties are only kept by rank 0");
+        }
+    }
+
+    /**
+     * Gathers the positions of the particles of all ranks to rank 0. Must be called by all ranks at once. On the other
+     * ranks the positions are left unchanged, and the array may be null.
+     */
+    @Override
+    public void getPositions(double[] positions) {
+        ByteBuffer message = ByteBuffer.allocate(store.size() * POSITION_BYTES);
+        for (int i = 0; i < store.size(); i++) {
+            message.putInt(globalIds[store.idAt(i)]).putDouble(store.x[i]).putDouble(store.y[i]);
+        }
+        byte[][] gathered = gather(message.array());
+        if (gathered == null) {
+            return;
+        }
+        for (ByteBuffer particles : wrap(gathered)) {
+            while (particles.hasRemaining()) {
+                int id = particles.getInt();
+                positions[2 * id] = particles.getDouble();
+                positions[2 * id + 1] = particles.getDouble();
+            }
+        }
+    }
+
+    /**
+     * Getter method for the store holding the state of the rank's own particles.
+     *
+     * @return the particle store
+     */
+    public ParticleStore getStore() {
+        return store;
+    }
+
+    /**
+     * Returns the global id of one of the rank's own particles.
+     *
+     * @param localId id of the particle in the rank's store
+     * @return id of the particle in the whole simulation
+     */
+    public int getGlobalId(int localId) {
+        return globalIds[localId];
+    }
+
+    /**
+     * Returns the number of bodies received from the other ranks by the last force computation.
+     *
+     * @return Imported body count
+     */
+    public int getImportedCount() {
+        return importedCount;
+    }
+
+    /**
+     * Returns the number of node and particle interactions evaluated by this rank's force engine in the last step.
+     *
+     * @return Interaction count of the last step.
+     */
+    public long getInteractionCount() {
+        return engine.getInteractionCount();
+    }
+
+    /**
+     * Getter method for the domain decomposition of the last step.
+     *
+     * @return the bisection of the plane into the ranks' domains
+     */
+    public OrthogonalBisection getBisection() {
+        return bisection;
+    }
+
+    /**
+     * Getter method for the threads the rank runs on.
+     *
+     * @return the worker pool
+     */
+    public WorkerPool getWorkerPool() {
+        return workers;
+    }
+
+    /**
+     * Builds the rank's share of the particles of the galaxies in the config: the particles with ids from
+     * rank * n / ranks to (rank + 1) * n / ranks - 1, where n is the particle count of all galaxies. The sizes and
+     * colors of the particles are gathered to rank 0. The particles are sorted into their domains by the first step.
+     */
+    private void buildGalaxies(ConfigLoader loader) throws InvalidAttributeValueException, IOException {
+        GalaxyBuilder builder = new GalaxyBuilder(loader.getG());
+        long total = 0;
+        for (Galaxy galaxy : loader.getGalaxies()) {
+            total += builder.getParticleCount(galaxy);
+        }
+        particleCount = (int) total;
+        int first = (int) (total * rank / ranks);
+        int last = (int) (total * (rank + 1) / ranks);
+        ByteBuffer properties = ByteBuffer.allocate(2 * Integer.BYTES * (last - first));
+        int offset = 0; // Id of the galaxy's first particle.
+        for (Galaxy galaxy : loader.getGalaxies()) {
+            int count = builder.getParticleCount(galaxy);
+            int from = Math.max(first, offset);
+            int to = Math.min(last, offset + count);
+            if (from < to) {
+                int id = from;
+                for (Particle particle : builder.buildGalaxy(galaxy, from - offset, to - offset)) {
+                    properties.putInt(particle.getSize()).putInt(particle.getColor().getRGB());
+                    addParticle(id++, particle);
+                }
+            }
+            offset += count;
+        }
+        byte[][] gathered = gather(properties.array());
+        if (gathered != null) {
+            sizes = new int[particleCount];
+            colors = new int[particleCount];
+            // The ranks' shares are consecutive, so the gathered properties are in id order.
+            int id = 0;
+            for (ByteBuffer share : wrap(gathered)) {
+                for (; share.hasRemaining(); id++) {
+                    sizes[id] = share.getInt();
+                    colors[id] = share.getInt();
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends the particles held by rank 0 to all ranks, dealing them out in turn, together with the particle count.
+     * Rank 0 keeps the sizes and colors of the particles. The particles are sorted into their domains by the first
+     * step.
+     */
+    private void distributeParticles(List<Particle> particles) throws IOException {
+        byte[][] outgoing = new byte[ranks][];
+        Arrays.fill(outgoing, EMPTY);
+        if (rank == 0) {
+            sizes = new int[particles.size()];
+            colors = new int[particles.size()];
+            ByteBuffer[] particleMessages = new ByteBuffer[ranks];
+            for (int to = 0; to < ranks; to++) {
+                int count = particles.size() / ranks + (to < particles.size() % ranks ? 1 : 0);
+                particleMessages[to] = ByteBuffer.allocate(Integer.BYTES + count * PARTICLE_BYTES)
+                        .putInt(particles.size());
+            }
+            for (int id = 0; id < particles.size(); id++) {
+                Particle particle = particles.get(id);
+                sizes[id] = particle.getSize();
+                colors[id] = particle.getColor().getRGB();
+                Vector2D position = particle.getPosition();
+                Vector2D velocity = particle.getVelocity();
+                particleMessages[id % ranks].putInt(id).putDouble(position.getX()).putDouble(position.getY())
+                        .putDouble(velocity.getX()).putDouble(velocity.getY()).putDouble(0).putDouble(0)
+                        .putDouble(particle.getMass()).putInt(0);
+            }
+            outgoing = arrays(particleMessages);
+        }
+        ByteBuffer message = ByteBuffer.wrap(sendAll(outgoing)[0]);
+        particleCount = message.getInt();
+        addParticles(message);
+    }
+
+    /**
+     * Adds a particle built by this rank to its store.
+     */
+    private void addParticle(int globalId, Particle particle) {
+        Vector2D position = particle.getPosition();
+        Vector2D velocity = particle.getVelocity();
+        int id = store.add(position.getX(), position.getY(), velocity.getX(), velocity.getY(), particle.getMass());
+        if (id == globalIds.length) {
+            globalIds = Arrays.copyOf(globalIds, store.x.length);
+        }
+        globalIds[id] = globalId;
+    }
+
+    /**
+     * Adds the particles of a message to the rank's store.
+     */
+    private void addParticles(ByteBuffer particles) {
+        while (particles.hasRemaining()) {
+            int globalId = particles.getInt();
+            int id = store.add(particles.getDouble(), particles.getDouble(), particles.getDouble(),
+                    particles.getDouble(), 0);
+            // Until the store is reordered, a new particle's index is its id.
+            store.ax[id] = particles.getDouble();
+            store.ay[id] = particles.getDouble();
+            store.mass[id] = particles.getDouble();
+            store.cost[id] = particles.getInt();
+            if (id == globalIds.length) {
+                globalIds = Arrays.copyOf(globalIds, store.x.length);
+            }
+            globalIds[id] = globalId;
+        }
+    }
+
+    /**
+     * Sends a message to every rank and returns the message received from every rank, indexed by rank.
+     */
+    private byte[][] exchange(byte[][] outgoing) {
+        try {
+            return sendAll(outgoing);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private byte[][] sendAll(byte[][] outgoing) throws IOException {
+        for (int to = 0; to < ranks; to++) {
+            if (to != rank) {
+                transport.send(to, outgoing[to]);
+            }
+        }
+        byte[][] incoming = new byte[ranks][];
+        for (int from = 0; from < ranks; from++) {
+            incoming[from] = from == rank ? outgoing[rank] : transport.receive(from);
+        }
+        return incoming;
+    }
+
+    /**
+     * Sends a message from every rank to rank 0.
+     * @return The message of every rank, indexed by rank, on rank 0, and null on the other ranks
+     */
+    private byte[][] gather(byte[] message) {
+        try {
+            if (rank != 0) {
+                transport.send(0, message);
+                return null;
+            }
+            byte[][] incoming = new byte[ranks][];
+            incoming[0] = message;
+            for (int from = 1; from < ranks; from++) {
+                incoming[from] = transport.receive(from);
+            }
+            return incoming;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private byte[][] allGather(byte[] message) {
+        byte[][] outgoing = new byte[ranks][];
+        Arrays.fill(outgoing, message);
+        return exchange(outgoing);
+    }
+
+    private static byte[][] arrays(ByteBuffer[] buffers) {
+        byte[][] arrays = new byte[buffers.length][];
+        for (int i = 0; i < buffers.length; i++) {
+            arrays[i] = buffers[i].array();
+        }
+        return arrays;
+    }
+
+    private static ByteBuffer[] wrap(byte[][] arrays) {
+        ByteBuffer[] buffers = new ByteBuffer[arrays.length];
+        for (int i = 0; i < arrays.length; i++) {
+            buffers[i] = ByteBuffer.wrap(arrays[i]);
+        }
+        return buffers;
+    }
+
+    /**
+     * Runs one rank of a distributed simulation over sockets and prints the time per step on rank 0. Every rank is
+     * started with the same config file, address list and step count, and its own rank.
+     *
+     * @param args config file, rank, comma-separated host:port addresses of all ranks and number of steps
+     */
+    public static void main(String[] args) throws IOException, JSONException, InvalidAttributeValueException {
+        if (args.length != 4) {
+            System.out.println("Usage: DistributedBarnesHut <config> <rank> <host:port,host:port,...> <steps>");
+            return;
+        }
+        ConfigLoader loader = new ConfigLoader(args[0]);
+        int rank = Integer.parseInt(args[1]);
+        int steps = Integer.parseInt(args[3]);
+        try (Transport transport = new SocketTransport(rank, SocketTransport.parseAddresses(args[2]))) {
+            DistributedBarnesHut simulator = new DistributedBarnesHut(loader, transport);
+            long begin = System.nanoTime();
+            for (int step = 0; step < steps; step++) {
+                simulator.next();
+            }
+            double time = (System.nanoTime() - begin) / 1e6 / steps;
+            if (rank == 0) {
+                System.out.printf("%d particles on %d ranks: %.1f ms per step%n", simulator.getParticleCount(),
+                        transport.getSize(), time);
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package simulate;
+
+import java.awt.*;
+
+/**
+ * A gravitational simulation that is advanced one time-step at a time by calling next(). Gives exporters access to
+ * the particles independently of the number of dimensions simulated. Particles are identified by their id, which is
+ * the order in which they were added to the simulation.
+ */
+public interface Simulator {
+
+    /**
+     * Advances the simulation forward by one time-step.
+     */
+    void next();
+
+    /**
+     * Returns the number of spatial dimensions of the simulation, 2 or 3.
+     * @return Dimension count
+     */
+    int getDimensions();
+
+    /**
+     * Returns the number of simulated particles.
+     * @return Particle count
+     */
+    int getParticleCount();
+
+    /**
+     * Returns the size at which a particle is drawn.
+     * @param id Particle id
+     * @return Particle size
+     */
+    int getParticleSize(int id);
+
+    /**
+     * Returns the color in which a particle is drawn.
+     * @param id Particle id
+     * @return Particle color
+     */
+    Color getParticleColor(int id);
+
+    /**
+     * Copies the current particle positions into the given array, ordered by particle id, with the getDimensions()
+     * coordinates of each particle next to each other.
+     * @param positions Array of at least getDimensions() * getParticleCount() entries
+     */
+    void getPositions(double[] positions);
+}
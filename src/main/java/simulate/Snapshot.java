@@ -0,0 +1,67 @@
+package simulate;
+
+/**
+ * Positions of all particles of a simulator after a completed step, published by a SnapshotBuffer. A snapshot is
+ * read-only for its consumers and is not overwritten between SnapshotBuffer.acquire() and SnapshotBuffer.release(),
+ * so it can be read while the simulator computes the following steps. The positions are ordered by particle id,
+ * with the getDimensions() coordinates of each particle next to each other, as in Simulator.getPositions().
+ */
+public final class Snapshot {
+
+    private final int dimensions;
+    private final double[] positions;
+    private long step;
+    int readers; // Number of consumers holding the snapshot, guarded by the buffer.
+    int pending; // Number of consumers of a lossless buffer that have not released the snapshot yet.
+
+    Snapshot(int dimensions, int particleCount) {
+        this.dimensions = dimensions;
+        this.positions = new double[dimensions * particleCount];
+    }
+
+    /**
+     * Copies the simulator's current positions into the snapshot. Only called by the buffer's producer while no
+     * consumer holds the snapshot.
+     */
+    void capture(Simulator simulator) {
+        simulator.getPositions(positions);
+    }
+
+    void setStep(long step) {
+        this.step = step;
+    }
+
+    /**
+     * Returns the number of steps the simulator had completed when the snapshot was taken.
+     * @return Step number, starting at 1 for the first published snapshot
+     */
+    public long getStep() {
+        return step;
+    }
+
+    public int getDimensions() {
+        return dimensions;
+    }
+
+    public int getParticleCount() {
+        return positions.length / dimensions;
+    }
+
+    /**
+     * Returns a coordinate of a particle.
+     * @param id Particle id
+     * @param axis 0 for x, 1 for y and 2 for z
+     * @return Coordinate of the particle along the axis
+     */
+    public double getPosition(int id, int axis) {
+        return positions[dimensions * id + axis];
+    }
+
+    /**
+     * Copies the positions into the given array, in the layout of Simulator.getPositions().
+     * @param destination Array of at least getDimensions() * getParticleCount() entries
+     */
+    public void copyPositions(double[] destination) {
+        System.arraycopy(positions, 0, destination, 0, positions.length);
+    }
+}
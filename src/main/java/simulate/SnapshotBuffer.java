@@ -0,0 +1,181 @@
+package simulate;
+
+/**
+ * Double or triple buffer of Snapshots through which a simulator hands its positions to consumers running on other
+ * threads, such as animators, exporters and analysers. The thread advancing the simulator calls publish() after each
+ * step, which copies the positions into a frame that no consumer holds and makes it the latest frame. Consumers
+ * read the latest completed frame between acquire() and release() while the next step is already being computed,
+ * and never see a frame that is being written.
+ * <p>
+ * A buffer that is not lossless always keeps the latest frame, so consumers that are slower than the simulation skip
+ * frames; with three frames the producer never waits for a single consumer. A lossless buffer serves a fixed number
+ * of consumers that must each see every frame in order, such as the writers of an exporter: a frame is only reused
+ * once every consumer has released it, and publish() waits while all frames are still pending, which keeps the
+ * simulation at most frames - 1 steps ahead of the slowest consumer. The frames thus form a bounded ring that applies
+ * backpressure to the simulation.
+ */
+public class SnapshotBuffer {
+
+    private final Simulator simulator;
+    private final Snapshot[] frames;
+    private final int consumers; // Number of lossless consumers, 0 if the buffer is not lossless.
+    private Snapshot latest; // Last published frame, null before the first publish.
+    private long step;
+    private boolean closed;
+
+    /**
+     * @param simulator simulator whose positions are published
+     * @param frames number of frames, 2 for double and 3 for triple buffering
+     * @param lossless whether every frame must be consumed before it is reused
+     */
+    public SnapshotBuffer(Simulator simulator, int frames, boolean lossless) {
+        this(simulator, frames, lossless ? 1 : 0);
+    }
+
+    /**
+     * Creates a lossless buffer for several consumers, or a buffer that is not lossless for 0 consumers.
+     * @param simulator simulator whose positions are published
+     * @param frames number of frames, at least 2
+     * @param consumers number of consumers that must each see every frame
+     */
+    public SnapshotBuffer(Simulator simulator, int frames, int consumers) {
+        if (frames < 2) {
+            throw new IllegalArgumentException("A snapshot buffer needs at least two frames");
+        }
+        this.simulator = simulator;
+        this.frames = new Snapshot[frames];
+        for (int frame = 0; frame < frames; frame++) {
+            this.frames[frame] = new Snapshot(simulator.getDimensions(), simulator.getParticleCount());
+        }
+        this.consumers = consumers;
+    }
+
+    /**
+     * Copies the simulator's current positions into a free frame and publishes it as the latest frame. Waits while
+     * no frame is free. Does nothing once the buffer is closed.
+     */
+    public void publish() {
+        Snapshot frame;
+        synchronized (this) {
+            boolean interrupted = false;
+            while ((frame = freeFrame()) == null && !closed) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (closed) {
+                return;
+            }
+            frame.readers = 1; // Held by the producer while it is written.
+        }
+        frame.capture(simulator);
+        synchronized (this) {
+            frame.setStep(++step);
+            frame.readers = 0;
+            frame.pending = consumers;
+            latest = frame;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Returns the latest published frame without waiting. The frame must be handed back with release().
+     * @return the latest frame, or null if nothing was published yet
+     */
+    public synchronized Snapshot acquire() {
+        if (latest != null) {
+            latest.readers++;
+        }
+        return latest;
+    }
+
+    /**
+     * Waits for a frame taken after the given step. A lossless buffer returns the frame of the following step, any
+     * other buffer the latest frame. The frame must be handed back with release().
+     * @param afterStep step of the last frame seen by the consumer, 0 if none
+     * @return the frame, or null if the buffer was closed and no such frame is left
+     */
+    public synchronized Snapshot acquireNext(long afterStep) throws InterruptedException {
+        while (true) {
+            Snapshot frame = consumers > 0 ? find(afterStep + 1) : latest;
+            if (frame != null && frame.getStep() > afterStep) {
+                frame.readers++;
+                return frame;
+            }
+            if (closed) {
+                return null;
+            }
+            wait();
+        }
+    }
+
+    /**
+     * Hands a frame obtained from acquire() or acquireNext() back to the buffer.
+     * @param frame the frame
+     */
+    public synchronized void release(Snapshot frame) {
+        frame.readers--;
+        if (frame.pending > 0) {
+            frame.pending--;
+        }
+        notifyAll();
+    }
+
+    /**
+     * Waits until the consumers of a lossless buffer have released every published frame, or the buffer is closed.
+     * Returns at once for a buffer that is not lossless.
+     */
+    public synchronized void awaitConsumed() throws InterruptedException {
+        while (!closed && hasPending()) {
+            wait();
+        }
+    }
+
+    /**
+     * Stops publishing. Waiting producers return and consumers receive the frames that are left, then null.
+     */
+    public synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    /**
+     * Returns the number of frames published so far.
+     * @return Step of the latest frame
+     */
+    public synchronized long getStep() {
+        return step;
+    }
+
+    private Snapshot freeFrame() {
+        for (Snapshot frame : frames) {
+            if (frame != latest && frame.readers == 0 && frame.pending == 0) {
+                return frame;
+            }
+        }
+        return null;
+    }
+
+    private boolean hasPending() {
+        for (Snapshot frame : frames) {
+            if (frame.pending > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Snapshot find(long frameStep) {
+        for (Snapshot frame : frames) {
+            if (frame.getStep() == frameStep && (frame.pending > 0 || frame == latest)) {
+                return frame;
+            }
+        }
+        return null;
+    }
+}
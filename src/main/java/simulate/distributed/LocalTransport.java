@@ -0,0 +1,72 @@
+package simulate.distributed;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Transport between ranks that run as threads of one JVM. Every ordered pair of ranks is connected by an unbounded
+ * queue, so messages are handed over without being copied.
+ */
+public class LocalTransport implements Transport {
+
+    private final int rank;
+    private final List<List<BlockingQueue<byte[]>>> queues; // Queue of the messages from one rank to another.
+
+    private LocalTransport(int rank, List<List<BlockingQueue<byte[]>>> queues) {
+        this.rank = rank;
+        this.queues = queues;
+    }
+
+    /**
+     * Creates the connected transports of all ranks.
+     * @param size number of ranks
+     * @return Transport of each rank, indexed by rank
+     */
+    public static Transport[] create(int size) {
+        List<List<BlockingQueue<byte[]>>> queues = new ArrayList<>(size);
+        for (int from = 0; from < size; from++) {
+            List<BlockingQueue<byte[]>> outgoing = new ArrayList<>(size);
+            for (int to = 0; to < size; to++) {
+                outgoing.add(new LinkedBlockingQueue<>());
+            }
+            queues.add(outgoing);
+        }
+        Transport[] transports = new Transport[size];
+        for (int rank = 0; rank < size; rank++) {
+            transports[rank] = new LocalTransport(rank, queues);
+        }
+        return transports;
+    }
+
+    @Override
+    public int getRank() {
+        return rank;
+    }
+
+    @Override
+    public int getSize() {
+        return queues.size();
+    }
+
+    @Override
+    public void send(int rank, byte[] message) {
+        queues.get(this.rank).get(rank).add(message);
+    }
+
+    @Override
+    public byte[] receive(int rank) throws InterruptedIOException {
+        try {
+            return queues.get(rank).get(this.rank).take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for rank " + rank);
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,179 @@
+package simulate.distributed;
+
+import java.util.Arrays;
+
+/**
+ * Orthogonal recursive bisection of the plane into one rectangular domain per rank. The ranks are split into two
+ * halves, and the weighted points are split by a line across the longer side of their bounding box so that each half
+ * of the ranks receives its share of the weight; both sides are then bisected in turn until every rank has its own
+ * domain. With the particles weighted by their cost, every rank receives about the same amount of work. The outer
+ * domains extend to infinity, so every position lies in exactly one domain.
+ * <p>
+ * Every rank partitions the same gathered sample of points, and the partition only depends on the points, so all
+ * ranks arrive at the same domains without further communication.
+ */
+public class OrthogonalBisection {
+
+    private static final int SPLIT_ITERATIONS = 64; // Bisection steps used to find the weighted split of a node.
+
+    private final int ranks;
+    // Binary tree of the splits in preorder; the left child of a split node directly follows it.
+    private final int[] firstRank;
+    private final int[] rankCount;
+    private final int[] rightChild;
+    private final int[] axis;
+    private final double[] split;
+    private final double[][] domains; // minX, minY, maxX and maxY of every rank's domain.
+    private int nodeCount;
+    private double[] x;
+    private double[] y;
+    private double[] weight;
+    private int[] order = new int[0];
+
+    /**
+     * Initializes the partition for an empty set of points, which splits the plane at the origin.
+     * @param ranks number of ranks
+     */
+    public OrthogonalBisection(int ranks) {
+        this.ranks = ranks;
+        this.firstRank = new int[2 * ranks];
+        this.rankCount = new int[2 * ranks];
+        this.rightChild = new int[2 * ranks];
+        this.axis = new int[2 * ranks];
+        this.split = new double[2 * ranks];
+        this.domains = new double[ranks][];
+        partition(new double[0], new double[0], new double[0], 0);
+    }
+
+    /**
+     * Bisects the plane for the given weighted points.
+     * @param x x-coordinates of the points
+     * @param y y-coordinates of the points
+     * @param weight weights of the points
+     * @param count number of points
+     */
+    public void partition(double[] x, double[] y, double[] weight, int count) {
+        this.x = x;
+        this.y = y;
+        this.weight = weight;
+        if (order.length < count) {
+            order = new int[count];
+        }
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        nodeCount = 0;
+        double infinity = Double.POSITIVE_INFINITY;
+        bisect(0, ranks, 0, count, new double[]{-infinity, -infinity, infinity, infinity});
+    }
+
+    /**
+     * Returns the rank whose domain contains the given position.
+     * @param x x-coordinate of the position
+     * @param y y-coordinate of the position
+     * @return Rank
+     */
+    public int rankOf(double x, double y) {
+        int node = 0;
+        while (rankCount[node] > 1) {
+            double coordinate = axis[node] == 0 ? x : y;
+            node = coordinate < split[node] ? node + 1 : rightChild[node];
+        }
+        return firstRank[node];
+    }
+
+    /**
+     * Returns the domain of a rank.
+     * @param rank the rank
+     * @return minX, minY, maxX and maxY of the domain
+     */
+    public double[] getDomain(int rank) {
+        return Arrays.copyOf(domains[rank], 4);
+    }
+
+    /**
+     * Splits the ranks lo to hi - 1 and the points order[from] to order[to - 1], which lie inside the box.
+     */
+    private void bisect(int lo, int hi, int from, int to, double[] box) {
+        int node = nodeCount++;
+        firstRank[node] = lo;
+        rankCount[node] = hi - lo;
+        if (hi - lo == 1) {
+            domains[lo] = box;
+            return;
+        }
+        int leftRanks = (hi - lo) / 2;
+        double[] bounds = bounds(from, to);
+        int nodeAxis = bounds[2] - bounds[0] >= bounds[3] - bounds[1] ? 0 : 1;
+        double total = 0;
+        for (int i = from; i < to; i++) {
+            total += weight[order[i]];
+        }
+        double target = total * leftRanks / (hi - lo);
+        double low = bounds[nodeAxis];
+        double high = bounds[nodeAxis + 2];
+        if (from == to) {
+            // No points: split the box, or the origin of an unbounded box, so that the domains stay disjoint.
+            low = Double.isInfinite(box[nodeAxis]) ? 0 : box[nodeAxis];
+            high = Double.isInfinite(box[nodeAxis + 2]) ? low : box[nodeAxis + 2];
+        }
+        for (int iteration = 0; iteration < SPLIT_ITERATIONS && low < high; iteration++) {
+            double middle = low + (high - low) / 2;
+            if (weightBelow(from, to, nodeAxis, middle) < target) {
+                low = middle;
+            } else {
+                high = middle;
+            }
+        }
+        axis[node] = nodeAxis;
+        split[node] = high;
+        int middle = partitionPoints(from, to, nodeAxis, high);
+        double[] leftBox = box.clone();
+        double[] rightBox = box.clone();
+        leftBox[nodeAxis + 2] = high;
+        rightBox[nodeAxis] = high;
+        bisect(lo, lo + leftRanks, from, middle, leftBox);
+        rightChild[node] = nodeCount;
+        bisect(lo + leftRanks, hi, middle, to, rightBox);
+    }
+
+    private double[] bounds(int from, int to) {
+        double[] bounds = {Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE};
+        for (int i = from; i < to; i++) {
+            int point = order[i];
+            bounds[0] = Math.min(bounds[0], x[point]);
+            bounds[1] = Math.min(bounds[1], y[point]);
+            bounds[2] = Math.max(bounds[2], x[point]);
+            bounds[3] = Math.max(bounds[3], y[point]);
+        }
+        return bounds;
+    }
+
+    private double weightBelow(int from, int to, int nodeAxis, double value) {
+        double[] coordinates = nodeAxis == 0 ? x : y;
+        double below = 0;
+        for (int i = from; i < to; i++) {
+            if (coordinates[order[i]] < value) {
+                below += weight[order[i]];
+            }
+        }
+        return below;
+    }
+
+    /**
+     * Moves the points below the split value in front of the others.
+     * @return Index of the first point at or above the split value
+     */
+    private int partitionPoints(int from, int to, int nodeAxis, double value) {
+        double[] coordinates = nodeAxis == 0 ? x : y;
+        int middle = from;
+        for (int i = from; i < to; i++) {
+            if (coordinates[order[i]] < value) {
+                int point = order[i];
+                order[i] = order[middle];
+                order[middle++] = point;
+            }
+        }
+        return middle;
+    }
+}
@@ -0,0 +1,197 @@
+package simulate.distributed;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Transport between ranks that run as separate processes, possibly on separate hosts, connected by TCP sockets.
+ * Every rank listens on its own address, connects to the ranks below it and accepts the connections of the ranks
+ * above it, so each pair of ranks shares one socket. Messages are written as a length followed by the contents. A
+ * reader thread per connection moves the incoming messages into a queue, which keeps the connection drained while
+ * its rank is busy sending, so ranks can send to each other at the same time without blocking.
+ */
+public class SocketTransport implements Transport {
+
+    private static final int CONNECT_TIMEOUT = 60_000; // Time in ms to wait for the lower ranks to start listening.
+    private static final int RETRY_DELAY = 50;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final byte[] FAILED = new byte[0]; // Queued by a reader whose connection failed.
+
+    private final int rank;
+    private final int size;
+    private final ServerSocket server;
+    private final Socket[] sockets;
+    private final DataOutputStream[] outputs;
+    private final List<BlockingQueue<byte[]>> inboxes;
+    private final BlockingQueue<byte[]> self = new LinkedBlockingQueue<>();
+
+    /**
+     * Connects this rank to all other ranks and returns once every connection is established.
+     * @param rank rank of this process
+     * @param addresses address every rank listens on, indexed by rank
+     */
+    public SocketTransport(int rank, InetSocketAddress[] addresses) throws IOException {
+        if (rank < 0 || rank >= addresses.length) {
+            throw new IllegalArgumentException("Rank " + rank + " is not between 0 and " + (addresses.length - 1));
+        }
+        this.rank = rank;
+        this.size = addresses.length;
+        this.sockets = new Socket[size];
+        this.outputs = new DataOutputStream[size];
+        this.inboxes = new ArrayList<>(Collections.nCopies(size, null));
+        this.server = new ServerSocket();
+        try {
+            server.setReuseAddress(true);
+            server.bind(addresses[rank], size);
+            for (int lower = 0; lower < rank; lower++) {
+                Socket socket = connect(addresses[lower]);
+                new DataOutputStream(socket.getOutputStream()).writeInt(rank);
+                open(lower, socket);
+            }
+            for (int accepted = rank + 1; accepted < size; accepted++) {
+                Socket socket = server.accept();
+                int higher = new DataInputStream(socket.getInputStream()).readInt();
+                if (higher <= rank || higher >= size || sockets[higher] != null) {
+                    socket.close();
+                    throw new IOException("Unexpected connection from rank " + higher);
+                }
+                open(higher, socket);
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Parses a comma-separated list of host:port addresses.
+     * @param addresses addresses of all ranks in rank order, for example "localhost:7000,localhost:7001"
+     * @return Socket addresses indexed by rank
+     */
+    public static InetSocketAddress[] parseAddresses(String addresses) {
+        String[] parts = addresses.split(",");
+        InetSocketAddress[] parsed = new InetSocketAddress[parts.length];
+        for (int rank = 0; rank < parts.length; rank++) {
+            String part = parts[rank].trim();
+            int colon = part.lastIndexOf(':');
+            if (colon < 0) {
+                throw new IllegalArgumentException("Address " + part + " has no port");
+            }
+            parsed[rank] = new InetSocketAddress(part.substring(0, colon), Integer.parseInt(part.substring(colon + 1)));
+        }
+        return parsed;
+    }
+
+    @Override
+    public int getRank() {
+        return rank;
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public void send(int rank, byte[] message) throws IOException {
+        if (rank == this.rank) {
+            self.add(message);
+            return;
+        }
+        DataOutputStream output = outputs[rank];
+        synchronized (output) {
+            output.writeInt(message.length);
+            output.write(message);
+            output.flush();
+        }
+    }
+
+    @Override
+    public byte[] receive(int rank) throws IOException {
+        try {
+            byte[] message = (rank == this.rank ? self : inboxes.get(rank)).take();
+            if (message == FAILED) {
+                inboxes.get(rank).add(FAILED);
+                throw new EOFException("Connection to rank " + rank + " was closed");
+            }
+            return message;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for rank " + rank);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Socket socket : sockets) {
+            if (socket != null) {
+                socket.close();
+            }
+        }
+        server.close();
+    }
+
+    /**
+     * Connects to a rank, retrying until it listens or the connect timeout has passed.
+     */
+    private static Socket connect(InetSocketAddress address) throws IOException {
+        long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT;
+        while (true) {
+            Socket socket = new Socket();
+            try {
+                socket.connect(address, CONNECT_TIMEOUT);
+                return socket;
+            } catch (ConnectException e) {
+                socket.close();
+                if (System.currentTimeMillis() > deadline) {
+                    throw e;
+                }
+                try {
+                    Thread.sleep(RETRY_DELAY);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while connecting to " + address);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets up the streams of a connection and starts its reader thread.
+     */
+    private void open(int peer, Socket socket) throws IOException {
+        socket.setTcpNoDelay(true);
+        sockets[peer] = socket;
+        outputs[peer] = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE));
+        BlockingQueue<byte[]> inbox = new LinkedBlockingQueue<>();
+        inboxes.set(peer, inbox);
+        DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE));
+        Thread reader = new Thread(() -> {
+            try {
+                while (true) {
+                    byte[] message = new byte[input.readInt()];
+                    input.readFully(message);
+                    inbox.add(message);
+                }
+            } catch (IOException e) {
+                inbox.add(FAILED);
+            }
+        }, "Transport-" + rank + "-reader-" + peer);
+        reader.setDaemon(true);
+        reader.start();
+    }
+}
@@ -0,0 +1,41 @@
+package simulate.distributed;
+
+import java.io.IOException;
+
+/**
+ * Point-to-point message channel between the processes, or ranks, of a distributed simulation. Ranks are numbered
+ * from 0 to getSize() - 1. Messages between two ranks arrive in the order they were sent, and send() must not wait
+ * for the receiver to call receive(), so that every rank can send to all others before receiving. Implementations
+ * decide how the ranks are connected, for example over sockets between processes or through queues between threads.
+ */
+public interface Transport extends AutoCloseable {
+
+    /**
+     * Returns the rank of this process.
+     * @return Rank, from 0 to getSize() - 1
+     */
+    int getRank();
+
+    /**
+     * Returns the number of ranks.
+     * @return Rank count
+     */
+    int getSize();
+
+    /**
+     * Sends a message to another rank. The message must not be modified afterwards.
+     * @param rank receiving rank
+     * @param message message contents
+     */
+    void send(int rank, byte[] message) throws IOException;
+
+    /**
+     * Waits for the next message from another rank.
+     * @param rank sending rank
+     * @return message contents
+     */
+    byte[] receive(int rank) throws IOException;
+
+    @Override
+    void close() throws IOException;
+}
@@ -4,6 +4,8 @@ import com.google.common.io.Files;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import simulate.parallel.CostZones;
+import simulate.parallel.WorkerPool;
 
 import java.io.File;
 import java.io.IOException;
@@ -22,11 +24,50 @@ public class ConfigLoader {
     private double G;
     private double theta;
     private double timeStep;
+    private int dimensions;
+    private String integrator;
+    private boolean blockTimesteps;
+    private int maxRung;
+    private double timestepAccuracy;
+    private String forceEngine;
+    private int groupSize;
+    private boolean simd;
+    private String precision;
+    private boolean quadrupole;
+    private int expansionOrder;
+    private int threads;
+    private int chunkSize;
+    private boolean costZones;
+    private int zonesPerThread;
+    private int leafCapacity;
+    private int maxDepth;
+    private boolean adaptiveBounds;
+    private double escapeRadius;
+    private boolean refit;
+    private double refitImbalance;
+    private int refitMaxLeafCount;
+    private int checkpointInterval;
+    private String[] exportFormats;
+    private int exportBufferFrames;
+    private int exportStride;
+    private int[][] exportParticles;
+    private double exportTracerFraction;
+    private double exportMaxFileSize;
+    private String exportPrecision;
+    private double exportQuantization;
+    private int exportKeyframeInterval;
     private JSONObject fileContents;
 
     public ConfigLoader(String configFilePath) throws IOException, JSONException {
-        String fileText = Files.asCharSource(new File(configFilePath), StandardCharsets.UTF_8).read();
-        fileContents = new JSONObject(fileText);
+        this(new JSONObject(Files.asCharSource(new File(configFilePath), StandardCharsets.UTF_8).read()));
+    }
+
+    /**
+     * Loads a config that has already been parsed, for example one stored in a checkpoint.
+     * @param contents the config's JSON object
+     */
+    public ConfigLoader(JSONObject contents) throws JSONException {
+        fileContents = contents;
         loadGalaxies();
         loadSimParams();
     }
@@ -49,6 +90,57 @@ public class ConfigLoader {
         this.G = fileContents.getDouble("G");
         this.theta = fileContents.getDouble("Theta");
         this.timeStep = fileContents.getDouble("TimeStep");
+        this.dimensions = fileContents.optInt("Dimensions", 2);
+        this.integrator = fileContents.optString("Integrator", "Euler");
+        this.blockTimesteps = fileContents.optBoolean("BlockTimesteps", false);
+        this.maxRung = fileContents.optInt("MaxRung", 6);
+        this.timestepAccuracy = fileContents.optDouble("TimestepAccuracy", 0.03);
+        this.forceEngine = fileContents.optString("ForceEngine", "Tree");
+        this.groupSize = fileContents.optInt("GroupSize", 32);
+        this.simd = fileContents.optBoolean("Simd", false);
+        this.precision = fileContents.optString("Precision", "Double");
+        this.quadrupole = fileContents.optBoolean("Quadrupole", false);
+        this.expansionOrder = fileContents.optInt("ExpansionOrder", 4);
+        this.threads = fileContents.optInt("Threads", 0);
+        this.chunkSize = fileContents.optInt("ChunkSize", WorkerPool.DEFAULT_CHUNK_SIZE);
+        this.costZones = fileContents.optBoolean("CostZones", true);
+        this.zonesPerThread = fileContents.optInt("ZonesPerThread", CostZones.DEFAULT_ZONES_PER_THREAD);
+        this.leafCapacity = fileContents.optInt("LeafCapacity", 8);
+        this.maxDepth = fileContents.optInt("MaxDepth", 20);
+        this.adaptiveBounds = fileContents.optBoolean("AdaptiveBounds", true);
+        this.escapeRadius = fileContents.optDouble("EscapeRadius", 0);
+        this.refit = fileContents.optBoolean("Refit", false);
+        this.refitImbalance = fileContents.optDouble("RefitImbalance", 0.05);
+        this.refitMaxLeafCount = fileContents.optInt("RefitMaxLeafCount", 2 * leafCapacity);
+        this.checkpointInterval = fileContents.optInt("CheckpointInterval", 0);
+        JSONArray exportFormats = fileContents.optJSONArray("ExportFormat");
+        if (exportFormats == null) {
+            this.exportFormats = new String[]{fileContents.optString("ExportFormat", "CSV")};
+        } else {
+            this.exportFormats = new String[exportFormats.length()];
+            for (int i = 0; i < exportFormats.length(); i++) {
+                this.exportFormats[i] = exportFormats.getString(i);
+            }
+        }
+        this.exportBufferFrames = fileContents.optInt("ExportBufferFrames", 3);
+        this.exportStride = fileContents.optInt("ExportStride", 1);
+        JSONArray exportParticles = fileContents.optJSONArray("ExportParticles");
+        if (exportParticles != null) {
+            this.exportParticles = new int[exportParticles.length()][];
+            for (int i = 0; i < exportParticles.length(); i++) {
+                JSONArray range = exportParticles.optJSONArray(i);
+                if (range == null) {
+                    this.exportParticles[i] = new int[]{exportParticles.getInt(i), exportParticles.getInt(i)};
+                } else {
+                    this.exportParticles[i] = new int[]{range.getInt(0), range.getInt(1)};
+                }
+            }
+        }
+        this.exportTracerFraction = fileContents.optDouble("ExportTracerFraction", 1);
+        this.exportMaxFileSize = fileContents.optDouble("ExportMaxFileSize", 0);
+        this.exportPrecision = fileContents.optString("ExportPrecision", "Double");
+        this.exportQuantization = fileContents.optDouble("ExportQuantization", 1e-6);
+        this.exportKeyframeInterval = fileContents.optInt("ExportKeyframeInterval", 100);
     }
 
     public int getSize() {
@@ -71,7 +163,153 @@ public class ConfigLoader {
         return timeStep;
     }
 
+    public int getDimensions() {
+        return dimensions;
+    }
+
+    public String getIntegrator() {
+        return integrator;
+    }
+
+    public boolean getBlockTimesteps() {
+        return blockTimesteps;
+    }
+
+    public int getMaxRung() {
+        return maxRung;
+    }
+
+    public double getTimestepAccuracy() {
+        return timestepAccuracy;
+    }
+
+    public String getForceEngine() {
+        return forceEngine;
+    }
+
+    public int getGroupSize() {
+        return groupSize;
+    }
+
+    public boolean getSimd() {
+        return simd;
+    }
+
+    public String getPrecision() {
+        return precision;
+    }
+
+    public boolean getQuadrupole() {
+        return quadrupole;
+    }
+
+    public int getExpansionOrder() {
+        return expansionOrder;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public boolean getCostZones() {
+        return costZones;
+    }
+
+    public int getZonesPerThread() {
+        return zonesPerThread;
+    }
+
+    public int getLeafCapacity() {
+        return leafCapacity;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public boolean getAdaptiveBounds() {
+        return adaptiveBounds;
+    }
+
+    public double getEscapeRadius() {
+        return escapeRadius;
+    }
+
+    public boolean getRefit() {
+        return refit;
+    }
+
+    public double getRefitImbalance() {
+        return refitImbalance;
+    }
+
+    public int getRefitMaxLeafCount() {
+        return refitMaxLeafCount;
+    }
+
+    public int getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    /**
+     * Returns the formats the LargeExporter writes the trajectories in, given as a single format or an array.
+     */
+    public String[] getExportFormats() {
+        return exportFormats;
+    }
+
+    public int getExportBufferFrames() {
+        return exportBufferFrames;
+    }
+
+    public int getExportStride() {
+        return exportStride;
+    }
+
+    /**
+     * Returns the ranges of particle ids the LargeExporter exports, each given by its first and last id, or null to
+     * export every particle.
+     */
+    public int[][] getExportParticles() {
+        return exportParticles;
+    }
+
+    public double getExportTracerFraction() {
+        return exportTracerFraction;
+    }
+
+    /**
+     * Returns the size in megabytes at which the LargeExporter starts a new trajectory file, 0 for no limit.
+     */
+    public double getExportMaxFileSize() {
+        return exportMaxFileSize;
+    }
+
+    public String getExportPrecision() {
+        return exportPrecision;
+    }
+
+    public double getExportQuantization() {
+        return exportQuantization;
+    }
+
+    public int getExportKeyframeInterval() {
+        return exportKeyframeInterval;
+    }
+
     public Stack<Galaxy> getGalaxies() {
         return galaxies;
     }
+
+    /**
+     * Returns the config as JSON text, from which an equal ConfigLoader can be created.
+     * @return JSON text of the config
+     */
+    public String toJson() {
+        return fileContents.toString();
+    }
 }
@@ -16,6 +16,9 @@ public class Galaxy {
     private int particleCount;
     private Vector2D position;
     private Vector2D velocity;
+    private double positionZ; // Only used by three-dimensional simulations.
+    private double velocityZ;
+    private double inclination;
     private Color color;
 
     Galaxy(JSONObject galaxyJson) throws JSONException {
@@ -25,6 +28,9 @@ public class Galaxy {
         this.particleCount = galaxyJson.getInt("Particles");
         this.position = toVector2D(galaxyJson.getJSONArray("Position"));
         this.velocity = toVector2D(galaxyJson.getJSONArray("Velocity"));
+        this.positionZ = galaxyJson.getJSONArray("Position").optDouble(2, 0);
+        this.velocityZ = galaxyJson.getJSONArray("Velocity").optDouble(2, 0);
+        this.inclination = Math.toRadians(galaxyJson.optDouble("Inclination", 0));
         setColor(galaxyJson.getString("Color"));
     }
 
@@ -80,4 +86,20 @@ public class Galaxy {
     public Vector2D getVelocity() {
         return velocity;
     }
+
+    public double getPositionZ() {
+        return positionZ;
+    }
+
+    public double getVelocityZ() {
+        return velocityZ;
+    }
+
+    /**
+     * Returns the angle in radians by which the plane of a three-dimensional disk galaxy is tilted about the x-axis.
+     * @return Inclination
+     */
+    public double getInclination() {
+        return inclination;
+    }
 }
@@ -1,6 +1,7 @@
 package simulate.helpers;
 
 import simulate.objects.Particle;
+import simulate.objects.Particle3D;
 import utils.Vector2D;
 
 import javax.management.InvalidAttributeValueException;
@@ -17,30 +18,154 @@ public class GalaxyBuilder {
     }
 
     public ArrayList<Particle> buildGalaxy(Galaxy galaxy) throws InvalidAttributeValueException {
+        return buildGalaxy(galaxy, 0, getParticleCount(galaxy));
+    }
+
+    /**
+     * Returns the number of particles buildGalaxy() creates for a galaxy, including its central body.
+     *
+     * @param galaxy galaxy as defined in the ConfigLoader
+     * @return Particle count
+     */
+    public int getParticleCount(Galaxy galaxy) {
+        // The "Out" model adds its orbiting bodies to the central body instead of counting it among them.
+        return galaxy.getModel().equals("Out") ? galaxy.getParticleCount() + 1 : galaxy.getParticleCount();
+    }
+
+    /**
+     * Builds a slice of the particles of a galaxy: the particles from to to - 1 of the list built by buildGalaxy(),
+     * where particle 0 is the central body. Every orbiting body is drawn independently of the others, so slices built
+     * separately, for example by the ranks of a distributed simulation, together make up a whole galaxy.
+     *
+     * @param galaxy galaxy as defined in the ConfigLoader
+     * @param from index of the first particle of the slice
+     * @param to index following the last particle of the slice, at most getParticleCount(galaxy)
+     * @return ArrayList of the bodies of the slice
+     */
+    public ArrayList<Particle> buildGalaxy(Galaxy galaxy, int from, int to) throws InvalidAttributeValueException {
         Vector2D center = galaxy.getPosition();
         Vector2D velocity = galaxy.getVelocity();
         double radius = galaxy.getRadius();
         double mass = galaxy.getMass();
-        int particleCount = galaxy.getParticleCount();
         Color color = galaxy.getColor();
 
         String model = galaxy.getModel();
         switch (model) {
             case "Disk":
-                return buildDiskGalaxy(center, velocity, radius, mass, particleCount, color);
+                return buildDiskGalaxy(center, velocity, radius, mass, from, to, color);
             case "Line":
-                return buildLineGalaxy(center, velocity, radius, mass, particleCount, color);
+                return buildLineGalaxy(center, velocity, radius, mass, from, to, color);
             case "Plus":
-                return buildPlusGalaxy(center, velocity, radius, mass, particleCount, color);
+                return buildPlusGalaxy(center, velocity, radius, mass, from, to, color);
             case "Snail":
-                return buildSnailGalaxy(center, velocity, radius, mass, particleCount, color);
+                return buildSnailGalaxy(center, velocity, radius, mass, from, to, color);
             case "Out":
-                return buildOutGalaxy(center, velocity, radius, mass, particleCount, color);
+                return buildOutGalaxy(center, velocity, radius, mass, from, to, color);
             default:
                 throw new InvalidAttributeValueException("Specified galaxy model is not supported by GalaxyBuilder");
         }
     }
 
+    /**
+     * Builds the particles of a galaxy for a three-dimensional simulation. The galaxy's position and velocity may
+     * have a third component, which defaults to 0.
+     *
+     * @param galaxy galaxy as defined in the ConfigLoader
+     * @return ArrayList of all the bodies making up the galaxy
+     */
+    public ArrayList<Particle3D> buildGalaxy3D(Galaxy galaxy) throws InvalidAttributeValueException {
+        switch (galaxy.getModel()) {
+            case "Disk":
+                return buildDiskGalaxy3D(galaxy);
+            case "Sphere":
+                return buildSphereGalaxy3D(galaxy);
+            default:
+                throw new InvalidAttributeValueException(
+                        "Specified galaxy model is not supported by GalaxyBuilder in three dimensions");
+        }
+    }
+
+    /**
+     * Used to build a disk-shaped galaxy in three dimensions. Like the two-dimensional disk, a massive body sits in
+     * the center and the other bodies are placed randomly within the radius on initially circular orbits. The disk
+     * has a small thickness and its plane is tilted about the x-axis by the galaxy's inclination, so that galaxies
+     * can collide at an angle.
+     *
+     * @param galaxy galaxy as defined in the ConfigLoader
+     * @return ArrayList of all the bodies making up the galaxy
+     */
+    private ArrayList<Particle3D> buildDiskGalaxy3D(Galaxy galaxy) {
+        double radius = galaxy.getRadius();
+        double cos = Math.cos(galaxy.getInclination());
+        double sin = Math.sin(galaxy.getInclination());
+        ArrayList<Particle3D> particles = new ArrayList<>();
+        particles.add(centralBody3D(galaxy));
+        for (int i = 1; i < galaxy.getParticleCount(); i++) {
+            double r = Math.random() * radius + radius / 10;
+            double phi = Math.random() * 2 * Math.PI;
+            double height = (Math.random() - 0.5) * radius / 20;
+            double v = Math.sqrt(G * galaxy.getMass() / r);
+            double x = r * Math.cos(phi);
+            double y = r * Math.sin(phi);
+            double vX = -v * Math.sin(phi);
+            double vY = v * Math.cos(phi);
+            particles.add(orbitingBody3D(galaxy, x, y * cos - height * sin, y * sin + height * cos,
+                    vX, vY * cos, vY * sin));
+        }
+        return particles;
+    }
+
+    /**
+     * Used to build a spherical galaxy. The bodies are placed at random directions and distances within the radius
+     * around the central massive body, each on an initially circular orbit in a randomly oriented plane.
+     *
+     * @param galaxy galaxy as defined in the ConfigLoader
+     * @return ArrayList of all the bodies making up the galaxy
+     */
+    private ArrayList<Particle3D> buildSphereGalaxy3D(Galaxy galaxy) {
+        double radius = galaxy.getRadius();
+        ArrayList<Particle3D> particles = new ArrayList<>();
+        particles.add(centralBody3D(galaxy));
+        Random random = new Random();
+        for (int i = 1; i < galaxy.getParticleCount(); i++) {
+            double r = Math.random() * radius + radius / 10;
+            double[] direction = randomDirection(random);
+            double[] tangent = randomDirection(random);
+            // Make the velocity direction perpendicular to the position: tangent x direction.
+            double tx = tangent[1] * direction[2] - tangent[2] * direction[1];
+            double ty = tangent[2] * direction[0] - tangent[0] * direction[2];
+            double tz = tangent[0] * direction[1] - tangent[1] * direction[0];
+            double v = Math.sqrt(G * galaxy.getMass() / r) / Math.sqrt(tx * tx + ty * ty + tz * tz);
+            particles.add(orbitingBody3D(galaxy, r * direction[0], r * direction[1], r * direction[2],
+                    v * tx, v * ty, v * tz));
+        }
+        return particles;
+    }
+
+    private Particle3D centralBody3D(Galaxy galaxy) {
+        return new Particle3D(galaxy.getPosition().getX(), galaxy.getPosition().getY(), galaxy.getPositionZ(),
+                galaxy.getVelocity().getX(), galaxy.getVelocity().getY(), galaxy.getVelocityZ(), galaxy.getMass(),
+                galaxy.getColor(), 6);
+    }
+
+    /**
+     * Creates a body at the given offset from the galaxy's center, moving with the given velocity relative to it.
+     */
+    private Particle3D orbitingBody3D(Galaxy galaxy, double x, double y, double z, double vX, double vY, double vZ) {
+        return new Particle3D(galaxy.getPosition().getX() + x, galaxy.getPosition().getY() + y,
+                galaxy.getPositionZ() + z, galaxy.getVelocity().getX() + vX, galaxy.getVelocity().getY() + vY,
+                galaxy.getVelocityZ() + vZ, 0.0001, galaxy.getColor(), 1);
+    }
+
+    /**
+     * Returns a unit vector with a uniformly distributed direction.
+     */
+    private static double[] randomDirection(Random random) {
+        double z = 2 * random.nextDouble() - 1;
+        double phi = 2 * Math.PI * random.nextDouble();
+        double planar = Math.sqrt(1 - z * z);
+        return new double[]{planar * Math.cos(phi), planar * Math.sin(phi), z};
+    }
 
     /**
      * Used to build a disk-shaped galaxy. This highly simplified model places a massive body
@@ -52,15 +177,18 @@ public class GalaxyBuilder {
      * @param velocity      overall starting velocity of the galaxy
      * @param radius        galaxy radius
      * @param mass          mass of the central massive body
-     * @param particleCount the number of bodies making up the galaxy
+     * @param from          index of the first body to build, 0 being the central body
+     * @param to            index following the last body to build
      * @param color         color of the bodies in the galaxy. used when visualizing the galaxy
      * @return ArrayList of all the bodies making up the galaxy
      */
     private ArrayList<Particle> buildDiskGalaxy(Vector2D center, Vector2D velocity, double radius, double mass,
-                                                int particleCount, Color color) {
+                                                int from, int to, Color color) {
         ArrayList<Particle> particles = new ArrayList<>();
-        particles.add(new Particle(center, velocity, mass, color, 6));
-        for (int i = 1; i < particleCount; i++) {
+        if (from == 0) {
+            particles.add(new Particle(center, velocity, mass, color, 6));
+        }
+        for (int i = Math.max(1, from); i < to; i++) {
             double r = Math.random() * radius + radius / 10;
             double phi = Math.random() * 2 * Math.PI;
             double x = center.getX() + r * Math.cos(phi);
@@ -74,10 +202,12 @@ public class GalaxyBuilder {
     }
 
     private ArrayList<Particle> buildSnailGalaxy(Vector2D center, Vector2D velocity, double radius, double mass,
-                                                 int particleCount, Color color) {
+                                                 int from, int to, Color color) {
         ArrayList<Particle> particles = new ArrayList<>();
-        particles.add(new Particle(center, velocity, mass, color, 6));
-        for (int i = 1; i < particleCount; i++) {
+        if (from == 0) {
+            particles.add(new Particle(center, velocity, mass, color, 6));
+        }
+        for (int i = Math.max(1, from); i < to; i++) {
             double r = Math.random() * radius + radius / 10;
 
             double[] angles = new double[]{0, 90, 80};
@@ -95,10 +225,12 @@ public class GalaxyBuilder {
     }
 
     private ArrayList<Particle> buildPlusGalaxy(Vector2D center, Vector2D velocity, double radius, double mass,
-                                                int particleCount, Color color) {
+                                                int from, int to, Color color) {
         ArrayList<Particle> particles = new ArrayList<>();
-        particles.add(new Particle(center, velocity, mass, color, 6));
-        for (int i = 1; i < particleCount; i++) {
+        if (from == 0) {
+            particles.add(new Particle(center, velocity, mass, color, 6));
+        }
+        for (int i = Math.max(1, from); i < to; i++) {
             double r = Math.random() * radius + radius / 10;
 
             double[] angles = new double[]{0, Math.PI / 2, Math.PI, 3 * Math.PI / 2};
@@ -116,10 +248,12 @@ public class GalaxyBuilder {
     }
 
     private ArrayList<Particle> buildLineGalaxy(Vector2D center, Vector2D velocity, double radius, double mass,
-                                                int particleCount, Color color) {
+                                                int from, int to, Color color) {
         ArrayList<Particle> particles = new ArrayList<>();
-        particles.add(new Particle(center, velocity, mass, color, 6));
-        for (int i = 1; i < particleCount; i++) {
+        if (from == 0) {
+            particles.add(new Particle(center, velocity, mass, color, 6));
+        }
+        for (int i = Math.max(1, from); i < to; i++) {
             double r = Math.random() * radius + radius / 10;
 
             double phi = Math.PI;
@@ -135,10 +269,12 @@ public class GalaxyBuilder {
     }
 
     private ArrayList<Particle> buildOutGalaxy(Vector2D center, Vector2D velocity, double radius, double mass,
-                                               int particleCount, Color color) {
+                                               int from, int to, Color color) {
         ArrayList<Particle> particles = new ArrayList<>();
-        particles.add(new Particle(center, velocity, mass, color, 6));
-        for (int i = 0; i < particleCount; i++) {
+        if (from == 0) {
+            particles.add(new Particle(center, velocity, mass, color, 6));
+        }
+        for (int i = Math.max(1, from); i < to; i++) {
             double r = Math.random() * radius + radius / 10;
             double phi = Math.random() * 2 * Math.PI;
             double x = center.getX() + r * Math.cos(phi);
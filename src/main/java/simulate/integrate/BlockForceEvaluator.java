@@ -0,0 +1,21 @@
+package simulate.integrate;
+
+/**
+ * Computes the accelerations of a subset of the particles, as needed by the BlockTimestepIntegrator. Before the
+ * accelerations of a subset are evaluated, refresh() brings the tree up to date with the current positions.
+ */
+public interface BlockForceEvaluator {
+
+    /**
+     * Updates the tree to the current positions of all particles. May reorder the particles.
+     * @param full true to rebuild the tree, false if refitting it to the particles' small movements suffices
+     */
+    void refresh(boolean full);
+
+    /**
+     * Stores the accelerations of the listed particles in the particle state.
+     * @param particles ascending indices of the particles
+     * @param count number of listed particles
+     */
+    void evaluate(int[] particles, int count);
+}
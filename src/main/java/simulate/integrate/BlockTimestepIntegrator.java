@@ -0,0 +1,196 @@
+package simulate.integrate;
+
+import simulate.objects.ParticleStore;
+import simulate.parallel.Ranges;
+
+import java.util.Arrays;
+
+/**
+ * Kick-drift-kick leapfrog with hierarchical block timesteps. Every particle is put on a rung r between 0 and
+ * maxRung and advanced with the step timeStep / 2^r, the largest power-of-two fraction of the time-step that is no
+ * longer than accuracy * |v| / |a|, i.e. a fixed fraction of the time the particle takes to change its velocity.
+ * A call to step() advances the simulation by timeStep in 2^maxRung substeps. Whenever the steps of some particles
+ * end, all particles are drifted to the current time, the tree is refreshed, and only the particles whose step
+ * ends are given new accelerations, closing and opening kicks and new rungs. The tree is rebuilt at the end of the
+ * time-step only and refitted in between, since the particles move little within a time-step.
+ * <p>
+ * A particle may move to a smaller step at the end of any of its steps, but to a larger step only when the current
+ * time is a multiple of the larger step, so that the steps of every rung stay aligned. A particle at rest is put on
+ * the highest rung until it has picked up speed.
+ */
+public class BlockTimestepIntegrator {
+
+    private static final int BLOCK = 1 << 12; // Number of particles kicked by one task.
+
+    private final int maxRung;
+    private final double accuracy;
+    private byte[] rung = new byte[0]; // Rung of each particle, indexed by particle id.
+    private final int[] rungCount;
+    private int[] active = new int[0];
+    private boolean accelerationsCurrent;
+    private long evaluations;
+
+    /**
+     * Initializes the integrator.
+     * @param maxRung highest rung, whose step is timeStep / 2^maxRung
+     * @param accuracy fraction of |v| / |a| that a particle's step may not exceed
+     */
+    public BlockTimestepIntegrator(int maxRung, double accuracy) {
+        this.maxRung = maxRung;
+        this.accuracy = accuracy;
+        this.rungCount = new int[maxRung + 1];
+    }
+
+    /**
+     * Advances the particles by one time-step.
+     * @param store positions, velocities and accelerations of the particles
+     * @param forces refreshes the tree and evaluates the accelerations of subsets of the particles
+     * @param timeStep length of the step, which is the step of rung 0
+     */
+    public void step(ParticleStore store, BlockForceEvaluator forces, double timeStep) {
+        int n = store.size();
+        int substeps = 1 << maxRung;
+        evaluations = 0;
+        if (!accelerationsCurrent || rung.length != n) {
+            rung = new byte[n];
+            active = new int[n];
+            forces.refresh(true);
+            int count = collectActive(store, 0);
+            forces.evaluate(active, count);
+            evaluations += count;
+            assignRungs(store, count, 0, timeStep);
+            accelerationsCurrent = true;
+        }
+        kick(store, collectActive(store, 0), timeStep);
+        double pendingDrift = 0;
+        for (int time = 1; time <= substeps; time++) {
+            pendingDrift += timeStep / substeps;
+            if (!stepsEnd(time)) {
+                continue;
+            }
+            store.drift(pendingDrift, 0);
+            pendingDrift = 0;
+            forces.refresh(time == substeps);
+            int count = collectActive(store, time);
+            forces.evaluate(active, count);
+            evaluations += count;
+            kick(store, count, timeStep);
+            assignRungs(store, count, time == substeps ? 0 : time, timeStep);
+            if (time < substeps) {
+                kick(store, count, timeStep);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of particle accelerations evaluated by the last step. A global time-step of
+     * timeStep / 2^maxRung would evaluate 2^maxRung accelerations per particle.
+     * @return Number of evaluated accelerations
+     */
+    public long getEvaluationCount() {
+        return evaluations;
+    }
+
+    /**
+     * Returns the number of particles on each rung.
+     * @return Particle count per rung
+     */
+    public int[] getRungCounts() {
+        return rungCount.clone();
+    }
+
+    /**
+     * Returns the rung of every particle, indexed by particle id, or null before the first step.
+     * @return Copy of the rungs
+     */
+    public byte[] getRungs() {
+        return accelerationsCurrent ? rung.clone() : null;
+    }
+
+    /**
+     * Restores the rungs saved by getRungs() for a store whose accelerations belong to its current positions, so
+     * that the next step continues where the saved run left off.
+     * @param rungs rung of every particle, indexed by particle id
+     */
+    public void setRungs(byte[] rungs) {
+        rung = rungs.clone();
+        active = new int[rung.length];
+        Arrays.fill(rungCount, 0);
+        for (byte r : rung) {
+            rungCount[r]++;
+        }
+        accelerationsCurrent = true;
+    }
+
+    /**
+     * @return whether the step of any particle ends at the given substep
+     */
+    private boolean stepsEnd(int time) {
+        for (int r = 0; r <= maxRung; r++) {
+            if (rungCount[r] > 0 && isBoundary(time, r)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isBoundary(int time, int r) {
+        return (time & ((1 << (maxRung - r)) - 1)) == 0;
+    }
+
+    /**
+     * Lists the indices of the particles whose step ends at the given substep in the active array.
+     * @return Number of active particles
+     */
+    private int collectActive(ParticleStore store, int time) {
+        int count = 0;
+        for (int i = 0; i < store.size(); i++) {
+            if (isBoundary(time, rung[store.idAt(i)])) {
+                active[count++] = i;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Kicks the active particles for half of their step.
+     */
+    private void kick(ParticleStore store, int count, double timeStep) {
+        Ranges.forEach(0, count, BLOCK, (from, to) -> {
+            for (int k = from; k < to; k++) {
+                int i = active[k];
+                double dt = timeStep / (2 << rung[store.idAt(i)]);
+                store.vx[i] += store.ax[i] * dt;
+                store.vy[i] += store.ay[i] * dt;
+            }
+        });
+    }
+
+    /**
+     * Moves the active particles to the rungs matching their new accelerations and velocities.
+     * @param time current substep, where 0 stands for a time at which the steps of all rungs are aligned
+     */
+    private void assignRungs(ParticleStore store, int count, int time, double timeStep) {
+        // Lowest rung whose steps are aligned with the current time.
+        int lowest = time == 0 ? 0 : maxRung - Integer.numberOfTrailingZeros(time);
+        if (time == 0) {
+            Arrays.fill(rungCount, 0);
+        }
+        for (int k = 0; k < count; k++) {
+            int i = active[k];
+            int id = store.idAt(i);
+            if (time != 0) {
+                rungCount[rung[id]]--;
+            }
+            double acceleration = Math.sqrt(store.ax[i] * store.ax[i] + store.ay[i] * store.ay[i]);
+            double speed = Math.sqrt(store.vx[i] * store.vx[i] + store.vy[i] * store.vy[i]);
+            int desired = 0;
+            if (acceleration > 0) {
+                double ratio = timeStep * acceleration / (accuracy * speed);
+                desired = ratio > 1 ? (int) Math.min(maxRung, Math.ceil(Math.log(ratio) / Math.log(2))) : 0;
+            }
+            rung[id] = (byte) Math.max(desired, lowest);
+            rungCount[rung[id]]++;
+        }
+    }
+}
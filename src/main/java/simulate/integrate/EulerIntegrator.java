@@ -0,0 +1,15 @@
+package simulate.integrate;
+
+/**
+ * The semi-implicit Euler (Euler-Cromer) method: the accelerations at the current positions update the velocities,
+ * which then update the positions. The method is first order, so its error shrinks only linearly with the step.
+ */
+public class EulerIntegrator implements Integrator {
+
+    @Override
+    public void step(ParticleState state, ForceEvaluator forces, double timeStep) {
+        forces.evaluate();
+        state.kick(timeStep);
+        state.drift(timeStep, 0);
+    }
+}
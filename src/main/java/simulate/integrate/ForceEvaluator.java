@@ -0,0 +1,13 @@
+package simulate.integrate;
+
+/**
+ * Computes the accelerations of all particles of a simulation from their current positions. An evaluation may
+ * reorder the particles, for example when it rebuilds the tree.
+ */
+public interface ForceEvaluator {
+
+    /**
+     * Stores the acceleration of every particle in the particle state.
+     */
+    void evaluate();
+}
@@ -0,0 +1,56 @@
+package simulate.integrate;
+
+import javax.management.InvalidAttributeValueException;
+
+/**
+ * Advances a simulation by one time-step, given the particle state and a way to evaluate the accelerations. The
+ * integrators evaluate the accelerations once per step.
+ */
+public interface Integrator {
+
+    /**
+     * Advances the particles by one time-step.
+     * @param state positions, velocities and accelerations of the particles
+     * @param forces evaluates the accelerations at the current positions
+     * @param timeStep length of the step
+     */
+    void step(ParticleState state, ForceEvaluator forces, double timeStep);
+
+    /**
+     * Returns whether the accelerations held by the particle state belong to the current positions, so that the next
+     * step starts from them instead of evaluating them again. Integrators that evaluate the accelerations at the
+     * start of every step return false.
+     * @return whether the accelerations are current
+     */
+    default boolean hasCurrentAccelerations() {
+        return false;
+    }
+
+    /**
+     * Tells the integrator whether the accelerations held by the particle state belong to the current positions, for
+     * example after the state has been restored from a checkpoint.
+     * @param current whether the accelerations are current
+     */
+    default void setCurrentAccelerations(boolean current) {
+    }
+
+    /**
+     * Creates the integrator named in the config file. "Euler" is the Euler-Cromer method, "Leapfrog" the
+     * kick-drift-kick leapfrog and "VelocityVerlet" the velocity Verlet method.
+     * @param name integrator name
+     * @return the integrator
+     * @throws InvalidAttributeValueException if the name is unknown
+     */
+    static Integrator create(String name) throws InvalidAttributeValueException {
+        switch (name) {
+            case "Euler":
+                return new EulerIntegrator();
+            case "Leapfrog":
+                return new LeapfrogIntegrator();
+            case "VelocityVerlet":
+                return new VelocityVerletIntegrator();
+            default:
+                throw new InvalidAttributeValueException("Specified integrator is not supported");
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package simulate.integrate;
+
+/**
+ * The kick-drift-kick leapfrog: the velocities are kicked for half a step with the accelerations at the start of
+ * the step, the positions drift for a whole step, and the velocities are kicked for another half step with the
+ * accelerations at the new positions. The method is second order and symplectic, so the energy error stays bounded
+ * instead of drifting. The accelerations at the end of a step are reused at the start of the next one, so a step
+ * costs a single force evaluation, like an Euler step; only the first step evaluates them twice.
+ */
+public class LeapfrogIntegrator implements Integrator {
+
+    private boolean accelerationsCurrent;
+
+    @Override
+    public void step(ParticleState state, ForceEvaluator forces, double timeStep) {
+        if (!accelerationsCurrent) {
+            forces.evaluate();
+            accelerationsCurrent = true;
+        }
+        state.kick(timeStep / 2);
+        state.drift(timeStep, 0);
+        forces.evaluate();
+        state.kick(timeStep / 2);
+    }
+
+    @Override
+    public boolean hasCurrentAccelerations() {
+        return accelerationsCurrent;
+    }
+
+    @Override
+    public void setCurrentAccelerations(boolean current) {
+        accelerationsCurrent = current;
+    }
+}
@@ -0,0 +1,21 @@
+package simulate.integrate;
+
+/**
+ * The positions, velocities and accelerations advanced by an Integrator. Implementations update every particle in
+ * parallel and read the arrays of their store on every call, since the store may be reordered between calls.
+ */
+public interface ParticleState {
+
+    /**
+     * Adds the acceleration of every particle, multiplied by dt, to its velocity.
+     * @param dt time over which the particles are accelerated
+     */
+    void kick(double dt);
+
+    /**
+     * Moves every particle by (v + accelerationFactor * a) * dt. An acceleration factor of 0 gives a plain drift.
+     * @param dt time over which the particles move
+     * @param accelerationFactor weight of the acceleration term
+     */
+    void drift(double dt, double accelerationFactor);
+}
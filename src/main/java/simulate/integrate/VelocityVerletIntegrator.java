@@ -0,0 +1,35 @@
+package simulate.integrate;
+
+/**
+ * The velocity Verlet method: the positions are advanced with the second order Taylor step x + v dt + a dt^2 / 2,
+ * and the velocities with the mean of the accelerations at the start and at the end of the step. In exact
+ * arithmetic this gives the same trajectories as the kick-drift-kick leapfrog, so it is also second order and
+ * symplectic and needs a single force evaluation per step. The half of the velocity update that uses the old
+ * accelerations is applied before the force evaluation, so that the old accelerations need not be kept.
+ */
+public class VelocityVerletIntegrator implements Integrator {
+
+    private boolean accelerationsCurrent;
+
+    @Override
+    public void step(ParticleState state, ForceEvaluator forces, double timeStep) {
+        if (!accelerationsCurrent) {
+            forces.evaluate();
+            accelerationsCurrent = true;
+        }
+        state.drift(timeStep, timeStep / 2);
+        state.kick(timeStep / 2);
+        forces.evaluate();
+        state.kick(timeStep / 2);
+    }
+
+    @Override
+    public boolean hasCurrentAccelerations() {
+        return accelerationsCurrent;
+    }
+
+    @Override
+    public void setCurrentAccelerations(boolean current) {
+        accelerationsCurrent = current;
+    }
+}
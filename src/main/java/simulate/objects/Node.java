@@ -1,13 +1,11 @@
 package simulate.objects;
 
-import org.jetbrains.annotations.NotNull;
-import utils.Vector2D;
-
 import java.util.Stack;
 
 /**
  * Node in the Barnes Hut Tree. Contains information on the simulated region as well as the particles
- * contained in the node. Contains references to up to four children nodes.
+ * contained in the node. Contains references to up to four children nodes. Particles are referred to by their
+ * index in the simulation's ParticleStore.
  */
 public class Node {
     private Quadrant quadrant;
@@ -16,7 +14,7 @@ public class Node {
     private Node upperRight;
     private Node lowerLeft;
     private Node lowerRight;
-    private Particle particle;
+    private int particle = -1; // Index of the particle held by a leaf node, -1 if the node holds none.
     private ParticleAggregate particleAggregate; // Aggregate of all particles contained by the node.
     private boolean hasChildren = false; // Initially nodes do not contain children
 
@@ -30,19 +28,20 @@ public class Node {
      * Used to add the particle to the current node. If the the node already contains a particle or
      * has any subnodes, the the newParticle and potentially existing particle get reinserted
      * into the appropriate subnodes.
-     * @param newParticle Particle added to the node.
+     * @param store Store holding the particle state.
+     * @param newParticle Index of the particle added to the node.
      */
-    public void insertParticle(Particle newParticle) {
-        updateParticleAggregate(newParticle);
+    public void insertParticle(ParticleStore store, int newParticle) {
+        updateParticleAggregate(store, newParticle);
         if (hasChildren)
-            reInsertParticle(newParticle);
+            reInsertParticle(store, newParticle);
         else {
-            if (particle == null) {
+            if (particle == -1) {
                 particle = newParticle;
             } else {
-                reInsertParticle(newParticle);
-                reInsertParticle(particle);
-                particle = null;
+                reInsertParticle(store, newParticle);
+                reInsertParticle(store, particle);
+                particle = -1;
                 hasChildren = true;
             }
         }
@@ -50,73 +49,77 @@ public class Node {
 
     /**
      * Adds the inserted particle into the particleAggregate.
-     * @param newParticle Particle inserted into the node.
+     * @param store Store holding the particle state.
+     * @param newParticle Index of the particle inserted into the node.
      */
-    private void updateParticleAggregate(Particle newParticle) {
+    private void updateParticleAggregate(ParticleStore store, int newParticle) {
         if (particleAggregate == null) {
-            particleAggregate = new ParticleAggregate(newParticle);
+            particleAggregate = new ParticleAggregate(store, newParticle);
         } else {
-            particleAggregate.addParticle(newParticle);
+            particleAggregate.addParticle(store, newParticle);
         }
     }
 
     /**
      * Recursively inserts the given particle into the appropriate subnode.
      * Creates the appropriate subnode if it does not already exist.
-     * @param particle Particle inserted to quad tree
+     * @param store Store holding the particle state.
+     * @param particle Index of the particle inserted to quad tree
      */
 
-    private void reInsertParticle(Particle particle) {
-        if (quadrant.lowerLeft().containsParticle(particle)) {
+    private void reInsertParticle(ParticleStore store, int particle) {
+        double x = store.x[particle];
+        double y = store.y[particle];
+        if (quadrant.lowerLeft().contains(x, y)) {
             if (lowerLeft == null) lowerLeft = new Node(quadrant.lowerLeft(), G);
-            lowerLeft.insertParticle(particle);
-        } else if (quadrant.lowerRight().containsParticle(particle)) {
+            lowerLeft.insertParticle(store, particle);
+        } else if (quadrant.lowerRight().contains(x, y)) {
             if (lowerRight == null) lowerRight = new Node(quadrant.lowerRight(), G);
-            lowerRight.insertParticle(particle);
-        } else if (quadrant.upperLeft().containsParticle(particle)) {
+            lowerRight.insertParticle(store, particle);
+        } else if (quadrant.upperLeft().contains(x, y)) {
             if (upperLeft == null) upperLeft = new Node(quadrant.upperLeft(), G);
-            upperLeft.insertParticle(particle);
-        } else if (quadrant.upperRight().containsParticle(particle)) {
+            upperLeft.insertParticle(store, particle);
+        } else if (quadrant.upperRight().contains(x, y)) {
             if (upperRight == null) upperRight = new Node(quadrant.upperRight(), G);
-            upperRight.insertParticle(particle);
+            upperRight.insertParticle(store, particle);
         }
     }
 
     /**
-     * Returns force exerted on a particle due to the aggregate of particles in the given node.
-     * @param particle the particle on which the gravitational force from this node is to be computed
+     * Adds the acceleration exerted on a particle by the aggregate of particles in the given node to the
+     * particle's entry in the store.
+     * @param store Store holding the particle state.
+     * @param particle Index of the particle on which the gravitational pull from this node is to be computed
      * @param theta monopole acceptance criterion
-     * @return Vector2D representation of the exerted force
      */
-    public Vector2D getForce(Particle particle, double theta) {
+    public void addAcceleration(ParticleStore store, int particle, double theta) {
         if (!hasChildren) {
-            if (this.particle == particle)
-                return Vector2D.NullVector();
-            return particleAggregate.calcForce(particle, G);
+            if (this.particle != particle)
+                particleAggregate.addAcceleration(store, particle, G);
+            return;
+        }
+        if (quadrant.getHeight() / quadrant.distanceTo(store.x[particle], store.y[particle]) < theta) {
+            particleAggregate.addAcceleration(store, particle, G);
+            return;
         }
-        if (quadrant.getHeight() / quadrant.distanceToParticle(particle) < theta)
-            return particleAggregate.calcForce(particle, G);
-        return  getForceFromSubNodes(particle, G, theta);
+        addAccelerationFromSubNodes(store, particle, theta);
     }
 
     /**
-     * Recusively adds up the forces from all the subnodes.
-     * @param particle the particle on which the gravitational force from this node is to be computed
-     * @param G the gravitational constant
+     * Recusively adds up the accelerations from all the subnodes.
+     * @param store Store holding the particle state.
+     * @param particle Index of the particle on which the gravitational pull from this node is to be computed
      * @param theta monopole acceptance criterion
-     * @return Vector2D representation of the resulting force from all the subnodes
      */
-    private Vector2D getForceFromSubNodes(Particle particle, double G, double theta) {
-        Vector2D force = Vector2D.NullVector();
+    private void addAccelerationFromSubNodes(ParticleStore store, int particle, double theta) {
         if (lowerLeft != null)
-            force = force.add(lowerLeft.getForce(particle, theta));
+            lowerLeft.addAcceleration(store, particle, theta);
         if (lowerRight != null)
-            force = force.add(lowerRight.getForce(particle, theta));
+            lowerRight.addAcceleration(store, particle, theta);
         if (upperLeft != null)
-            force = force.add(upperLeft.getForce(particle, theta));
+            upperLeft.addAcceleration(store, particle, theta);
         if (upperRight != null)
-            force = force.add(upperRight.getForce(particle, theta));
-        return force;
+            upperRight.addAcceleration(store, particle, theta);
     }
 
     /**
@@ -146,24 +149,30 @@ public class Node {
     private class ParticleAggregate {
 
         private double mass;
-        private Vector2D centerOfMass;
+        private double centerOfMassX;
+        private double centerOfMassY;
 
-        ParticleAggregate(@NotNull Particle particle) {
-            mass = particle.getMass();
-            centerOfMass = particle.getPosition();
+        ParticleAggregate(ParticleStore store, int particle) {
+            mass = store.mass[particle];
+            centerOfMassX = store.x[particle];
+            centerOfMassY = store.y[particle];
         }
 
-        private void addParticle(@NotNull Particle particle) {
-            Vector2D centerOfMassNum = centerOfMass.multiply(mass).add(particle.getPosition().multiply(particle.getMass()));
-            mass += particle.getMass();
-            centerOfMass = centerOfMassNum.divide(mass);
+        private void addParticle(ParticleStore store, int particle) {
+            double particleMass = store.mass[particle];
+            double total = mass + particleMass;
+            centerOfMassX = (centerOfMassX * mass + store.x[particle] * particleMass) / total;
+            centerOfMassY = (centerOfMassY * mass + store.y[particle] * particleMass) / total;
+            mass = total;
         }
 
-        private Vector2D calcForce(@NotNull Particle particle, double G) {
-            Vector2D position = particle.getPosition();
-            double distance = position.distanceTo(centerOfMass);
-            double product = (-G * mass * particle.getMass()) / (distance * distance * distance);
-            return position.subtract(centerOfMass).multiply(product);
+        private void addAcceleration(ParticleStore store, int particle, double G) {
+            double dx = store.x[particle] - centerOfMassX;
+            double dy = store.y[particle] - centerOfMassY;
+            double distance = Math.sqrt(dx * dx + dy * dy);
+            double product = (-G * mass) / (distance * distance * distance);
+            store.ax[particle] += dx * product;
+            store.ay[particle] += dy * product;
         }
     }
 }
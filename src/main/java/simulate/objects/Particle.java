@@ -6,41 +6,72 @@ import java.awt.*;
 import java.awt.geom.Ellipse2D;
 
 /**
- * Point particle representation of a body or system of bodies in motion.
+ * Point particle representation of a body or system of bodies in motion. The particle's physical state lives in a
+ * ParticleStore; once the particle has been added to a simulation it acts as a view of its entry in the
+ * simulation's store.
  */
 public class Particle {
 
-    private final double mass;
-    private Vector2D position;
-    private Vector2D velocity;
+    private ParticleStore store;
+    private int id;
     private Color color;
     private int size;
     private int bounds;
 
     public Particle(Vector2D position, Vector2D velocity, double mass, Color color, int size) {
-        this.position = position;
-        this.velocity = velocity;
-        this.mass = mass;
+        this(position.getX(), position.getY(), velocity.getX(), velocity.getY(), mass, color, size);
+    }
+
+    public Particle(double x, double y, double vX, double vY, double mass, Color color, int size) {
+        this.store = new ParticleStore(1);
+        this.id = store.add(x, y, vX, vY, mass);
         this.color = color;
         this.size = size;
         this.bounds = Math.floorDiv(size, 2);
     }
 
-    public Particle(double x, double y, double vX, double vY, double mass, Color color, int size) {
-        this.position = new Vector2D(x, y);
-        this.velocity = new Vector2D(vX, vY);
-        this.mass = mass;
+    /**
+     * Creates a view of a particle that is already held by a store, for example one restored from a checkpoint.
+     * @param store Store holding the particle's state
+     * @param id Id of the particle in the store
+     */
+    public Particle(ParticleStore store, int id, Color color, int size) {
+        this.store = store;
+        this.id = id;
         this.color = color;
         this.size = size;
         this.bounds = Math.floorDiv(size, 2);
     }
 
+    /**
+     * Points the particle at the given entry of a store.
+     * @param store Store holding the particle's state
+     * @param id Id of the particle in the store
+     */
+    void bind(ParticleStore store, int id) {
+        this.store = store;
+        this.id = id;
+    }
+
+    ParticleStore getStore() {
+        return store;
+    }
+
+    /**
+     * Returns the particle's id in the store holding its state.
+     * @return Particle id
+     */
+    public int getId() {
+        return id;
+    }
+
     /**
      * Returns the particle's shape
      * @return Shape as Ellipse2D.Double
      */
     public Ellipse2D.Double getShape() {
-        return new Ellipse2D.Double(position.getX() - bounds, position.getY() - bounds, size, size);
+        int index = store.indexOf(id);
+        return new Ellipse2D.Double(store.x[index] - bounds, store.y[index] - bounds, size, size);
     }
 
     /**
@@ -60,24 +91,12 @@ public class Particle {
         return color;
     }
 
-    /**
-     * Implements the euler-chromer step to update the position and velocity by one time frame.
-     * @param time_step Time step
-     * @param root Root of the Barnes-Hut tree
-     * @param theta Monopole Acceptance Criterion
-     */
-    public void eulerStep(double time_step, Node root, double theta) {
-        Vector2D acceleration = root.getForce(this, theta).divide(mass);
-        velocity = velocity.add(acceleration.multiply(time_step));
-        position = position.add(velocity.multiply(time_step));
-    }
-
     /**
      * Returns the particles mass
      * @return Mass
      */
     public double getMass() {
-        return mass;
+        return store.mass[store.indexOf(id)];
     }
 
     /**
@@ -85,7 +104,8 @@ public class Particle {
      * @return Position
      */
     public Vector2D getPosition() {
-        return position;
+        int index = store.indexOf(id);
+        return new Vector2D(store.x[index], store.y[index]);
     }
 
     /**
@@ -93,7 +113,9 @@ public class Particle {
      * @param position Position
      */
     public void setPosition(Vector2D position) {
-        this.position = position;
+        int index = store.indexOf(id);
+        store.x[index] = position.getX();
+        store.y[index] = position.getY();
     }
 
     /**
@@ -101,7 +123,8 @@ public class Particle {
      * @return Velocity
      */
     public Vector2D getVelocity() {
-        return velocity;
+        int index = store.indexOf(id);
+        return new Vector2D(store.vx[index], store.vy[index]);
     }
 
     /**
@@ -109,6 +132,8 @@ public class Particle {
      * @param velocity Velocity
      */
     public void setVelocity(Vector2D velocity) {
-        this.velocity = velocity;
+        int index = store.indexOf(id);
+        store.vx[index] = velocity.getX();
+        store.vy[index] = velocity.getY();
     }
 }
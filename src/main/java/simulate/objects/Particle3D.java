@@ -0,0 +1,95 @@
+package simulate.objects;
+
+import java.awt.*;
+
+/**
+ * Point particle of a three-dimensional simulation. Like Particle, its physical state lives in a store, here a
+ * ParticleStore3D; once the particle has been added to a simulation it acts as a view of its entry in the
+ * simulation's store.
+ */
+public class Particle3D {
+
+    private ParticleStore3D store;
+    private int id;
+    private Color color;
+    private int size;
+
+    public Particle3D(double x, double y, double z, double vX, double vY, double vZ, double mass, Color color,
+                      int size) {
+        this.store = new ParticleStore3D(1);
+        this.id = store.add(x, y, z, vX, vY, vZ, mass);
+        this.color = color;
+        this.size = size;
+    }
+
+    /**
+     * Creates a view of a particle that is already held by a store, for example one restored from a checkpoint.
+     * @param store Store holding the particle's state
+     * @param id Id of the particle in the store
+     */
+    public Particle3D(ParticleStore3D store, int id, Color color, int size) {
+        this.store = store;
+        this.id = id;
+        this.color = color;
+        this.size = size;
+    }
+
+    /**
+     * Points the particle at the given entry of a store.
+     * @param store Store holding the particle's state
+     * @param id Id of the particle in the store
+     */
+    void bind(ParticleStore3D store, int id) {
+        this.store = store;
+        this.id = id;
+    }
+
+    ParticleStore3D getStore() {
+        return store;
+    }
+
+    /**
+     * Returns the particle's id in the store holding its state.
+     * @return Particle id
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Returns the particle's size. The size has no impact on the simulation, but it can be useful when
+     * visualizing the simulation.
+     * @return Particle's size.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the particle's color
+     * @return Color
+     */
+    public Color getColor() {
+        return color;
+    }
+
+    /**
+     * Returns the particles mass
+     * @return Mass
+     */
+    public double getMass() {
+        return store.mass[store.indexOf(id)];
+    }
+
+    public double getX() {
+        return store.x[store.indexOf(id)];
+    }
+
+    public double getY() {
+        return store.y[store.indexOf(id)];
+    }
+
+    public double getZ() {
+        return store.z[store.indexOf(id)];
+    }
+}
@@ -0,0 +1,206 @@
+package simulate.objects;
+
+import simulate.integrate.ParticleState;
+import simulate.parallel.Ranges;
+
+import java.util.Arrays;
+
+/**
+ * Structure-of-arrays storage for the state of every particle in a three-dimensional simulation. It is the
+ * counterpart of ParticleStore with an additional z-component for positions, velocities and accelerations; the
+ * arrays are exposed directly, only the first size() entries of each array are in use, and every particle keeps a
+ * stable id across reorderings. The arrays are swapped with scratch buffers when reordering, so references to them
+ * must not be kept across steps.
+ */
+public class ParticleStore3D implements ParticleState {
+
+    private static final int BLOCK = 1 << 14; // Number of particles permuted or advanced by one task.
+
+    public double[] x;
+    public double[] y;
+    public double[] z;
+    public double[] vx;
+    public double[] vy;
+    public double[] vz;
+    public double[] ax;
+    public double[] ay;
+    public double[] az;
+    public double[] mass;
+    public int[] cost; // Interactions evaluated for each particle by the last force computation.
+    private int[] ids; // Id of the particle held at each index.
+    private int[] indices; // Index of the particle with each id.
+    private int size;
+    private double[] scratch = new double[0];
+    private int[] idScratch = new int[0];
+    private int[] costScratch = new int[0];
+
+    public ParticleStore3D(int capacity) {
+        capacity = Math.max(capacity, 1);
+        x = new double[capacity];
+        y = new double[capacity];
+        z = new double[capacity];
+        vx = new double[capacity];
+        vy = new double[capacity];
+        vz = new double[capacity];
+        ax = new double[capacity];
+        ay = new double[capacity];
+        az = new double[capacity];
+        mass = new double[capacity];
+        cost = new int[capacity];
+        ids = new int[capacity];
+        indices = new int[capacity];
+    }
+
+    /**
+     * Appends a particle to the store.
+     * @return Id of the new particle, which is also its index until the store is reordered.
+     */
+    public int add(double x, double y, double z, double vx, double vy, double vz, double mass) {
+        ensureCapacity(size + 1);
+        this.x[size] = x;
+        this.y[size] = y;
+        this.z[size] = z;
+        this.vx[size] = vx;
+        this.vy[size] = vy;
+        this.vz[size] = vz;
+        this.mass[size] = mass;
+        ids[size] = size;
+        indices[size] = size;
+        return size++;
+    }
+
+    /**
+     * Copies the state of the given particle into the store and turns the particle into a view of its new entry.
+     * @param particle Particle added to the store.
+     * @return Id of the new particle.
+     */
+    public int add(Particle3D particle) {
+        ParticleStore3D source = particle.getStore();
+        int from = source.indexOf(particle.getId());
+        int id = add(source.x[from], source.y[from], source.z[from], source.vx[from], source.vy[from],
+                source.vz[from], source.mass[from]);
+        particle.bind(this, id);
+        return id;
+    }
+
+    /**
+     * Returns the number of particles held by the store.
+     * @return Particle count.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the current index of the particle with the given id.
+     * @param id Particle id
+     * @return Index of the particle in the arrays
+     */
+    public int indexOf(int id) {
+        return indices[id];
+    }
+
+    /**
+     * Returns the id of the particle currently held at the given index.
+     * @param index Index in the arrays
+     * @return Particle id
+     */
+    public int idAt(int index) {
+        return ids[index];
+    }
+
+    @Override
+    public void kick(double dt) {
+        Ranges.forEach(0, size, BLOCK, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                vx[i] += ax[i] * dt;
+                vy[i] += ay[i] * dt;
+                vz[i] += az[i] * dt;
+            }
+        });
+    }
+
+    @Override
+    public void drift(double dt, double accelerationFactor) {
+        Ranges.forEach(0, size, BLOCK, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                x[i] += (vx[i] + accelerationFactor * ax[i]) * dt;
+                y[i] += (vy[i] + accelerationFactor * ay[i]) * dt;
+                z[i] += (vz[i] + accelerationFactor * az[i]) * dt;
+            }
+        });
+    }
+
+    /**
+     * Reorders the particles so that the particle previously at index order[i] moves to index i. Large stores are
+     * permuted in parallel.
+     * @param order Permutation of the indices 0 to size() - 1
+     */
+    public void reorder(int[] order) {
+        if (scratch.length < x.length) {
+            scratch = new double[x.length];
+            idScratch = new int[x.length];
+            costScratch = new int[x.length];
+        }
+        x = permute(x, order);
+        y = permute(y, order);
+        z = permute(z, order);
+        vx = permute(vx, order);
+        vy = permute(vy, order);
+        vz = permute(vz, order);
+        ax = permute(ax, order);
+        ay = permute(ay, order);
+        az = permute(az, order);
+        mass = permute(mass, order);
+        int[] newCost = costScratch;
+        int[] oldCost = cost;
+        int[] newIds = idScratch;
+        int[] oldIds = ids;
+        Ranges.forEach(0, size, BLOCK, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                newIds[i] = oldIds[order[i]];
+                indices[newIds[i]] = i;
+                newCost[i] = oldCost[order[i]];
+            }
+        });
+        idScratch = oldIds;
+        ids = newIds;
+        costScratch = oldCost;
+        cost = newCost;
+    }
+
+    /**
+     * Gathers the values of the array into the scratch buffer in the given order and returns the buffer. The old
+     * array becomes the new scratch buffer.
+     */
+    private double[] permute(double[] values, int[] order) {
+        double[] permuted = scratch;
+        Ranges.forEach(0, size, BLOCK, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                permuted[i] = values[order[i]];
+            }
+        });
+        scratch = values;
+        return permuted;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= x.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, x.length + (x.length >> 1));
+        x = Arrays.copyOf(x, newCapacity);
+        y = Arrays.copyOf(y, newCapacity);
+        z = Arrays.copyOf(z, newCapacity);
+        vx = Arrays.copyOf(vx, newCapacity);
+        vy = Arrays.copyOf(vy, newCapacity);
+        vz = Arrays.copyOf(vz, newCapacity);
+        ax = Arrays.copyOf(ax, newCapacity);
+        ay = Arrays.copyOf(ay, newCapacity);
+        az = Arrays.copyOf(az, newCapacity);
+        mass = Arrays.copyOf(mass, newCapacity);
+        cost = Arrays.copyOf(cost, newCapacity);
+        ids = Arrays.copyOf(ids, newCapacity);
+        indices = Arrays.copyOf(indices, newCapacity);
+    }
+}
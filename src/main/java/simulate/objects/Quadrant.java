@@ -42,6 +42,18 @@ public class Quadrant extends Rectangle2D.Double {
         return center.distanceTo(particle.getPosition());
     }
 
+    /**
+     * Returns the magnitude of the distance from the center of the quadrant to the given point.
+     * @param x x-coordinate of the point
+     * @param y y-coordinate of the point
+     * @return distance to the point
+     */
+    public double distanceTo(double x, double y) {
+        double dx = x - center.getX();
+        double dy = y - center.getY();
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
     /**
      * Returns the upper left sub-quadrant of this quadrant.
      * If this is the first time this method is called, the reference to the upper left sub-quadrant is cached
@@ -0,0 +1,98 @@
+package simulate.parallel;
+
+import java.util.Arrays;
+
+/**
+ * Cost-zone load balancing (Singh et al. 1995). The particles of a Morton-ordered store are split into contiguous
+ * zones of equal total cost rather than of equal size, where the cost of a particle is the number of interactions
+ * recorded for it by the previous force computation, plus one for the fixed overhead of a particle. Particles in
+ * dense regions cost many times more than those on the outskirts, so equal-size chunks leave threads idle at the
+ * end of a step; equal-cost zones finish at nearly the same time, as the costs change little from one step to the
+ * next. The store keeps the costs attached to the particles when it is reordered, and the zones stay spatially
+ * compact because they are ranges of the Morton order.
+ */
+public class CostZones {
+
+    public static final int DEFAULT_ZONES_PER_THREAD = 4;
+    private final int zonesPerThread;
+    private long[] prefix = new long[1]; // Total cost of the particles before each index of the range.
+    private int[] bounds = new int[0];
+    private int zoneCount;
+
+    /**
+     * @param zonesPerThread number of zones per thread of the pool, more than one to absorb the change of the
+     *                       costs between steps
+     */
+    public CostZones(int zonesPerThread) {
+        if (zonesPerThread < 1) {
+            throw new IllegalArgumentException("Zones per thread must be positive");
+        }
+        this.zonesPerThread = zonesPerThread;
+    }
+
+    /**
+     * Applies the action to equal-cost zones of the indices from to to - 1 in parallel, in the pool of the calling
+     * thread.
+     * @param cost per-particle costs, indexed like the range
+     */
+    public void forEach(int[] cost, int from, int to, Ranges.RangeAction action) {
+        partition(cost, from, to, Ranges.getParallelism() * zonesPerThread);
+        Ranges.forEachZone(bounds, zoneCount, action);
+    }
+
+    /**
+     * Applies the action to equal-cost zones of the positions 0 to count - 1 of a list of particles in parallel, in
+     * the pool of the calling thread. Suits subsets of the particles such as the active particles of a block
+     * timestep, whose costs are the most uneven.
+     * @param cost per-particle costs, indexed like the store
+     * @param particles indices of the listed particles; position k costs cost[particles[k]]
+     * @param count number of listed particles
+     */
+    public void forEach(int[] cost, int[] particles, int count, Ranges.RangeAction action) {
+        partition(cost, particles, 0, count, Ranges.getParallelism() * zonesPerThread);
+        Ranges.forEachZone(bounds, zoneCount, action);
+    }
+
+    /**
+     * Splits the indices from to to - 1 into the given number of contiguous zones of nearly equal cost. Zone z then
+     * covers the indices getBounds()[z] to getBounds()[z + 1] - 1.
+     * @param cost per-particle costs, indexed like the range
+     * @return Number of zones
+     */
+    public int partition(int[] cost, int from, int to, int zones) {
+        return partition(cost, null, from, to, zones);
+    }
+
+    /**
+     * Splits the positions from to to - 1 of a list of particles, or of the store if the list is null, into zones of
+     * nearly equal cost.
+     */
+    private int partition(int[] cost, int[] particles, int from, int to, int zones) {
+        int n = to - from;
+        if (prefix.length < n + 1) {
+            prefix = new long[Math.max(n + 1, prefix.length + (prefix.length >> 1))];
+        }
+        for (int i = 0; i < n; i++) {
+            prefix[i + 1] = prefix[i] + cost[particles == null ? from + i : particles[from + i]] + 1;
+        }
+        zoneCount = Math.max(1, Math.min(zones, n));
+        if (bounds.length < zoneCount + 1) {
+            bounds = new int[zoneCount + 1];
+        }
+        long total = prefix[n];
+        bounds[0] = from;
+        int previous = 0;
+        for (int zone = 1; zone < zoneCount; zone++) {
+            long target = total * zone / zoneCount;
+            int index = Arrays.binarySearch(prefix, previous, n + 1, target);
+            previous = index >= 0 ? index : -index - 1;
+            bounds[zone] = from + previous;
+        }
+        bounds[zoneCount] = to;
+        return zoneCount;
+    }
+
+    public int[] getBounds() {
+        return bounds;
+    }
+}
@@ -0,0 +1,157 @@
+package simulate.parallel;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BinaryOperator;
+
+/**
+ * Parallel loops over index ranges. A range is split in halves, on chunk boundaries, until the pieces are no longer
+ * than the chunk size, and every piece is handed to the action as a subrange. The work runs in the ForkJoinPool of
+ * the calling thread, which is the WorkerPool of a simulation when called from one of its steps, and in the common
+ * pool otherwise.
+ */
+public final class Ranges {
+
+    private Ranges() {
+    }
+
+    /**
+     * Action applied to a subrange of indices.
+     */
+    @FunctionalInterface
+    public interface RangeAction {
+        /**
+         * Processes the indices from to to - 1.
+         */
+        void run(int from, int to);
+    }
+
+    /**
+     * Applies the action to the indices from to to - 1 in parallel, in chunks of at most chunkSize indices. Ranges
+     * that fit in one chunk run in the calling thread.
+     */
+    public static void forEach(int from, int to, int chunkSize, RangeAction action) {
+        if (to - from <= chunkSize) {
+            if (from < to) {
+                action.run(from, to);
+            }
+            return;
+        }
+        invoke(new RangeTask(from, to, chunkSize, action));
+    }
+
+    /**
+     * Function computing a partial result from a subrange of indices.
+     */
+    @FunctionalInterface
+    public interface RangeFunction<T> {
+        /**
+         * Computes the result of the indices from to to - 1.
+         */
+        T apply(int from, int to);
+    }
+
+    /**
+     * Reduces the indices from to to - 1 in parallel: the function computes a partial result for every chunk of at
+     * most chunkSize indices, and the partial results are combined in index order, so that the result does not
+     * depend on the order in which the chunks ran.
+     * @return The combined result, or identity if the range is empty
+     */
+    public static <T> T reduce(int from, int to, int chunkSize, T identity, RangeFunction<T> function,
+                               BinaryOperator<T> combiner) {
+        if (from >= to) {
+            return identity;
+        }
+        Object[] partials = new Object[(to - from + chunkSize - 1) / chunkSize];
+        forEach(from, to, chunkSize, (chunkFrom, chunkTo) ->
+                partials[(chunkFrom - from) / chunkSize] = function.apply(chunkFrom, chunkTo));
+        @SuppressWarnings("unchecked")
+        T result = (T) partials[0];
+        for (int chunk = 1; chunk < partials.length; chunk++) {
+            @SuppressWarnings("unchecked")
+            T partial = (T) partials[chunk];
+            result = combiner.apply(result, partial);
+        }
+        return result;
+    }
+
+    /**
+     * Applies the action to the zones bounds[zone] to bounds[zone + 1] - 1, for zone from 0 to zones - 1, in parallel.
+     * Empty zones are skipped.
+     */
+    public static void forEachZone(int[] bounds, int zones, RangeAction action) {
+        invoke(new ZoneTask(bounds, 0, zones, action));
+    }
+
+    /**
+     * Runs the task in the pool of the calling thread, or in the common pool when called from outside of any pool.
+     */
+    public static void invoke(ForkJoinTask<?> task) {
+        if (ForkJoinTask.inForkJoinPool()) {
+            task.invoke();
+        } else {
+            ForkJoinPool.commonPool().invoke(task);
+        }
+    }
+
+    /**
+     * Returns the number of threads of the pool that runs the work of the calling thread.
+     * @return Parallelism of the current pool.
+     */
+    public static int getParallelism() {
+        ForkJoinPool pool = ForkJoinTask.getPool();
+        return pool != null ? pool.getParallelism() : ForkJoinPool.getCommonPoolParallelism();
+    }
+
+    private static class ZoneTask extends RecursiveAction {
+        private final int[] bounds;
+        private final int first;
+        private final int last;
+        private final RangeAction action;
+
+        private ZoneTask(int[] bounds, int first, int last, RangeAction action) {
+            this.bounds = bounds;
+            this.first = first;
+            this.last = last;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute() {
+            if (last - first == 1) {
+                if (bounds[first] < bounds[last]) {
+                    action.run(bounds[first], bounds[last]);
+                }
+                return;
+            }
+            int middle = (first + last) >>> 1;
+            invokeAll(new ZoneTask(bounds, first, middle, action), new ZoneTask(bounds, middle, last, action));
+        }
+    }
+
+    private static class RangeTask extends RecursiveAction {
+        private final int from;
+        private final int to;
+        private final int chunkSize;
+        private final RangeAction action;
+
+        private RangeTask(int from, int to, int chunkSize, RangeAction action) {
+            this.from = from;
+            this.to = to;
+            this.chunkSize = chunkSize;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute() {
+            int chunks = (to - from + chunkSize - 1) / chunkSize;
+            if (chunks <= 1) {
+                action.run(from, to);
+                return;
+            }
+            int middle = from + chunks / 2 * chunkSize;
+            invokeAll(new RangeTask(from, middle, chunkSize, action), new RangeTask(middle, to, chunkSize, action));
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package simulate.parallel;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The threads a simulation runs on, together with the number of particles handed to a thread at a time. A step run
+ * through run() executes inside the pool, so the parallel loops of the step, which use the pool of the calling
+ * thread, stay on these threads instead of the JVM-wide common pool. Several simulations on one host can therefore
+ * be given isolated pools with a fixed number of threads each.
+ */
+public class WorkerPool implements AutoCloseable {
+
+    public static final int DEFAULT_CHUNK_SIZE = 256;
+    private static final AtomicInteger poolCount = new AtomicInteger();
+
+    private final ForkJoinPool pool;
+    private final boolean owned; // Whether the pool was created by, and is shut down with, this object.
+    private final int chunkSize;
+
+    /**
+     * Creates a dedicated pool of daemon threads.
+     * @param threads number of threads
+     * @param chunkSize number of particles handed to a thread at a time
+     */
+    public WorkerPool(int threads, int chunkSize) {
+        int poolId = poolCount.incrementAndGet();
+        this.pool = new ForkJoinPool(threads, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("BarnesHut-" + poolId + "-worker-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+        this.owned = true;
+        this.chunkSize = checkChunkSize(chunkSize);
+    }
+
+    /**
+     * Runs the simulation on an existing pool, which is not shut down by close().
+     * @param pool pool to run on
+     * @param chunkSize number of particles handed to a thread at a time
+     */
+    public WorkerPool(ForkJoinPool pool, int chunkSize) {
+        this.pool = pool;
+        this.owned = false;
+        this.chunkSize = checkChunkSize(chunkSize);
+    }
+
+    /**
+     * Returns a worker pool on the common pool with the default chunk size.
+     * @return the common worker pool
+     */
+    public static WorkerPool common() {
+        return new WorkerPool(ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Runs the step inside the pool and waits for it to complete.
+     * @param step work of a step
+     */
+    public void run(Runnable step) {
+        if (ForkJoinTask.getPool() == pool) {
+            step.run();
+        } else {
+            pool.invoke(ForkJoinTask.adapt(step));
+        }
+    }
+
+    /**
+     * Applies the action to the indices from to to - 1 in parallel on the pool, chunkSize indices at a time.
+     */
+    public void forEach(int from, int to, Ranges.RangeAction action) {
+        run(() -> Ranges.forEach(from, to, chunkSize, action));
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * Shuts the pool down if it was created by this object.
+     */
+    @Override
+    public void close() {
+        if (owned) {
+            pool.shutdown();
+        }
+    }
+
+    private static int checkChunkSize(int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+        return chunkSize;
+    }
+}
@@ -0,0 +1,211 @@
+package simulate.tree;
+
+import simulate.objects.ParticleStore;
+import simulate.parallel.Ranges;
+
+/**
+ * Fits the region covered by a LinearQuadtree to the particles every step, so that no particle falls outside the
+ * tree and the top levels of the tree are not spent on empty space. The bounding box of the particles is computed
+ * by a parallel min/max reduction over blocks of the store. The tree keeps its region while it still contains the box and is at most twice
+ * as large as needed, which lets a refit keep the tree across steps; otherwise the region is set to the box's
+ * bounding square, enlarged slightly so that small movements do not move it again.
+ * <p>
+ * Optionally, particles farther than escapeRadius from the center of mass are treated as escapers. Escapers are
+ * moved behind the other particles of the store and kept out of the tree, so that a few far away particles cannot
+ * stretch the tree over mostly empty space. They interact cheaply through a far-field list: an escaper feels the
+ * tree as a point mass plus the other escapers directly, and the particles in the tree feel the escapers directly.
+ */
+public class AdaptiveBounds {
+
+    private static final int BLOCK = 1 << 14; // Number of particles reduced or accelerated by one task.
+    private static final double PADDING = 1.0 / 16; // Fraction by which a new region is larger than the box.
+
+    private final double G;
+    private final double escapeRadius;
+    private boolean[] escaper = new boolean[0];
+    private int[] order = new int[0];
+    private int boundCount;
+
+    /**
+     * Initializes the bounds.
+     * @param G the gravitational constant
+     * @param escapeRadius distance from the center of mass beyond which particles are escapers, or 0 to keep all
+     *                     particles in the tree
+     */
+    public AdaptiveBounds(double G, double escapeRadius) {
+        this.G = G;
+        this.escapeRadius = escapeRadius;
+    }
+
+    /**
+     * Separates the escapers from the other particles and fits the tree's region to the latter. Reorders the store
+     * when the set of escapers has changed, in which case the tree is rebuilt by its next refit.
+     * @param tree Tree whose region is updated
+     * @param store Store holding the particle state
+     * @return Number of particles to put into the tree, which are the first particles of the store
+     */
+    public int update(LinearQuadtree tree, ParticleStore store) {
+        int n = store.size();
+        boundCount = escapeRadius > 0 ? separateEscapers(tree, store) : n;
+        if (boundCount == 0) {
+            return 0;
+        }
+        double[] box = Ranges.reduce(0, boundCount, BLOCK, null, (from, to) -> blockBounds(store, from, to),
+                AdaptiveBounds::merge);
+        double extent = Math.max(box[2] - box[0], box[3] - box[1]);
+        boolean contained = box[0] >= tree.originX && box[1] >= tree.originY
+                && box[2] < tree.originX + tree.size && box[3] < tree.originY + tree.size;
+        if (!contained || tree.size > 2 * extent * (1 + PADDING)) {
+            double size = extent > 0 ? extent * (1 + PADDING) : 1;
+            tree.setBounds((box[0] + box[2] - size) / 2, (box[1] + box[3] - size) / 2, size);
+        }
+        return boundCount;
+    }
+
+    /**
+     * Adds the far-field interactions of the escapers found by the last update to the accelerations, which must
+     * already hold the accelerations computed from the tree for the particles in the tree.
+     * @param tree Tree built from the particles that are not escapers
+     * @param store Store holding the particle state
+     */
+    public void accelerateEscapers(LinearQuadtree tree, ParticleStore store) {
+        int n = store.size();
+        if (boundCount == n) {
+            return;
+        }
+        Ranges.forEach(0, n, BLOCK, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                accelerateEscaper(tree, store, i);
+            }
+        });
+    }
+
+    /**
+     * Adds the far-field interactions of the escapers to the accelerations of the listed particles only.
+     * @param particles indices of the particles
+     * @param count number of listed particles
+     */
+    public void accelerateEscapers(LinearQuadtree tree, ParticleStore store, int[] particles, int count) {
+        if (boundCount == store.size()) {
+            return;
+        }
+        Ranges.forEach(0, count, BLOCK, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                accelerateEscaper(tree, store, particles[i]);
+            }
+        });
+    }
+
+    /**
+     * Adds the far-field interactions of the escapers to one particle. An escaper's acceleration is replaced, since
+     * the tree does not compute it.
+     */
+    private void accelerateEscaper(LinearQuadtree tree, ParticleStore store, int i) {
+        int n = store.size();
+        double ax = 0;
+        double ay = 0;
+        if (i >= boundCount) {
+            store.ax[i] = 0;
+            store.ay[i] = 0;
+            double rootMass = tree.massOf(LinearQuadtree.ROOT);
+            if (rootMass > 0) {
+                double dx = store.x[i] - tree.centerOfMassXOf(LinearQuadtree.ROOT);
+                double dy = store.y[i] - tree.centerOfMassYOf(LinearQuadtree.ROOT);
+                double distanceSquared = dx * dx + dy * dy;
+                double product = rootMass / (distanceSquared * Math.sqrt(distanceSquared));
+                ax -= dx * product;
+                ay -= dy * product;
+            }
+        }
+        for (int j = boundCount; j < n; j++) {
+            double dx = store.x[i] - store.x[j];
+            double dy = store.y[i] - store.y[j];
+            double distanceSquared = dx * dx + dy * dy;
+            if (distanceSquared > 0) {
+                double product = store.mass[j] / (distanceSquared * Math.sqrt(distanceSquared));
+                ax -= dx * product;
+                ay -= dy * product;
+            }
+        }
+        store.ax[i] += G * ax;
+        store.ay[i] += G * ay;
+    }
+
+    /**
+     * Marks the escapers and moves them behind the other particles, keeping the order of both groups, unless they
+     * are already there.
+     * @return Number of particles that are not escapers
+     */
+    private int separateEscapers(LinearQuadtree tree, ParticleStore store) {
+        int n = store.size();
+        if (escaper.length < n) {
+            escaper = new boolean[store.x.length];
+            order = new int[store.x.length];
+        }
+        double[] moments = Ranges.reduce(0, n, BLOCK, new double[3], (from, to) -> blockMoments(store, from, to),
+                (a, b) -> new double[]{a[0] + b[0], a[1] + b[1], a[2] + b[2]});
+        double centerX = moments[0] > 0 ? moments[1] / moments[0] : 0;
+        double centerY = moments[0] > 0 ? moments[2] / moments[0] : 0;
+        double radiusSquared = escapeRadius * escapeRadius;
+        int escapers = Ranges.reduce(0, n, BLOCK, 0, (from, to) -> {
+            int count = 0;
+            for (int i = from; i < to; i++) {
+                double dx = store.x[i] - centerX;
+                double dy = store.y[i] - centerY;
+                escaper[i] = dx * dx + dy * dy > radiusSquared;
+                count += escaper[i] ? 1 : 0;
+            }
+            return count;
+        }, Integer::sum);
+        int bound = n - escapers;
+        int misplaced = Ranges.reduce(0, bound, BLOCK, 0, (from, to) -> {
+            int count = 0;
+            for (int i = from; i < to; i++) {
+                count += escaper[i] ? 1 : 0;
+            }
+            return count;
+        }, Integer::sum);
+        if (misplaced > 0) {
+            int front = 0;
+            int back = bound;
+            for (int i = 0; i < n; i++) {
+                order[escaper[i] ? back++ : front++] = i;
+            }
+            store.reorder(order);
+            tree.invalidate();
+        }
+        return bound;
+    }
+
+    /**
+     * @return minimum x, minimum y, maximum x and maximum y of the particles from to to - 1
+     */
+    private static double[] blockBounds(ParticleStore store, int from, int to) {
+        double[] box = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+                Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        for (int i = from; i < to; i++) {
+            box[0] = Math.min(box[0], store.x[i]);
+            box[1] = Math.min(box[1], store.y[i]);
+            box[2] = Math.max(box[2], store.x[i]);
+            box[3] = Math.max(box[3], store.y[i]);
+        }
+        return box;
+    }
+
+    private static double[] merge(double[] a, double[] b) {
+        return new double[]{Math.min(a[0], b[0]), Math.min(a[1], b[1]), Math.max(a[2], b[2]), Math.max(a[3], b[3])};
+    }
+
+    /**
+     * @return mass, mass-weighted x and mass-weighted y of the particles from to to - 1
+     */
+    private static double[] blockMoments(ParticleStore store, int from, int to) {
+        double[] moments = new double[3];
+        for (int i = from; i < to; i++) {
+            moments[0] += store.mass[i];
+            moments[1] += store.mass[i] * store.x[i];
+            moments[2] += store.mass[i] * store.y[i];
+        }
+        return moments;
+    }
+}
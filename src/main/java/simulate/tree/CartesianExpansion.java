@@ -0,0 +1,222 @@
+package simulate.tree;
+
+/**
+ * Cartesian Taylor expansions of the potential phi(r) = sum m_j / |r - r_j| in the plane, truncated at a fixed
+ * order. A multipole expansion about a center c holds the moments M_k = sum m_j (r_j - c)^k / k! of its sources, so
+ * that phi(r) = sum (-1)^|k| M_k D_k(r - c), where D_k is the k-th partial derivative of 1/r. A local expansion about
+ * a center t holds the Taylor coefficients L_k = D^k phi(t) / k! of the potential of distant sources. Here k = (kx, ky)
+ * runs over all multi-indices with kx + ky no larger than the order, and the coefficients of an expansion are stored
+ * by total degree and then by ky, so the coefficient of k lies at index(kx, ky).
+ * <p>
+ * Complex expansions, as used by the classic two dimensional FMM, only apply to the logarithmic potential, whose
+ * force falls off as 1/r. The simulation uses the 1/r^2 force, which is not harmonic in the plane, hence the
+ * Cartesian form. The methods are thread-safe as long as each thread passes its own scratch arrays.
+ */
+final class CartesianExpansion {
+
+    final int order;
+    final int terms;
+    private final int[] exponentX;
+    private final int[] exponentY;
+    private final double[] inverseFactorial; // 1 / n! for n up to the order.
+    private final double[] termFactor; // 1 / (kx! ky!) for every term.
+    private final double[] sign; // (-1)^(kx + ky) for every term.
+    private final double[][] binomial;
+
+    /**
+     * Initializes the coefficient tables for expansions of the given order.
+     * @param order highest total degree kept in the expansions
+     */
+    CartesianExpansion(int order) {
+        this.order = order;
+        this.terms = (order + 1) * (order + 2) / 2;
+        exponentX = new int[terms];
+        exponentY = new int[terms];
+        termFactor = new double[terms];
+        sign = new double[terms];
+        inverseFactorial = new double[order + 1];
+        binomial = new double[order + 1][order + 1];
+        double factorial = 1;
+        for (int n = 0; n <= order; n++) {
+            factorial *= Math.max(1, n);
+            inverseFactorial[n] = 1 / factorial;
+            binomial[n][0] = 1;
+            for (int k = 1; k <= n; k++) {
+                binomial[n][k] = binomial[n - 1][k - 1] + (k < n ? binomial[n - 1][k] : 0);
+            }
+        }
+        for (int n = 0; n <= order; n++) {
+            for (int ky = 0; ky <= n; ky++) {
+                int term = index(n - ky, ky);
+                exponentX[term] = n - ky;
+                exponentY[term] = ky;
+                termFactor[term] = inverseFactorial[n - ky] * inverseFactorial[ky];
+                sign[term] = (n & 1) == 0 ? 1 : -1;
+            }
+        }
+    }
+
+    /**
+     * Returns the position of the coefficient of the multi-index (kx, ky) within an expansion.
+     */
+    static int index(int kx, int ky) {
+        int n = kx + ky;
+        return n * (n + 1) / 2 + ky;
+    }
+
+    /**
+     * Adds a point mass to a multipole expansion.
+     * @param multipoles array holding the expansion
+     * @param offset position of the expansion in the array
+     * @param dx x-offset of the mass from the expansion center
+     * @param dy y-offset of the mass from the expansion center
+     * @param mass mass of the source
+     * @param powersX scratch array of length order + 1
+     * @param powersY scratch array of length order + 1
+     */
+    void addSource(double[] multipoles, int offset, double dx, double dy, double mass,
+                   double[] powersX, double[] powersY) {
+        powers(dx, powersX);
+        powers(dy, powersY);
+        for (int term = 0; term < terms; term++) {
+            multipoles[offset + term] += mass * termFactor[term] * powersX[exponentX[term]] * powersY[exponentY[term]];
+        }
+    }
+
+    /**
+     * Shifts a child's multipole expansion to its parent's center and adds it to the parent's expansion.
+     * @param dx x-offset of the child's center from the parent's center
+     * @param dy y-offset of the child's center from the parent's center
+     */
+    void shiftMultipole(double[] multipoles, int childOffset, int parentOffset, double dx, double dy,
+                        double[] powersX, double[] powersY) {
+        scaledPowers(dx, powersX);
+        scaledPowers(dy, powersY);
+        for (int term = 0; term < terms; term++) {
+            int kx = exponentX[term];
+            int ky = exponentY[term];
+            double sum = 0;
+            for (int qx = 0; qx <= kx; qx++) {
+                for (int qy = 0; qy <= ky; qy++) {
+                    sum += powersX[kx - qx] * powersY[ky - qy] * multipoles[childOffset + index(qx, qy)];
+                }
+            }
+            multipoles[parentOffset + term] += sum;
+        }
+    }
+
+    /**
+     * Converts a multipole expansion into a local expansion about a distant center and adds it to that expansion.
+     * Terms whose combined degree exceeds the order are dropped.
+     * @param dx x-offset of the local center from the multipole center
+     * @param dy y-offset of the local center from the multipole center
+     * @param derivatives scratch array of length terms
+     */
+    void multipoleToLocal(double[] multipoles, int multipoleOffset, double[] locals, int localOffset,
+                          double dx, double dy, double[] derivatives) {
+        derivatives(dx, dy, derivatives);
+        for (int term = 0; term < terms; term++) {
+            int lx = exponentX[term];
+            int ly = exponentY[term];
+            int remaining = order - lx - ly;
+            double sum = 0;
+            for (int source = 0, end = (remaining + 1) * (remaining + 2) / 2; source < end; source++) {
+                sum += sign[source] * multipoles[multipoleOffset + source]
+                        * derivatives[index(exponentX[source] + lx, exponentY[source] + ly)];
+            }
+            locals[localOffset + term] += sum * termFactor[term];
+        }
+    }
+
+    /**
+     * Shifts a parent's local expansion to a child's center and stores it as the child's expansion.
+     * @param dx x-offset of the child's center from the parent's center
+     * @param dy y-offset of the child's center from the parent's center
+     */
+    void shiftLocal(double[] locals, int parentOffset, int childOffset, double dx, double dy,
+                    double[] powersX, double[] powersY) {
+        powers(dx, powersX);
+        powers(dy, powersY);
+        for (int term = 0; term < terms; term++) {
+            int qx = exponentX[term];
+            int qy = exponentY[term];
+            double sum = 0;
+            for (int lx = qx; lx <= order - qy; lx++) {
+                for (int ly = qy; lx + ly <= order; ly++) {
+                    sum += locals[parentOffset + index(lx, ly)] * binomial[lx][qx] * binomial[ly][qy]
+                            * powersX[lx - qx] * powersY[ly - qy];
+                }
+            }
+            locals[childOffset + term] = sum;
+        }
+    }
+
+    /**
+     * Evaluates the gradient of a local expansion.
+     * @param dx x-offset of the evaluation point from the local center
+     * @param dy y-offset of the evaluation point from the local center
+     * @param gradient array receiving the x and y components
+     */
+    void evaluateGradient(double[] locals, int offset, double dx, double dy, double[] powersX, double[] powersY,
+                          double[] gradient) {
+        powers(dx, powersX);
+        powers(dy, powersY);
+        double gx = 0;
+        double gy = 0;
+        for (int term = 1; term < terms; term++) {
+            int kx = exponentX[term];
+            int ky = exponentY[term];
+            double coefficient = locals[offset + term];
+            if (kx > 0) {
+                gx += coefficient * kx * powersX[kx - 1] * powersY[ky];
+            }
+            if (ky > 0) {
+                gy += coefficient * ky * powersX[kx] * powersY[ky - 1];
+            }
+        }
+        gradient[0] = gx;
+        gradient[1] = gy;
+    }
+
+    /**
+     * Computes the partial derivatives D_k of 1/r at (x, y) for every term, using the recurrence
+     * n r^2 D_k = -(2n - 1) sum_i k_i x_i D_(k - e_i) - (n - 1) sum_i k_i (k_i - 1) D_(k - 2 e_i) with n = |k|.
+     */
+    void derivatives(double x, double y, double[] derivatives) {
+        double inverseSquare = 1 / (x * x + y * y);
+        derivatives[0] = Math.sqrt(inverseSquare);
+        for (int n = 1; n <= order; n++) {
+            for (int ky = 0; ky <= n; ky++) {
+                int kx = n - ky;
+                double value = 0;
+                if (kx > 0) {
+                    value -= (2 * n - 1) * kx * x * derivatives[index(kx - 1, ky)];
+                }
+                if (ky > 0) {
+                    value -= (2 * n - 1) * ky * y * derivatives[index(kx, ky - 1)];
+                }
+                if (kx > 1) {
+                    value -= (n - 1) * kx * (kx - 1) * derivatives[index(kx - 2, ky)];
+                }
+                if (ky > 1) {
+                    value -= (n - 1) * ky * (ky - 1) * derivatives[index(kx, ky - 2)];
+                }
+                derivatives[index(kx, ky)] = value * inverseSquare / n;
+            }
+        }
+    }
+
+    private void powers(double value, double[] powers) {
+        powers[0] = 1;
+        for (int n = 1; n <= order; n++) {
+            powers[n] = powers[n - 1] * value;
+        }
+    }
+
+    private void scaledPowers(double value, double[] powers) {
+        powers(value, powers);
+        for (int n = 2; n <= order; n++) {
+            powers[n] *= inverseFactorial[n];
+        }
+    }
+}
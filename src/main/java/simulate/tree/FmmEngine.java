@@ -0,0 +1,380 @@
+package simulate.tree;
+
+import simulate.objects.ParticleStore;
+import simulate.parallel.Ranges;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Force engine implementing the Fast Multipole Method on the LinearQuadtree, with the dual tree traversal described
+ * by Dehnen (2002). Nodes holding at most leafSize particles are treated as leaves. Every node down to the leaves
+ * gets a multipole expansion of its particles, computed bottom-up, and a local expansion of the potential of all
+ * well separated particles, computed top-down: two nodes are well separated when the sum of their radii is below
+ * theta times the distance between their centers, in which case the source's multipole expansion is converted into
+ * the target's local expansion once for all particles of both. The particles of a leaf then take their acceleration
+ * from the leaf's local expansion plus a direct sum over the leaves it is not well separated from. The cost of a step
+ * grows linearly with the number of particles, rather than as n log n for a tree walk.
+ * <p>
+ * The expansions are Cartesian Taylor expansions, see CartesianExpansion. prepare() computes the expansions and the
+ * near lists of the leaves, and accelerate() evaluates them for a range of particles.
+ */
+public class FmmEngine implements ForceEngine {
+
+    private static final int PARALLEL_THRESHOLD = 4096; // Smallest number of particles handled by a separate task.
+
+    private final double G;
+    private final double thetaSquared;
+    private final int leafSize;
+    private final CartesianExpansion expansion;
+    private final ThreadLocal<Scratch> scratch;
+    private final LongAdder interactions = new LongAdder();
+    private LinearQuadtree tree;
+    private ParticleStore store;
+    private int[] stack = new int[4 * (MortonKeys.BITS + 1)];
+    private int[] cellOf = new int[0]; // Position of each node's expansions, only valid for nodes down to the leaves.
+    private int[] leafOfCell = new int[0];
+    private double[] multipoles = new double[0];
+    private double[] locals = new double[0];
+    private int cellCount;
+    private int leafCount;
+    private int[] leafNodes = new int[0];
+    private int[] leafStarts = new int[0];
+    private int[][] nearLists = new int[0][]; // Leaves within reach of each leaf, which are summed directly.
+    private int[] nearCounts = new int[0];
+
+    /**
+     * Initializes the engine.
+     * @param G the gravitational constant
+     * @param theta acceptance criterion for the interaction of two nodes
+     * @param leafSize largest number of particles in a leaf
+     * @param order order of the multipole and local expansions
+     */
+    public FmmEngine(double G, double theta, int leafSize, int order) {
+        this.G = G;
+        this.thetaSquared = theta * theta;
+        this.leafSize = leafSize;
+        this.expansion = new CartesianExpansion(order);
+        this.scratch = ThreadLocal.withInitial(() -> new Scratch(expansion));
+    }
+
+    @Override
+    public void prepare(LinearQuadtree tree, ParticleStore store) {
+        this.tree = tree;
+        this.store = store;
+        interactions.reset();
+        collectCells();
+        if (cellCount == 0) {
+            return;
+        }
+        int terms = expansion.terms;
+        if (multipoles.length < cellCount * terms) {
+            multipoles = new double[cellCount * terms * 3 / 2];
+            locals = new double[multipoles.length];
+        }
+        Arrays.fill(multipoles, 0, cellCount * terms, 0);
+        Arrays.fill(locals, 0, terms, 0);
+        Ranges.invoke(new UpwardTask(LinearQuadtree.ROOT));
+        Ranges.invoke(new DownwardTask(LinearQuadtree.ROOT, new int[]{LinearQuadtree.ROOT}, 1));
+    }
+
+    @Override
+    public void accelerate(int from, int to) {
+        int leaf = Arrays.binarySearch(leafStarts, 0, leafCount, from);
+        if (leaf < 0) {
+            leaf = Math.max(0, -leaf - 2);
+        }
+        Scratch scratch = this.scratch.get();
+        final double[] px = store.x;
+        final double[] py = store.y;
+        final double[] pm = store.mass;
+        final int[] start = tree.start;
+        final int[] count = tree.count;
+        long evaluated = 0;
+        for (; leaf < leafCount && leafStarts[leaf] < to; leaf++) {
+            int node = leafNodes[leaf];
+            int leafFrom = Math.max(from, start[node]);
+            int leafTo = Math.min(to, start[node] + count[node]);
+            int[] near = nearLists[leaf];
+            int nearParticles = 0;
+            for (int i = 0; i < nearCounts[leaf]; i++) {
+                nearParticles += count[near[i]];
+            }
+            evaluated += (long) (leafTo - leafFrom) * (1 + nearParticles);
+            Arrays.fill(store.cost, leafFrom, leafTo, 1 + nearParticles);
+            for (int particle = leafFrom; particle < leafTo; particle++) {
+                final double x = px[particle];
+                final double y = py[particle];
+                expansion.evaluateGradient(locals, cellOf[node] * expansion.terms, x - tree.centerX[node],
+                        y - tree.centerY[node], scratch.powersX, scratch.powersY, scratch.gradient);
+                double ax = scratch.gradient[0];
+                double ay = scratch.gradient[1];
+                for (int i = 0; i < nearCounts[leaf]; i++) {
+                    for (int j = start[near[i]], end = start[near[i]] + count[near[i]]; j < end; j++) {
+                        double dx = x - px[j];
+                        double dy = y - py[j];
+                        double distanceSquared = dx * dx + dy * dy;
+                        if (distanceSquared > 0) {
+                            double product = pm[j] / (distanceSquared * Math.sqrt(distanceSquared));
+                            ax -= dx * product;
+                            ay -= dy * product;
+                        }
+                    }
+                }
+                store.ax[particle] = G * ax;
+                store.ay[particle] = G * ay;
+            }
+        }
+        interactions.add(evaluated);
+    }
+
+    @Override
+    public long getInteractionCount() {
+        return interactions.sum();
+    }
+
+    private boolean isLeaf(int node) {
+        return tree.count[node] <= leafSize || tree.firstChild[node] == LinearQuadtree.NO_CHILDREN;
+    }
+
+    /**
+     * Numbers the non-empty nodes down to the leaves and collects the leaves in Morton order, so that the leaves'
+     * particle ranges follow each other.
+     */
+    private void collectCells() {
+        if (cellOf.length < tree.nodeCount) {
+            cellOf = new int[tree.getCapacity()];
+        }
+        cellCount = 0;
+        leafCount = 0;
+        int top = 0;
+        stack[top++] = LinearQuadtree.ROOT;
+        while (top > 0) {
+            int node = stack[--top];
+            if (tree.count[node] == 0) {
+                continue;
+            }
+            if (cellCount == leafOfCell.length) {
+                leafOfCell = Arrays.copyOf(leafOfCell, Math.max(16, cellCount * 2));
+            }
+            cellOf[node] = cellCount;
+            leafOfCell[cellCount] = -1;
+            if (isLeaf(node)) {
+                leafOfCell[cellCount] = addLeaf(node);
+                cellCount++;
+                continue;
+            }
+            cellCount++;
+            int child = tree.firstChild[node];
+            stack[top++] = child + 3;
+            stack[top++] = child + 2;
+            stack[top++] = child + 1;
+            stack[top++] = child;
+        }
+    }
+
+    private int addLeaf(int node) {
+        if (leafCount == leafNodes.length) {
+            int capacity = Math.max(16, leafCount * 2);
+            leafNodes = Arrays.copyOf(leafNodes, capacity);
+            leafStarts = Arrays.copyOf(leafStarts, capacity);
+            nearLists = Arrays.copyOf(nearLists, capacity);
+            nearCounts = Arrays.copyOf(nearCounts, capacity);
+        }
+        leafNodes[leafCount] = node;
+        leafStarts[leafCount] = tree.start[node];
+        return leafCount++;
+    }
+
+    /**
+     * Computes the multipole expansion of a node from its particles or from its children's expansions.
+     */
+    private void computeMultipoles(int node, Scratch scratch) {
+        int offset = cellOf[node] * expansion.terms;
+        if (isLeaf(node)) {
+            for (int i = tree.start[node], end = tree.start[node] + tree.count[node]; i < end; i++) {
+                expansion.addSource(multipoles, offset, store.x[i] - tree.centerX[node],
+                        store.y[i] - tree.centerY[node], store.mass[i], scratch.powersX, scratch.powersY);
+            }
+            return;
+        }
+        for (int child = tree.firstChild[node]; child < tree.firstChild[node] + 4; child++) {
+            if (tree.count[child] > 0) {
+                expansion.shiftMultipole(multipoles, cellOf[child] * expansion.terms, offset,
+                        tree.centerX[child] - tree.centerX[node], tree.centerY[child] - tree.centerY[node],
+                        scratch.powersX, scratch.powersY);
+            }
+        }
+    }
+
+    private boolean wellSeparated(int target, int source) {
+        double dx = tree.centerX[target] - tree.centerX[source];
+        double dy = tree.centerY[target] - tree.centerY[source];
+        // Half the diagonal of a cell bounds the distance of its particles from its center.
+        double radii = (tree.cellSize[tree.level[target]] + tree.cellSize[tree.level[source]]) * Math.sqrt(0.5);
+        return radii * radii < thetaSquared * (dx * dx + dy * dy);
+    }
+
+    /**
+     * Computes the multipole expansions of one node's subtree, children before parents.
+     */
+    private class UpwardTask extends RecursiveAction {
+        private final int node;
+
+        UpwardTask(int node) {
+            this.node = node;
+        }
+
+        @Override
+        protected void compute() {
+            if (!isLeaf(node)) {
+                int first = tree.firstChild[node];
+                if (tree.count[node] > PARALLEL_THRESHOLD) {
+                    ForkJoinTask.invokeAll(new UpwardTask(first), new UpwardTask(first + 1),
+                            new UpwardTask(first + 2), new UpwardTask(first + 3));
+                } else {
+                    for (int child = first; child < first + 4; child++) {
+                        if (tree.count[child] > 0) {
+                            new UpwardTask(child).compute();
+                        }
+                    }
+                }
+            }
+            if (tree.count[node] > 0) {
+                computeMultipoles(node, scratch.get());
+            }
+        }
+    }
+
+    /**
+     * Interacts one target node with a list of source nodes. Well separated sources are added to the target's local
+     * expansion, and sources too close to be accepted are either split, when they are larger than the target, or
+     * passed on to the target's children. A leaf target keeps the leaves left over as its near list. The target's
+     * local expansion is then shifted to its children, which are handled by separate tasks when they hold enough
+     * particles.
+     */
+    private class DownwardTask extends RecursiveAction {
+        private final int target;
+        private final int[] sources;
+        private final int sourceCount;
+
+        DownwardTask(int target, int[] sources, int sourceCount) {
+            this.target = target;
+            this.sources = sources;
+            this.sourceCount = sourceCount;
+        }
+
+        @Override
+        protected void compute() {
+            Scratch scratch = FmmEngine.this.scratch.get();
+            final int[] count = tree.count;
+            final int[] firstChild = tree.firstChild;
+            final boolean leaf = isLeaf(target);
+            final int localOffset = cellOf[target] * expansion.terms;
+            int[] deferred = new int[Math.max(4, sourceCount)];
+            int deferredCount = 0;
+            int nearLeaf = leaf ? leafOfCell[cellOf[target]] : -1;
+            int nearCount = 0;
+            long converted = 0;
+
+            int top = scratch.push(sources, sourceCount);
+            while (top > 0) {
+                int source = scratch.work[--top];
+                if (count[source] == 0) {
+                    continue;
+                }
+                if (wellSeparated(target, source)) {
+                    expansion.multipoleToLocal(multipoles, cellOf[source] * expansion.terms, locals, localOffset,
+                            tree.centerX[target] - tree.centerX[source], tree.centerY[target] - tree.centerY[source],
+                            scratch.derivatives);
+                    converted++;
+                } else if (leaf && isLeaf(source)) {
+                    if (nearLists[nearLeaf] == null || nearCount == nearLists[nearLeaf].length) {
+                        nearLists[nearLeaf] = nearLists[nearLeaf] == null
+                                ? new int[16] : Arrays.copyOf(nearLists[nearLeaf], nearCount * 2);
+                    }
+                    nearLists[nearLeaf][nearCount++] = source;
+                } else if (leaf || (!isLeaf(source) && tree.level[source] <= tree.level[target])) {
+                    top = scratch.pushChildren(top, firstChild[source]);
+                } else {
+                    if (deferredCount == deferred.length) {
+                        deferred = Arrays.copyOf(deferred, deferredCount * 2);
+                    }
+                    deferred[deferredCount++] = source;
+                }
+            }
+            interactions.add(converted);
+            if (leaf) {
+                nearCounts[nearLeaf] = nearCount;
+                return;
+            }
+
+            int first = firstChild[target];
+            for (int child = first; child < first + 4; child++) {
+                if (count[child] > 0) {
+                    expansion.shiftLocal(locals, localOffset, cellOf[child] * expansion.terms,
+                            tree.centerX[child] - tree.centerX[target], tree.centerY[child] - tree.centerY[target],
+                            scratch.powersX, scratch.powersY);
+                }
+            }
+            if (count[target] > PARALLEL_THRESHOLD) {
+                DownwardTask[] tasks = new DownwardTask[4];
+                int taskCount = 0;
+                for (int child = first; child < first + 4; child++) {
+                    if (count[child] > 0) {
+                        tasks[taskCount++] = new DownwardTask(child, deferred, deferredCount);
+                    }
+                }
+                ForkJoinTask.invokeAll(Arrays.copyOf(tasks, taskCount));
+            } else {
+                for (int child = first; child < first + 4; child++) {
+                    if (count[child] > 0) {
+                        new DownwardTask(child, deferred, deferredCount).compute();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Per-thread buffers used while computing and evaluating the expansions.
+     */
+    private static class Scratch {
+        private final double[] powersX;
+        private final double[] powersY;
+        private final double[] derivatives;
+        private final double[] gradient = new double[2];
+        private int[] work = new int[64];
+
+        Scratch(CartesianExpansion expansion) {
+            powersX = new double[expansion.order + 1];
+            powersY = new double[expansion.order + 1];
+            derivatives = new double[expansion.terms];
+        }
+
+        /**
+         * Replaces the work stack's contents with the given nodes.
+         * @return new top of the stack
+         */
+        private int push(int[] nodes, int count) {
+            if (work.length < count) {
+                work = Arrays.copyOf(nodes, count * 2);
+            } else {
+                System.arraycopy(nodes, 0, work, 0, count);
+            }
+            return count;
+        }
+
+        private int pushChildren(int top, int firstChild) {
+            if (top + 4 > work.length) {
+                work = Arrays.copyOf(work, work.length * 2);
+            }
+            for (int child = firstChild + 3; child >= firstChild; child--) {
+                work[top++] = child;
+            }
+            return top;
+        }
+    }
+}
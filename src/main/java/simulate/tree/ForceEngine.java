@@ -0,0 +1,33 @@
+package simulate.tree;
+
+import simulate.objects.ParticleStore;
+
+/**
+ * Computes the gravitational acceleration of every particle from a LinearQuadtree. The simulator calls prepare()
+ * once after each tree build and then calls accelerate() for ranges of particle indices, possibly from several
+ * threads at once.
+ */
+public interface ForceEngine {
+
+    /**
+     * Prepares the engine for a step.
+     * @param tree Tree built from the store for this step
+     * @param store Store holding the particle state
+     */
+    void prepare(LinearQuadtree tree, ParticleStore store);
+
+    /**
+     * Computes the accelerations of the particles at indices from to to - 1 and stores them in the store, together
+     * with the number of interactions evaluated for each particle, which is its cost. Concurrent calls must cover
+     * disjoint ranges.
+     * @param from first particle index
+     * @param to index after the last particle
+     */
+    void accelerate(int from, int to);
+
+    /**
+     * Returns the number of node and particle interactions evaluated since the last call to prepare().
+     * @return Interaction count
+     */
+    long getInteractionCount();
+}
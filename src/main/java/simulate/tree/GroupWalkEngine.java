@@ -0,0 +1,337 @@
+package simulate.tree;
+
+import simulate.objects.ParticleStore;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Force engine implementing the grouped tree walk described by Barnes (1990). The particles are split into groups,
+ * which are the largest nodes holding at most groupSize particles. For each group the tree is walked once to build
+ * an interaction list, using an opening test against the bounding box of the group's particles: a node is accepted
+ * when its side length divided by its distance to the nearest point of the box is below theta, which guarantees
+ * that every particle of the group would have accepted it on its own. Opened leaves contribute their particles to
+ * the list. The list is then evaluated for every particle of the group in a tight loop by an InteractionKernel,
+ * which may evaluate several entries per instruction. Accepted nodes of a quadrupole tree also contribute their
+ * quadrupole term, which is evaluated by a scalar loop. In single or mixed precision the kernel reads copies of the
+ * lists in single precision, with the positions taken relative to the center of the group's box, so that the
+ * rounding of the positions scales with the distances to the sources rather than with the size of the simulation.
+ * The engine also reads trees whose moments are stored in single precision.
+ */
+public class GroupWalkEngine implements ForceEngine {
+
+    private final double G;
+    private final double thetaSquared;
+    private final int groupSize;
+    private final InteractionKernel kernel;
+    private final Precision precision;
+    private final ThreadLocal<InteractionList> lists = ThreadLocal.withInitial(InteractionList::new);
+    private LinearQuadtree tree;
+    private ParticleStore store;
+    private int groupCount;
+    private int[] groupNodes = new int[0];
+    private int[] groupStarts = new int[0];
+    private int[] stack = new int[4 * (MortonKeys.BITS + 1)];
+    private final LongAdder interactions = new LongAdder();
+
+    /**
+     * Initializes the engine.
+     * @param G the gravitational constant
+     * @param theta monopole acceptance criterion
+     * @param groupSize largest number of particles sharing an interaction list
+     */
+    public GroupWalkEngine(double G, double theta, int groupSize) {
+        this(G, theta, groupSize, InteractionKernel.create(false), Precision.DOUBLE);
+    }
+
+    /**
+     * Initializes the engine with the given kernel and precision for the interaction lists.
+     * @param G the gravitational constant
+     * @param theta monopole acceptance criterion
+     * @param groupSize largest number of particles sharing an interaction list
+     * @param kernel kernel evaluating the point masses and particles of the lists
+     * @param precision precision of the lists and of their evaluation
+     */
+    public GroupWalkEngine(double G, double theta, int groupSize, InteractionKernel kernel, Precision precision) {
+        this.G = G;
+        this.thetaSquared = theta * theta;
+        this.groupSize = groupSize;
+        this.kernel = kernel;
+        this.precision = precision;
+    }
+
+    /**
+     * Collects the groups of the tree in Morton order, so that the groups' particle ranges follow each other.
+     */
+    @Override
+    public void prepare(LinearQuadtree tree, ParticleStore store) {
+        this.tree = tree;
+        this.store = store;
+        interactions.reset();
+        groupCount = 0;
+        int top = 0;
+        stack[top++] = LinearQuadtree.ROOT;
+        while (top > 0) {
+            int node = stack[--top];
+            if (tree.count[node] == 0) {
+                continue;
+            }
+            int child = tree.firstChild[node];
+            if (tree.count[node] <= groupSize || child == LinearQuadtree.NO_CHILDREN) {
+                addGroup(node);
+                continue;
+            }
+            stack[top++] = child + 3;
+            stack[top++] = child + 2;
+            stack[top++] = child + 1;
+            stack[top++] = child;
+        }
+    }
+
+    private void addGroup(int node) {
+        if (groupCount == groupNodes.length) {
+            groupNodes = Arrays.copyOf(groupNodes, Math.max(16, groupCount * 2));
+            groupStarts = Arrays.copyOf(groupStarts, groupNodes.length);
+        }
+        groupNodes[groupCount] = node;
+        groupStarts[groupCount] = tree.start[node];
+        groupCount++;
+    }
+
+    @Override
+    public void accelerate(int from, int to) {
+        int group = Arrays.binarySearch(groupStarts, 0, groupCount, from);
+        if (group < 0) {
+            group = Math.max(0, -group - 2);
+        }
+        InteractionList list = lists.get();
+        for (; group < groupCount && groupStarts[group] < to; group++) {
+            int node = groupNodes[group];
+            int groupFrom = Math.max(from, tree.start[node]);
+            int groupTo = Math.min(to, tree.start[node] + tree.count[node]);
+            if (groupFrom < groupTo) {
+                list.build(node);
+                interactions.add(list.evaluate(groupFrom, groupTo));
+            }
+        }
+    }
+
+    @Override
+    public long getInteractionCount() {
+        return interactions.sum();
+    }
+
+    /**
+     * Per-thread interaction list. Accepted nodes are stored as point masses, and the particles of opened leaves
+     * are copied into the list.
+     */
+    private class InteractionList {
+        private final int[] stack = new int[4 * (MortonKeys.BITS + 1)];
+        private int cellCount;
+        private double[] cellX = new double[64];
+        private double[] cellY = new double[64];
+        private double[] cellMass = new double[64];
+        private double[] cellXX = new double[64];
+        private double[] cellXY = new double[64];
+        private double[] cellYY = new double[64];
+        private int bodyCount;
+        private double[] bodyX = new double[256];
+        private double[] bodyY = new double[256];
+        private double[] bodyMass = new double[256];
+        private float[] singleCellX = new float[0];
+        private float[] singleCellY = new float[0];
+        private float[] singleCellMass = new float[0];
+        private float[] singleBodyX = new float[0];
+        private float[] singleBodyY = new float[0];
+        private float[] singleBodyMass = new float[0];
+        private double originX; // Center of the group's box, subtracted from the single precision positions.
+        private double originY;
+        private final double[] acceleration = new double[2];
+
+        /**
+         * Walks the tree for the group rooted at the given node.
+         */
+        private void build(int group) {
+            final int[] count = tree.count;
+            final int[] start = tree.start;
+            final int[] firstChild = tree.firstChild;
+            final byte[] level = tree.level;
+            final double[] cellSize = tree.cellSize;
+            final double[] centerX = tree.centerX;
+            final double[] centerY = tree.centerY;
+            double minX = Double.POSITIVE_INFINITY;
+            double minY = Double.POSITIVE_INFINITY;
+            double maxX = Double.NEGATIVE_INFINITY;
+            double maxY = Double.NEGATIVE_INFINITY;
+            for (int i = start[group]; i < start[group] + count[group]; i++) {
+                minX = Math.min(minX, store.x[i]);
+                minY = Math.min(minY, store.y[i]);
+                maxX = Math.max(maxX, store.x[i]);
+                maxY = Math.max(maxY, store.y[i]);
+            }
+
+            cellCount = 0;
+            bodyCount = 0;
+            int top = 0;
+            stack[top++] = LinearQuadtree.ROOT;
+            while (top > 0) {
+                int node = stack[--top];
+                if (count[node] == 0) {
+                    continue;
+                }
+                double dx = Math.max(0, Math.max(minX - centerX[node], centerX[node] - maxX));
+                double dy = Math.max(0, Math.max(minY - centerY[node], centerY[node] - maxY));
+                double side = cellSize[level[node]];
+                if (side * side < thetaSquared * (dx * dx + dy * dy)) {
+                    addCell(node);
+                    continue;
+                }
+                int child = firstChild[node];
+                if (child == LinearQuadtree.NO_CHILDREN) {
+                    addBodies(start[node], start[node] + count[node]);
+                    continue;
+                }
+                stack[top++] = child + 3;
+                stack[top++] = child + 2;
+                stack[top++] = child + 1;
+                stack[top++] = child;
+            }
+            if (precision != Precision.DOUBLE) {
+                originX = (minX + maxX) / 2;
+                originY = (minY + maxY) / 2;
+                toSinglePrecision();
+            }
+        }
+
+        /**
+         * Copies the monopole cells and the particles of the list into the single precision arrays.
+         */
+        private void toSinglePrecision() {
+            if (singleCellX.length < cellCount) {
+                singleCellX = new float[cellX.length];
+                singleCellY = new float[cellX.length];
+                singleCellMass = new float[cellX.length];
+            }
+            if (singleBodyX.length < bodyCount) {
+                singleBodyX = new float[bodyX.length];
+                singleBodyY = new float[bodyX.length];
+                singleBodyMass = new float[bodyX.length];
+            }
+            if (!tree.quadrupole) {
+                for (int cell = 0; cell < cellCount; cell++) {
+                    singleCellX[cell] = (float) (cellX[cell] - originX);
+                    singleCellY[cell] = (float) (cellY[cell] - originY);
+                    singleCellMass[cell] = (float) cellMass[cell];
+                }
+            }
+            for (int body = 0; body < bodyCount; body++) {
+                singleBodyX[body] = (float) (bodyX[body] - originX);
+                singleBodyY[body] = (float) (bodyY[body] - originY);
+                singleBodyMass[body] = (float) bodyMass[body];
+            }
+        }
+
+        /**
+         * Computes the accelerations of the particles from to to - 1 from the list.
+         * @return Number of interactions evaluated
+         */
+        private long evaluate(int from, int to) {
+            final double[] px = store.x;
+            final double[] py = store.y;
+            final boolean quadrupole = tree.quadrupole;
+            final boolean single = precision != Precision.DOUBLE;
+            final boolean doubleSums = precision == Precision.MIXED;
+            final double[] acceleration = this.acceleration;
+            for (int particle = from; particle < to; particle++) {
+                final double x = px[particle];
+                final double y = py[particle];
+                final float singleX = (float) (x - originX);
+                final float singleY = (float) (y - originY);
+                acceleration[0] = 0;
+                acceleration[1] = 0;
+                if (quadrupole) {
+                    accelerateQuadrupoles(x, y);
+                } else if (single) {
+                    kernel.accelerate(singleX, singleY, singleCellX, singleCellY, singleCellMass, 0, cellCount,
+                            doubleSums, acceleration);
+                } else {
+                    kernel.accelerate(x, y, cellX, cellY, cellMass, 0, cellCount, acceleration);
+                }
+                if (single) {
+                    kernel.accelerate(singleX, singleY, singleBodyX, singleBodyY, singleBodyMass, 0, bodyCount,
+                            doubleSums, acceleration);
+                } else {
+                    kernel.accelerate(x, y, bodyX, bodyY, bodyMass, 0, bodyCount, acceleration);
+                }
+                store.ax[particle] = G * acceleration[0];
+                store.ay[particle] = G * acceleration[1];
+            }
+            Arrays.fill(store.cost, from, to, cellCount + bodyCount);
+            return (long) (to - from) * (cellCount + bodyCount);
+        }
+
+        /**
+         * Adds the monopole and quadrupole accelerations of the listed cells on a particle at (x, y).
+         */
+        private void accelerateQuadrupoles(double x, double y) {
+            double ax = 0;
+            double ay = 0;
+            for (int cell = 0; cell < cellCount; cell++) {
+                double dx = x - cellX[cell];
+                double dy = y - cellY[cell];
+                double distanceSquared = dx * dx + dy * dy;
+                double inverseCube = 1 / (distanceSquared * Math.sqrt(distanceSquared));
+                double product = cellMass[cell] * inverseCube;
+                ax -= dx * product;
+                ay -= dy * product;
+                double xx = cellXX[cell];
+                double xy = cellXY[cell];
+                double yy = cellYY[cell];
+                double inverseFifth = inverseCube / distanceSquared;
+                double projected = dx * dx * xx + 2 * dx * dy * xy + dy * dy * yy;
+                double radial = (1.5 * (xx + yy) - 7.5 * projected / distanceSquared) * inverseFifth;
+                ax += 3 * (xx * dx + xy * dy) * inverseFifth + radial * dx;
+                ay += 3 * (xy * dx + yy * dy) * inverseFifth + radial * dy;
+            }
+            acceleration[0] += ax;
+            acceleration[1] += ay;
+        }
+
+        private void addCell(int node) {
+            if (cellCount == cellX.length) {
+                cellX = Arrays.copyOf(cellX, cellCount * 2);
+                cellY = Arrays.copyOf(cellY, cellCount * 2);
+                cellMass = Arrays.copyOf(cellMass, cellCount * 2);
+                cellXX = Arrays.copyOf(cellXX, cellCount * 2);
+                cellXY = Arrays.copyOf(cellXY, cellCount * 2);
+                cellYY = Arrays.copyOf(cellYY, cellCount * 2);
+            }
+            cellX[cellCount] = tree.centerOfMassXOf(node);
+            cellY[cellCount] = tree.centerOfMassYOf(node);
+            cellMass[cellCount] = tree.massOf(node);
+            if (tree.quadrupole) {
+                cellXX[cellCount] = tree.quadrupoleXXOf(node);
+                cellXY[cellCount] = tree.quadrupoleXYOf(node);
+                cellYY[cellCount] = tree.quadrupoleYYOf(node);
+            }
+            cellCount++;
+        }
+
+        /**
+         * Copies the particles from to to - 1 into the list, so that the kernel reads all particles contiguously.
+         */
+        private void addBodies(int from, int to) {
+            int length = to - from;
+            if (bodyCount + length > bodyX.length) {
+                int capacity = Math.max(bodyX.length * 2, bodyCount + length);
+                bodyX = Arrays.copyOf(bodyX, capacity);
+                bodyY = Arrays.copyOf(bodyY, capacity);
+                bodyMass = Arrays.copyOf(bodyMass, capacity);
+            }
+            System.arraycopy(store.x, from, bodyX, bodyCount, length);
+            System.arraycopy(store.y, from, bodyY, bodyCount, length);
+            System.arraycopy(store.mass, from, bodyMass, bodyCount, length);
+            bodyCount += length;
+        }
+    }
+}
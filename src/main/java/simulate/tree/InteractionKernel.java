@@ -0,0 +1,50 @@
+package simulate.tree;
+
+/**
+ * Inner loop of a force engine: sums the accelerations exerted on one particle by a contiguous run of point masses.
+ * Sources at zero distance from the particle, such as the particle itself, are skipped. The scalar kernel runs on
+ * every Java version; on Java 17 and later a kernel built on the incubating Vector API, which evaluates several
+ * sources per instruction, is packaged in the versioned part of the multi-release jar and is used when the
+ * jdk.incubator.vector module is added to the runtime.
+ */
+public interface InteractionKernel {
+
+    /**
+     * Adds the accelerations exerted by the sources from to to - 1 on a particle at (x, y), with G = 1.
+     * @param acceleration array whose first two entries receive the x- and y-acceleration
+     */
+    void accelerate(double x, double y, double[] sourceX, double[] sourceY, double[] sourceMass, int from, int to,
+                    double[] acceleration);
+
+    /**
+     * Adds the accelerations exerted by the sources from to to - 1 on a particle at (x, y), with G = 1, in single
+     * precision.
+     * @param doubleSums whether each interaction is summed in double precision rather than single precision
+     * @param acceleration array whose first two entries receive the x- and y-acceleration
+     */
+    void accelerate(float x, float y, float[] sourceX, float[] sourceY, float[] sourceMass, int from, int to,
+                    boolean doubleSums, double[] acceleration);
+
+    /**
+     * Returns the number of double precision sources evaluated per instruction.
+     * @return Vector length, 1 for the scalar kernel.
+     */
+    int getLanes();
+
+    /**
+     * Creates an interaction kernel.
+     * @param simd whether to use the vector kernel when it is available
+     * @return the vector kernel if requested and available, the scalar kernel otherwise
+     */
+    static InteractionKernel create(boolean simd) {
+        if (simd) {
+            try {
+                return (InteractionKernel) Class.forName("simulate.tree.VectorInteractionKernel")
+                        .getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // Java 8 classes or jdk.incubator.vector not added; fall back to the scalar kernel.
+            }
+        }
+        return new ScalarInteractionKernel();
+    }
+}
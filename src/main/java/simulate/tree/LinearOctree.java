@@ -0,0 +1,358 @@
+package simulate.tree;
+
+import simulate.objects.ParticleStore3D;
+import simulate.parallel.Ranges;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Linear (pointerless) Barnes Hut octree built from Morton-ordered particles, the three-dimensional counterpart of
+ * LinearQuadtree. The particles of the store are sorted by three-dimensional Morton key, so the particles of every
+ * node occupy a contiguous index range of the store, and the nodes are kept in flat arrays indexed by node number.
+ * Node 0 is the root. An internal node's eight children are stored next to each other starting at firstChild, in
+ * octant order. A node is a leaf when it holds at most leafCapacity particles or when it lies at the maximum depth.
+ * Every node stores the mass and center of mass of its particles. Accelerations are computed from the tree by an
+ * OctreeWalker.
+ * <p>
+ * Every build fits the root cell to the bounding cube of the particles, so no particle lies outside the tree. As
+ * with LinearQuadtree, the node arrays and build buffers are kept from one build to the next.
+ */
+public class LinearOctree {
+
+    protected static final int ROOT = 0;
+    protected static final int NO_CHILDREN = -1;
+    private static final int PARALLEL_THRESHOLD = 4096; // Smallest number of particles built by a separate task.
+    private static final int BLOCK = 1 << 14; // Number of particles keyed, or reduced when fitting the root, by one task.
+
+    final int leafCapacity;
+    final int maxDepth;
+    final double[] cellSize = new double[MortonKeys.BITS_3D + 1]; // Side length of a cell at each level.
+    double originX;
+    double originY;
+    double originZ;
+
+    protected int nodeCount;
+    protected int[] start; // Index in the store of a node's first particle.
+    protected int[] count; // Number of particles in a node.
+    protected int[] firstChild;
+    byte[] level;
+    double[] centerX;
+    double[] centerY;
+    double[] centerZ;
+    double[] mass;
+    double[] centerOfMassX;
+    double[] centerOfMassY;
+    double[] centerOfMassZ;
+
+    private long[] keys = new long[0];
+    private int[] order = new int[0];
+    private final MortonSorter sorter = new MortonSorter(3 * MortonKeys.BITS_3D);
+    private final NodeAllocator nodes = new NodeAllocator();
+    private int highWaterMark;
+
+    /**
+     * Initializes an empty tree.
+     * @param leafCapacity largest number of particles held by a leaf, unless it lies at the maximum depth
+     * @param maxDepth deepest level of the tree, at most MortonKeys.BITS_3D
+     */
+    public LinearOctree(int leafCapacity, int maxDepth) {
+        this.leafCapacity = leafCapacity;
+        this.maxDepth = Math.min(maxDepth, MortonKeys.BITS_3D);
+        allocateNodes(16);
+    }
+
+    /**
+     * Builds the tree from all particles of the store. Fits the root cell to the particles with a parallel min/max
+     * reduction, computes the Morton key of every particle, radix-sorts the keys and reorders the store by key, all
+     * in parallel. The nodes are then emitted over the sorted particles by fork-join tasks, each of which builds an
+     * independent subtree, and the node moments are computed in a parallel bottom-up pass.
+     * @param store Store holding the particle state. Its particles are reordered.
+     */
+    public void build(ParticleStore3D store) {
+        int n = store.size();
+        if (keys.length < n) {
+            keys = new long[store.x.length];
+            order = new int[store.x.length];
+        }
+        fitRoot(store, n);
+        double scale = (1L << MortonKeys.BITS_3D) / cellSize[0];
+        Ranges.forEach(0, n, BLOCK, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                keys[i] = MortonKeys.key(store.x[i], store.y[i], store.z[i], originX, originY, originZ, scale);
+                order[i] = i;
+            }
+        });
+        sorter.sort(keys, order, n);
+        store.reorder(order);
+
+        if (start.length < initialCapacity(n)) {
+            allocateNodes(initialCapacity(n));
+        }
+        nodeCount = nodes.build(ROOT + 1,
+                () -> Ranges.invoke(new BuildTask(ROOT, 0, n, 0, originX, originY, originZ)),
+                () -> start.length, this::allocateNodes);
+        highWaterMark = Math.max(highWaterMark, nodeCount);
+        Ranges.invoke(new MomentTask(store, ROOT));
+    }
+
+    /**
+     * Sets the root cell to the bounding cube of the particles, enlarged slightly so that the particles on its upper
+     * faces are not clamped.
+     */
+    private void fitRoot(ParticleStore3D store, int n) {
+        double[] box = Ranges.reduce(0, n, BLOCK, new double[6], (from, to) -> blockBounds(store, from, to),
+                LinearOctree::merge);
+        double extent = Math.max(box[3] - box[0], Math.max(box[4] - box[1], box[5] - box[2]));
+        double size = extent > 0 ? extent * (1 + 1e-9) : 1;
+        originX = (box[0] + box[3] - size) / 2;
+        originY = (box[1] + box[4] - size) / 2;
+        originZ = (box[2] + box[5] - size) / 2;
+        for (int cellLevel = 0; cellLevel < cellSize.length; cellLevel++) {
+            cellSize[cellLevel] = size / (1L << cellLevel);
+        }
+    }
+
+    /**
+     * @return minimum x, y and z followed by maximum x, y and z of the particles from to to - 1
+     */
+    private static double[] blockBounds(ParticleStore3D store, int from, int to) {
+        double[] box = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+                Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        for (int i = from; i < to; i++) {
+            box[0] = Math.min(box[0], store.x[i]);
+            box[1] = Math.min(box[1], store.y[i]);
+            box[2] = Math.min(box[2], store.z[i]);
+            box[3] = Math.max(box[3], store.x[i]);
+            box[4] = Math.max(box[4], store.y[i]);
+            box[5] = Math.max(box[5], store.z[i]);
+        }
+        return box;
+    }
+
+    private static double[] merge(double[] a, double[] b) {
+        return new double[]{Math.min(a[0], b[0]), Math.min(a[1], b[1]), Math.min(a[2], b[2]),
+                Math.max(a[3], b[3]), Math.max(a[4], b[4]), Math.max(a[5], b[5])};
+    }
+
+    /**
+     * Fills in the node covering the sorted particles lo to hi - 1 and builds its subtree. Subtrees holding enough
+     * particles are built by separate tasks.
+     */
+    private void buildNode(int node, int lo, int hi, int nodeLevel, double x0, double y0, double z0) {
+        double half = cellSize[nodeLevel] / 2;
+        start[node] = lo;
+        count[node] = hi - lo;
+        level[node] = (byte) nodeLevel;
+        centerX[node] = x0 + half;
+        centerY[node] = y0 + half;
+        centerZ[node] = z0 + half;
+        if (hi - lo <= leafCapacity || nodeLevel == maxDepth) {
+            firstChild[node] = NO_CHILDREN;
+            return;
+        }
+        int first = nodes.allocate(8, start.length);
+        if (first < 0) {
+            firstChild[node] = NO_CHILDREN; // The node arrays are full, the build is repeated with larger ones.
+            return;
+        }
+        firstChild[node] = first;
+        if (hi - lo > PARALLEL_THRESHOLD) {
+            BuildTask[] tasks = new BuildTask[8];
+            int from = lo;
+            for (int octant = 0; octant < 8; octant++) {
+                int to = octant == 7 ? hi : octantEnd(from, hi, nodeLevel + 1, octant);
+                tasks[octant] = new BuildTask(first + octant, from, to, nodeLevel + 1, x0 + (octant & 1) * half,
+                        y0 + ((octant >> 1) & 1) * half, z0 + (octant >> 2) * half);
+                from = to;
+            }
+            ForkJoinTask.invokeAll(tasks);
+        } else {
+            int from = lo;
+            for (int octant = 0; octant < 8; octant++) {
+                int to = octant == 7 ? hi : octantEnd(from, hi, nodeLevel + 1, octant);
+                buildNode(first + octant, from, to, nodeLevel + 1, x0 + (octant & 1) * half,
+                        y0 + ((octant >> 1) & 1) * half, z0 + (octant >> 2) * half);
+                from = to;
+            }
+        }
+    }
+
+    /**
+     * Binary searches the sorted keys lo to hi - 1, which share a parent cell, for the first key that falls
+     * into an octant after the given one.
+     */
+    private int octantEnd(int lo, int hi, int childLevel, int octant) {
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (MortonKeys.octant(keys[mid], childLevel) <= octant) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Computes the mass and center of mass of every node in the subtree, children before parents.
+     */
+    private void computeMoments(ParticleStore3D store, int node) {
+        if (firstChild[node] == NO_CHILDREN) {
+            computeLeafMoments(store, node);
+            return;
+        }
+        for (int child = firstChild[node]; child < firstChild[node] + 8; child++) {
+            computeMoments(store, child);
+        }
+        computeInternalMoments(node);
+    }
+
+    private void computeLeafMoments(ParticleStore3D store, int node) {
+        double totalMass = 0;
+        double weightedX = 0;
+        double weightedY = 0;
+        double weightedZ = 0;
+        for (int i = start[node]; i < start[node] + count[node]; i++) {
+            double m = store.mass[i];
+            totalMass += m;
+            weightedX += store.x[i] * m;
+            weightedY += store.y[i] * m;
+            weightedZ += store.z[i] * m;
+        }
+        setMoments(node, totalMass, weightedX, weightedY, weightedZ);
+    }
+
+    private void computeInternalMoments(int node) {
+        double totalMass = 0;
+        double weightedX = 0;
+        double weightedY = 0;
+        double weightedZ = 0;
+        for (int child = firstChild[node]; child < firstChild[node] + 8; child++) {
+            double m = mass[child];
+            totalMass += m;
+            weightedX += centerOfMassX[child] * m;
+            weightedY += centerOfMassY[child] * m;
+            weightedZ += centerOfMassZ[child] * m;
+        }
+        setMoments(node, totalMass, weightedX, weightedY, weightedZ);
+    }
+
+    private void setMoments(int node, double totalMass, double weightedX, double weightedY, double weightedZ) {
+        mass[node] = totalMass;
+        centerOfMassX[node] = totalMass > 0 ? weightedX / totalMass : centerX[node];
+        centerOfMassY[node] = totalMass > 0 ? weightedY / totalMass : centerY[node];
+        centerOfMassZ[node] = totalMass > 0 ? weightedZ / totalMass : centerZ[node];
+    }
+
+    /**
+     * Returns the number of nodes in the tree.
+     * @return Node count
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Returns the largest number of nodes used by any build so far.
+     * @return High-water mark of the node count
+     */
+    public int getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    /**
+     * Returns the side length of the root cell of the last build.
+     * @return Root cell size
+     */
+    public double getSize() {
+        return cellSize[0];
+    }
+
+    /**
+     * Returns the number of nodes the node arrays are enlarged to before building a tree of the given number of
+     * particles. Clustered particles may need more, in which case the build is repeated with larger node arrays.
+     */
+    protected int initialCapacity(int particles) {
+        return 2 * particles + 1;
+    }
+
+    private void allocateNodes(int capacity) {
+        start = copyOf(start, capacity);
+        count = copyOf(count, capacity);
+        firstChild = copyOf(firstChild, capacity);
+        level = level == null ? new byte[capacity] : Arrays.copyOf(level, capacity);
+        centerX = copyOf(centerX, capacity);
+        centerY = copyOf(centerY, capacity);
+        centerZ = copyOf(centerZ, capacity);
+        mass = copyOf(mass, capacity);
+        centerOfMassX = copyOf(centerOfMassX, capacity);
+        centerOfMassY = copyOf(centerOfMassY, capacity);
+        centerOfMassZ = copyOf(centerOfMassZ, capacity);
+    }
+
+    /**
+     * Builds the subtree of one node.
+     */
+    private class BuildTask extends RecursiveAction {
+        private final int node;
+        private final int lo;
+        private final int hi;
+        private final int nodeLevel;
+        private final double x0;
+        private final double y0;
+        private final double z0;
+
+        BuildTask(int node, int lo, int hi, int nodeLevel, double x0, double y0, double z0) {
+            this.node = node;
+            this.lo = lo;
+            this.hi = hi;
+            this.nodeLevel = nodeLevel;
+            this.x0 = x0;
+            this.y0 = y0;
+            this.z0 = z0;
+        }
+
+        @Override
+        protected void compute() {
+            buildNode(node, lo, hi, nodeLevel, x0, y0, z0);
+        }
+    }
+
+    /**
+     * Computes the moments of one node's subtree. Children holding enough particles are handled by separate tasks
+     * before the node combines their moments.
+     */
+    private class MomentTask extends RecursiveAction {
+        private final ParticleStore3D store;
+        private final int node;
+
+        MomentTask(ParticleStore3D store, int node) {
+            this.store = store;
+            this.node = node;
+        }
+
+        @Override
+        protected void compute() {
+            if (count[node] <= PARALLEL_THRESHOLD || firstChild[node] == NO_CHILDREN) {
+                computeMoments(store, node);
+                return;
+            }
+            MomentTask[] tasks = new MomentTask[8];
+            for (int octant = 0; octant < 8; octant++) {
+                tasks[octant] = new MomentTask(store, firstChild[node] + octant);
+            }
+            ForkJoinTask.invokeAll(tasks);
+            computeInternalMoments(node);
+        }
+    }
+
+    private static int[] copyOf(int[] array, int capacity) {
+        return array == null ? new int[capacity] : Arrays.copyOf(array, capacity);
+    }
+
+    private static double[] copyOf(double[] array, int capacity) {
+        return array == null ? new double[capacity] : Arrays.copyOf(array, capacity);
+    }
+}
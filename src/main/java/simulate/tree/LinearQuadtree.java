@@ -0,0 +1,795 @@
+package simulate.tree;
+
+import simulate.objects.ParticleStore;
+import simulate.objects.Quadrant;
+import simulate.parallel.Ranges;
+import utils.Vector2D;
+
+import java.util.Arrays;
+import java.util.Stack;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Linear (pointerless) Barnes Hut quadtree built from Morton-ordered particles. The particles of the store are sorted
+ * by Morton key, so the particles of every node occupy a contiguous index range of the store, and the nodes are
+ * kept in flat arrays indexed by node number. Node 0 is the root. An internal node's four children are stored next
+ * to each other starting at firstChild, in quadrant order; children covering empty space hold no particles. A node
+ * is a leaf when it holds at most leafCapacity particles, whose interactions are summed directly, or when it lies
+ * at the maximum depth, in which case it holds any number of particles; so coincident particles cannot make the tree
+ * deeper than maxDepth. Accelerations are computed from the tree by a TreeWalker.
+ * <p>
+ * Every node stores the mass and center of mass of its particles. Optionally the tree also stores each node's
+ * second mass moments about its center of mass, which lets the walkers add the quadrupole term of the node's
+ * multipole expansion.
+ * <p>
+ * The moments are computed in double precision and can be stored in single precision, for the "Float" and "Mixed"
+ * precisions of the GroupWalkEngine, which reads them in single precision anyway. The center of mass is then stored
+ * as its offset from the center of the node's cell, which is at most half the cell's side, so its rounding scales
+ * with the size of the cell rather than with the distance from the origin. Single precision moments save 12 of
+ * the 53 bytes of a node, and 24 of the 77 bytes of a quadrupole node. The other walkers need double precision
+ * moments.
+ * <p>
+ * The tree is also the arena holding its nodes: the node arrays and all buffers used while building are kept from
+ * one build to the next and are only enlarged when a build needs more room, so rebuilding the tree every step
+ * allocates no node storage once the arrays have reached their working size.
+ * <p>
+ * When the particles move little between steps the tree can be refitted instead of rebuilt, see refit().
+ */
+public class LinearQuadtree {
+
+    /**
+     * Bytes of node array storage used by each node of a tree without quadrupole moments and with double precision
+     * moments, the default. getBytesPerNode() gives the figure for any tree.
+     */
+    public static final int BYTES_PER_NODE = 3 * Integer.BYTES + Byte.BYTES + 5 * Double.BYTES;
+
+    protected static final int ROOT = 0;
+    protected static final int NO_CHILDREN = -1;
+    private static final int PARALLEL_THRESHOLD = 4096; // Smallest number of particles built by a separate task.
+    private static final int BLOCK = 1 << 12; // Number of particles keyed by one task.
+
+    double originX;
+    double originY;
+    double size;
+    final boolean quadrupole;
+    final int leafCapacity; // Largest number of particles a build puts into a leaf above the maximum depth.
+    final int maxDepth;
+    final double[] cellSize = new double[MortonKeys.BITS + 1]; // Side length of a cell at each level.
+
+    protected int nodeCount;
+    protected int[] start; // Index in the store of a node's first particle.
+    protected int[] count; // Number of particles in a node.
+    protected int[] firstChild;
+    byte[] level;
+    double[] centerX;
+    double[] centerY;
+    final boolean singleMoments; // Whether the moments are stored in the single precision arrays.
+    double[] mass; // Null when the moments are stored in single precision, as are the other double moments.
+    double[] centerOfMassX;
+    double[] centerOfMassY;
+    double[] quadrupoleXX; // Second mass moments about the center of mass, only allocated for quadrupole trees.
+    double[] quadrupoleXY;
+    double[] quadrupoleYY;
+    float[] singleMass;
+    float[] singleOffsetX; // Center of mass minus the center of the cell.
+    float[] singleOffsetY;
+    float[] singleQuadrupoleXX;
+    float[] singleQuadrupoleXY;
+    float[] singleQuadrupoleYY;
+
+    private long[] keys = new long[0];
+    private int[] order = new int[0];
+    private final MortonSorter sorter = new MortonSorter();
+    private int particleCount; // Number of particles the tree was last built or refitted for.
+    private long[] refitKeys = new long[0];
+    private int[] particleLeaf = new int[0]; // Leaf holding each particle, while leavesCurrent is set.
+    private int[] targetLeaf = new int[0]; // Leaf each particle belongs to after a refit.
+    private boolean leavesCurrent;
+    private int leafCount;
+    private int[] leafNodes = new int[0];
+    private int[] leafOffsets = new int[0];
+    private int[] leafRank = new int[0]; // Position of each leaf node in leafNodes.
+    private final int[] stack = new int[4 * (MortonKeys.BITS + 1)];
+    private final NodeAllocator nodes = new NodeAllocator();
+    private int highWaterMark;
+
+    /**
+     * Initializes an empty tree covering the given square region.
+     * @param originX x-coordinate of the region's upper left corner
+     * @param originY y-coordinate of the region's upper left corner
+     * @param size side length of the region
+     */
+    public LinearQuadtree(double originX, double originY, double size) {
+        this(originX, originY, size, false);
+    }
+
+    /**
+     * Initializes an empty tree covering the given square region.
+     * @param originX x-coordinate of the region's upper left corner
+     * @param originY y-coordinate of the region's upper left corner
+     * @param size side length of the region
+     * @param quadrupole whether to compute the nodes' quadrupole moments
+     */
+    public LinearQuadtree(double originX, double originY, double size, boolean quadrupole) {
+        this(originX, originY, size, quadrupole, 1, MortonKeys.BITS);
+    }
+
+    /**
+     * Initializes an empty tree covering the given square region.
+     * @param originX x-coordinate of the region's upper left corner
+     * @param originY y-coordinate of the region's upper left corner
+     * @param size side length of the region
+     * @param quadrupole whether to compute the nodes' quadrupole moments
+     * @param leafCapacity largest number of particles held by a leaf, unless it lies at the maximum depth
+     * @param maxDepth deepest level of the tree, at most MortonKeys.BITS
+     */
+    public LinearQuadtree(double originX, double originY, double size, boolean quadrupole, int leafCapacity,
+                          int maxDepth) {
+        this(originX, originY, size, quadrupole, leafCapacity, maxDepth, false);
+    }
+
+    /**
+     * Initializes an empty tree covering the given square region.
+     * @param originX x-coordinate of the region's upper left corner
+     * @param originY y-coordinate of the region's upper left corner
+     * @param size side length of the region
+     * @param quadrupole whether to compute the nodes' quadrupole moments
+     * @param leafCapacity largest number of particles held by a leaf, unless it lies at the maximum depth
+     * @param maxDepth deepest level of the tree, at most MortonKeys.BITS
+     * @param singleMoments whether to store the moments in single precision, for a GroupWalkEngine of "Float" or
+     *                      "Mixed" precision
+     */
+    public LinearQuadtree(double originX, double originY, double size, boolean quadrupole, int leafCapacity,
+                          int maxDepth, boolean singleMoments) {
+        this.singleMoments = singleMoments;
+        this.originX = originX;
+        this.originY = originY;
+        this.size = size;
+        this.quadrupole = quadrupole;
+        this.leafCapacity = leafCapacity;
+        this.maxDepth = Math.min(maxDepth, MortonKeys.BITS);
+        setBounds(originX, originY, size);
+        allocateNodes(16);
+    }
+
+    /**
+     * Moves the square region covered by the tree. The next refit rebuilds the tree.
+     * @param originX x-coordinate of the region's upper left corner
+     * @param originY y-coordinate of the region's upper left corner
+     * @param size side length of the region
+     */
+    public void setBounds(double originX, double originY, double size) {
+        this.originX = originX;
+        this.originY = originY;
+        this.size = size;
+        for (int level = 0; level < cellSize.length; level++) {
+            cellSize[level] = size / (1L << level);
+        }
+        invalidate();
+    }
+
+    /**
+     * Makes the next refit rebuild the tree, for example because the store has been reordered.
+     */
+    void invalidate() {
+        particleCount = -1;
+    }
+
+    public double getOriginX() {
+        return originX;
+    }
+
+    public double getOriginY() {
+        return originY;
+    }
+
+    public double getSize() {
+        return size;
+    }
+
+    /**
+     * Builds the tree from all particles of the store. Computes the Morton key of every particle, radix-sorts the
+     * keys and reorders the store by key, all in parallel. The nodes are then emitted over the sorted particles by
+     * fork-join tasks, each of which builds an independent subtree, and the node moments are computed in a
+     * parallel bottom-up pass. Particles outside of the tree's region are clamped onto its border cells.
+     * @param store Store holding the particle state. Its particles are reordered.
+     */
+    public void build(ParticleStore store) {
+        build(store, store.size());
+    }
+
+    /**
+     * Builds the tree from the first n particles of the store, leaving the others where they are.
+     * @param store Store holding the particle state. Its first n particles are reordered.
+     * @param n Number of particles in the tree
+     */
+    public void build(ParticleStore store, int n) {
+        if (keys.length < store.size()) {
+            keys = new long[store.x.length];
+            order = new int[store.x.length];
+        }
+        for (int i = n; i < store.size(); i++) {
+            order[i] = i;
+        }
+        double scale = (1L << MortonKeys.BITS) / size;
+        Ranges.forEach(0, n, BLOCK, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                keys[i] = MortonKeys.key(store.x[i], store.y[i], originX, originY, scale);
+                order[i] = i;
+            }
+        });
+        sorter.sort(keys, order, n);
+        store.reorder(order);
+
+        if (start.length < initialCapacity(n)) {
+            allocateNodes(initialCapacity(n));
+        }
+        nodeCount = nodes.build(ROOT + 1, () -> Ranges.invoke(new BuildTask(ROOT, 0, n, 0, originX, originY)),
+                this::getCapacity, this::allocateNodes);
+        highWaterMark = Math.max(highWaterMark, nodeCount);
+        particleCount = n;
+        leavesCurrent = false;
+        Ranges.invoke(new MomentTask(store, ROOT));
+    }
+
+    /**
+     * Updates the tree for particles that have moved since the last build, keeping its nodes. Particles still inside
+     * their leaf's cell stay in that leaf and the others are moved to the leaf whose cell now contains them. The store
+     * is then reordered by leaf with a stable counting sort, the particle ranges of the nodes are recomputed and the
+     * moments are recomputed bottom-up. Leaves may thereby hold more particles than a build would put into them; a
+     * leaf holding more than maxLeafCount particles is split the way a build would split it. The tree is rebuilt
+     * instead when the number of particles in the store has changed or when the particles in excess of the leaf
+     * capacity would make up more than maxImbalance of all particles.
+     * @param store Store holding the particle state. Its particles are reordered.
+     * @param maxImbalance largest fraction of the particles allowed in excess of the leaf capacity
+     * @param maxLeafCount largest number of particles a leaf may hold before it is split
+     * @return true if the tree was refitted, false if it was rebuilt
+     */
+    public boolean refit(ParticleStore store, double maxImbalance, int maxLeafCount) {
+        return refit(store, store.size(), maxImbalance, maxLeafCount);
+    }
+
+    /**
+     * Refits the tree to the first n particles of the store, leaving the others where they are. See
+     * refit(ParticleStore, double, int).
+     * @return true if the tree was refitted, false if it was rebuilt
+     */
+    public boolean refit(ParticleStore store, int n, double maxImbalance, int maxLeafCount) {
+        if (n != particleCount || n == 0) {
+            build(store, n);
+            return false;
+        }
+        if (refitKeys.length < keys.length) {
+            refitKeys = new long[keys.length];
+            particleLeaf = new int[keys.length];
+            targetLeaf = new int[keys.length];
+        }
+        double scale = (1L << MortonKeys.BITS) / size;
+        Ranges.forEach(0, n, BLOCK, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                refitKeys[i] = MortonKeys.key(store.x[i], store.y[i], originX, originY, scale);
+            }
+        });
+        if (!leavesCurrent) {
+            collectLeaves();
+        }
+        int movers = Ranges.reduce(0, n, BLOCK, 0, (from, to) -> {
+            int count = 0;
+            for (int i = from; i < to; i++) {
+                count += assignLeaf(i);
+            }
+            return count;
+        }, Integer::sum);
+        if (movers == 0) {
+            long[] swap = keys;
+            keys = refitKeys;
+            refitKeys = swap;
+            Ranges.invoke(new MomentTask(store, ROOT));
+            return true;
+        }
+
+        Arrays.fill(leafOffsets, 0, leafCount, 0);
+        for (int i = 0; i < n; i++) {
+            leafOffsets[targetLeaf[i]]++;
+        }
+        long overfull = 0;
+        boolean split = false;
+        for (int leaf = 0; leaf < leafCount; leaf++) {
+            if (leafOffsets[leaf] > leafCapacity && level[leafNodes[leaf]] < maxDepth) {
+                if (leafOffsets[leaf] > maxLeafCount) {
+                    split = true;
+                } else {
+                    overfull += leafOffsets[leaf] - leafCapacity;
+                }
+            }
+        }
+        if (overfull > maxImbalance * n) {
+            build(store, n);
+            return false;
+        }
+
+        for (int leaf = 0, offset = 0; leaf < leafCount; leaf++) {
+            int leafParticles = leafOffsets[leaf];
+            leafOffsets[leaf] = offset;
+            offset += leafParticles;
+        }
+        for (int i = 0; i < n; i++) {
+            order[leafOffsets[targetLeaf[i]]++] = i;
+        }
+        for (int i = n; i < store.size(); i++) {
+            order[i] = i;
+        }
+        if (split) {
+            sortLeavesToSplit(maxLeafCount);
+        }
+        store.reorder(order);
+        Ranges.forEach(0, n, BLOCK, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                keys[i] = refitKeys[order[i]];
+                particleLeaf[i] = targetLeaf[order[i]];
+            }
+        });
+        assignRanges(ROOT, 0);
+        if (split && !splitLeaves(maxLeafCount)) {
+            build(store, n);
+            return false;
+        }
+        Ranges.invoke(new MomentTask(store, ROOT));
+        return true;
+    }
+
+    /**
+     * Lists the leaves, including empty ones, in Morton order and records the leaf holding each particle. The list
+     * stays valid across refits until the tree is rebuilt or a leaf is split.
+     */
+    private void collectLeaves() {
+        if (leafRank.length < start.length) {
+            leafRank = new int[start.length];
+        }
+        leafCount = 0;
+        int top = 0;
+        stack[top++] = ROOT;
+        while (top > 0) {
+            int node = stack[--top];
+            int child = firstChild[node];
+            if (child != NO_CHILDREN) {
+                stack[top++] = child + 3;
+                stack[top++] = child + 2;
+                stack[top++] = child + 1;
+                stack[top++] = child;
+                continue;
+            }
+            if (leafCount == leafNodes.length) {
+                leafNodes = Arrays.copyOf(leafNodes, Math.max(16, leafCount * 2));
+                leafOffsets = Arrays.copyOf(leafOffsets, leafNodes.length);
+            }
+            leafRank[node] = leafCount;
+            Arrays.fill(particleLeaf, start[node], start[node] + count[node], leafCount);
+            leafNodes[leafCount++] = node;
+        }
+        leavesCurrent = true;
+    }
+
+    /**
+     * Finds the leaf a particle belongs to after moving. It stays in its leaf when its new key still has the leaf's
+     * key prefix; otherwise the leaf is looked up by descending the tree along the new key.
+     * @return 1 if the particle left its leaf, 0 otherwise
+     */
+    private int assignLeaf(int particle) {
+        int leaf = particleLeaf[particle];
+        int shift = 2 * (MortonKeys.BITS - level[leafNodes[leaf]]);
+        if (refitKeys[particle] >>> shift == keys[particle] >>> shift) {
+            targetLeaf[particle] = leaf;
+            return 0;
+        }
+        int target = ROOT;
+        while (firstChild[target] != NO_CHILDREN) {
+            target = firstChild[target] + MortonKeys.quadrant(refitKeys[particle], level[target] + 1);
+        }
+        targetLeaf[particle] = leafRank[target];
+        return 1;
+    }
+
+    /**
+     * Sorts the particles of the leaves holding more than maxLeafCount particles by key, so that they can be split.
+     * Such leaves only receive a few particles per step, so insertion sort is used.
+     */
+    private void sortLeavesToSplit(int maxLeafCount) {
+        for (int leaf = 0; leaf < leafCount; leaf++) {
+            int from = leaf == 0 ? 0 : leafOffsets[leaf - 1];
+            int to = leafOffsets[leaf];
+            if (to - from <= maxLeafCount || level[leafNodes[leaf]] == maxDepth) {
+                continue;
+            }
+            for (int i = from + 1; i < to; i++) {
+                int particle = order[i];
+                int j = i;
+                while (j > from && refitKeys[order[j - 1]] > refitKeys[particle]) {
+                    order[j] = order[j - 1];
+                    j--;
+                }
+                order[j] = particle;
+            }
+        }
+    }
+
+    /**
+     * Splits the leaves holding more than maxLeafCount particles by building their subtrees, whose nodes are added
+     * after the tree's other nodes.
+     * @return false if the node arrays are full, in which case the tree needs to be rebuilt
+     */
+    private boolean splitLeaves(int maxLeafCount) {
+        nodes.reset(nodeCount);
+        for (int leaf = 0; leaf < leafCount; leaf++) {
+            int node = leafNodes[leaf];
+            if (count[node] > maxLeafCount && level[node] < maxDepth) {
+                double half = cellSize[level[node]] / 2;
+                buildNode(node, start[node], start[node] + count[node], level[node],
+                        centerX[node] - half, centerY[node] - half);
+            }
+        }
+        if (nodes.overflowed()) {
+            return false;
+        }
+        nodeCount = nodes.size();
+        highWaterMark = Math.max(highWaterMark, nodeCount);
+        leavesCurrent = false;
+        return true;
+    }
+
+    /**
+     * Sets the particle ranges of a subtree after a refit, from the particle counts of the leaves.
+     * @return Index following the subtree's last particle
+     */
+    private int assignRanges(int node, int from) {
+        start[node] = from;
+        int child = firstChild[node];
+        if (child == NO_CHILDREN) {
+            // leafOffsets holds the end of each leaf's range after the counting sort.
+            count[node] = leafOffsets[leafRank[node]] - from;
+            return from + count[node];
+        }
+        int to = from;
+        for (int quadrant = 0; quadrant < 4; quadrant++) {
+            to = assignRanges(child + quadrant, to);
+        }
+        count[node] = to - from;
+        return to;
+    }
+
+    /**
+     * Fills in the node covering the sorted particles lo to hi - 1 and builds its subtree. Subtrees holding enough
+     * particles are built by separate tasks.
+     */
+    private void buildNode(int node, int lo, int hi, int nodeLevel, double x0, double y0) {
+        double half = cellSize[nodeLevel] / 2;
+        start[node] = lo;
+        count[node] = hi - lo;
+        level[node] = (byte) nodeLevel;
+        centerX[node] = x0 + half;
+        centerY[node] = y0 + half;
+        if (hi - lo <= leafCapacity || nodeLevel == maxDepth) {
+            firstChild[node] = NO_CHILDREN;
+            return;
+        }
+        int first = nodes.allocate(4, start.length);
+        if (first < 0) {
+            firstChild[node] = NO_CHILDREN; // The node arrays are full, the build is repeated with larger ones.
+            return;
+        }
+        firstChild[node] = first;
+        if (hi - lo > PARALLEL_THRESHOLD) {
+            BuildTask[] tasks = new BuildTask[4];
+            int from = lo;
+            for (int quadrant = 0; quadrant < 4; quadrant++) {
+                int to = quadrant == 3 ? hi : quadrantEnd(from, hi, nodeLevel + 1, quadrant);
+                tasks[quadrant] = new BuildTask(first + quadrant, from, to, nodeLevel + 1,
+                        x0 + (quadrant & 1) * half, y0 + (quadrant >> 1) * half);
+                from = to;
+            }
+            ForkJoinTask.invokeAll(tasks);
+        } else {
+            int from = lo;
+            for (int quadrant = 0; quadrant < 4; quadrant++) {
+                int to = quadrant == 3 ? hi : quadrantEnd(from, hi, nodeLevel + 1, quadrant);
+                buildNode(first + quadrant, from, to, nodeLevel + 1,
+                        x0 + (quadrant & 1) * half, y0 + (quadrant >> 1) * half);
+                from = to;
+            }
+        }
+    }
+
+    /**
+     * Binary searches the sorted keys lo to hi - 1, which share a parent cell, for the first key that falls
+     * into a quadrant after the given one.
+     */
+    private int quadrantEnd(int lo, int hi, int childLevel, int quadrant) {
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (MortonKeys.quadrant(keys[mid], childLevel) <= quadrant) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Computes the mass, center of mass and, for quadrupole trees, second moments of every node in the subtree,
+     * children before parents.
+     */
+    private void computeMoments(ParticleStore store, int node) {
+        if (firstChild[node] == NO_CHILDREN) {
+            computeLeafMoments(store, node);
+            return;
+        }
+        for (int child = firstChild[node]; child < firstChild[node] + 4; child++) {
+            computeMoments(store, child);
+        }
+        computeInternalMoments(node);
+    }
+
+    private void computeLeafMoments(ParticleStore store, int node) {
+        double totalMass = 0;
+        double weightedX = 0;
+        double weightedY = 0;
+        for (int i = start[node]; i < start[node] + count[node]; i++) {
+            double m = store.mass[i];
+            totalMass += m;
+            weightedX += store.x[i] * m;
+            weightedY += store.y[i] * m;
+        }
+        setMoments(node, totalMass, weightedX, weightedY);
+        if (quadrupole) {
+            double xx = 0;
+            double xy = 0;
+            double yy = 0;
+            double nodeX = centerOfMassXOf(node);
+            double nodeY = centerOfMassYOf(node);
+            for (int i = start[node]; i < start[node] + count[node]; i++) {
+                double dx = store.x[i] - nodeX;
+                double dy = store.y[i] - nodeY;
+                double m = store.mass[i];
+                xx += m * dx * dx;
+                xy += m * dx * dy;
+                yy += m * dy * dy;
+            }
+            setQuadrupole(node, xx, xy, yy);
+        }
+    }
+
+    private void computeInternalMoments(int node) {
+        double totalMass = 0;
+        double weightedX = 0;
+        double weightedY = 0;
+        for (int child = firstChild[node]; child < firstChild[node] + 4; child++) {
+            double m = massOf(child);
+            totalMass += m;
+            weightedX += centerOfMassXOf(child) * m;
+            weightedY += centerOfMassYOf(child) * m;
+        }
+        setMoments(node, totalMass, weightedX, weightedY);
+        if (quadrupole) {
+            // Parallel axis theorem: shift each child's moments from its center of mass to this node's.
+            double xx = 0;
+            double xy = 0;
+            double yy = 0;
+            double nodeX = centerOfMassXOf(node);
+            double nodeY = centerOfMassYOf(node);
+            for (int child = firstChild[node]; child < firstChild[node] + 4; child++) {
+                double dx = centerOfMassXOf(child) - nodeX;
+                double dy = centerOfMassYOf(child) - nodeY;
+                double m = massOf(child);
+                xx += quadrupoleXXOf(child) + m * dx * dx;
+                xy += quadrupoleXYOf(child) + m * dx * dy;
+                yy += quadrupoleYYOf(child) + m * dy * dy;
+            }
+            setQuadrupole(node, xx, xy, yy);
+        }
+    }
+
+    private void setQuadrupole(int node, double xx, double xy, double yy) {
+        if (singleMoments) {
+            singleQuadrupoleXX[node] = (float) xx;
+            singleQuadrupoleXY[node] = (float) xy;
+            singleQuadrupoleYY[node] = (float) yy;
+        } else {
+            quadrupoleXX[node] = xx;
+            quadrupoleXY[node] = xy;
+            quadrupoleYY[node] = yy;
+        }
+    }
+
+    private void setMoments(int node, double totalMass, double weightedX, double weightedY) {
+        double x = totalMass > 0 ? weightedX / totalMass : centerX[node];
+        double y = totalMass > 0 ? weightedY / totalMass : centerY[node];
+        if (singleMoments) {
+            singleMass[node] = (float) totalMass;
+            singleOffsetX[node] = (float) (x - centerX[node]);
+            singleOffsetY[node] = (float) (y - centerY[node]);
+        } else {
+            mass[node] = totalMass;
+            centerOfMassX[node] = x;
+            centerOfMassY[node] = y;
+        }
+    }
+
+    /**
+     * Returns the mass of a node, in the precision it is stored in.
+     */
+    double massOf(int node) {
+        return singleMoments ? singleMass[node] : mass[node];
+    }
+
+    double centerOfMassXOf(int node) {
+        return singleMoments ? centerX[node] + singleOffsetX[node] : centerOfMassX[node];
+    }
+
+    double centerOfMassYOf(int node) {
+        return singleMoments ? centerY[node] + singleOffsetY[node] : centerOfMassY[node];
+    }
+
+    double quadrupoleXXOf(int node) {
+        return singleMoments ? singleQuadrupoleXX[node] : quadrupoleXX[node];
+    }
+
+    double quadrupoleXYOf(int node) {
+        return singleMoments ? singleQuadrupoleXY[node] : quadrupoleXY[node];
+    }
+
+    double quadrupoleYYOf(int node) {
+        return singleMoments ? singleQuadrupoleYY[node] : quadrupoleYY[node];
+    }
+
+    /**
+     * Pushes the quadrant of every node containing particles onto the stack.
+     * @param quadrants Stack of quadrants
+     */
+    public void addQuadrantsToStack(Stack<Quadrant> quadrants) {
+        for (int node = 0; node < nodeCount; node++) {
+            if (count[node] > 0) {
+                double side = cellSize[level[node]];
+                quadrants.push(new Quadrant(new Vector2D(centerX[node] - side / 2, centerY[node] - side / 2), side));
+            }
+        }
+    }
+
+    /**
+     * Returns the number of nodes in the tree.
+     * @return Node count
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Returns the largest number of nodes used by any build so far. Multiplied by getBytesPerNode() this gives the
+     * node storage needed by a run.
+     * @return High-water mark of the node count
+     */
+    public int getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    /**
+     * Returns the number of bytes of node array storage used by each node in the arena, BYTES_PER_NODE for a default
+     * tree.
+     * @return Bytes per node
+     */
+    public int getBytesPerNode() {
+        int moments = (quadrupole ? 6 : 3) * (singleMoments ? Float.BYTES : Double.BYTES);
+        return BYTES_PER_NODE - 3 * Double.BYTES + moments;
+    }
+
+    /**
+     * Returns the number of nodes the arena can currently hold without being enlarged.
+     * @return Node capacity
+     */
+    public int getCapacity() {
+        return start.length;
+    }
+
+    /**
+     * Returns the number of nodes the arena is enlarged to before building a tree of the given number of particles.
+     * Clustered particles may need more, in which case the build is repeated with larger node arrays.
+     */
+    protected int initialCapacity(int particles) {
+        return 2 * particles + 1;
+    }
+
+    private void allocateNodes(int capacity) {
+        start = copyOf(start, capacity);
+        count = copyOf(count, capacity);
+        firstChild = copyOf(firstChild, capacity);
+        level = level == null ? new byte[capacity] : Arrays.copyOf(level, capacity);
+        centerX = copyOf(centerX, capacity);
+        centerY = copyOf(centerY, capacity);
+        if (singleMoments) {
+            singleMass = copyOf(singleMass, capacity);
+            singleOffsetX = copyOf(singleOffsetX, capacity);
+            singleOffsetY = copyOf(singleOffsetY, capacity);
+            if (quadrupole) {
+                singleQuadrupoleXX = copyOf(singleQuadrupoleXX, capacity);
+                singleQuadrupoleXY = copyOf(singleQuadrupoleXY, capacity);
+                singleQuadrupoleYY = copyOf(singleQuadrupoleYY, capacity);
+            }
+            return;
+        }
+        mass = copyOf(mass, capacity);
+        centerOfMassX = copyOf(centerOfMassX, capacity);
+        centerOfMassY = copyOf(centerOfMassY, capacity);
+        if (quadrupole) {
+            quadrupoleXX = copyOf(quadrupoleXX, capacity);
+            quadrupoleXY = copyOf(quadrupoleXY, capacity);
+            quadrupoleYY = copyOf(quadrupoleYY, capacity);
+        }
+    }
+
+    /**
+     * Builds the subtree of one node.
+     */
+    private class BuildTask extends RecursiveAction {
+        private final int node;
+        private final int lo;
+        private final int hi;
+        private final int nodeLevel;
+        private final double x0;
+        private final double y0;
+
+        BuildTask(int node, int lo, int hi, int nodeLevel, double x0, double y0) {
+            this.node = node;
+            this.lo = lo;
+            this.hi = hi;
+            this.nodeLevel = nodeLevel;
+            this.x0 = x0;
+            this.y0 = y0;
+        }
+
+        @Override
+        protected void compute() {
+            buildNode(node, lo, hi, nodeLevel, x0, y0);
+        }
+    }
+
+    /**
+     * Computes the moments of one node's subtree. Children holding enough particles are handled by separate tasks
+     * before the node combines their moments.
+     */
+    private class MomentTask extends RecursiveAction {
+        private final ParticleStore store;
+        private final int node;
+
+        MomentTask(ParticleStore store, int node) {
+            this.store = store;
+            this.node = node;
+        }
+
+        @Override
+        protected void compute() {
+            if (count[node] <= PARALLEL_THRESHOLD || firstChild[node] == NO_CHILDREN) {
+                computeMoments(store, node);
+                return;
+            }
+            MomentTask[] tasks = new MomentTask[4];
+            for (int quadrant = 0; quadrant < 4; quadrant++) {
+                tasks[quadrant] = new MomentTask(store, firstChild[node] + quadrant);
+            }
+            ForkJoinTask.invokeAll(tasks);
+            computeInternalMoments(node);
+        }
+    }
+
+    private static int[] copyOf(int[] array, int capacity) {
+        return array == null ? new int[capacity] : Arrays.copyOf(array, capacity);
+    }
+
+    private static double[] copyOf(double[] array, int capacity) {
+        return array == null ? new double[capacity] : Arrays.copyOf(array, capacity);
+    }
+
+    private static float[] copyOf(float[] array, int capacity) {
+        return array == null ? new float[capacity] : Arrays.copyOf(array, capacity);
+    }
+}
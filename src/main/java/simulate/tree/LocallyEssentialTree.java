@@ -0,0 +1,66 @@
+package simulate.tree;
+
+import simulate.objects.ParticleStore;
+
+/**
+ * Selects the part of a LinearQuadtree that a remote region needs to compute the accelerations of its particles,
+ * its locally essential tree. The tree is walked from the root; a node that every point of the region would accept
+ * as a whole is exported as a single body with the node's mass at its center of mass, a leaf that would be opened
+ * exports its particles, and any other node is opened. A node is accepted when its side length divided by the
+ * distance from its center to the nearest point of the region is below theta, which is the criterion of the
+ * TreeWalker applied to the region's nearest point, so the exported bodies are the ones the remote particles would
+ * have visited. The bodies are monopoles; a remote quadrupole tree only recovers the moments of groups of them.
+ */
+public class LocallyEssentialTree {
+
+    private final double thetaSquared;
+    private final int[] stack = new int[4 * (MortonKeys.BITS + 1)];
+
+    /**
+     * @param theta monopole acceptance criterion
+     */
+    public LocallyEssentialTree(double theta) {
+        this.thetaSquared = theta * theta;
+    }
+
+    /**
+     * Appends the bodies of the tree needed by a rectangular region to a store, with zero velocity.
+     * @param tree Tree built from the store
+     * @param store Store holding the particle state
+     * @param region minX, minY, maxX and maxY of the remote region
+     * @param bodies store the bodies are added to
+     * @return Number of added bodies
+     */
+    public int collect(LinearQuadtree tree, ParticleStore store, double[] region, ParticleStore bodies) {
+        int added = 0;
+        int top = 0;
+        stack[top++] = LinearQuadtree.ROOT;
+        while (top > 0) {
+            int node = stack[--top];
+            if (tree.count[node] == 0) {
+                continue;
+            }
+            double dx = Math.max(0, Math.max(region[0] - tree.centerX[node], tree.centerX[node] - region[2]));
+            double dy = Math.max(0, Math.max(region[1] - tree.centerY[node], tree.centerY[node] - region[3]));
+            double side = tree.cellSize[tree.level[node]];
+            if (side * side < thetaSquared * (dx * dx + dy * dy)) {
+                bodies.add(tree.centerOfMassXOf(node), tree.centerOfMassYOf(node), 0, 0, tree.massOf(node));
+                added++;
+                continue;
+            }
+            int child = tree.firstChild[node];
+            if (child == LinearQuadtree.NO_CHILDREN) {
+                for (int i = tree.start[node], end = tree.start[node] + tree.count[node]; i < end; i++) {
+                    bodies.add(store.x[i], store.y[i], 0, 0, store.mass[i]);
+                }
+                added += tree.count[node];
+                continue;
+            }
+            stack[top++] = child + 3;
+            stack[top++] = child + 2;
+            stack[top++] = child + 1;
+            stack[top++] = child;
+        }
+        return added;
+    }
+}
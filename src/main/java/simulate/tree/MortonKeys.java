@@ -0,0 +1,107 @@
+package simulate.tree;
+
+/**
+ * Helper methods for computing two- and three-dimensional Morton (Z-curve) keys. A key interleaves the bits of a
+ * particle's quantized coordinates, so that sorting particles by key lists the cells of every level of a quadtree,
+ * or of an octree in three dimensions, in depth-first order. Keys are sorted with a MortonSorter.
+ */
+public final class MortonKeys {
+
+    /**
+     * Number of bits used to quantize each coordinate, which is also the deepest level a key can resolve.
+     */
+    public static final int BITS = 31;
+    /**
+     * Number of bits used to quantize each coordinate of a three-dimensional key, so that the key fits into a long.
+     */
+    public static final int BITS_3D = 21;
+    private static final long MAX_COORDINATE = (1L << BITS) - 1;
+    private static final long MAX_COORDINATE_3D = (1L << BITS_3D) - 1;
+
+    private MortonKeys() {
+    }
+
+    /**
+     * Computes the Morton key of a point within a square region. Points outside the region are clamped onto its
+     * border cells.
+     * @param x x-coordinate of the point
+     * @param y y-coordinate of the point
+     * @param originX x-coordinate of the region's upper left corner
+     * @param originY y-coordinate of the region's upper left corner
+     * @param scale number of quantization steps per unit length, i.e. 2^BITS divided by the region size
+     * @return Morton key of the point
+     */
+    public static long key(double x, double y, double originX, double originY, double scale) {
+        return spread(quantize((x - originX) * scale)) | (spread(quantize((y - originY) * scale)) << 1);
+    }
+
+    /**
+     * Returns the quadrant (0 to 3) of the cell at the given level that the key falls into within its parent cell.
+     * Bit 0 of the quadrant selects the right half and bit 1 the lower half of the parent.
+     * @param key Morton key
+     * @param level level of the cell, where the root is level 0
+     * @return quadrant of the key's cell at that level
+     */
+    public static int quadrant(long key, int level) {
+        return (int) (key >>> (2 * (BITS - level))) & 3;
+    }
+
+    /**
+     * Computes the three-dimensional Morton key of a point within a cubic region. Points outside the region are
+     * clamped onto its border cells.
+     * @param scale number of quantization steps per unit length, i.e. 2^BITS_3D divided by the region size
+     * @return Morton key of the point
+     */
+    public static long key(double x, double y, double z, double originX, double originY, double originZ,
+                           double scale) {
+        return spread3(quantize((x - originX) * scale, MAX_COORDINATE_3D))
+                | (spread3(quantize((y - originY) * scale, MAX_COORDINATE_3D)) << 1)
+                | (spread3(quantize((z - originZ) * scale, MAX_COORDINATE_3D)) << 2);
+    }
+
+    /**
+     * Returns the octant (0 to 7) of the cell at the given level that a three-dimensional key falls into within its
+     * parent cell. Bits 0, 1 and 2 of the octant select the upper half of the parent along x, y and z respectively.
+     * @param key Morton key
+     * @param level level of the cell, where the root is level 0
+     * @return octant of the key's cell at that level
+     */
+    public static int octant(long key, int level) {
+        return (int) (key >>> (3 * (BITS_3D - level))) & 7;
+    }
+
+    private static long quantize(double coordinate) {
+        return quantize(coordinate, MAX_COORDINATE);
+    }
+
+    private static long quantize(double coordinate, long maxCoordinate) {
+        if (!(coordinate > 0)) {
+            return 0;
+        }
+        return Math.min((long) coordinate, maxCoordinate);
+    }
+
+    /**
+     * Spreads the lower 32 bits of the value so that a zero bit is inserted in front of each of them.
+     */
+    private static long spread(long value) {
+        value = (value | (value << 16)) & 0x0000FFFF0000FFFFL;
+        value = (value | (value << 8)) & 0x00FF00FF00FF00FFL;
+        value = (value | (value << 4)) & 0x0F0F0F0F0F0F0F0FL;
+        value = (value | (value << 2)) & 0x3333333333333333L;
+        value = (value | (value << 1)) & 0x5555555555555555L;
+        return value;
+    }
+
+    /**
+     * Spreads the lower 21 bits of the value so that two zero bits are inserted in front of each of them.
+     */
+    private static long spread3(long value) {
+        value = (value | (value << 32)) & 0x001F00000000FFFFL;
+        value = (value | (value << 16)) & 0x001F0000FF0000FFL;
+        value = (value | (value << 8)) & 0x100F00F00F00F00FL;
+        value = (value | (value << 4)) & 0x10C30C30C30C30C3L;
+        value = (value | (value << 2)) & 0x1249249249249249L;
+        return value;
+    }
+}
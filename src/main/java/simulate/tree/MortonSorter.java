@@ -0,0 +1,136 @@
+package simulate.tree;
+
+import simulate.parallel.Ranges;
+
+import java.util.Arrays;
+
+/**
+ * Least-significant-digit radix sort for Morton keys that carry an int value along with them. The sorter keeps its
+ * scratch buffers between calls, so sorting the same number of keys again allocates nothing. Large inputs are
+ * sorted in parallel.
+ */
+public class MortonSorter {
+
+    private static final int RADIX_BITS = 11;
+    private static final int RADIX = 1 << RADIX_BITS;
+    private static final int MIN_CHUNK = 1 << 15; // Smallest number of keys sorted by one task.
+
+    private final int keyBits;
+    private long[] keyScratch = new long[0];
+    private int[] valueScratch = new int[0];
+    private int[][] counts = new int[1][RADIX];
+
+    /**
+     * Initializes a sorter for two-dimensional Morton keys.
+     */
+    public MortonSorter() {
+        this(2 * MortonKeys.BITS);
+    }
+
+    /**
+     * Initializes a sorter for keys of the given length, e.g. 3 * MortonKeys.BITS_3D for three-dimensional keys.
+     * @param keyBits number of low bits of the keys that are sorted on
+     */
+    public MortonSorter(int keyBits) {
+        this.keyBits = keyBits;
+    }
+
+    /**
+     * Sorts the first n keys in ascending order and applies the same permutation to the values array. Digits shared
+     * by every key are skipped. When the pool running the sort has more than one thread, the keys are split into
+     * chunks; in every pass each chunk is counted and scattered by its own task, with the chunks' offsets chosen so that
+     * the sort stays stable.
+     * @param keys keys to sort
+     * @param values values moved alongside the keys
+     * @param n number of keys to sort
+     */
+    public void sort(long[] keys, int[] values, int n) {
+        if (keyScratch.length < n) {
+            keyScratch = new long[keys.length];
+            valueScratch = new int[keys.length];
+        }
+        int parallelism = Ranges.getParallelism();
+        int chunks = Math.max(1, parallelism > 1 ? Math.min(parallelism * 4, n / MIN_CHUNK) : 1);
+        if (counts.length != chunks) {
+            counts = new int[chunks][RADIX];
+        }
+        int chunkSize = (n + chunks - 1) / chunks;
+        long[] srcKeys = keys;
+        int[] srcValues = values;
+        long[] dstKeys = keyScratch;
+        int[] dstValues = valueScratch;
+        for (int shift = 0; shift < keyBits; shift += RADIX_BITS) {
+            if (pass(srcKeys, srcValues, dstKeys, dstValues, n, shift, chunkSize)) {
+                long[] swapKeys = srcKeys;
+                srcKeys = dstKeys;
+                dstKeys = swapKeys;
+                int[] swapValues = srcValues;
+                srcValues = dstValues;
+                dstValues = swapValues;
+            }
+        }
+        if (srcKeys != keys) {
+            System.arraycopy(srcKeys, 0, keys, 0, n);
+            System.arraycopy(srcValues, 0, values, 0, n);
+        }
+    }
+
+    /**
+     * Runs one pass of the radix sort on the digit at the given shift.
+     * @return false if the pass was skipped because every key has the same digit
+     */
+    private boolean pass(long[] srcKeys, int[] srcValues, long[] dstKeys, int[] dstValues, int n, int shift,
+                         int chunkSize) {
+        if (n == 0) {
+            return false;
+        }
+        if (counts.length == 1) {
+            count(srcKeys, 0, n, shift, counts[0]);
+        } else {
+            Ranges.forEach(0, n, chunkSize, (from, to) -> count(srcKeys, from, to, shift, counts[from / chunkSize]));
+        }
+        int firstDigit = digit(srcKeys[0], shift);
+        int firstDigitCount = 0;
+        for (int[] chunkCounts : counts) {
+            firstDigitCount += chunkCounts[firstDigit];
+        }
+        if (firstDigitCount == n) {
+            return false;
+        }
+        int total = 0;
+        for (int digit = 0; digit < RADIX; digit++) {
+            for (int[] chunkCounts : counts) {
+                int count = chunkCounts[digit];
+                chunkCounts[digit] = total;
+                total += count;
+            }
+        }
+        if (counts.length == 1) {
+            scatter(srcKeys, srcValues, dstKeys, dstValues, 0, n, shift, counts[0]);
+        } else {
+            Ranges.forEach(0, n, chunkSize, (from, to) -> scatter(srcKeys, srcValues, dstKeys, dstValues, from, to,
+                    shift, counts[from / chunkSize]));
+        }
+        return true;
+    }
+
+    private static void count(long[] keys, int from, int to, int shift, int[] chunkCounts) {
+        Arrays.fill(chunkCounts, 0);
+        for (int i = from; i < to; i++) {
+            chunkCounts[digit(keys[i], shift)]++;
+        }
+    }
+
+    private static void scatter(long[] srcKeys, int[] srcValues, long[] dstKeys, int[] dstValues, int from, int to,
+                                int shift, int[] offsets) {
+        for (int i = from; i < to; i++) {
+            int position = offsets[digit(srcKeys[i], shift)]++;
+            dstKeys[position] = srcKeys[i];
+            dstValues[position] = srcValues[i];
+        }
+    }
+
+    private static int digit(long key, int shift) {
+        return (int) (key >>> shift) & (RADIX - 1);
+    }
+}
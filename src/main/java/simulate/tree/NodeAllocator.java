@@ -0,0 +1,78 @@
+package simulate.tree;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+import java.util.function.IntSupplier;
+
+/**
+ * Hands out the nodes of a linear tree to the tasks building it in parallel. When the node arrays are full, the
+ * allocator records the overflow instead of throwing, so that no task is abandoned while it is still writing to the
+ * arrays: every task of the build runs to completion, creating no further children, and only then are the arrays
+ * enlarged and the build repeated.
+ */
+final class NodeAllocator {
+
+    private final AtomicInteger nextNode = new AtomicInteger();
+    private volatile boolean overflow;
+
+    /**
+     * Runs a build, repeating it with larger node arrays until its nodes fit.
+     * @param firstNode Index of the first node handed out by the build
+     * @param build Builds the tree, allocating nodes with allocate()
+     * @param capacity Returns the current length of the node arrays
+     * @param grow Enlarges the node arrays to the given length
+     * @return Number of nodes used, including those before firstNode
+     */
+    int build(int firstNode, Runnable build, IntSupplier capacity, IntConsumer grow) {
+        while (true) {
+            reset(firstNode);
+            build.run();
+            if (!overflow) {
+                return nextNode.get();
+            }
+            int length = capacity.getAsInt();
+            grow.accept(Math.max(nextNode.get(), length + (length >> 1)));
+        }
+    }
+
+    /**
+     * Starts handing out nodes from the given index.
+     */
+    void reset(int firstNode) {
+        nextNode.set(firstNode);
+        overflow = false;
+    }
+
+    /**
+     * Reserves adjacent nodes for the children of a node.
+     * @param nodes Number of children
+     * @param capacity Length of the node arrays
+     * @return Index of the first child, or -1 if the children do not fit, in which case the node is to be left
+     *         without children and the build is repeated once all of its tasks have finished
+     */
+    int allocate(int nodes, int capacity) {
+        if (overflow) {
+            return -1;
+        }
+        int first = nextNode.getAndAdd(nodes);
+        if (first + nodes > capacity) {
+            overflow = true;
+            return -1;
+        }
+        return first;
+    }
+
+    /**
+     * Returns whether a node did not fit since the last reset.
+     */
+    boolean overflowed() {
+        return overflow;
+    }
+
+    /**
+     * Returns the number of nodes handed out since the last reset, including those before its first node.
+     */
+    int size() {
+        return nextNode.get();
+    }
+}
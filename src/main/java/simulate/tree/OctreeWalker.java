@@ -0,0 +1,114 @@
+package simulate.tree;
+
+import simulate.objects.ParticleStore3D;
+
+/**
+ * Computes the acceleration of a particle by walking a LinearOctree iteratively, in the same way as TreeWalker walks
+ * a LinearQuadtree: the nodes still to be visited are kept on an explicit stack owned by the walker and the
+ * acceleration is accumulated in local variables, so a walk allocates nothing. A walker is not thread-safe; each
+ * thread should use its own.
+ */
+public class OctreeWalker {
+
+    private final double G;
+    private final double thetaSquared;
+    // Each visited node is replaced by at most eight children, so the stack never holds more than seven nodes
+    // per level plus the children of the deepest node.
+    private final int[] stack = new int[8 * (MortonKeys.BITS_3D + 1)];
+
+    /**
+     * Initializes the walker.
+     * @param G the gravitational constant
+     * @param theta monopole acceptance criterion
+     */
+    public OctreeWalker(double G, double theta) {
+        this.G = G;
+        this.thetaSquared = theta * theta;
+    }
+
+    /**
+     * Computes the acceleration exerted on a particle by all other particles in the tree and stores it in the
+     * particle's entry of the store. A node is approximated by its mass and center of mass when its side length
+     * divided by the distance from its center to the particle is below theta; otherwise it is opened. Leaves that
+     * are opened are summed directly.
+     * @param tree Tree built from the store
+     * @param store Store holding the particle state
+     * @param particle Index of the particle in the store
+     * @return Number of node and particle interactions evaluated
+     */
+    public int accelerate(LinearOctree tree, ParticleStore3D store, int particle) {
+        final int[] count = tree.count;
+        final int[] start = tree.start;
+        final int[] firstChild = tree.firstChild;
+        final byte[] level = tree.level;
+        final double[] cellSize = tree.cellSize;
+        final double[] centerX = tree.centerX;
+        final double[] centerY = tree.centerY;
+        final double[] centerZ = tree.centerZ;
+        final double[] mass = tree.mass;
+        final double[] centerOfMassX = tree.centerOfMassX;
+        final double[] centerOfMassY = tree.centerOfMassY;
+        final double[] centerOfMassZ = tree.centerOfMassZ;
+        final double[] px = store.x;
+        final double[] py = store.y;
+        final double[] pz = store.z;
+        final double[] pm = store.mass;
+        final int[] stack = this.stack;
+        final double x = px[particle];
+        final double y = py[particle];
+        final double z = pz[particle];
+
+        double ax = 0;
+        double ay = 0;
+        double az = 0;
+        int interactions = 0;
+        int top = 0;
+        stack[top++] = LinearOctree.ROOT;
+        while (top > 0) {
+            int node = stack[--top];
+            if (count[node] == 0) {
+                continue;
+            }
+            double cx = x - centerX[node];
+            double cy = y - centerY[node];
+            double cz = z - centerZ[node];
+            double side = cellSize[level[node]];
+            if (side * side < thetaSquared * (cx * cx + cy * cy + cz * cz)) {
+                double dx = x - centerOfMassX[node];
+                double dy = y - centerOfMassY[node];
+                double dz = z - centerOfMassZ[node];
+                double distanceSquared = dx * dx + dy * dy + dz * dz;
+                double product = mass[node] / (distanceSquared * Math.sqrt(distanceSquared));
+                ax -= dx * product;
+                ay -= dy * product;
+                az -= dz * product;
+                interactions++;
+                continue;
+            }
+            int child = firstChild[node];
+            if (child == LinearOctree.NO_CHILDREN) {
+                interactions += count[node];
+                for (int i = start[node], end = start[node] + count[node]; i < end; i++) {
+                    double dx = x - px[i];
+                    double dy = y - py[i];
+                    double dz = z - pz[i];
+                    double distanceSquared = dx * dx + dy * dy + dz * dz;
+                    if (distanceSquared > 0) {
+                        double product = pm[i] / (distanceSquared * Math.sqrt(distanceSquared));
+                        ax -= dx * product;
+                        ay -= dy * product;
+                        az -= dz * product;
+                    }
+                }
+                continue;
+            }
+            for (int octant = 7; octant >= 0; octant--) {
+                stack[top++] = child + octant;
+            }
+        }
+        store.ax[particle] = G * ax;
+        store.ay[particle] = G * ay;
+        store.az[particle] = G * az;
+        return interactions;
+    }
+}
@@ -0,0 +1,20 @@
+package simulate.tree;
+
+/**
+ * Floating point precision of the interaction lists of the "Group" engine.
+ */
+public enum Precision {
+    /**
+     * Lists, arithmetic and sums in double precision.
+     */
+    DOUBLE,
+    /**
+     * Lists, arithmetic and sums in single precision, which halves the size of the lists and doubles the number of
+     * interactions per vector instruction.
+     */
+    FLOAT,
+    /**
+     * Lists and arithmetic in single precision, with each interaction summed in double precision.
+     */
+    MIXED
+}
@@ -0,0 +1,67 @@
+package simulate.tree;
+
+/**
+ * Interaction kernel evaluating one source at a time.
+ */
+class ScalarInteractionKernel implements InteractionKernel {
+
+    @Override
+    public void accelerate(double x, double y, double[] sourceX, double[] sourceY, double[] sourceMass, int from,
+                           int to, double[] acceleration) {
+        double ax = 0;
+        double ay = 0;
+        for (int i = from; i < to; i++) {
+            double dx = x - sourceX[i];
+            double dy = y - sourceY[i];
+            double distanceSquared = dx * dx + dy * dy;
+            if (distanceSquared > 0) {
+                double product = sourceMass[i] / (distanceSquared * Math.sqrt(distanceSquared));
+                ax -= dx * product;
+                ay -= dy * product;
+            }
+        }
+        acceleration[0] += ax;
+        acceleration[1] += ay;
+    }
+
+    @Override
+    public void accelerate(float x, float y, float[] sourceX, float[] sourceY, float[] sourceMass, int from, int to,
+                           boolean doubleSums, double[] acceleration) {
+        if (doubleSums) {
+            double ax = 0;
+            double ay = 0;
+            for (int i = from; i < to; i++) {
+                float dx = x - sourceX[i];
+                float dy = y - sourceY[i];
+                float distanceSquared = dx * dx + dy * dy;
+                if (distanceSquared > 0) {
+                    float product = sourceMass[i] / (distanceSquared * (float) Math.sqrt(distanceSquared));
+                    ax -= dx * product;
+                    ay -= dy * product;
+                }
+            }
+            acceleration[0] += ax;
+            acceleration[1] += ay;
+            return;
+        }
+        float ax = 0;
+        float ay = 0;
+        for (int i = from; i < to; i++) {
+            float dx = x - sourceX[i];
+            float dy = y - sourceY[i];
+            float distanceSquared = dx * dx + dy * dy;
+            if (distanceSquared > 0) {
+                float product = sourceMass[i] / (distanceSquared * (float) Math.sqrt(distanceSquared));
+                ax -= dx * product;
+                ay -= dy * product;
+            }
+        }
+        acceleration[0] += ax;
+        acceleration[1] += ay;
+    }
+
+    @Override
+    public int getLanes() {
+        return 1;
+    }
+}
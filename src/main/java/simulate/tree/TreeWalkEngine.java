@@ -0,0 +1,49 @@
+package simulate.tree;
+
+import simulate.objects.ParticleStore;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Force engine that walks the tree once for every particle, using one TreeWalker per thread.
+ */
+public class TreeWalkEngine implements ForceEngine {
+
+    private final ThreadLocal<TreeWalker> walkers;
+    private LinearQuadtree tree;
+    private ParticleStore store;
+    private final LongAdder interactions = new LongAdder();
+
+    /**
+     * Initializes the engine.
+     * @param G the gravitational constant
+     * @param theta monopole acceptance criterion
+     */
+    public TreeWalkEngine(double G, double theta) {
+        this.walkers = ThreadLocal.withInitial(() -> new TreeWalker(G, theta));
+    }
+
+    @Override
+    public void prepare(LinearQuadtree tree, ParticleStore store) {
+        this.tree = tree;
+        this.store = store;
+        interactions.reset();
+    }
+
+    @Override
+    public void accelerate(int from, int to) {
+        TreeWalker walker = walkers.get();
+        long count = 0;
+        for (int particle = from; particle < to; particle++) {
+            int cost = walker.accelerate(tree, store, particle);
+            store.cost[particle] = cost;
+            count += cost;
+        }
+        interactions.add(count);
+    }
+
+    @Override
+    public long getInteractionCount() {
+        return interactions.sum();
+    }
+}
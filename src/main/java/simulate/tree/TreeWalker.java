@@ -0,0 +1,124 @@
+package simulate.tree;
+
+import simulate.objects.ParticleStore;
+
+/**
+ * Computes the acceleration of a particle by walking a LinearQuadtree iteratively. The nodes still to be visited
+ * are kept on an explicit stack of node indices owned by the walker, and the acceleration is accumulated in local
+ * variables, so a walk allocates nothing and its depth is not limited by the thread's call stack. A walker is not
+ * thread-safe; each thread should use its own.
+ */
+public class TreeWalker {
+
+    private final double G;
+    private final double thetaSquared;
+    // Each visited node is replaced by at most four children, so the stack never holds more than three nodes
+    // per level plus the children of the deepest node.
+    private final int[] stack = new int[4 * (MortonKeys.BITS + 1)];
+
+    /**
+     * Initializes the walker.
+     * @param G the gravitational constant
+     * @param theta monopole acceptance criterion
+     */
+    public TreeWalker(double G, double theta) {
+        this.G = G;
+        this.thetaSquared = theta * theta;
+    }
+
+    /**
+     * Computes the acceleration exerted on a particle by all other particles in the tree and stores it in the
+     * particle's entry of the store. A node is approximated by its mass and center of mass when its side length
+     * divided by the distance from its center to the particle is below theta; otherwise it is opened. Leaves that
+     * are opened are summed directly. Accepted nodes of a quadrupole tree also contribute their quadrupole term.
+     * @param tree Tree built from the store
+     * @param store Store holding the particle state
+     * @param particle Index of the particle in the store
+     * @return Number of node and particle interactions evaluated
+     * @throws IllegalArgumentException if the tree stores its moments in single precision
+     */
+    public int accelerate(LinearQuadtree tree, ParticleStore store, int particle) {
+        if (tree.singleMoments) {
+            throw new IllegalArgumentException("TreeWalker needs a tree with double precision moments");
+        }
+        final int[] count = tree.count;
+        final int[] start = tree.start;
+        final int[] firstChild = tree.firstChild;
+        final byte[] level = tree.level;
+        final double[] cellSize = tree.cellSize;
+        final double[] centerX = tree.centerX;
+        final double[] centerY = tree.centerY;
+        final double[] mass = tree.mass;
+        final double[] centerOfMassX = tree.centerOfMassX;
+        final double[] centerOfMassY = tree.centerOfMassY;
+        final boolean quadrupole = tree.quadrupole;
+        final double[] quadrupoleXX = tree.quadrupoleXX;
+        final double[] quadrupoleXY = tree.quadrupoleXY;
+        final double[] quadrupoleYY = tree.quadrupoleYY;
+        final double[] px = store.x;
+        final double[] py = store.y;
+        final double[] pm = store.mass;
+        final int[] stack = this.stack;
+        final double x = px[particle];
+        final double y = py[particle];
+
+        double ax = 0;
+        double ay = 0;
+        int interactions = 0;
+        int top = 0;
+        stack[top++] = LinearQuadtree.ROOT;
+        while (top > 0) {
+            int node = stack[--top];
+            if (count[node] == 0) {
+                continue;
+            }
+            double cx = x - centerX[node];
+            double cy = y - centerY[node];
+            double side = cellSize[level[node]];
+            if (side * side < thetaSquared * (cx * cx + cy * cy)) {
+                double dx = x - centerOfMassX[node];
+                double dy = y - centerOfMassY[node];
+                double distanceSquared = dx * dx + dy * dy;
+                double inverseCube = 1 / (distanceSquared * Math.sqrt(distanceSquared));
+                double product = mass[node] * inverseCube;
+                ax -= dx * product;
+                ay -= dy * product;
+                if (quadrupole) {
+                    // Gradient of the quadrupole potential (3 (r.S.r) / r^5 - trace(S) / r^3) / 2.
+                    double xx = quadrupoleXX[node];
+                    double xy = quadrupoleXY[node];
+                    double yy = quadrupoleYY[node];
+                    double inverseFifth = inverseCube / distanceSquared;
+                    double projected = dx * dx * xx + 2 * dx * dy * xy + dy * dy * yy;
+                    double radial = (1.5 * (xx + yy) - 7.5 * projected / distanceSquared) * inverseFifth;
+                    ax += 3 * (xx * dx + xy * dy) * inverseFifth + radial * dx;
+                    ay += 3 * (xy * dx + yy * dy) * inverseFifth + radial * dy;
+                }
+                interactions++;
+                continue;
+            }
+            int child = firstChild[node];
+            if (child == LinearQuadtree.NO_CHILDREN) {
+                interactions += count[node];
+                for (int i = start[node], end = start[node] + count[node]; i < end; i++) {
+                    double dx = x - px[i];
+                    double dy = y - py[i];
+                    double distanceSquared = dx * dx + dy * dy;
+                    if (distanceSquared > 0) {
+                        double product = pm[i] / (distanceSquared * Math.sqrt(distanceSquared));
+                        ax -= dx * product;
+                        ay -= dy * product;
+                    }
+                }
+                continue;
+            }
+            stack[top++] = child + 3;
+            stack[top++] = child + 2;
+            stack[top++] = child + 1;
+            stack[top++] = child;
+        }
+        store.ax[particle] = G * ax;
+        store.ay[particle] = G * ay;
+        return interactions;
+    }
+}
@@ -0,0 +1,110 @@
+package simulate.tree;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Interaction kernel evaluating as many sources per instruction as the preferred vector shape of the platform holds,
+ * four doubles or eight floats with AVX2 and eight doubles or sixteen floats with AVX-512. Lanes at zero distance are
+ * masked out and the remainder of the run is evaluated one source at a time. Only compiled for Java 17 and later; see InteractionKernel.create.
+ */
+class VectorInteractionKernel implements InteractionKernel {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Float> FLOAT_SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    @Override
+    public void accelerate(double x, double y, double[] sourceX, double[] sourceY, double[] sourceMass, int from,
+                           int to, double[] acceleration) {
+        DoubleVector px = DoubleVector.broadcast(SPECIES, x);
+        DoubleVector py = DoubleVector.broadcast(SPECIES, y);
+        DoubleVector zero = DoubleVector.zero(SPECIES);
+        DoubleVector sumX = zero;
+        DoubleVector sumY = zero;
+        int i = from;
+        for (int bound = from + SPECIES.loopBound(to - from); i < bound; i += SPECIES.length()) {
+            DoubleVector dx = px.sub(DoubleVector.fromArray(SPECIES, sourceX, i));
+            DoubleVector dy = py.sub(DoubleVector.fromArray(SPECIES, sourceY, i));
+            DoubleVector distanceSquared = dx.mul(dx).add(dy.mul(dy));
+            VectorMask<Double> separated = distanceSquared.compare(VectorOperators.GT, 0);
+            DoubleVector product = DoubleVector.fromArray(SPECIES, sourceMass, i)
+                    .div(distanceSquared.mul(distanceSquared.sqrt()));
+            product = zero.blend(product, separated);
+            sumX = sumX.sub(dx.mul(product));
+            sumY = sumY.sub(dy.mul(product));
+        }
+        double ax = sumX.reduceLanes(VectorOperators.ADD);
+        double ay = sumY.reduceLanes(VectorOperators.ADD);
+        for (; i < to; i++) {
+            double dx = x - sourceX[i];
+            double dy = y - sourceY[i];
+            double distanceSquared = dx * dx + dy * dy;
+            if (distanceSquared > 0) {
+                double product = sourceMass[i] / (distanceSquared * Math.sqrt(distanceSquared));
+                ax -= dx * product;
+                ay -= dy * product;
+            }
+        }
+        acceleration[0] += ax;
+        acceleration[1] += ay;
+    }
+
+    /**
+     * With double sums, each vector of single precision terms is widened into two double vectors of the same shape
+     * before it is added.
+     */
+    @Override
+    public void accelerate(float x, float y, float[] sourceX, float[] sourceY, float[] sourceMass, int from, int to,
+                           boolean doubleSums, double[] acceleration) {
+        FloatVector px = FloatVector.broadcast(FLOAT_SPECIES, x);
+        FloatVector py = FloatVector.broadcast(FLOAT_SPECIES, y);
+        FloatVector zero = FloatVector.zero(FLOAT_SPECIES);
+        FloatVector sumX = zero;
+        FloatVector sumY = zero;
+        DoubleVector doubleSumX = DoubleVector.zero(SPECIES);
+        DoubleVector doubleSumY = DoubleVector.zero(SPECIES);
+        int i = from;
+        for (int bound = from + FLOAT_SPECIES.loopBound(to - from); i < bound; i += FLOAT_SPECIES.length()) {
+            FloatVector dx = px.sub(FloatVector.fromArray(FLOAT_SPECIES, sourceX, i));
+            FloatVector dy = py.sub(FloatVector.fromArray(FLOAT_SPECIES, sourceY, i));
+            FloatVector distanceSquared = dx.mul(dx).add(dy.mul(dy));
+            VectorMask<Float> separated = distanceSquared.compare(VectorOperators.GT, 0);
+            FloatVector product = FloatVector.fromArray(FLOAT_SPECIES, sourceMass, i)
+                    .div(distanceSquared.mul(distanceSquared.sqrt()));
+            product = zero.blend(product, separated);
+            if (doubleSums) {
+                FloatVector termX = dx.mul(product);
+                FloatVector termY = dy.mul(product);
+                doubleSumX = doubleSumX.sub(termX.convertShape(VectorOperators.F2D, SPECIES, 0))
+                        .sub(termX.convertShape(VectorOperators.F2D, SPECIES, 1));
+                doubleSumY = doubleSumY.sub(termY.convertShape(VectorOperators.F2D, SPECIES, 0))
+                        .sub(termY.convertShape(VectorOperators.F2D, SPECIES, 1));
+            } else {
+                sumX = sumX.sub(dx.mul(product));
+                sumY = sumY.sub(dy.mul(product));
+            }
+        }
+        double ax = doubleSums ? doubleSumX.reduceLanes(VectorOperators.ADD) : sumX.reduceLanes(VectorOperators.ADD);
+        double ay = doubleSums ? doubleSumY.reduceLanes(VectorOperators.ADD) : sumY.reduceLanes(VectorOperators.ADD);
+        for (; i < to; i++) {
+            float dx = x - sourceX[i];
+            float dy = y - sourceY[i];
+            float distanceSquared = dx * dx + dy * dy;
+            if (distanceSquared > 0) {
+                float product = sourceMass[i] / (distanceSquared * (float) Math.sqrt(distanceSquared));
+                ax -= dx * product;
+                ay -= dy * product;
+            }
+        }
+        acceleration[0] += ax;
+        acceleration[1] += ay;
+    }
+
+    @Override
+    public int getLanes() {
+        return SPECIES.length();
+    }
+}
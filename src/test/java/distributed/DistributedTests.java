@@ -0,0 +1,334 @@
+package distributed;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+import simulate.BarnesHut;
+import simulate.DistributedBarnesHut;
+import simulate.distributed.LocalTransport;
+import simulate.distributed.OrthogonalBisection;
+import simulate.distributed.SocketTransport;
+import simulate.distributed.Transport;
+import simulate.helpers.ConfigLoader;
+import simulate.objects.Particle;
+import simulate.objects.ParticleStore;
+
+import javax.management.InvalidAttributeValueException;
+import java.awt.*;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+public class DistributedTests {
+
+    private static final int PARTICLES = 2000;
+    private static final int RANKS = 3;
+    private static final int STEPS = 5;
+
+    @Test
+    public void testBisectionBalancesWeight() {
+        Random random = new Random(42);
+        int count = 10000;
+        double[] x = new double[count];
+        double[] y = new double[count];
+        double[] weight = new double[count];
+        for (int i = 0; i < count; i++) {
+            x[i] = random.nextGaussian() * 100;
+            y[i] = random.nextDouble() * 50;
+            weight[i] = x[i] > 0 ? 3 : 1; // Particles on the right cost three times as much.
+        }
+        OrthogonalBisection bisection = new OrthogonalBisection(RANKS);
+        bisection.partition(x, y, weight, count);
+        double[] rankWeight = new double[RANKS];
+        double total = 0;
+        for (int i = 0; i < count; i++) {
+            int rank = bisection.rankOf(x[i], y[i]);
+            double[] domain = bisection.getDomain(rank);
+            Assertions.assertTrue(x[i] >= domain[0] && y[i] >= domain[1] && x[i] < domain[2] && y[i] < domain[3]);
+            rankWeight[rank] += weight[i];
+            total += weight[i];
+        }
+        for (double w : rankWeight) {
+            Assertions.assertEquals(total / RANKS, w, 0.01 * total);
+        }
+    }
+
+    @Test
+    public void testRanksOverLoopbackMatchSingleRank() throws Exception {
+        File config = config();
+        String addresses = freeAddresses();
+        File output = File.createTempFile("DistributedTests", ".bin");
+        output.deleteOnExit();
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        List<Process> processes = new ArrayList<>();
+        for (int rank = 0; rank < RANKS; rank++) {
+            processes.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                    DistributedTests.class.getName(), config.getPath(), String.valueOf(rank), addresses,
+                    output.getPath()).inheritIO().start());
+        }
+        for (Process process : processes) {
+            Assertions.assertTrue(process.waitFor(120, TimeUnit.SECONDS));
+            Assertions.assertEquals(0, process.exitValue());
+        }
+        double[] distributed = new double[2 * PARTICLES];
+        try (DataInputStream input = new DataInputStream(new FileInputStream(output))) {
+            for (int i = 0; i < distributed.length; i++) {
+                distributed[i] = input.readDouble();
+            }
+        }
+
+        DistributedBarnesHut simulator = new DistributedBarnesHut(new ConfigLoader(config.getPath()), particles(),
+                LocalTransport.create(1)[0]);
+        double[] initial = new double[2 * PARTICLES];
+        simulator.getPositions(initial);
+        for (int step = 0; step < STEPS; step++) {
+            simulator.next();
+        }
+        double[] single = new double[2 * PARTICLES];
+        simulator.getPositions(single);
+        double error = 0;
+        double displacement = 0;
+        for (int i = 0; i < single.length; i++) {
+            error += (distributed[i] - single[i]) * (distributed[i] - single[i]);
+            displacement += (single[i] - initial[i]) * (single[i] - initial[i]);
+        }
+        Assertions.assertTrue(displacement > 0);
+        Assertions.assertTrue(Math.sqrt(error / displacement) < 1e-2);
+    }
+
+    @Test
+    public void testRanksMatchBarnesHut() throws Exception {
+        // Without approximation the ranks sum the same interactions as BarnesHut.
+        ConfigLoader exact = loader(0);
+        double[] initial = new double[2 * PARTICLES];
+        double[] reference = runBarnesHut(exact, initial);
+        Assertions.assertTrue(rmsError(runRanks(exact), reference, initial) < 1e-12);
+        // With approximation the exported cells add no more error than the tree of BarnesHut makes.
+        ConfigLoader approximate = loader(0.5);
+        double[] single = runBarnesHut(approximate, initial);
+        double[] distributed = runRanks(approximate);
+        Assertions.assertTrue(rmsError(distributed, reference, initial)
+                < 1.5 * rmsError(single, reference, initial));
+        Assertions.assertTrue(rmsError(distributed, single, initial) < 1e-4);
+    }
+
+    /**
+     * Returns the RMS difference of the positions from the expected positions, relative to the RMS displacement of
+     * the expected positions from the initial positions.
+     */
+    private static double rmsError(double[] positions, double[] expected, double[] initial) {
+        double error = 0;
+        double displacement = 0;
+        for (int i = 0; i < positions.length; i++) {
+            error += (positions[i] - expected[i]) * (positions[i] - expected[i]);
+            displacement += (expected[i] - initial[i]) * (expected[i] - initial[i]);
+        }
+        return Math.sqrt(error / displacement);
+    }
+
+    /**
+     * Returns the config of the loopback test with a weaker gravitational constant, so that the orbits stay
+     * regular, and a disk of as many particles as particles() returns.
+     */
+    private static ConfigLoader loader(double theta) throws Exception {
+        JSONObject json = new JSONObject(new String(Files.readAllBytes(config().toPath()), StandardCharsets.UTF_8));
+        JSONObject galaxies = new JSONObject();
+        galaxies.put("Disk", galaxy("Disk", 0, PARTICLES));
+        json.put("Galaxies", galaxies);
+        json.put("G", 0.5);
+        json.put("Theta", theta);
+        File file = File.createTempFile("DistributedTests", ".json");
+        file.deleteOnExit();
+        Files.write(file.toPath(), json.toString().getBytes(StandardCharsets.UTF_8));
+        return new ConfigLoader(file.getPath());
+    }
+
+    /**
+     * Runs BarnesHut on the particles of particles(), which replace those of the config's disk, and returns the
+     * final positions.
+     * @param initial Receives the initial positions
+     */
+    private static double[] runBarnesHut(ConfigLoader loader, double[] initial) throws Exception {
+        BarnesHut reference = new BarnesHut(loader);
+        ParticleStore store = reference.getStore();
+        List<Particle> particles = particles();
+        for (int id = 0; id < PARTICLES; id++) {
+            int i = store.indexOf(id);
+            Particle particle = particles.get(id);
+            store.x[i] = particle.getPosition().getX();
+            store.y[i] = particle.getPosition().getY();
+            store.vx[i] = particle.getVelocity().getX();
+            store.vy[i] = particle.getVelocity().getY();
+            store.mass[i] = particle.getMass();
+        }
+        reference.getPositions(initial);
+        for (int step = 0; step < STEPS; step++) {
+            reference.next();
+        }
+        double[] positions = new double[2 * PARTICLES];
+        reference.getPositions(positions);
+        return positions;
+    }
+
+    /**
+     * Runs the ranks as threads connected by a LocalTransport on the particles of particles() and returns the final
+     * positions.
+     */
+    private static double[] runRanks(ConfigLoader loader) throws Exception {
+        Transport[] transports = LocalTransport.create(RANKS);
+        double[] positions = new double[2 * PARTICLES];
+        List<Thread> threads = new ArrayList<>();
+        List<Throwable> failures = new CopyOnWriteArrayList<>();
+        for (Transport transport : transports) {
+            Thread thread = new Thread(() -> {
+                try {
+                    DistributedBarnesHut simulator = new DistributedBarnesHut(loader, particles(), transport);
+                    for (int step = 0; step < STEPS; step++) {
+                        simulator.next();
+                    }
+                    simulator.getPositions(transport.getRank() == 0 ? positions : null);
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assertions.assertTrue(failures.isEmpty(), failures.toString());
+        return positions;
+    }
+
+    @Test
+    public void testRanksBuildTheirOwnShareOfTheGalaxies() throws Exception {
+        JSONObject config = new JSONObject(new String(Files.readAllBytes(config().toPath()), StandardCharsets.UTF_8));
+        JSONObject galaxies = new JSONObject();
+        galaxies.put("Disk", galaxy("Disk", 100, 301));
+        galaxies.put("Out", galaxy("Out", -100, 200));
+        config.put("Galaxies", galaxies);
+        File file = File.createTempFile("DistributedTests", ".json");
+        file.deleteOnExit();
+        Files.write(file.toPath(), config.toString().getBytes(StandardCharsets.UTF_8));
+        ConfigLoader loader = new ConfigLoader(file.getPath());
+        int total = 301 + 201; // The "Out" model adds its 200 bodies to the central body.
+
+        Transport[] transports = LocalTransport.create(RANKS);
+        DistributedBarnesHut[] simulators = new DistributedBarnesHut[RANKS];
+        // Only rank 0 receives while being created, so the other ranks are created first.
+        for (int rank = RANKS - 1; rank >= 0; rank--) {
+            simulators[rank] = new DistributedBarnesHut(loader, transports[rank]);
+        }
+        int held = 0;
+        for (DistributedBarnesHut simulator : simulators) {
+            Assertions.assertEquals(total, simulator.getParticleCount());
+            Assertions.assertTrue(simulator.getStore().size() <= total / RANKS + 1);
+            held += simulator.getStore().size();
+        }
+        Assertions.assertEquals(total, held);
+        Assertions.assertThrows(IllegalStateException.class, () -> simulators[1].getParticleSize(0));
+
+        for (int rank = RANKS - 1; rank > 0; rank--) {
+            simulators[rank].getPositions(null);
+        }
+        double[] positions = new double[2 * total];
+        simulators[0].getPositions(positions);
+        int centralBodies = 0;
+        for (int id = 0; id < total; id++) {
+            Assertions.assertTrue(Math.abs(positions[2 * id]) > 1, "Particle " + id);
+            centralBodies += simulators[0].getParticleSize(id) == 6 ? 1 : 0;
+        }
+        Assertions.assertEquals(2, centralBodies);
+    }
+
+    /**
+     * Runs one rank of the loopback test and writes the final positions to the output file on rank 0.
+     * @param args config file, rank, addresses and output file
+     */
+    public static void main(String[] args) throws IOException, JSONException, InvalidAttributeValueException {
+        int rank = Integer.parseInt(args[1]);
+        try (Transport transport = new SocketTransport(rank, SocketTransport.parseAddresses(args[2]))) {
+            DistributedBarnesHut simulator = new DistributedBarnesHut(new ConfigLoader(args[0]), particles(),
+                    transport);
+            for (int step = 0; step < STEPS; step++) {
+                simulator.next();
+            }
+            double[] positions = new double[2 * PARTICLES];
+            simulator.getPositions(positions);
+            if (rank == 0) {
+                try (DataOutputStream output = new DataOutputStream(new FileOutputStream(args[3]))) {
+                    for (double position : positions) {
+                        output.writeDouble(position);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Two clusters of particles on circular orbits about their common center of mass.
+     */
+    private static List<Particle> particles() {
+        Random random = new Random(42);
+        List<Particle> particles = new ArrayList<>();
+        for (int i = 0; i < PARTICLES; i++) {
+            double side = i % 2 == 0 ? -1 : 1;
+            double x = side * 200 + random.nextGaussian() * 50;
+            double y = random.nextGaussian() * 50;
+            particles.add(new Particle(x, y, 0, side * 10, 10, Color.WHITE, 1));
+        }
+        return particles;
+    }
+
+    private static File config() throws IOException, JSONException {
+        JSONObject config = new JSONObject();
+        config.put("Size", 1000);
+        config.put("Origin", new JSONArray(new int[]{-500, -500}));
+        config.put("G", 50);
+        config.put("Theta", 0.5);
+        config.put("TimeStep", 0.05);
+        config.put("Integrator", "Leapfrog");
+        config.put("Threads", 1);
+        config.put("Galaxies", new JSONObject());
+        File file = File.createTempFile("DistributedTests", ".json");
+        file.deleteOnExit();
+        Files.write(file.toPath(), config.toString().getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static JSONObject galaxy(String model, double x, int particles) throws JSONException {
+        JSONObject galaxy = new JSONObject();
+        galaxy.put("Model", model);
+        galaxy.put("Position", new JSONArray(new double[]{x, 0}));
+        galaxy.put("Velocity", new JSONArray(new double[]{0, 0}));
+        galaxy.put("Radius", 50);
+        galaxy.put("Mass", 1000);
+        galaxy.put("Particles", particles);
+        galaxy.put("Color", "Red");
+        return galaxy;
+    }
+
+    private static String freeAddresses() throws IOException {
+        StringBuilder addresses = new StringBuilder();
+        for (int rank = 0; rank < RANKS; rank++) {
+            try (ServerSocket socket = new ServerSocket(0)) {
+                addresses.append(rank > 0 ? "," : "").append("localhost:").append(socket.getLocalPort());
+            }
+        }
+        return addresses.toString();
+    }
+}
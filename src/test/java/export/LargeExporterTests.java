@@ -0,0 +1,61 @@
+package export;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+import simulate.BarnesHut;
+import simulate.helpers.ConfigLoader;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class LargeExporterTests {
+
+    @Test
+    public void testFailingWriterAbortsExport() throws Exception {
+        Path directory = Files.createTempDirectory("LargeExporterTests");
+        directory.toFile().deleteOnExit();
+        // The binary trajectory cannot roll over to its second file, which is taken by a directory.
+        Files.createDirectory(directory.resolve("Trajectories-1.bin")).toFile().deleteOnExit();
+        LargeExporter exporter = new LargeExporter(new BarnesHut(config()));
+        exporter.setTrajectoryFormats(new String[]{"CSV", "Binary"}, "Double");
+        exporter.setMaxFileSize(BinaryTrajectorySink.HEADER_BYTES
+                + 2 * BinaryTrajectorySink.frameBytes(2, 50, false));
+        exporter.setCheckpointInterval(1);
+        Assertions.assertThrows(IOException.class, () -> exporter.exportSimulation(directory.toString(), 1_000_000));
+        // The other writer stopped with the failing one instead of running to the last step.
+        JSONArray files = new JSONObject(new String(Files.readAllBytes(directory.resolve("Manifest.json")),
+                StandardCharsets.UTF_8)).getJSONArray("Files");
+        for (int i = 0; i < files.length(); i++) {
+            Assertions.assertTrue(files.getJSONObject(i).getLong("Frames") < 10);
+            directory.resolve(files.getJSONObject(i).getString("File")).toFile().deleteOnExit();
+        }
+        directory.resolve("Manifest.json").toFile().deleteOnExit();
+        directory.resolve("Checkpoint.bin").toFile().deleteOnExit();
+    }
+
+    private static ConfigLoader config() throws JSONException {
+        JSONObject galaxy = new JSONObject();
+        galaxy.put("Model", "Disk");
+        galaxy.put("Position", new JSONArray(new double[]{400, 400}));
+        galaxy.put("Velocity", new JSONArray(new double[]{0, 0}));
+        galaxy.put("Radius", 200);
+        galaxy.put("Mass", 10000);
+        galaxy.put("Particles", 50);
+        galaxy.put("Color", "Red");
+        JSONObject galaxies = new JSONObject();
+        galaxies.put("Galaxy1", galaxy);
+        JSONObject config = new JSONObject();
+        config.put("Size", 2400);
+        config.put("Origin", new JSONArray(new int[]{-800, -800}));
+        config.put("G", 50);
+        config.put("Theta", 0.5);
+        config.put("TimeStep", 0.01);
+        config.put("Galaxies", galaxies);
+        return new ConfigLoader(config);
+    }
+}
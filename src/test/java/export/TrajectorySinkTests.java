@@ -0,0 +1,187 @@
+package export;
+
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class TrajectorySinkTests {
+
+    private static final int DIMENSIONS = 2;
+    private static final int PARTICLES = 5;
+    private static final double QUANTUM = 1e-3;
+
+    @Test
+    public void testReadsAnyFrameOfDoubleTrajectory() throws IOException {
+        Path file = tempFile();
+        writeFrames(file, false, 0, 10);
+        try (BinaryTrajectoryReader reader = new BinaryTrajectoryReader(file)) {
+            Assertions.assertEquals(10, reader.getFrameCount());
+            double[] positions = new double[DIMENSIONS * PARTICLES];
+            for (long step : new long[]{7, 1, 10}) {
+                reader.readFrame(step, positions);
+                Assertions.assertArrayEquals(frame(step), positions);
+            }
+            Assertions.assertThrows(IOException.class, () -> reader.readFrame(11, positions));
+        }
+    }
+
+    @Test
+    public void testStoresFloatTrajectoryInSinglePrecision() throws IOException {
+        Path file = tempFile();
+        writeFrames(file, true, 0, 3);
+        Assertions.assertEquals(BinaryTrajectorySink.HEADER_BYTES + 3 * DIMENSIONS * PARTICLES * Float.BYTES,
+                Files.size(file));
+        try (BinaryTrajectoryReader reader = new BinaryTrajectoryReader(file)) {
+            double[] positions = new double[DIMENSIONS * PARTICLES];
+            reader.readFrame(2, positions);
+            double[] expected = frame(2);
+            for (int i = 0; i < expected.length; i++) {
+                Assertions.assertEquals((float) expected[i], positions[i]);
+            }
+        }
+    }
+
+    @Test
+    public void testResumedTrajectoryDiscardsFramesAfterCheckpoint() throws IOException {
+        Path file = tempFile();
+        writeFrames(file, false, 0, 8);
+        writeFrames(file, false, 5, 9);
+        try (BinaryTrajectoryReader reader = new BinaryTrajectoryReader(file)) {
+            Assertions.assertEquals(9, reader.getLastStep());
+            double[] positions = new double[DIMENSIONS * PARTICLES];
+            for (long step = 1; step <= 9; step++) {
+                reader.readFrame(step, positions);
+                Assertions.assertArrayEquals(frame(step), positions);
+            }
+        }
+    }
+
+    @Test
+    public void testCompressedTrajectoryIsWithinHalfAQuantum() throws IOException {
+        Path file = tempFile();
+        writeCompressedFrames(file, 0, 20);
+        try (CompressedTrajectoryReader reader = new CompressedTrajectoryReader(file)) {
+            Assertions.assertEquals(20, reader.getFrameCount());
+            double[] positions = new double[DIMENSIONS * PARTICLES];
+            for (long step : new long[]{13, 14, 2, 20, 1, 9}) {
+                reader.readFrame(step, positions);
+                assertWithinHalfAQuantum(step, positions);
+            }
+        }
+    }
+
+    @Test
+    public void testResumedCompressedTrajectoryStartsWithKeyframe() throws IOException {
+        Path file = tempFile();
+        writeCompressedFrames(file, 0, 12);
+        writeCompressedFrames(file, 6, 10);
+        try (CompressedTrajectoryReader reader = new CompressedTrajectoryReader(file)) {
+            Assertions.assertEquals(10, reader.getLastStep());
+            double[] positions = new double[DIMENSIONS * PARTICLES];
+            for (long step = 1; step <= 10; step++) {
+                reader.readFrame(step, positions);
+                assertWithinHalfAQuantum(step, positions);
+            }
+        }
+    }
+
+    @Test
+    public void testRollingTrajectoryResumesFromManifest() throws IOException {
+        Path directory = Files.createTempDirectory("TrajectorySinkTests");
+        directory.toFile().deleteOnExit();
+        Path manifestFile = directory.resolve("Manifest.json");
+        long frameBytes = BinaryTrajectorySink.frameBytes(DIMENSIONS, PARTICLES, false);
+        long maxBytes = BinaryTrajectorySink.HEADER_BYTES + 3 * frameBytes;
+        int[] particles = {0, 1, 2, 3, 4};
+        writeRollingFrames(directory, new ExportManifest(manifestFile, 2, 0.5, DIMENSIONS, particles), 2, 20, maxBytes);
+        writeRollingFrames(directory, ExportManifest.resume(manifestFile, 9, particles), 10, 16, maxBytes);
+        double[] positions = new double[DIMENSIONS * PARTICLES];
+        long step = 2;
+        for (String name : new String[]{"Trajectories.bin", "Trajectories-1.bin", "Trajectories-2.bin"}) {
+            try (BinaryTrajectoryReader reader = new BinaryTrajectoryReader(directory.resolve(name))) {
+                Assertions.assertEquals(step, reader.getFirstStep());
+                for (; step <= reader.getLastStep(); step += 2) {
+                    reader.readFrame(step, positions);
+                    Assertions.assertArrayEquals(frame(step), positions);
+                }
+            }
+            directory.resolve(name).toFile().deleteOnExit();
+        }
+        Assertions.assertEquals(18, step);
+        Assertions.assertFalse(Files.exists(directory.resolve("Trajectories-3.bin")));
+        manifestFile.toFile().deleteOnExit();
+    }
+
+    /**
+     * Writes the frames of every second step from firstStep up to lastStep to rolling binary files.
+     */
+    private static void writeRollingFrames(Path directory, ExportManifest manifest, long firstStep, long lastStep,
+                                           long maxBytes) throws IOException {
+        try (TrajectorySink sink = new RollingTrajectorySink(directory, "Trajectories", ".bin",
+                "Binary", maxBytes, manifest, (path, kept) -> new BinaryTrajectorySink(path, DIMENSIONS, PARTICLES,
+                false, kept))) {
+            for (long step = firstStep; step <= lastStep; step += 2) {
+                sink.write(step, frame(step));
+            }
+        }
+        manifest.write();
+    }
+
+    private static void writeCompressedFrames(Path file, long firstStep, long lastStep) throws IOException {
+        try (TrajectorySink sink = new CompressedTrajectorySink(file, DIMENSIONS, PARTICLES, QUANTUM, 4, 2,
+                firstStep)) {
+            for (long step = firstStep + 1; step <= lastStep; step++) {
+                sink.write(step, curvedFrame(step));
+            }
+        }
+    }
+
+    private static void assertWithinHalfAQuantum(long step, double[] positions) {
+        double[] expected = curvedFrame(step);
+        for (int i = 0; i < expected.length; i++) {
+            Assertions.assertEquals(expected[i], positions[i], QUANTUM / 2 * (1 + 1e-9));
+        }
+    }
+
+    /**
+     * Returns positions on circles, which move along curved paths from step to step.
+     */
+    private static double[] curvedFrame(long step) {
+        double[] positions = new double[DIMENSIONS * PARTICLES];
+        for (int i = 0; i < PARTICLES; i++) {
+            double angle = 0.1 * step * (i + 1);
+            positions[DIMENSIONS * i] = 100 * i * Math.cos(angle) - 37.5;
+            positions[DIMENSIONS * i + 1] = 100 * i * Math.sin(angle) + 12.25;
+        }
+        return positions;
+    }
+
+    /**
+     * Writes the frames of the steps after firstStep up to lastStep.
+     */
+    private static void writeFrames(Path file, boolean singlePrecision, long firstStep, long lastStep)
+            throws IOException {
+        try (TrajectorySink sink = new BinaryTrajectorySink(file, DIMENSIONS, PARTICLES, singlePrecision, firstStep)) {
+            for (long step = firstStep + 1; step <= lastStep; step++) {
+                sink.write(step, frame(step));
+            }
+        }
+    }
+
+    private static double[] frame(long step) {
+        double[] positions = new double[DIMENSIONS * PARTICLES];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = step * 100 + i + 0.1;
+        }
+        return positions;
+    }
+
+    private static Path tempFile() throws IOException {
+        Path file = Files.createTempFile("TrajectorySinkTests", ".bin");
+        file.toFile().deleteOnExit();
+        return file;
+    }
+}
@@ -0,0 +1,140 @@
+package integrate;
+
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+import simulate.integrate.BlockForceEvaluator;
+import simulate.integrate.BlockTimestepIntegrator;
+import simulate.integrate.EulerIntegrator;
+import simulate.integrate.Integrator;
+import simulate.integrate.LeapfrogIntegrator;
+import simulate.integrate.VelocityVerletIntegrator;
+import simulate.objects.ParticleStore;
+
+public class IntegratorTests {
+
+    private static final double PERIOD = 2 * Math.PI; // Orbital period of the test orbit, whose semi-major axis is 1.
+    private static final int ORBITS = 10;
+
+    @Test
+    public void testLeapfrogAllowsLargerSteps() {
+        double euler = energyError(new EulerIntegrator(), PERIOD / 1000);
+        double leapfrog = energyError(new LeapfrogIntegrator(), PERIOD / 250);
+        Assertions.assertTrue(leapfrog < euler / 4);
+    }
+
+    @Test
+    public void testVelocityVerletMatchesLeapfrog() {
+        double leapfrog = energyError(new LeapfrogIntegrator(), PERIOD / 250);
+        double verlet = energyError(new VelocityVerletIntegrator(), PERIOD / 250);
+        Assertions.assertEquals(leapfrog, verlet, 1e-6 * leapfrog);
+    }
+
+    @Test
+    public void testBlockTimestepsOnOneRungMatchLeapfrog() {
+        ParticleStore leapfrog = orbit();
+        ParticleStore block = orbit();
+        LeapfrogIntegrator integrator = new LeapfrogIntegrator();
+        BlockTimestepIntegrator blockIntegrator = new BlockTimestepIntegrator(0, 0.03);
+        for (int step = 0; step < 100; step++) {
+            integrator.step(leapfrog, () -> accelerate(leapfrog), PERIOD / 100);
+            blockIntegrator.step(block, directSum(block), PERIOD / 100);
+        }
+        Assertions.assertEquals(leapfrog.x[1], block.x[1], 1e-12);
+        Assertions.assertEquals(leapfrog.vy[1], block.vy[1], 1e-12);
+    }
+
+    @Test
+    public void testBlockTimestepsRefineInnerOrbitsOnly() {
+        ParticleStore store = new ParticleStore(3);
+        // The system drifts along x, so that the central mass does not rest.
+        store.add(0, 0, 0.1, 0, 1);
+        store.add(0.25, 0, 0.1, 2, 1e-12);
+        store.add(-4, 0, 0.1, -0.5, 1e-12);
+        BlockTimestepIntegrator integrator = new BlockTimestepIntegrator(10, 0.03);
+        long evaluations = 0;
+        for (int step = 0; step < 10; step++) {
+            integrator.step(store, directSum(store), 1);
+            evaluations += integrator.getEvaluationCount();
+        }
+        Assertions.assertTrue(evaluations < 0.3 * 10 * 3 * (1 << 10));
+        int inner = store.indexOf(1);
+        int outer = store.indexOf(2);
+        Assertions.assertEquals(0.25, Math.hypot(store.x[inner] - store.x[0], store.y[inner] - store.y[0]), 1e-3);
+        Assertions.assertEquals(4, Math.hypot(store.x[outer] - store.x[0], store.y[outer] - store.y[0]), 1e-2);
+    }
+
+    /**
+     * Evaluates the accelerations of the listed particles of a store by direct summation, with G = 1.
+     */
+    private static BlockForceEvaluator directSum(ParticleStore store) {
+        return new BlockForceEvaluator() {
+            @Override
+            public void refresh(boolean full) {
+            }
+
+            @Override
+            public void evaluate(int[] particles, int count) {
+                for (int k = 0; k < count; k++) {
+                    int i = particles[k];
+                    store.ax[i] = 0;
+                    store.ay[i] = 0;
+                    for (int j = 0; j < store.size(); j++) {
+                        double dx = store.x[i] - store.x[j];
+                        double dy = store.y[i] - store.y[j];
+                        double distanceSquared = dx * dx + dy * dy;
+                        if (distanceSquared > 0) {
+                            double product = store.mass[j] / (distanceSquared * Math.sqrt(distanceSquared));
+                            store.ax[i] -= dx * product;
+                            store.ay[i] -= dy * product;
+                        }
+                    }
+                }
+            }
+        };
+    }
+
+    private static ParticleStore orbit() {
+        ParticleStore store = new ParticleStore(2);
+        store.add(0, 0, 0, 0, 1);
+        store.add(0.5, 0, 0, Math.sqrt(3), 1e-12);
+        return store;
+    }
+
+    /**
+     * Integrates a light particle on an orbit of eccentricity 0.5 around a unit mass with G = 1 and returns the
+     * largest relative energy error.
+     */
+    private static double energyError(Integrator integrator, double timeStep) {
+        ParticleStore store = orbit();
+        double initial = energy(store);
+        double error = 0;
+        for (int step = 0; step < ORBITS * PERIOD / timeStep; step++) {
+            integrator.step(store, () -> accelerate(store), timeStep);
+            error = Math.max(error, Math.abs(energy(store) / initial - 1));
+        }
+        return error;
+    }
+
+    private static void accelerate(ParticleStore store) {
+        for (int i = 0; i < 2; i++) {
+            int j = 1 - i;
+            double dx = store.x[i] - store.x[j];
+            double dy = store.y[i] - store.y[j];
+            double distanceSquared = dx * dx + dy * dy;
+            double product = store.mass[j] / (distanceSquared * Math.sqrt(distanceSquared));
+            store.ax[i] = -dx * product;
+            store.ay[i] = -dy * product;
+        }
+    }
+
+    /**
+     * @return specific orbital energy of the light particle
+     */
+    private static double energy(ParticleStore store) {
+        double dx = store.x[1] - store.x[0];
+        double dy = store.y[1] - store.y[0];
+        double vx = store.vx[1] - store.vx[0];
+        double vy = store.vy[1] - store.vy[0];
+        return (vx * vx + vy * vy) / 2 - 1 / Math.sqrt(dx * dx + dy * dy);
+    }
+}
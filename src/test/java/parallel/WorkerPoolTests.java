@@ -0,0 +1,115 @@
+package parallel;
+
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+import simulate.parallel.CostZones;
+import simulate.parallel.Ranges;
+import simulate.parallel.WorkerPool;
+
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+public class WorkerPoolTests {
+
+    @Test
+    public void testChunksCoverRangeOnce() {
+        AtomicIntegerArray visits = new AtomicIntegerArray(1000);
+        try (WorkerPool workers = new WorkerPool(2, 64)) {
+            workers.forEach(10, 1000, (from, to) -> {
+                Assertions.assertTrue(to - from <= 64);
+                Assertions.assertEquals(0, (from - 10) % 64);
+                for (int i = from; i < to; i++) {
+                    visits.incrementAndGet(i);
+                }
+            });
+        }
+        for (int i = 0; i < 1000; i++) {
+            Assertions.assertEquals(i < 10 ? 0 : 1, visits.get(i));
+        }
+    }
+
+    @Test
+    public void testReduceCombinesChunksInOrder() {
+        try (WorkerPool workers = new WorkerPool(2, 64)) {
+            workers.run(() -> {
+                String order = Ranges.reduce(10, 1000, 64, "", (from, to) -> from + "-" + to + ",", String::concat);
+                StringBuilder expected = new StringBuilder();
+                for (int from = 10; from < 1000; from += 64) {
+                    expected.append(from).append('-').append(Math.min(1000, from + 64)).append(',');
+                }
+                Assertions.assertEquals(expected.toString(), order);
+                Assertions.assertEquals(-1, (int) Ranges.reduce(5, 5, 64, -1, (from, to) -> 0, Integer::sum));
+            });
+        }
+    }
+
+    @Test
+    public void testNestedWorkStaysInPool() {
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        try (WorkerPool workers = new WorkerPool(2, 16)) {
+            workers.run(() -> Ranges.forEach(0, 10_000, 16, (from, to) -> {
+                Assertions.assertNotSame(ForkJoinPool.commonPool(), ForkJoinTask.getPool());
+                threads.add(Thread.currentThread().getName());
+            }));
+            Assertions.assertEquals(2, workers.getParallelism());
+        }
+        for (String thread : threads) {
+            Assertions.assertTrue(thread.startsWith("BarnesHut-"));
+        }
+    }
+
+    @Test
+    public void testCostZonesEqualizeCost() {
+        int[] cost = new int[1000];
+        for (int i = 0; i < 100; i++) {
+            cost[i] = 99; // The first tenth of the particles carries most of the cost.
+        }
+        CostZones zones = new CostZones(1);
+        Assertions.assertEquals(4, zones.partition(cost, 0, 1000, 4));
+        int[] bounds = zones.getBounds();
+        Assertions.assertEquals(0, bounds[0]);
+        Assertions.assertEquals(1000, bounds[4]);
+        for (int zone = 0; zone < 4; zone++) {
+            long zoneCost = 0;
+            for (int i = bounds[zone]; i < bounds[zone + 1]; i++) {
+                zoneCost += cost[i] + 1;
+            }
+            Assertions.assertEquals((100 * 100 + 900) / 4.0, zoneCost, 100);
+        }
+    }
+
+    @Test
+    public void testCostZonesEqualizeCostOfListedParticles() {
+        int[] cost = new int[2000];
+        int[] particles = new int[1000];
+        for (int k = 0; k < 1000; k++) {
+            particles[k] = 2 * k; // Only every second particle is listed, as for the active particles of a substep.
+            cost[2 * k] = k < 100 ? 99 : 0;
+            cost[2 * k + 1] = 1000;
+        }
+        AtomicIntegerArray visits = new AtomicIntegerArray(1000);
+        Queue<Long> zoneCosts = new ConcurrentLinkedQueue<>();
+        try (WorkerPool workers = new WorkerPool(2, 64)) {
+            workers.run(() -> new CostZones(2).forEach(cost, particles, 1000, (from, to) -> {
+                long zoneCost = 0;
+                for (int k = from; k < to; k++) {
+                    visits.incrementAndGet(k);
+                    zoneCost += cost[particles[k]] + 1;
+                }
+                zoneCosts.add(zoneCost);
+            }));
+        }
+        for (int k = 0; k < 1000; k++) {
+            Assertions.assertEquals(1, visits.get(k));
+        }
+        Assertions.assertEquals(4, zoneCosts.size());
+        for (long zoneCost : zoneCosts) {
+            Assertions.assertEquals((100 * 100 + 900) / 4.0, zoneCost, 100);
+        }
+    }
+}
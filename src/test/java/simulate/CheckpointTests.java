@@ -0,0 +1,97 @@
+package simulate;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+import simulate.helpers.ConfigLoader;
+
+import javax.management.InvalidAttributeValueException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class CheckpointTests {
+
+    private static final int STEPS = 5;
+
+    @Test
+    public void testResumedLeapfrogRunMatchesUninterruptedRun() throws Exception {
+        assertResumedRunMatches(config(false));
+    }
+
+    @Test
+    public void testResumedBlockTimestepRunMatchesUninterruptedRun() throws Exception {
+        assertResumedRunMatches(config(true));
+    }
+
+    @Test
+    public void testRejectsOtherFiles() throws IOException {
+        Path file = Files.createTempFile("CheckpointTests", ".bin");
+        file.toFile().deleteOnExit();
+        Files.write(file, new byte[64]);
+        Assertions.assertThrows(IOException.class, () -> Checkpoint.read(file));
+    }
+
+    /**
+     * Runs a simulation for 2 * STEPS steps with a checkpoint after STEPS steps, resumes a second simulation from the
+     * checkpoint and compares the final positions of both.
+     */
+    private static void assertResumedRunMatches(ConfigLoader config) throws IOException,
+            InvalidAttributeValueException {
+        Path file = Files.createTempFile("CheckpointTests", ".bin");
+        file.toFile().deleteOnExit();
+        BarnesHut simulator = new BarnesHut(config);
+        for (int step = 0; step < STEPS; step++) {
+            simulator.next();
+        }
+        Checkpoint.write(file, simulator, STEPS);
+        for (int step = 0; step < STEPS; step++) {
+            simulator.next();
+        }
+
+        Checkpoint checkpoint = Checkpoint.read(file);
+        Assertions.assertEquals(STEPS, checkpoint.getStep());
+        Assertions.assertEquals(simulator.getParticleCount(), checkpoint.getParticleCount());
+        Simulator resumed = checkpoint.restore();
+        for (int id = 0; id < simulator.getParticleCount(); id++) {
+            Assertions.assertEquals(simulator.getParticleColor(id), resumed.getParticleColor(id));
+            Assertions.assertEquals(simulator.getParticleSize(id), resumed.getParticleSize(id));
+        }
+        for (int step = 0; step < STEPS; step++) {
+            resumed.next();
+        }
+        double[] expected = new double[2 * simulator.getParticleCount()];
+        double[] actual = new double[expected.length];
+        simulator.getPositions(expected);
+        resumed.getPositions(actual);
+        for (int i = 0; i < expected.length; i++) {
+            Assertions.assertEquals(expected[i], actual[i]);
+        }
+    }
+
+    private static ConfigLoader config(boolean blockTimesteps) throws JSONException {
+        JSONObject galaxy = new JSONObject();
+        galaxy.put("Model", "Disk");
+        galaxy.put("Position", new JSONArray(new double[]{400, 400}));
+        galaxy.put("Velocity", new JSONArray(new double[]{0, 0}));
+        galaxy.put("Radius", 200);
+        galaxy.put("Mass", 10000);
+        galaxy.put("Particles", 1000);
+        galaxy.put("Color", "Red");
+        JSONObject galaxies = new JSONObject();
+        galaxies.put("Galaxy1", galaxy);
+        JSONObject config = new JSONObject();
+        config.put("Size", 2400);
+        config.put("Origin", new JSONArray(new int[]{-800, -800}));
+        config.put("G", 50);
+        config.put("Theta", 0.5);
+        config.put("TimeStep", 0.01);
+        config.put("Integrator", "Leapfrog");
+        config.put("BlockTimesteps", blockTimesteps);
+        config.put("MaxRung", 3);
+        config.put("Galaxies", galaxies);
+        return new ConfigLoader(config);
+    }
+}
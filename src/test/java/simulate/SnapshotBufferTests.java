@@ -0,0 +1,147 @@
+package simulate;
+
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+
+import java.awt.*;
+
+public class SnapshotBufferTests {
+
+    private static final int PARTICLES = 1000;
+    private static final int STEPS = 200;
+
+    @Test
+    public void testLosslessBufferDeliversEveryStepInOrder() throws InterruptedException {
+        CountingSimulator simulator = new CountingSimulator();
+        SnapshotBuffer snapshots = new SnapshotBuffer(simulator, 2, true);
+        Thread producer = new Thread(() -> {
+            for (int step = 0; step < STEPS; step++) {
+                simulator.next();
+                snapshots.publish();
+            }
+            snapshots.close();
+        });
+        producer.start();
+        long step = 0;
+        Snapshot snapshot;
+        while ((snapshot = snapshots.acquireNext(step)) != null) {
+            Assertions.assertEquals(step + 1, snapshot.getStep());
+            assertComplete(snapshot, snapshot.getStep());
+            step = snapshot.getStep();
+            snapshots.release(snapshot);
+        }
+        producer.join();
+        Assertions.assertEquals(STEPS, step);
+    }
+
+    @Test
+    public void testEveryConsumerOfLosslessBufferSeesEveryStep() throws InterruptedException {
+        CountingSimulator simulator = new CountingSimulator();
+        SnapshotBuffer snapshots = new SnapshotBuffer(simulator, 3, 2);
+        long[] lastSteps = new long[2];
+        Thread[] consumers = new Thread[2];
+        for (int consumer = 0; consumer < consumers.length; consumer++) {
+            int index = consumer;
+            consumers[consumer] = new Thread(() -> {
+                try {
+                    Snapshot snapshot;
+                    while ((snapshot = snapshots.acquireNext(lastSteps[index])) != null) {
+                        Assertions.assertEquals(lastSteps[index] + 1, snapshot.getStep());
+                        assertComplete(snapshot, snapshot.getStep());
+                        lastSteps[index] = snapshot.getStep();
+                        if (index == 1) {
+                            Thread.yield(); // A slower consumer holds the producer back instead of losing frames.
+                        }
+                        snapshots.release(snapshot);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    snapshots.close(); // Lets the producer finish if an assertion fails.
+                }
+            });
+            consumers[consumer].start();
+        }
+        for (int step = 0; step < STEPS; step++) {
+            simulator.next();
+            snapshots.publish();
+        }
+        snapshots.close();
+        for (Thread consumer : consumers) {
+            consumer.join();
+        }
+        Assertions.assertArrayEquals(new long[]{STEPS, STEPS}, lastSteps);
+    }
+
+    @Test
+    public void testLatestFrameIsNeverTorn() throws InterruptedException {
+        CountingSimulator simulator = new CountingSimulator();
+        SnapshotBuffer snapshots = new SnapshotBuffer(simulator, 3, false);
+        Thread producer = new Thread(() -> {
+            for (int step = 0; step < STEPS; step++) {
+                simulator.next();
+                snapshots.publish();
+            }
+        });
+        producer.start();
+        long step = 0;
+        while (step < STEPS) {
+            Snapshot snapshot = snapshots.acquireNext(step);
+            Assertions.assertTrue(snapshot.getStep() > step);
+            assertComplete(snapshot, snapshot.getStep());
+            step = snapshot.getStep();
+            snapshots.release(snapshot);
+        }
+        producer.join();
+    }
+
+    /**
+     * Checks that every position of the snapshot was written in the same step.
+     */
+    private static void assertComplete(Snapshot snapshot, long step) {
+        for (int id = 0; id < PARTICLES; id++) {
+            Assertions.assertEquals(step, snapshot.getPosition(id, 0));
+            Assertions.assertEquals(step, snapshot.getPosition(id, 1));
+        }
+    }
+
+    /**
+     * Simulator whose particles are all placed at (n, n) after n steps.
+     */
+    private static class CountingSimulator implements Simulator {
+
+        private int step;
+
+        @Override
+        public void next() {
+            step++;
+        }
+
+        @Override
+        public int getDimensions() {
+            return 2;
+        }
+
+        @Override
+        public int getParticleCount() {
+            return PARTICLES;
+        }
+
+        @Override
+        public int getParticleSize(int id) {
+            return 1;
+        }
+
+        @Override
+        public Color getParticleColor(int id) {
+            return Color.WHITE;
+        }
+
+        @Override
+        public void getPositions(double[] positions) {
+            for (int i = 0; i < positions.length; i++) {
+                positions[i] = step;
+            }
+        }
+    }
+}
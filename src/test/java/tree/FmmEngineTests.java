@@ -0,0 +1,48 @@
+package tree;
+
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+import simulate.objects.ParticleStore;
+import simulate.tree.FmmEngine;
+import simulate.tree.LinearQuadtree;
+
+import java.util.Random;
+
+public class FmmEngineTests {
+
+    private static final int PARTICLES = 3000;
+    private static final double G = 50;
+
+    @Test
+    public void testRmsErrorAgainstDirectSum() {
+        Random random = new Random(11);
+        ParticleStore store = new ParticleStore(PARTICLES);
+        for (int i = 0; i < PARTICLES; i++) {
+            store.add(random.nextDouble() * 800, random.nextDouble() * 800, 0, 0, random.nextDouble() + 0.5);
+        }
+        LinearQuadtree tree = new LinearQuadtree(0, 0, 800);
+        tree.build(store);
+        FmmEngine engine = new FmmEngine(G, 0.5, 16, 6);
+        engine.prepare(tree, store);
+        engine.accelerate(0, PARTICLES);
+        double squaredError = 0;
+        for (int i = 0; i < PARTICLES; i++) {
+            double ax = 0;
+            double ay = 0;
+            for (int j = 0; j < PARTICLES; j++) {
+                double dx = store.x[i] - store.x[j];
+                double dy = store.y[i] - store.y[j];
+                double distanceSquared = dx * dx + dy * dy;
+                if (distanceSquared > 0) {
+                    double product = G * store.mass[j] / (distanceSquared * Math.sqrt(distanceSquared));
+                    ax -= dx * product;
+                    ay -= dy * product;
+                }
+            }
+            double ex = store.ax[i] - ax;
+            double ey = store.ay[i] - ay;
+            squaredError += (ex * ex + ey * ey) / (ax * ax + ay * ay);
+        }
+        Assertions.assertTrue(Math.sqrt(squaredError / PARTICLES) < 1e-3);
+    }
+}
@@ -0,0 +1,82 @@
+package tree;
+
+import org.junit.Assume;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+import simulate.objects.ParticleStore;
+import simulate.tree.GroupWalkEngine;
+import simulate.tree.InteractionKernel;
+import simulate.tree.LinearQuadtree;
+import simulate.tree.MortonKeys;
+import simulate.tree.Precision;
+
+import java.util.Random;
+
+public class InteractionKernelTests {
+
+    @Test
+    public void testVectorKernelIsAvailable() {
+        // Set by the java17 profile, which adds jdk.incubator.vector to the test runtime.
+        Assume.assumeTrue(Boolean.getBoolean("simulate.vectorKernel"));
+        InteractionKernel kernel = InteractionKernel.create(true);
+        Assertions.assertEquals("VectorInteractionKernel", kernel.getClass().getSimpleName());
+        Assertions.assertTrue(kernel.getLanes() > 1);
+    }
+
+    @Test
+    public void testKernelsMatchAndSkipCoincidentSources() {
+        InteractionKernel vector = InteractionKernel.create(true);
+        Assume.assumeTrue(vector.getLanes() > 1); // Comparing the scalar kernel with itself would test nothing.
+        Random random = new Random(42);
+        int n = 37; // Not a multiple of any vector length, so the scalar remainder is exercised.
+        double[] x = new double[n];
+        double[] y = new double[n];
+        double[] mass = new double[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = random.nextDouble();
+            y[i] = random.nextDouble();
+            mass[i] = random.nextDouble();
+        }
+        double[] scalar = new double[2];
+        double[] simd = new double[2];
+        InteractionKernel.create(false).accelerate(x[5], y[5], x, y, mass, 1, n, scalar);
+        vector.accelerate(x[5], y[5], x, y, mass, 1, n, simd);
+        Assertions.assertFalse(Double.isNaN(scalar[0] + scalar[1]));
+        Assertions.assertEquals(scalar[0], simd[0], 1e-12 * Math.abs(scalar[0]));
+        Assertions.assertEquals(scalar[1], simd[1], 1e-12 * Math.abs(scalar[1]));
+    }
+
+    @Test
+    public void testSinglePrecisionMatchesDouble() {
+        Random random = new Random(42);
+        ParticleStore store = new ParticleStore(2000);
+        for (int i = 0; i < 2000; i++) {
+            store.add(random.nextDouble() * 800, random.nextDouble() * 800, 0, 0, random.nextDouble() + 0.5);
+        }
+        LinearQuadtree tree = new LinearQuadtree(0, 0, 800);
+        tree.build(store);
+        LinearQuadtree singleTree = new LinearQuadtree(0, 0, 800, false, 1, MortonKeys.BITS, true);
+        singleTree.build(store);
+        Assertions.assertTrue(singleTree.getBytesPerNode() < tree.getBytesPerNode());
+        double[][] reference = accelerations(tree, store, Precision.DOUBLE);
+        for (Precision precision : new Precision[]{Precision.FLOAT, Precision.MIXED}) {
+            double[][] single = accelerations(singleTree, store, precision);
+            double error = 0;
+            double norm = 0;
+            for (int i = 0; i < store.size(); i++) {
+                double dx = single[0][i] - reference[0][i];
+                double dy = single[1][i] - reference[1][i];
+                error += dx * dx + dy * dy;
+                norm += reference[0][i] * reference[0][i] + reference[1][i] * reference[1][i];
+            }
+            Assertions.assertTrue(Math.sqrt(error / norm) < 1e-5);
+        }
+    }
+
+    private static double[][] accelerations(LinearQuadtree tree, ParticleStore store, Precision precision) {
+        GroupWalkEngine engine = new GroupWalkEngine(50, 0.5, 32, InteractionKernel.create(true), precision);
+        engine.prepare(tree, store);
+        engine.accelerate(0, store.size());
+        return new double[][]{store.ax.clone(), store.ay.clone()};
+    }
+}
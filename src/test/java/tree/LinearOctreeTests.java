@@ -0,0 +1,118 @@
+package tree;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+import simulate.BarnesHut3D;
+import simulate.helpers.ConfigLoader;
+import simulate.objects.ParticleStore3D;
+import simulate.tree.LinearOctree;
+import simulate.tree.OctreeWalker;
+
+import javax.management.InvalidAttributeValueException;
+import java.util.Random;
+
+public class LinearOctreeTests {
+
+    private static final int PARTICLES = 2000;
+    private static final double G = 50;
+    private ParticleStore3D store;
+    private double[] originalZ;
+
+    @Before
+    public void setUp() {
+        Random random = new Random(42);
+        store = new ParticleStore3D(PARTICLES);
+        originalZ = new double[PARTICLES];
+        for (int i = 0; i < PARTICLES; i++) {
+            originalZ[i] = random.nextGaussian() * 100;
+            store.add(random.nextDouble() * 800, random.nextDouble() * 800, originalZ[i], 0, 0, 0,
+                    random.nextDouble() + 0.5);
+        }
+    }
+
+    @Test
+    public void testBuildKeepsParticleIds() {
+        new LinearOctree(8, 20).build(store);
+        for (int id = 0; id < PARTICLES; id++) {
+            int index = store.indexOf(id);
+            Assertions.assertEquals(id, store.idAt(index));
+            Assertions.assertEquals(originalZ[id], store.z[index]);
+        }
+    }
+
+    @Test
+    public void testAccelerationMatchesDirectSum() {
+        LinearOctree tree = new LinearOctree(8, 20);
+        tree.build(store);
+        OctreeWalker exactWalker = new OctreeWalker(G, 0);
+        OctreeWalker walker = new OctreeWalker(G, 0.5);
+        double error = 0;
+        double norm = 0;
+        for (int i = 0; i < PARTICLES; i++) {
+            double[] exact = new double[3];
+            for (int j = 0; j < PARTICLES; j++) {
+                double dx = store.x[i] - store.x[j];
+                double dy = store.y[i] - store.y[j];
+                double dz = store.z[i] - store.z[j];
+                double distanceSquared = dx * dx + dy * dy + dz * dz;
+                if (distanceSquared > 0) {
+                    double product = G * store.mass[j] / (distanceSquared * Math.sqrt(distanceSquared));
+                    exact[0] -= dx * product;
+                    exact[1] -= dy * product;
+                    exact[2] -= dz * product;
+                }
+            }
+            exactWalker.accelerate(tree, store, i);
+            Assertions.assertEquals(exact[0], store.ax[i], 1e-9 * Math.abs(exact[0]) + 1e-12);
+            Assertions.assertEquals(exact[1], store.ay[i], 1e-9 * Math.abs(exact[1]) + 1e-12);
+            Assertions.assertEquals(exact[2], store.az[i], 1e-9 * Math.abs(exact[2]) + 1e-12);
+            walker.accelerate(tree, store, i);
+            double dx = store.ax[i] - exact[0];
+            double dy = store.ay[i] - exact[1];
+            double dz = store.az[i] - exact[2];
+            error += dx * dx + dy * dy + dz * dz;
+            norm += exact[0] * exact[0] + exact[1] * exact[1] + exact[2] * exact[2];
+        }
+        Assertions.assertTrue(Math.sqrt(error / norm) < 1e-2);
+    }
+
+    @Test
+    public void testTwoDimensionalEntriesAreRejected() throws Exception {
+        new BarnesHut3D(config("ForceEngine", "Tree"));
+        Assertions.assertThrows(InvalidAttributeValueException.class,
+                () -> new BarnesHut3D(config("BlockTimesteps", true)));
+        Assertions.assertThrows(InvalidAttributeValueException.class,
+                () -> new BarnesHut3D(config("ForceEngine", "Group")));
+        Assertions.assertThrows(InvalidAttributeValueException.class,
+                () -> new BarnesHut3D(config("Quadrupole", true)));
+        Assertions.assertThrows(InvalidAttributeValueException.class,
+                () -> new BarnesHut3D(config("Refit", true)));
+    }
+
+    private static ConfigLoader config(String key, Object value) throws JSONException {
+        JSONObject galaxy = new JSONObject();
+        galaxy.put("Model", "Sphere");
+        galaxy.put("Position", new JSONArray(new double[]{0, 0, 0}));
+        galaxy.put("Velocity", new JSONArray(new double[]{0, 0, 0}));
+        galaxy.put("Radius", 200);
+        galaxy.put("Mass", 10000);
+        galaxy.put("Particles", 50);
+        galaxy.put("Color", "Red");
+        JSONObject galaxies = new JSONObject();
+        galaxies.put("Galaxy1", galaxy);
+        JSONObject config = new JSONObject();
+        config.put("Size", 2400);
+        config.put("Origin", new JSONArray(new int[]{-800, -800}));
+        config.put("G", G);
+        config.put("Theta", 0.5);
+        config.put("TimeStep", 0.01);
+        config.put("Dimensions", 3);
+        config.put(key, value);
+        config.put("Galaxies", galaxies);
+        return new ConfigLoader(config);
+    }
+}
@@ -0,0 +1,208 @@
+package tree;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+import simulate.objects.Node;
+import simulate.objects.ParticleStore;
+import simulate.objects.Quadrant;
+import simulate.tree.AdaptiveBounds;
+import simulate.tree.LinearQuadtree;
+import simulate.tree.TreeWalker;
+import utils.Vector2D;
+
+import java.util.Random;
+
+public class LinearQuadtreeTests {
+
+    private static final int PARTICLES = 2000;
+    private static final double G = 50;
+    private ParticleStore store;
+    private double[] originalX;
+
+    @Before
+    public void setUp() {
+        Random random = new Random(42);
+        store = new ParticleStore(PARTICLES);
+        originalX = new double[PARTICLES];
+        for (int i = 0; i < PARTICLES; i++) {
+            originalX[i] = random.nextDouble() * 800;
+            store.add(originalX[i], random.nextDouble() * 800, 0, 0, random.nextDouble() + 0.5);
+        }
+    }
+
+    @Test
+    public void testBuildKeepsParticleIds() {
+        new LinearQuadtree(0, 0, 800).build(store);
+        for (int id = 0; id < PARTICLES; id++) {
+            int index = store.indexOf(id);
+            Assertions.assertEquals(id, store.idAt(index));
+            Assertions.assertEquals(originalX[id], store.x[index]);
+        }
+    }
+
+    @Test
+    public void testArenaSizing() {
+        LinearQuadtree tree = new LinearQuadtree(0, 0, 800);
+        tree.build(store);
+        Assertions.assertEquals(LinearQuadtree.BYTES_PER_NODE, tree.getBytesPerNode());
+        Assertions.assertTrue(tree.getHighWaterMark() >= tree.getNodeCount());
+        Assertions.assertTrue(tree.getCapacity() >= tree.getHighWaterMark());
+        Assertions.assertTrue(new LinearQuadtree(0, 0, 800, true).getBytesPerNode() > LinearQuadtree.BYTES_PER_NODE);
+    }
+
+    @Test
+    public void testWalkerHandlesDenseCluster() {
+        ParticleStore cluster = new ParticleStore(PARTICLES);
+        Random random = new Random(7);
+        for (int i = 0; i < PARTICLES; i++) {
+            cluster.add(400 + random.nextDouble() * 1e-7, 400 + random.nextDouble() * 1e-7, 0, 0, 1);
+        }
+        cluster.add(400, 400, 0, 0, 1);
+        LinearQuadtree tree = new LinearQuadtree(0, 0, 800);
+        tree.build(cluster);
+        TreeWalker walker = new TreeWalker(G, 0.5);
+        for (int i = 0; i < cluster.size(); i++) {
+            walker.accelerate(tree, cluster, i);
+            Assertions.assertFalse(Double.isNaN(cluster.ax[i]) || Double.isNaN(cluster.ay[i]));
+        }
+    }
+
+    @Test
+    public void testCoincidentParticlesStopAtMaxDepth() {
+        ParticleStore coincident = new ParticleStore(PARTICLES);
+        for (int i = 0; i < PARTICLES; i++) {
+            coincident.add(400, 400, 0, 0, 1);
+        }
+        coincident.add(100, 100, 0, 0, 1);
+        LinearQuadtree tree = new LinearQuadtree(0, 0, 800, false, 8, 10);
+        tree.build(coincident);
+        Assertions.assertTrue(tree.getNodeCount() <= 4 * 10 + 1);
+        TreeWalker walker = new TreeWalker(G, 0.5);
+        walker.accelerate(tree, coincident, coincident.indexOf(PARTICLES));
+        double distance = Math.sqrt(2) * 300;
+        double expected = G * PARTICLES * 300 / (distance * distance * distance);
+        Assertions.assertEquals(expected, coincident.ax[coincident.indexOf(PARTICLES)], 1e-9 * expected);
+    }
+
+    @Test
+    public void testAccelerationMatchesNodeTree() {
+        LinearQuadtree tree = new LinearQuadtree(0, 0, 800);
+        tree.build(store);
+        Node root = new Node(new Quadrant(new Vector2D(0, 0), 800), G);
+        for (int i = 0; i < PARTICLES; i++) {
+            root.insertParticle(store, i);
+        }
+        TreeWalker walker = new TreeWalker(G, 0.5);
+        for (int i = 0; i < PARTICLES; i++) {
+            store.ax[i] = 0;
+            store.ay[i] = 0;
+            root.addAcceleration(store, i, 0.5);
+            double expectedX = store.ax[i];
+            double expectedY = store.ay[i];
+            walker.accelerate(tree, store, i);
+            Assertions.assertEquals(expectedX, store.ax[i], 1e-9 * Math.abs(expectedX) + 1e-12);
+            Assertions.assertEquals(expectedY, store.ay[i], 1e-9 * Math.abs(expectedY) + 1e-12);
+        }
+    }
+
+    @Test
+    public void testQuadrupoleReducesError() {
+        double[][] exact = new double[2][PARTICLES];
+        for (int i = 0; i < PARTICLES; i++) {
+            for (int j = 0; j < PARTICLES; j++) {
+                double dx = store.x[i] - store.x[j];
+                double dy = store.y[i] - store.y[j];
+                double distanceSquared = dx * dx + dy * dy;
+                if (distanceSquared > 0) {
+                    double product = G * store.mass[j] / (distanceSquared * Math.sqrt(distanceSquared));
+                    exact[0][i] -= dx * product;
+                    exact[1][i] -= dy * product;
+                }
+            }
+        }
+        double monopoleError = walkError(new LinearQuadtree(0, 0, 800), exact);
+        double quadrupoleError = walkError(new LinearQuadtree(0, 0, 800, true), exact);
+        Assertions.assertTrue(quadrupoleError < monopoleError / 2);
+    }
+
+    /**
+     * Returns the summed squared error of the walked accelerations against exact accelerations indexed by id.
+     */
+    private double walkError(LinearQuadtree tree, double[][] exact) {
+        tree.build(store);
+        TreeWalker walker = new TreeWalker(G, 0.7);
+        double error = 0;
+        for (int id = 0; id < PARTICLES; id++) {
+            int index = store.indexOf(id);
+            walker.accelerate(tree, store, index);
+            double dx = store.ax[index] - exact[0][id];
+            double dy = store.ay[index] - exact[1][id];
+            error += dx * dx + dy * dy;
+        }
+        return error;
+    }
+
+    @Test
+    public void testRefitMatchesDirectSum() {
+        LinearQuadtree tree = new LinearQuadtree(0, 0, 800);
+        tree.build(store);
+        Random random = new Random(3);
+        double[] movedX = new double[PARTICLES];
+        for (int id = 0; id < PARTICLES; id++) {
+            int index = store.indexOf(id);
+            store.x[index] = Math.min(799, Math.max(0, store.x[index] + random.nextGaussian() * 5));
+            movedX[id] = store.x[index];
+        }
+        Assertions.assertTrue(tree.refit(store, 1, PARTICLES));
+        TreeWalker walker = new TreeWalker(G, 0);
+        for (int id = 0; id < PARTICLES; id++) {
+            int index = store.indexOf(id);
+            Assertions.assertEquals(movedX[id], store.x[index]);
+            double ax = 0;
+            double ay = 0;
+            for (int j = 0; j < PARTICLES; j++) {
+                double dx = store.x[index] - store.x[j];
+                double dy = store.y[index] - store.y[j];
+                double distanceSquared = dx * dx + dy * dy;
+                if (distanceSquared > 0) {
+                    double product = G * store.mass[j] / (distanceSquared * Math.sqrt(distanceSquared));
+                    ax -= dx * product;
+                    ay -= dy * product;
+                }
+            }
+            walker.accelerate(tree, store, index);
+            Assertions.assertEquals(ax, store.ax[index], 1e-9 * Math.abs(ax) + 1e-12);
+            Assertions.assertEquals(ay, store.ay[index], 1e-9 * Math.abs(ay) + 1e-12);
+        }
+    }
+
+    @Test
+    public void testEscapersLeaveTree() {
+        store.add(1e6, 1e6, 0, 0, 1);
+        LinearQuadtree tree = new LinearQuadtree(0, 0, 1);
+        AdaptiveBounds bounds = new AdaptiveBounds(G, 5000);
+        int bound = bounds.update(tree, store);
+        Assertions.assertEquals(PARTICLES, bound);
+        Assertions.assertEquals(PARTICLES, store.indexOf(PARTICLES));
+        Assertions.assertTrue(tree.getOriginX() <= 0 && tree.getOriginX() + tree.getSize() >= 800);
+        tree.build(store, bound);
+        TreeWalker walker = new TreeWalker(G, 0);
+        for (int i = 0; i < bound; i++) {
+            walker.accelerate(tree, store, i);
+        }
+        bounds.accelerateEscapers(tree, store);
+        for (int i : new int[]{0, PARTICLES / 2, PARTICLES}) {
+            double ax = 0;
+            for (int j = 0; j < store.size(); j++) {
+                double dx = store.x[i] - store.x[j];
+                double dy = store.y[i] - store.y[j];
+                double distanceSquared = dx * dx + dy * dy;
+                if (distanceSquared > 0) {
+                    ax -= dx * G * store.mass[j] / (distanceSquared * Math.sqrt(distanceSquared));
+                }
+            }
+            Assertions.assertEquals(ax, store.ax[i], 1e-6 * Math.abs(ax));
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package tree;
+
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+import simulate.objects.ParticleStore;
+import simulate.objects.ParticleStore3D;
+import simulate.tree.LinearOctree;
+import simulate.tree.LinearQuadtree;
+import simulate.tree.MortonKeys;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Builds trees in parallel from a deliberately small node arena, so that the builds overflow the arena and are
+ * repeated with larger node arrays while other build tasks are still running.
+ */
+public class TreeBuildTests {
+
+    private static final int PARTICLES = 60000;
+    private static final int CLUSTERS = 7;
+    private static final int TRIALS = 20;
+    private static final int THREADS = 8;
+    private static final int SMALL_ARENA = 16;
+
+    @Test
+    public void testOverflowingQuadtreeBuildLeavesNoPhantomNodes() throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(THREADS);
+        try {
+            for (int seed = 0; seed < TRIALS; seed++) {
+                Random random = new Random(seed);
+                ParticleStore store = new ParticleStore(PARTICLES);
+                for (int i = 0; i < PARTICLES; i++) {
+                    int cluster = i % CLUSTERS;
+                    store.add(50 + 100 * cluster + random.nextGaussian() * 1e-2 * (cluster + 1),
+                            700 - 90 * cluster + random.nextGaussian() * 1e-2, 0, 0, 1);
+                }
+                SmallArenaQuadtree tree = new SmallArenaQuadtree();
+                pool.submit(() -> tree.build(store)).get();
+                Assertions.assertTrue(tree.getCapacity() > SMALL_ARENA);
+                Assertions.assertEquals(tree.getNodeCount(), tree.countReachable(PARTICLES));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testOverflowingOctreeBuildLeavesNoPhantomNodes() throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(THREADS);
+        try {
+            for (int seed = 0; seed < TRIALS; seed++) {
+                Random random = new Random(seed);
+                ParticleStore3D store = new ParticleStore3D(PARTICLES);
+                for (int i = 0; i < PARTICLES; i++) {
+                    int cluster = i % CLUSTERS;
+                    store.add(50 + 100 * cluster + random.nextGaussian() * 1e-2 * (cluster + 1),
+                            700 - 90 * cluster + random.nextGaussian() * 1e-2,
+                            100 * cluster + random.nextGaussian() * 1e-2, 0, 0, 0, 1);
+                }
+                SmallArenaOctree tree = new SmallArenaOctree();
+                pool.submit(() -> tree.build(store)).get();
+                Assertions.assertTrue(tree.getCapacity() > SMALL_ARENA);
+                Assertions.assertEquals(tree.getNodeCount(), tree.countReachable(PARTICLES));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Quadtree whose node arena starts out too small for any of the builds above.
+     */
+    private static class SmallArenaQuadtree extends LinearQuadtree {
+
+        SmallArenaQuadtree() {
+            super(0, 0, 800, false, 1, MortonKeys.BITS);
+        }
+
+        @Override
+        protected int initialCapacity(int particles) {
+            return SMALL_ARENA;
+        }
+
+        int countReachable(int particles) {
+            return TreeBuildTests.countReachable(firstChild, start, count, ROOT, NO_CHILDREN, 4, particles);
+        }
+    }
+
+    /**
+     * Octree whose node arena starts out too small for any of the builds above.
+     */
+    private static class SmallArenaOctree extends LinearOctree {
+
+        SmallArenaOctree() {
+            super(1, MortonKeys.BITS_3D);
+        }
+
+        @Override
+        protected int initialCapacity(int particles) {
+            return SMALL_ARENA;
+        }
+
+        int getCapacity() {
+            return start.length;
+        }
+
+        int countReachable(int particles) {
+            return TreeBuildTests.countReachable(firstChild, start, count, ROOT, NO_CHILDREN, 8, particles);
+        }
+    }
+
+    /**
+     * Counts the nodes reachable from the root and checks that the leaves cover every particle exactly once.
+     */
+    private static int countReachable(int[] firstChild, int[] start, int[] count, int root, int noChildren,
+                                      int children, int particles) {
+        int[] covered = new int[particles];
+        int[] stack = new int[firstChild.length];
+        int top = 0;
+        int reachable = 0;
+        stack[top++] = root;
+        while (top > 0) {
+            int node = stack[--top];
+            reachable++;
+            if (firstChild[node] == noChildren) {
+                for (int i = start[node]; i < start[node] + count[node]; i++) {
+                    covered[i]++;
+                }
+                continue;
+            }
+            for (int child = 0; child < children; child++) {
+                stack[top++] = firstChild[node] + child;
+            }
+        }
+        for (int i = 0; i < particles; i++) {
+            Assertions.assertEquals(1, covered[i], "Particle " + i);
+        }
+        return reachable;
+    }
+}